@@ -0,0 +1,139 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * Compares the cost of encoding and decoding work items with {@link WorkItemCodec} against Java
+ * serialization, which was used for JMS messages before. The sizes of both encoded forms are compared
+ * by {@link WorkItemCodecTestCase}. Run with:
+ * 
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args=WorkItemCodecBenchmark
+ * </pre>
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WorkItemCodecBenchmark
+{
+    @Param({"FUNCTION_CALL_JOB", "MULTI_FILES_JOB"})
+    public String workItemType;
+
+    private AbstractWorkItem workItem;
+    private byte[] encodedWorkItem;
+    private byte[] serializedWorkItem;
+
+    @Setup
+    public void createWorkItem() throws Exception
+    {
+        if ("FUNCTION_CALL_JOB".equals(workItemType))
+        {
+            workItem = new JsonFunctionCallJob(Source.REST, "benchmark", "user", UUID.randomUUID(),
+                new GregorianCalendar(), "{\"x\":[1,2,3,4,5,6,7,8,9,10],\"label\":\"benchmark\"}");
+        }
+        else
+        {
+            final Map<String, Serializable> meta = new HashMap<String, Serializable>();
+            meta.put("rScript", "analysis.R");
+            meta.put("sweaveFile", "report.Rnw");
+            meta.put("rsbSecure", true);
+            workItem = new MultiFilesJob(Source.DIRECTORY, "benchmark", "user", UUID.randomUUID(),
+                new GregorianCalendar(), meta, new File("/tmp/rsb_1234567890job"), "analysis.R", null);
+        }
+
+        encodedWorkItem = WorkItemCodec.encode(workItem);
+        serializedWorkItem = toSerializedForm(workItem);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        return WorkItemCodec.encode(workItem);
+    }
+
+    @Benchmark
+    public AbstractWorkItem decode() throws IOException
+    {
+        return WorkItemCodec.decode(encodedWorkItem);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException
+    {
+        return toSerializedForm(workItem);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException
+    {
+        final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedWorkItem));
+        try
+        {
+            return ois.readObject();
+        }
+        finally
+        {
+            ois.close();
+        }
+    }
+
+    private static byte[] toSerializedForm(final AbstractWorkItem workItem) throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(workItem);
+        oos.close();
+        return baos.toByteArray();
+    }
+}
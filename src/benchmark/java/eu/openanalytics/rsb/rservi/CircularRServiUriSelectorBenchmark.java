@@ -0,0 +1,159 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * Measures the throughput of {@link CircularRServiUriSelector} when many job workers select URIs
+ * for the same application concurrently, against the synchronized circular buffer it used before.
+ * Run with:
+ * 
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args=CircularRServiUriSelectorBenchmark
+ * </pre>
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CircularRServiUriSelectorBenchmark
+{
+    /**
+     * The previous selector, which rotated a shared deque under a lock.
+     */
+    private static class SynchronizedRServiUriSelector
+    {
+        private final Deque<URI> uris;
+
+        SynchronizedRServiUriSelector(final Set<URI> uris)
+        {
+            this.uris = new ArrayDeque<URI>(uris);
+        }
+
+        URI getUri()
+        {
+            synchronized (uris)
+            {
+                final URI uri = uris.poll();
+                uris.add(uri);
+                return uri;
+            }
+        }
+    }
+
+    private static final String APPLICATION_NAME = "benchmark";
+
+    private CircularRServiUriSelector selector;
+
+    private SynchronizedRServiUriSelector baselineSelector;
+
+    @Setup
+    public void createSelector() throws Exception
+    {
+        final Set<URI> applicationUris = new LinkedHashSet<URI>(Arrays.asList(new URI("rmi://node1/pool"),
+            new URI("rmi://node2/pool"), new URI("rmi://node3/pool"), new URI("rmi://node4/pool")));
+
+        // the configuration is only read when the selector is initialized
+        final Configuration configuration = mock(Configuration.class);
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(new URI("rmi://default/pool"));
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(
+            Collections.singletonMap(APPLICATION_NAME, applicationUris));
+
+        selector = new CircularRServiUriSelector();
+        selector.setConfiguration(configuration);
+        selector.setRServiCircuitBreaker(new RServiCircuitBreaker());
+        selector.initialize();
+
+        baselineSelector = new SynchronizedRServiUriSelector(applicationUris);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public URI singleWorker()
+    {
+        return selector.getUriForApplication(APPLICATION_NAME);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public URI concurrentWorkers()
+    {
+        return selector.getUriForApplication(APPLICATION_NAME);
+    }
+
+    @Benchmark
+    @Threads(128)
+    public URI manyConcurrentWorkers()
+    {
+        return selector.getUriForApplication(APPLICATION_NAME);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public URI singleWorkerBaseline()
+    {
+        return baselineSelector.getUri();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public URI concurrentWorkersBaseline()
+    {
+        return baselineSelector.getUri();
+    }
+
+    @Benchmark
+    @Threads(128)
+    public URI manyConcurrentWorkersBaseline()
+    {
+        return baselineSelector.getUri();
+    }
+}
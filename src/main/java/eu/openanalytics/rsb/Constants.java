@@ -103,6 +103,14 @@ public class Constants
     public static final String HOST_NAME;
     public static final String RSERVI_CLIENT_ID;
     public static final String RSERVI_CLIENT_POOL_OBJECT_NAME = "rsb:domain=rservi,name=RServiClientPool";
+    public static final String RESULTS_LAYOUT_MANAGER_OBJECT_NAME = "rsb:domain=data,name=ResultsLayoutManager";
+    public static final String RESULT_RETENTION_MANAGER_OBJECT_NAME = "rsb:domain=data,name=ResultRetentionManager";
+    public static final String JOB_PHASE_STATISTICS_OBJECT_NAME = "rsb:domain=stats,name=JobPhaseStatistics";
+    public static final String GLOBAL_JOB_MESSAGE_LISTENER_OBJECT_NAME = "rsb:domain=jms,name=GlobalJobMessageListener";
+    public static final String JOB_WORKER_AUTO_SCALER_OBJECT_NAME = "rsb:domain=jms,name=JobWorkerAutoScaler";
+    public static final String APPLICATION_JOB_MESSAGE_LISTENER_OBJECT_NAME_PREFIX = "rsb:domain=jms,name=ApplicationJobMessageListener,application=";
+
+    public static final int MAX_RESULTS_SHARDING_DEPTH = 3;
 
     static
     {
@@ -43,6 +43,7 @@ import java.util.regex.Pattern;
 
 import javax.annotation.Resource;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
@@ -87,6 +88,12 @@ import eu.openanalytics.rsb.rest.types.CatalogFileType;
 import eu.openanalytics.rsb.rest.types.RServiPoolType;
 import eu.openanalytics.rsb.rest.types.RServiPools;
 import eu.openanalytics.rsb.rservi.RServiPackageManager;
+import eu.openanalytics.rsb.stats.AsynchronousJobStatisticsHandler;
+import eu.openanalytics.rsb.stats.JobStatisticsHandler;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+import eu.openanalytics.rsb.stats.JobStatisticsRollupProvider;
 
 /**
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
@@ -103,17 +110,28 @@ public class AdminResource extends AbstractResource implements ApplicationContex
 
     private static final Pattern TAR_CATALOG_FILE_PATTERN = Pattern.compile(".*/inst/rsb/catalog/(.*)");
 
+    private static final int MAX_JOB_STATISTICS_ROLLUP_BUCKETS = 1440;
+
     private ConfigurableApplicationContext applicationContext;
 
     @Resource
     private RServiPackageManager rServiPackageManager;
 
+    @Resource
+    private JobStatisticsHandler jobStatisticsHandler;
+
     // exposed for unit testing
     public void setrServiPackageManager(final RServiPackageManager rServiPackageManager)
     {
         this.rServiPackageManager = rServiPackageManager;
     }
 
+    // exposed for unit testing
+    void setJobStatisticsHandler(final JobStatisticsHandler jobStatisticsHandler)
+    {
+        this.jobStatisticsHandler = jobStatisticsHandler;
+    }
+
     @Override
     public void setApplicationContext(final ApplicationContext applicationContext) throws BeansException
     {
@@ -189,6 +207,46 @@ public class AdminResource extends AbstractResource implements ApplicationContex
         return result;
     }
 
+    @Path("/" + SYSTEM_SUBPATH + "/job_statistics/{granularity}")
+    @GET
+    @Produces(Constants.JSON_CONTENT_TYPE)
+    public Response getJobStatisticsRollups(@PathParam("granularity") final String granularity,
+                                            @QueryParam("applicationName") final String applicationName,
+                                            @QueryParam("rServiAddress") final String rServiAddress,
+                                            @QueryParam("buckets") @DefaultValue("60") final int bucketCount)
+    {
+        final JobStatisticsRollupProvider rollupProvider = getJobStatisticsRollupProvider();
+        if (rollupProvider == null)
+        {
+            return Response.status(Status.NOT_FOUND)
+                .entity("The configured job statistics handler doesn't maintain rollups")
+                .build();
+        }
+
+        Validate.isTrue(StringUtils.isBlank(applicationName) != StringUtils.isBlank(rServiAddress),
+            "exactly one of the applicationName and rServiAddress query params is required");
+        Validate.isTrue((bucketCount > 0) && (bucketCount <= MAX_JOB_STATISTICS_ROLLUP_BUCKETS),
+            "buckets must be between 1 and " + MAX_JOB_STATISTICS_ROLLUP_BUCKETS);
+
+        final Granularity rollupGranularity = Granularity.valueOf(granularity.toUpperCase());
+        final List<JobStatisticsRollup> rollups = StringUtils.isNotBlank(applicationName)
+            ? rollupProvider.getRollups(rollupGranularity, Scope.APPLICATION, applicationName, bucketCount)
+            : rollupProvider.getRollups(rollupGranularity, Scope.RSERVI_ADDRESS, rServiAddress, bucketCount);
+
+        return Response.ok(Util.toJson(rollups)).build();
+    }
+
+    private JobStatisticsRollupProvider getJobStatisticsRollupProvider()
+    {
+        JobStatisticsHandler handler = jobStatisticsHandler;
+        if (handler instanceof AsynchronousJobStatisticsHandler)
+        {
+            handler = ((AsynchronousJobStatisticsHandler) handler).getDelegate();
+        }
+
+        return handler instanceof JobStatisticsRollupProvider ? (JobStatisticsRollupProvider) handler : null;
+    }
+
     @Path("/" + SYSTEM_SUBPATH + "/r_packages")
     @POST
     @Consumes({Constants.GZIP_CONTENT_TYPE})
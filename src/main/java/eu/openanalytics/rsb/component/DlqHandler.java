@@ -69,6 +69,7 @@ public class DlqHandler extends AbstractComponent {
         logAndAlertFailure(job, descriptiveMessage);
 
         final AbstractResult<?> errorResult = job.buildErrorResult(new RuntimeException(descriptiveMessage), getMessages());
+        errorResult.setReplyTo(job.getReplyTo());
         getMessageDispatcher().dispatch(errorResult);
     }
 
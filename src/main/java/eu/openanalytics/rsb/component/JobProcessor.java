@@ -30,8 +30,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.net.SocketException;
 import java.net.URI;
+import java.rmi.ConnectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -41,11 +46,15 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.management.ObjectName;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.eclipse.core.runtime.CoreException;
+import org.springframework.jmx.export.MBeanExportOperations;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Component;
 
@@ -56,6 +65,7 @@ import de.walware.rj.servi.RServi;
 import de.walware.rj.services.FunctionCall;
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.config.Configuration.CatalogSection;
+import eu.openanalytics.rsb.data.BlobStore;
 import eu.openanalytics.rsb.message.AbstractFunctionCallJob;
 import eu.openanalytics.rsb.message.AbstractJob;
 import eu.openanalytics.rsb.message.AbstractResult;
@@ -63,9 +73,15 @@ import eu.openanalytics.rsb.message.Job;
 import eu.openanalytics.rsb.message.MultiFilesJob;
 import eu.openanalytics.rsb.message.MultiFilesResult;
 import eu.openanalytics.rsb.rservi.ErrorableRServi;
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
+import eu.openanalytics.rsb.rservi.RServiLoadTracker;
 import eu.openanalytics.rsb.rservi.RServiUriSelector;
+import eu.openanalytics.rsb.stats.JobPhase;
+import eu.openanalytics.rsb.stats.JobPhaseStatistics;
+import eu.openanalytics.rsb.stats.JobPhaseStatisticsHandler;
+import eu.openanalytics.rsb.stats.JobPhaseTimings;
 import eu.openanalytics.rsb.stats.JobStatisticsHandler;
 
 /**
@@ -78,7 +94,56 @@ public class JobProcessor extends AbstractComponentWithCatalog
 {
     private interface JobRunner
     {
-        AbstractResult<?> runOn(RServi rServi) throws Exception;
+        AbstractResult<?> runOn(RServi rServi, JobPhaseTimings jobPhaseTimings) throws Exception;
+    }
+
+    /**
+     * Closes the circuit of an RServi pool once the first phase run on one of its clients has ended,
+     * as borrowing a pooled client doesn't reach R.
+     */
+    private static class RServiReachabilityTimings extends JobPhaseTimings
+    {
+        private final RServiCircuitBreaker rServiCircuitBreaker;
+        private final URI rServiUri;
+        private boolean running;
+        private boolean phaseRunning;
+        private boolean reached;
+
+        RServiReachabilityTimings(final RServiCircuitBreaker rServiCircuitBreaker, final URI rServiUri)
+        {
+            this.rServiCircuitBreaker = rServiCircuitBreaker;
+            this.rServiUri = rServiUri;
+        }
+
+        void startRunning()
+        {
+            running = true;
+        }
+
+        @Override
+        public void start(final JobPhase phase)
+        {
+            if (phaseRunning)
+            {
+                markReached();
+            }
+            super.start(phase);
+            phaseRunning = running;
+        }
+
+        void markReached()
+        {
+            if (!reached)
+            {
+                reached = true;
+                rServiCircuitBreaker.recordSuccess(rServiUri);
+            }
+        }
+
+        boolean isReached()
+        {
+            return reached;
+        }
     }
 
     @Resource
@@ -90,14 +155,44 @@ public class JobProcessor extends AbstractComponentWithCatalog
     @Resource
     private RServiUriSelector rServiUriSelector;
 
+    @Resource
+    private RServiLoadTracker rServiLoadTracker;
+
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
+    @Resource
+    private MBeanExportOperations mbeanExportOperations;
+
+    @Resource
+    private BlobStore blobStore;
+
+    private final JobPhaseStatistics jobPhaseStatistics = new JobPhaseStatistics();
+
+    @PostConstruct
+    public void registerJobPhaseStatisticsMBean()
+    {
+        try
+        {
+            mbeanExportOperations.registerManagedResource(jobPhaseStatistics, new ObjectName(
+                Constants.JOB_PHASE_STATISTICS_OBJECT_NAME));
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to register job phase statistics MBean", e);
+        }
+    }
+
     @PreAuthorize("hasPermission(#job, 'APPLICATION_JOB')")
     public AbstractResult<?> processDirect(final AbstractFunctionCallJob job) throws Exception
     {
         return process(job, new JobRunner()
         {
             @Override
-            public AbstractResult<String> runOn(final RServi rServi) throws CoreException, IOException
+            public AbstractResult<String> runOn(final RServi rServi, final JobPhaseTimings jobPhaseTimings)
+                throws CoreException, IOException
             {
+                jobPhaseTimings.start(JobPhase.FUNCTION_CALL);
                 final String resultPayload = callFunctionOnR(rServi, job);
                 return job.buildSuccessResult(resultPayload);
             }
@@ -109,8 +204,10 @@ public class JobProcessor extends AbstractComponentWithCatalog
         process(job, new JobRunner()
         {
             @Override
-            public AbstractResult<String> runOn(final RServi rServi) throws CoreException, IOException
+            public AbstractResult<String> runOn(final RServi rServi, final JobPhaseTimings jobPhaseTimings)
+                throws CoreException, IOException
             {
+                jobPhaseTimings.start(JobPhase.FUNCTION_CALL);
                 final String resultPayload = callFunctionOnR(rServi, job);
                 return job.buildSuccessResult(resultPayload);
             }
@@ -122,14 +219,29 @@ public class JobProcessor extends AbstractComponentWithCatalog
         process(job, new JobRunner()
         {
             @Override
-            public AbstractResult<File[]> runOn(final RServi rServi) throws Exception
+            public AbstractResult<File[]> runOn(final RServi rServi, final JobPhaseTimings jobPhaseTimings)
+                throws Exception
             {
                 final Set<String> filesUploadedToR = new HashSet<String>();
 
-                // locate and upload the R script
-                final File rScriptFile = getRScriptFile(job);
+                // locate and upload the R script, either from the catalog or from the job
+                final String rScriptFromCatalog = (String) getUploadableJobMeta(job).get(
+                    Constants.R_SCRIPT_CONFIGURATION_KEY);
+                final String rScriptName;
 
-                uploadFileToR(rServi, rScriptFile, filesUploadedToR);
+                if (rScriptFromCatalog != null)
+                {
+                    final File rScriptFile = getRScriptFileFromCatalog(rScriptFromCatalog, job);
+                    rScriptName = rScriptFile.getName();
+                    jobPhaseTimings.start(JobPhase.SCRIPT_UPLOAD);
+                    uploadFileToR(rServi, rScriptFile, filesUploadedToR);
+                }
+                else
+                {
+                    rScriptName = getRScriptFileNameFromJob(job);
+                    jobPhaseTimings.start(JobPhase.SCRIPT_UPLOAD);
+                    uploadJobFileToR(rServi, job, rScriptName, filesUploadedToR);
+                }
 
                 // optionally uploads a Sweave file
                 final String sweaveFileFromCatalog = (String) getUploadableJobMeta(job).get(
@@ -146,32 +258,39 @@ public class JobProcessor extends AbstractComponentWithCatalog
                                                            + job);
                     }
 
+                    jobPhaseTimings.start(JobPhase.SWEAVE_FILE_UPLOAD);
                     uploadFileToR(rServi, sweaveFile, filesUploadedToR);
                 }
 
                 // upload the job files (except the R Script which has already been
                 // taken care of)
-                for (final File jobFile : job.getFiles())
+                jobPhaseTimings.start(JobPhase.JOB_FILES_UPLOAD);
+                for (final String jobFileName : job.getFileNames())
                 {
-                    if (!jobFile.equals(rScriptFile))
+                    if ((rScriptFromCatalog != null) || (!jobFileName.equals(rScriptName)))
                     {
-                        uploadFileToR(rServi, jobFile, filesUploadedToR);
+                        uploadJobFileToR(rServi, job, jobFileName, filesUploadedToR);
                     }
                 }
 
                 // upload the configuration file to R
+                jobPhaseTimings.start(JobPhase.PROPERTIES_UPLOAD);
                 uploadPropertiesToR(rServi, getUploadableJobMeta(job), filesUploadedToR);
 
                 // hit R
-                executeScriptOnR(rServi, rScriptFile.getName());
+                jobPhaseTimings.start(JobPhase.SCRIPT_EXECUTION);
+                executeScriptOnR(rServi, rScriptName);
 
                 final MultiFilesResult result = job.buildSuccessResult();
 
                 // download the result files but not the uploaded ones nor the log
                 // file
+                jobPhaseTimings.start(JobPhase.RESULT_FILES_LISTING);
                 final Set<String> filesToDownload = getFilesInRWorkspace(rServi);
                 filesToDownload.removeAll(filesUploadedToR);
                 filesToDownload.remove(Constants.DEFAULT_R_LOG_FILE);
+
+                jobPhaseTimings.start(JobPhase.RESULT_FILES_DOWNLOAD);
                 for (final String fileToDownload : filesToDownload)
                 {
                     final File resultFile = result.createNewResultFile(fileToDownload);
@@ -197,16 +316,6 @@ public class JobProcessor extends AbstractComponentWithCatalog
                 return meta;
             }
 
-            private File getRScriptFile(final MultiFilesJob job)
-            {
-                final String rScriptFromCatalog = (String) getUploadableJobMeta(job).get(
-                    Constants.R_SCRIPT_CONFIGURATION_KEY);
-
-                return rScriptFromCatalog != null
-                                                 ? getRScriptFileFromCatalog(rScriptFromCatalog, job)
-                                                 : getRScriptFileFromJob(job);
-            }
-
             private File getRScriptFileFromCatalog(final String rScriptFromCatalog, final MultiFilesJob job)
             {
                 final File rScriptFile = getCatalogManager().internalGetCatalogFile(CatalogSection.R_SCRIPTS,
@@ -224,15 +333,15 @@ public class JobProcessor extends AbstractComponentWithCatalog
                 }
             }
 
-            private File getRScriptFileFromJob(final MultiFilesJob job)
+            private String getRScriptFileNameFromJob(final MultiFilesJob job)
             {
-                if ((job.getRScriptFile() == null) || (!job.getRScriptFile().isFile()))
+                if (job.getRScriptFileName() == null)
                 {
                     throw new IllegalArgumentException("No R script has been found for job: " + job);
                 }
                 else
                 {
-                    return job.getRScriptFile();
+                    return job.getRScriptFileName();
                 }
             }
         }, false);
@@ -254,38 +363,90 @@ public class JobProcessor extends AbstractComponentWithCatalog
         this.rServiUriSelector = rServiUriSelector;
     }
 
+    void setRServiLoadTracker(final RServiLoadTracker rServiLoadTracker)
+    {
+        this.rServiLoadTracker = rServiLoadTracker;
+    }
+
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
+    void setBlobStore(final BlobStore blobStore)
+    {
+        this.blobStore = blobStore;
+    }
+
     private AbstractResult<?> process(final AbstractJob job, final JobRunner jobRunner, final boolean direct)
         throws Exception
     {
         AbstractResult<?> result = null;
         final long startTime = System.currentTimeMillis();
         final URI rserviPoolAddress = rServiUriSelector.getUriForApplication(job.getApplicationName());
+        final RServiReachabilityTimings jobPhaseTimings = new RServiReachabilityTimings(rServiCircuitBreaker,
+            rserviPoolAddress);
 
         // using instanceof of is not OO-friendly but defining pooling strategy is none of
-        // AbstractWorkItem business
-        final PoolingStrategy poolingStrategy = job instanceof AbstractFunctionCallJob
-                                                                                      ? PoolingStrategy.IF_POSSIBLE
-                                                                                      : PoolingStrategy.NEVER;
+        // AbstractWorkItem business; script jobs leave files and objects behind them so they can only
+        // reuse RServi instances whose workspace is reset once they're done
+        final PoolingStrategy poolingStrategy;
+        if (job instanceof AbstractFunctionCallJob)
+        {
+            poolingStrategy = PoolingStrategy.IF_POSSIBLE;
+        }
+        else if (job instanceof MultiFilesJob)
+        {
+            poolingStrategy = PoolingStrategy.IF_POSSIBLE_WITH_WORKSPACE_RESET;
+        }
+        else
+        {
+            poolingStrategy = PoolingStrategy.NEVER;
+        }
+
+        // fail fast while the circuit of the pool is open: the job will be retried later, or
+        // routed to another pool by the URI selector
+        if (!rServiCircuitBreaker.allowRequest(rserviPoolAddress))
+        {
+            throw new ConnectException("Circuit is open for RServi pool: " + rserviPoolAddress);
+        }
 
         // don't catch RServi pool here so the error is propagated and the job can be
         // retried
-        final RServi rServi = rServiInstanceProvider.getRServiInstance(rserviPoolAddress.toString(),
-            Constants.RSERVI_CLIENT_ID, poolingStrategy);
+        final RServi rServi;
+        try
+        {
+            jobPhaseTimings.start(JobPhase.RSERVI_BORROW);
+            rServi = rServiInstanceProvider.getRServiInstance(rserviPoolAddress.toString(),
+                Constants.RSERVI_CLIENT_ID, poolingStrategy);
+            jobPhaseTimings.stop();
+        }
+        catch (final Exception e)
+        {
+            settleCircuit(rserviPoolAddress, e, jobPhaseTimings);
+            throw e;
+        }
+
+        rServiLoadTracker.jobStarted(rserviPoolAddress);
 
         try
         {
-            result = jobRunner.runOn(rServi);
+            jobPhaseTimings.startRunning();
+            result = jobRunner.runOn(rServi, jobPhaseTimings);
+            jobPhaseTimings.stop();
+            jobPhaseTimings.markReached();
 
             final long processTime = System.currentTimeMillis() - startTime;
 
-            jobStatisticsHandler.storeJobStatistics(job, new GregorianCalendar(), processTime,
-                rserviPoolAddress.toString());
+            jobPhaseStatistics.record(jobPhaseTimings);
+            storeJobStatistics(job, processTime, rserviPoolAddress, jobPhaseTimings);
 
             if (getLogger().isInfoEnabled())
             {
                 getLogger().info(
-                    String.format("Successfully processed %s %s for %s on %s in %dms", job.getType(),
-                        job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime));
+                    String.format("Successfully processed %s %s for %s on %s in %dms (%s)", job.getType(),
+                        job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime,
+                        jobPhaseTimings));
             }
         }
         // catch wide to prevent disrupting the main flow
@@ -296,27 +457,94 @@ public class JobProcessor extends AbstractComponentWithCatalog
                 ((ErrorableRServi) rServi).markError();
             }
 
+            settleCircuit(rserviPoolAddress, t, jobPhaseTimings);
+
+            jobPhaseTimings.stop();
             final long processTime = System.currentTimeMillis() - startTime;
             getLogger().error(
-                String.format("Failed to process %s %s for %s on %s in %dms", job.getType(), job.getJobId(),
-                    job.getApplicationName(), rserviPoolAddress, processTime), t);
+                String.format("Failed to process %s %s for %s on %s in %dms (%s)", job.getType(),
+                    job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime,
+                    jobPhaseTimings), t);
             result = job.buildErrorResult(t, getMessages());
         }
         finally
         {
             rServi.close();
+            rServiLoadTracker.jobCompleted(rserviPoolAddress, System.currentTimeMillis() - startTime);
 
             if ((!direct) && (result != null))
             {
+                result.setReplyTo(job.getReplyTo());
                 getMessageDispatcher().dispatch(result);
             }
 
             job.destroy();
+
+            if ((job instanceof MultiFilesJob) && (((MultiFilesJob) job).isCheckedIn()))
+            {
+                releaseBlobs((MultiFilesJob) job);
+            }
         }
 
         return result;
     }
 
+    private void releaseBlobs(final MultiFilesJob job)
+    {
+        try
+        {
+            job.releaseBlobs(blobStore);
+        }
+        catch (final IOException ioe)
+        {
+            // the blobs will only be kept longer than needed
+            getLogger().warn("Failed to release the blobs of: " + job, ioe);
+        }
+    }
+
+    /**
+     * Counts a single failure per job, and only for failing to reach R: an exhausted pool, a borrow
+     * timeout or an error in the job itself don't show the pool is down. A half-open trial that
+     * didn't reach R is released so the circuit can't stay half-open.
+     */
+    private void settleCircuit(final URI rserviPoolAddress,
+                               final Throwable t,
+                               final RServiReachabilityTimings jobPhaseTimings)
+    {
+        if (isRServiUnreachable(t))
+        {
+            rServiCircuitBreaker.recordFailure(rserviPoolAddress);
+        }
+        else if (!jobPhaseTimings.isReached())
+        {
+            rServiCircuitBreaker.releaseTrial(rserviPoolAddress);
+        }
+    }
+
+    private static boolean isRServiUnreachable(final Throwable t)
+    {
+        return (ExceptionUtils.indexOfType(t, RemoteException.class) != -1)
+               || (ExceptionUtils.indexOfType(t, NotBoundException.class) != -1)
+               || (ExceptionUtils.indexOfType(t, SocketException.class) != -1);
+    }
+
+    private void storeJobStatistics(final AbstractJob job,
+                                    final long processTime,
+                                    final URI rserviPoolAddress,
+                                    final JobPhaseTimings jobPhaseTimings)
+    {
+        if (jobStatisticsHandler instanceof JobPhaseStatisticsHandler)
+        {
+            ((JobPhaseStatisticsHandler) jobStatisticsHandler).storeJobStatistics(job, new GregorianCalendar(),
+                processTime, rserviPoolAddress.toString(), jobPhaseTimings);
+        }
+        else
+        {
+            jobStatisticsHandler.storeJobStatistics(job, new GregorianCalendar(), processTime,
+                rserviPoolAddress.toString());
+        }
+    }
+
     private String callFunctionOnR(final RServi rServi, final AbstractFunctionCallJob job)
         throws CoreException
     {
@@ -347,6 +575,23 @@ public class JobProcessor extends AbstractComponentWithCatalog
         filesUploadedToR.add(file.getName());
     }
 
+    private void uploadJobFileToR(final RServi rServi,
+                                  final MultiFilesJob job,
+                                  final String jobFileName,
+                                  final Set<String> filesUploadedToR) throws IOException, CoreException
+    {
+        final InputStream is = job.openFile(jobFileName, blobStore);
+        try
+        {
+            rServi.uploadFile(is, job.getFileLength(jobFileName, blobStore), jobFileName, 0, null);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(is);
+        }
+        filesUploadedToR.add(jobFileName);
+    }
+
     private static void uploadPropertiesToR(final RServi rServi,
                                             final Map<String, Serializable> metas,
                                             final Set<String> filesUploadedToR)
@@ -21,11 +21,11 @@
 
 package eu.openanalytics.rsb.component;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.GregorianCalendar;
 
 import javax.activation.MimeType;
@@ -34,7 +34,9 @@ import javax.annotation.Resource;
 import org.springframework.stereotype.Component;
 
 import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.PersistedFileSetResult;
 import eu.openanalytics.rsb.data.PersistedResult;
+import eu.openanalytics.rsb.data.PersistedTextResult;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.message.AbstractFunctionCallResult;
 import eu.openanalytics.rsb.message.AbstractResult;
@@ -59,24 +61,36 @@ public class RestResultProcessor extends AbstractComponent
 
     public void process(final AbstractFunctionCallResult result) throws IOException
     {
-        persistResult(result, result.getMimeType(), new ByteArrayInputStream(result.getPayload().getBytes()));
+        // the payload is encoded while being stored, with the charset String.getBytes() would use
+        resultStore.storeText(new PersistedTextResult(result.getApplicationName(), result.getUserName(),
+            result.getJobId(), newResultTime(), result.isSuccess(), result.getMimeType(), result.getPayload(),
+            Charset.defaultCharset()));
+        result.destroy();
     }
 
     public void process(final MultiFilesResult result) throws IOException
     {
-        final File resultFile = MultiFilesResult.zipResultFilesIfNotError(result);
-        persistResult(result, Util.getMimeType(resultFile), new FileInputStream(resultFile));
+        final File[] resultFiles = result.getPayload();
+
+        // an error result is a single plain text message, which is stored as is
+        if ((!result.isSuccess()) && (resultFiles.length == 1))
+        {
+            persistResult(result, Util.getMimeType(resultFiles[0]), new FileInputStream(resultFiles[0]));
+            return;
+        }
+
+        // the result files are taken over by the store, which zips them only when they're downloaded
+        resultStore.storeFileSet(new PersistedFileSetResult(result.getApplicationName(), result.getUserName(),
+            result.getJobId(), newResultTime(), result.isSuccess(), resultFiles));
+        result.destroy();
     }
 
     private <T> void persistResult(final AbstractResult<?> result,
                                    final MimeType resultMimeType,
                                    final InputStream resultData) throws IOException
     {
-
-        final GregorianCalendar resultTime = (GregorianCalendar) GregorianCalendar.getInstance();
-
         final PersistedResult persistedResult = new PersistedResult(result.getApplicationName(),
-            result.getUserName(), result.getJobId(), resultTime, result.isSuccess(), resultMimeType)
+            result.getUserName(), result.getJobId(), newResultTime(), result.isSuccess(), resultMimeType)
         {
 
             @Override
@@ -95,4 +109,9 @@ public class RestResultProcessor extends AbstractComponent
         resultStore.store(persistedResult);
         result.destroy();
     }
+
+    private static GregorianCalendar newResultTime()
+    {
+        return (GregorianCalendar) GregorianCalendar.getInstance();
+    }
 }
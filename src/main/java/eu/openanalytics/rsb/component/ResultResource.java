@@ -21,19 +21,26 @@
 
 package eu.openanalytics.rsb.component;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Date;
 import java.util.UUID;
 
 import javax.annotation.Resource;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
@@ -41,6 +48,7 @@ import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.cxf.common.util.Base64Utility;
 import org.springframework.stereotype.Component;
 
@@ -50,7 +58,8 @@ import eu.openanalytics.rsb.data.PersistedResult;
 import eu.openanalytics.rsb.data.SecureResultStore;
 
 /**
- * Serves R job process result files.<br/>
+ * Serves R job process result files, supporting conditional and byte-range requests so clients
+ * can avoid downloading again results they already have and resume interrupted downloads.<br/>
  * <i>NB. Could very well be replaced with a static file serving context on a frontal
  * web server.</i>
  * 
@@ -61,6 +70,48 @@ import eu.openanalytics.rsb.data.SecureResultStore;
 @Path("/" + Constants.RESULT_PATH + "/{applicationName}/{resourceName}")
 public class ResultResource extends AbstractResource
 {
+    static final String RANGE_HEADER = "Range";
+    static final String IF_RANGE_HEADER = "If-Range";
+    static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+    static final String CONTENT_RANGE_HEADER = "Content-Range";
+    static final int PARTIAL_CONTENT_STATUS = 206;
+    static final int RANGE_NOT_SATISFIABLE_STATUS = 416;
+
+    private static final String BYTES_UNIT = "bytes";
+    private static final String NO_RANGES = "none";
+
+    /**
+     * A single byte range, with inclusive bounds.
+     */
+    static class ByteRange
+    {
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1L, -1L);
+
+        private final long first;
+        private final long last;
+
+        ByteRange(final long first, final long last)
+        {
+            this.first = first;
+            this.last = last;
+        }
+
+        long getFirst()
+        {
+            return first;
+        }
+
+        long getLast()
+        {
+            return last;
+        }
+
+        long getLength()
+        {
+            return last - first + 1;
+        }
+    }
+
     @Resource
     private SecureResultStore resultStore;
 
@@ -71,29 +122,111 @@ public class ResultResource extends AbstractResource
     }
 
     /**
-     * Serves a single result file.
+     * Serves a single result file, or only a range of it.
      * 
      * @param applicationName
      * @param resourceName
+     * @param range optional byte range, only a single range is supported.
+     * @param ifRange optional entity tag the result must match for the range to be honored.
+     * @param acceptEncoding optional content codings accepted by the client.
+     * @param request
      * @return
      * @throws IOException
      */
     @GET
     public Response getResult(@PathParam("applicationName") final String applicationName,
-                              @PathParam("resourceName") final String resourceName) throws IOException
+                              @PathParam("resourceName") final String resourceName,
+                              @HeaderParam(RANGE_HEADER) final String range,
+                              @HeaderParam(IF_RANGE_HEADER) final String ifRange,
+                              @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding,
+                              @Context final Request request) throws IOException
     {
 
         final PersistedResult persistedResult = getPersistedResultOrDie(applicationName, resourceName);
 
-        final ResponseBuilder rb = Response.ok();
-        addEtagHeader(persistedResult, rb);
+        // encoded results are sent as stored when possible, otherwise decoded on the fly
+        final String dataEncoding = persistedResult.getDataEncoding();
+        final boolean sendEncoded = isSentEncoded(dataEncoding, acceptEncoding);
+
+        // each representation of the result has its own entity tag
+        final EntityTag entityTag = new EntityTag(getEtag(persistedResult, sendEncoded ? dataEncoding : null));
+        final Date lastModified = getLastModified(persistedResult);
+
+        // results never change once stored so a matching ETag or date is enough to send a 304
+        final ResponseBuilder preconditionsResponse = request.evaluatePreconditions(lastModified, entityTag);
+        if (preconditionsResponse != null)
+        {
+            addVaryHeader(dataEncoding, preconditionsResponse);
+            return preconditionsResponse.tag(entityTag).lastModified(lastModified).build();
+        }
+
+        final long dataLength = sendEncoded ? persistedResult.getEncodedDataLength() : persistedResult.getDataLength();
+
+        // a range for another version of the result must be ignored and the full result sent
+        final boolean rangeApplicable = StringUtils.isBlank(ifRange)
+                                        || ifRange.trim().equals(toHeaderValue(entityTag));
+        // results zipped on the fly have no known length so can't be served by range
+        final boolean dataLengthKnown = dataLength >= 0L;
+        final ByteRange byteRange = (rangeApplicable) && (dataLengthKnown)
+                                                                           ? parseRange(range, dataLength)
+                                                                           : null;
+
+        if (byteRange == ByteRange.UNSATISFIABLE)
+        {
+            return Response.status(RANGE_NOT_SATISFIABLE_STATUS)
+                .header(CONTENT_RANGE_HEADER, BYTES_UNIT + " */" + dataLength)
+                .build();
+        }
+
+        final ResponseBuilder rb;
+        final long offset;
+        final long length;
+
+        if (byteRange == null)
+        {
+            rb = Response.ok();
+            offset = 0L;
+            length = dataLength;
+        }
+        else
+        {
+            rb = Response.status(PARTIAL_CONTENT_STATUS).header(
+                CONTENT_RANGE_HEADER,
+                BYTES_UNIT + " " + byteRange.getFirst() + "-" + byteRange.getLast() + "/" + dataLength);
+            offset = byteRange.getFirst();
+            length = byteRange.getLength();
+        }
+
+        if (sendEncoded)
+        {
+            rb.header(HttpHeaders.CONTENT_ENCODING, dataEncoding);
+        }
+        addVaryHeader(dataEncoding, rb);
+        if (dataLengthKnown)
+        {
+            rb.header(HttpHeaders.CONTENT_LENGTH, Long.toString(length));
+        }
+        rb.header(ACCEPT_RANGES_HEADER, dataLengthKnown ? BYTES_UNIT : NO_RANGES);
+        rb.tag(entityTag);
+        rb.lastModified(lastModified);
         rb.entity(new StreamingOutput()
         {
             public void write(final OutputStream output) throws IOException
             {
-                final InputStream data = persistedResult.getData();
-                IOUtils.copy(data, output);
-                IOUtils.closeQuietly(data);
+                // the data file holds the data as stored so can't be used if it must be decoded
+                final boolean sendAsStored = (dataEncoding == null) || (sendEncoded);
+                final File dataFile = sendAsStored ? persistedResult.getDataFile() : null;
+
+                if (dataFile != null)
+                {
+                    copyDataFile(dataFile, output, offset, length);
+                }
+                else
+                {
+                    final InputStream data = sendAsStored ? persistedResult.getEncodedData() : persistedResult.getData();
+                    IOUtils.copyLarge(data, output, offset, length);
+                    IOUtils.closeQuietly(data);
+                }
                 IOUtils.closeQuietly(output);
             }
         });
@@ -101,35 +234,178 @@ public class ResultResource extends AbstractResource
     }
 
     /**
-     * Provides HTTP meta-information only for a single result file.
+     * Provides HTTP meta-information only for a single result file, as a GET with the same headers
+     * would send it.
      * 
      * @param applicationName
      * @param resourceName
+     * @param acceptEncoding optional content codings accepted by the client.
      * @return
      * @throws IOException
      */
     @HEAD
     public Response getResultMeta(@PathParam("applicationName") final String applicationName,
-                                  @PathParam("resourceName") final String resourceName) throws IOException
+                                  @PathParam("resourceName") final String resourceName,
+                                  @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding)
+        throws IOException
     {
 
         final PersistedResult persistedResult = getPersistedResultOrDie(applicationName, resourceName);
 
+        final String dataEncoding = persistedResult.getDataEncoding();
+        final boolean sendEncoded = isSentEncoded(dataEncoding, acceptEncoding);
+        final long dataLength = sendEncoded ? persistedResult.getEncodedDataLength() : persistedResult.getDataLength();
+        final boolean dataLengthKnown = dataLength >= 0L;
+
         final ResponseBuilder rb = Response.noContent();
-        addContentLengthHeader(persistedResult, rb);
-        addEtagHeader(persistedResult, rb);
+        if (sendEncoded)
+        {
+            rb.header(HttpHeaders.CONTENT_ENCODING, dataEncoding);
+        }
+        addVaryHeader(dataEncoding, rb);
+        if (dataLengthKnown)
+        {
+            rb.header(HttpHeaders.CONTENT_LENGTH, Long.toString(dataLength));
+        }
+        rb.header(ACCEPT_RANGES_HEADER, dataLengthKnown ? BYTES_UNIT : NO_RANGES);
+        rb.tag(new EntityTag(getEtag(persistedResult, sendEncoded ? dataEncoding : null)));
+        rb.lastModified(getLastModified(persistedResult));
         return rb.build();
     }
 
-    private void addEtagHeader(final PersistedResult persistedResult, final ResponseBuilder rb)
+    /**
+     * Parses a single byte range specification, as defined by RFC 7233.
+     * 
+     * @return null if no range is requested or if the range can't be honored (in which case the
+     *         full result must be sent), {@link ByteRange#UNSATISFIABLE} if it doesn't overlap the
+     *         result data.
+     */
+    // exposed for unit testing
+    static ByteRange parseRange(final String range, final long dataLength)
     {
-        rb.header(HttpHeaders.ETAG, getEtag(persistedResult));
+        if ((StringUtils.isBlank(range)) || (!range.trim().startsWith(BYTES_UNIT + "="))
+            || (range.contains(",")))
+        {
+            return null;
+        }
+
+        final String rangeSpec = StringUtils.substringAfter(range, "=").trim();
+        final String firstSpec = StringUtils.substringBefore(rangeSpec, "-").trim();
+        final String lastSpec = StringUtils.substringAfter(rangeSpec, "-").trim();
+
+        try
+        {
+            if (firstSpec.isEmpty())
+            {
+                // suffix range: the last N bytes
+                final long suffixLength = Long.parseLong(lastSpec);
+                if ((suffixLength <= 0L) || (dataLength == 0L))
+                {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0L, dataLength - suffixLength), dataLength - 1);
+            }
+
+            final long first = Long.parseLong(firstSpec);
+            final long last = lastSpec.isEmpty() ? dataLength - 1 : Long.parseLong(lastSpec);
+
+            if (last < first)
+            {
+                // syntactically invalid so ignored
+                return null;
+            }
+
+            return first >= dataLength ? ByteRange.UNSATISFIABLE : new ByteRange(first, Math.min(last,
+                dataLength - 1));
+        }
+        catch (final NumberFormatException nfe)
+        {
+            return null;
+        }
     }
 
-    private void addContentLengthHeader(final PersistedResult persistedResult, final ResponseBuilder rb)
-        throws IOException
+    /**
+     * Checks if a content coding is acceptable according to an Accept-Encoding header, as defined by
+     * RFC 7231: codings with a zero quality value are not acceptable.
+     */
+    // exposed for unit testing
+    static boolean isEncodingAccepted(final String acceptEncoding, final String encoding)
+    {
+        if (StringUtils.isBlank(acceptEncoding))
+        {
+            return false;
+        }
+
+        boolean wildcardAccepted = false;
+
+        for (final String coding : StringUtils.split(acceptEncoding, ','))
+        {
+            final String codingName = StringUtils.substringBefore(coding, ";").trim();
+            final boolean accepted = !hasZeroQuality(coding);
+
+            if (codingName.equalsIgnoreCase(encoding))
+            {
+                return accepted;
+            }
+            if ("*".equals(codingName))
+            {
+                wildcardAccepted = accepted;
+            }
+        }
+
+        return wildcardAccepted;
+    }
+
+    private static boolean hasZeroQuality(final String coding)
     {
-        rb.header(HttpHeaders.CONTENT_LENGTH, Long.toString(persistedResult.getDataLength()));
+        for (final String parameter : StringUtils.split(StringUtils.substringAfter(coding, ";"), ';'))
+        {
+            final String trimmedParameter = parameter.trim();
+            if (trimmedParameter.startsWith("q="))
+            {
+                try
+                {
+                    return Double.parseDouble(trimmedParameter.substring(2).trim()) == 0d;
+                }
+                catch (final NumberFormatException nfe)
+                {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSentEncoded(final String dataEncoding, final String acceptEncoding)
+    {
+        return (dataEncoding != null) && (isEncodingAccepted(acceptEncoding, dataEncoding));
+    }
+
+    private static void addVaryHeader(final String dataEncoding, final ResponseBuilder rb)
+    {
+        if (dataEncoding != null)
+        {
+            rb.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    // seeks to the start of the range instead of reading through the data before it, as skipping
+    // does on a stream
+    private static void copyDataFile(final File dataFile,
+                                     final OutputStream output,
+                                     final long offset,
+                                     final long length) throws IOException
+    {
+        final FileInputStream fis = new FileInputStream(dataFile);
+        try
+        {
+            fis.getChannel().position(offset);
+            IOUtils.copyLarge(fis, output, 0L, length);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(fis);
+        }
     }
 
     private PersistedResult getPersistedResultOrDie(final String applicationName, final String resourceName)
@@ -152,9 +428,26 @@ public class ResultResource extends AbstractResource
         return persistedResult;
     }
 
+    private static Date getLastModified(final PersistedResult persistedResult)
+    {
+        // HTTP dates have a one second resolution
+        final long resultTime = persistedResult.getResultTime().getTimeInMillis();
+        return new Date(resultTime - resultTime % 1000L);
+    }
+
+    private static String toHeaderValue(final EntityTag entityTag)
+    {
+        return (entityTag.isWeak() ? "W/" : "") + "\"" + entityTag.getValue() + "\"";
+    }
+
     // exposed for unit testing
     static String getEtag(final PersistedResult persistedResult)
     {
         return Base64Utility.encode((persistedResult.getApplicationName() + "/" + persistedResult.getJobId()).getBytes());
     }
+
+    private static String getEtag(final PersistedResult persistedResult, final String encoding)
+    {
+        return encoding == null ? getEtag(persistedResult) : getEtag(persistedResult) + "-" + encoding;
+    }
 }
@@ -28,16 +28,19 @@ import java.util.UUID;
 
 import javax.annotation.Resource;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
+import javax.xml.bind.DatatypeConverter;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
@@ -45,6 +48,7 @@ import org.springframework.stereotype.Component;
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.data.PersistedResult;
+import eu.openanalytics.rsb.data.ResultQuery;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.rest.types.Result;
 import eu.openanalytics.rsb.rest.types.Results;
@@ -68,17 +72,38 @@ public class ResultsResource extends AbstractResource
         this.resultStore = resultStore;
     }
 
+    /**
+     * Lists results, most recent first.
+     * 
+     * @param applicationName
+     * @param offset number of matching results to skip.
+     * @param limit maximum number of results to return, all if not specified.
+     * @param since optional ISO-8601 date-time results must be more recent than.
+     * @param success optional success status results must have.
+     * @param httpHeaders
+     * @param uriInfo
+     * @return
+     * @throws URISyntaxException
+     */
     @GET
     public Results getAllResults(@PathParam("applicationName") final String applicationName,
+                                 @QueryParam("offset") @DefaultValue("0") final int offset,
+                                 @QueryParam("limit") @DefaultValue("-1") final int limit,
+                                 @QueryParam("since") final String since,
+                                 @QueryParam("success") final Boolean success,
                                  @Context final HttpHeaders httpHeaders,
                                  @Context final UriInfo uriInfo) throws URISyntaxException
     {
         validateApplicationName(applicationName);
 
+        final Long sinceMillis = StringUtils.isBlank(since) ? null : DatatypeConverter.parseDateTime(since)
+            .getTimeInMillis();
+        final ResultQuery resultQuery = new ResultQuery(offset, limit, sinceMillis, success);
+
         final Results results = Util.REST_OBJECT_FACTORY.createResults();
 
         for (final PersistedResult persistedResult : resultStore.findByApplicationName(applicationName,
-            getUserName()))
+            getUserName(), resultQuery))
         {
             final Result result = buildResult(applicationName, httpHeaders, uriInfo, persistedResult);
             results.getContents().add(result);
@@ -52,6 +52,7 @@ import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.rest.types.NodeInformation;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
+import eu.openanalytics.rsb.rservi.RServiLoadTracker;
 
 /**
  * Handles health check requests.
@@ -67,6 +68,9 @@ public class SystemHealthResource extends AbstractResource
     @Resource
     private RServiInstanceProvider rServiInstanceProvider;
 
+    @Resource
+    private RServiLoadTracker rServiLoadTracker;
+
     private final AtomicBoolean nodeHealthy = new AtomicBoolean(true);
 
     private long initializationTime;
@@ -77,6 +81,12 @@ public class SystemHealthResource extends AbstractResource
         this.rServiInstanceProvider = rServiInstanceProvider;
     }
 
+    // exposed for unit testing
+    void setRServiLoadTracker(final RServiLoadTracker rServiLoadTracker)
+    {
+        this.rServiLoadTracker = rServiLoadTracker;
+    }
+
     @PostConstruct
     public void initialize()
     {
@@ -140,6 +150,12 @@ public class SystemHealthResource extends AbstractResource
         info.setUptime(uptimeMilliseconds);
         info.setUptimeText(DurationFormatUtils.formatDurationWords(uptimeMilliseconds, true, true));
 
+        final int rServiPoolWarmUpProgress = rServiInstanceProvider.getWarmUpProgress();
+        if (rServiPoolWarmUpProgress >= 0)
+        {
+            info.setRserviPoolWarmUpPercentage(rServiPoolWarmUpProgress);
+        }
+
         return info;
     }
 
@@ -159,10 +175,29 @@ public class SystemHealthResource extends AbstractResource
             }
         }
 
-        // stopping at first failure
+        // all URIs are checked so the health of each is known to the URI selection, the first
+        // failure is then reported
+        Exception firstFailure = null;
         for (final URI uriToCheck : urisToCheck)
         {
-            verifyRServiConnectivity(uriToCheck);
+            try
+            {
+                verifyRServiConnectivity(uriToCheck);
+                rServiLoadTracker.setHealthy(uriToCheck, true);
+            }
+            catch (final Exception e)
+            {
+                rServiLoadTracker.setHealthy(uriToCheck, false);
+                if (firstFailure == null)
+                {
+                    firstFailure = e;
+                }
+            }
+        }
+
+        if (firstFailure != null)
+        {
+            throw firstFailure;
         }
     }
 
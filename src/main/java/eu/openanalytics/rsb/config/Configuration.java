@@ -139,12 +139,18 @@ public interface Configuration
     }
 
     /**
-     * Job statistics handler configuration.
+     * Job statistics handler configuration. Unless the <code>asynchronous</code> parameter is false,
+     * statistics are queued and stored in batches by a background thread, see
+     * {@link eu.openanalytics.rsb.stats.AsynchronousJobStatisticsHandler} for the related
+     * parameters.
      */
     public interface JobStatisticsHandlerConfiguration extends Serializable
     {
         /**
-         * The class must implement {@link JobStatisticsHandler}.
+         * The class must implement {@link JobStatisticsHandler}, for example
+         * {@link eu.openanalytics.rsb.stats.RedisJobStatisticsHandler} or
+         * {@link eu.openanalytics.rsb.stats.InMemoryJobStatisticsHandler}, which needs no external
+         * dependency.
          */
         String getClassName();
 
@@ -182,6 +188,89 @@ public interface Configuration
         String getHttpAuthenticationPassword();
     }
 
+    /**
+     * Result retention policy of an application: results exceeding any of the configured limits
+     * are expired, oldest first.
+     */
+    public interface ResultRetentionConfiguration extends Serializable
+    {
+        /**
+         * Maximum age of a result, in milliseconds, or 0 for no limit.
+         */
+        long getTimeToLive();
+
+        /**
+         * Maximum number of results kept per results directory (ie. per application or per
+         * application user), or 0 for no limit.
+         */
+        int getMaxCount();
+
+        /**
+         * Maximum total size of the results kept per results directory, in bytes, or 0 for no
+         * limit.
+         */
+        long getMaxBytes();
+
+        /**
+         * Optional directory where expired results are moved to instead of being deleted.
+         */
+        File getArchiveDirectory();
+    }
+
+    /**
+     * Pool of job workers dedicated to an application, which consume its jobs separately from the
+     * global job workers so other applications can't starve it, and vice versa.
+     */
+    public interface JobWorkerPoolConfiguration extends Serializable
+    {
+        /**
+         * Number of job workers that are always running, at least 1.
+         */
+        int getMinConcurrency();
+
+        /**
+         * Maximum number of job workers, which are added when jobs are waiting; 0 means the same as
+         * the minimum.
+         */
+        int getMaxConcurrency();
+
+        /**
+         * Number of jobs each worker fetches in advance from the broker; 0 means the broker default
+         * of 1. Larger values only make sense for applications with many short jobs.
+         */
+        int getPrefetch();
+
+        /**
+         * Optional JMS message selector that further restricts the jobs consumed by this pool, for
+         * example: "source = 'REST'". The jobs it doesn't select are consumed by the global job
+         * workers, so it should only use headers that all jobs have.
+         */
+        String getSelector();
+    }
+
+    /**
+     * Automatic scaling of the number of job workers, based on the number of pending jobs, the
+     * capacity left in the RServi client pool and the recent processing time of jobs.
+     */
+    public interface JobWorkerAutoScalingConfiguration extends Serializable
+    {
+        /**
+         * Minimum number of global job workers, at least 1.
+         */
+        int getMinConcurrency();
+
+        /**
+         * Maximum number of global job workers; 0 means the number of concurrent job workers per
+         * queue. Job worker pools are scaled within their own concurrency range.
+         */
+        int getMaxConcurrency();
+
+        /**
+         * Period between two scaling decisions, in milliseconds; 0 means 10 seconds.
+         */
+        long getPeriod();
+    }
+
     public static enum RServiClientPoolValidationStrategy
     {
         NONE
@@ -240,11 +329,39 @@ public interface Configuration
      */
     File getResultsDirectory();
 
+    /**
+     * Number of levels of shard directories, derived from the job ID, under which result files are
+     * written in order to keep the results directories small. 0 (the default) means result files
+     * are written directly in the results directory.
+     */
+    int getResultsShardingDepth();
+
+    /**
+     * Optional mapping of application names and result retention policies. Results of
+     * applications without a retention policy are kept forever.
+     */
+    Map<String, ResultRetentionConfiguration> getResultRetentionConfiguration();
+
+    /**
+     * Optional MIME types of the results that must be stored compressed (with gzip), for example
+     * "application/json" or "text/plain". Compressed results are served as is to clients that
+     * accept gzip and decompressed on the fly for the others.
+     */
+    Set<String> getCompressedResultMimeTypes();
+
     /**
      * Directory where ActiveMQ stores its persisted data.
      */
     File getActiveMqWorkDirectory();
 
+    /**
+     * Optional directory, shared by all the RSB nodes, where the files of multi-files jobs and
+     * results are stored while they are in transit. JMS messages then only carry references to
+     * these files, so they can be processed by any node connected to the broker. If not set, the
+     * messages refer to temporary directories of the node that created them.
+     */
+    File getClaimCheckDirectory();
+
     /**
      * URI of the RServi RMI pool.
      */
@@ -261,12 +378,25 @@ public interface Configuration
     int getJobTimeOut();
 
     /**
-     * Number of concurrent job workers per queue, which must be computed based on the number of
-     * nodes in the RServi pool and the number of job queues (one global plus one per "boosted"
-     * application).
+     * Maximum number of concurrent global job workers, which consume the jobs of all the
+     * applications without a dedicated job worker pool. It must be computed based on the number of
+     * nodes in the RServi pool and the concurrency of the job worker pools.
      */
     int getNumberOfConcurrentJobWorkersPerQueue();
 
+    /**
+     * Optional mapping of application names and dedicated job worker pools. The jobs of these
+     * applications are only consumed by their pools, while the jobs of all the other applications
+     * are consumed by the global job workers.
+     */
+    Map<String, JobWorkerPoolConfiguration> getJobWorkerPools();
+
+    /**
+     * Optional automatic scaling of the job workers. If not set, the number of job workers only
+     * varies within the limits of each listener container.
+     */
+    JobWorkerAutoScalingConfiguration getJobWorkerAutoScaling();
+
     /**
      * The SMTP server that will be used for all outbound email exchanges.
      */
@@ -311,7 +441,8 @@ public interface Configuration
     List<File> getDataDirectories();
 
     /**
-     * Optional pooling configuration for RServi clients.
+     * Optional pooling configuration for RServi clients: when <code>minIdle</code> is set, this
+     * number of clients is created at start-up, and kept available, for each RServi pool URI.
      */
     Config getRServiClientPoolConfig();
 
@@ -30,6 +30,9 @@ import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.BooleanUtils;
@@ -39,12 +42,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.validator.routines.EmailValidator;
 
+import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.config.Configuration.ApplicationSecurityAuthorization;
 import eu.openanalytics.rsb.config.Configuration.CatalogSection;
 import eu.openanalytics.rsb.config.Configuration.DepositDirectoryConfiguration;
 import eu.openanalytics.rsb.config.Configuration.DepositEmailConfiguration;
 import eu.openanalytics.rsb.config.Configuration.JmxConfiguration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerAutoScalingConfiguration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerPoolConfiguration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
 import eu.openanalytics.rsb.data.FileCatalogManager;
 
 /**
@@ -159,6 +166,10 @@ public abstract class ConfigurationFactory
         validateNotNull(pca.getResultsDirectory(), "rsbResultsDirectory", validationErrors);
         validateNotNull(pca.getDefaultRserviPoolUri(), "defaultRserviPoolUri", validationErrors);
         validateNotNull(pca.getSmtpConfiguration(), "smtpConfiguration", validationErrors);
+        validateIsTrue((pca.getResultsShardingDepth() >= 0)
+                       && (pca.getResultsShardingDepth() <= Constants.MAX_RESULTS_SHARDING_DEPTH),
+            "resultsShardingDepth must be between 0 and " + Constants.MAX_RESULTS_SHARDING_DEPTH,
+            validationErrors);
 
         if (StringUtils.isNotEmpty(pca.getAdministratorEmail()))
         {
@@ -231,6 +242,72 @@ public abstract class ConfigurationFactory
             }
         }
 
+        for (final Entry<String, ResultRetentionConfiguration> resultRetentionConfiguration : pca.getResultRetentionConfiguration()
+            .entrySet())
+        {
+            final String applicationName = resultRetentionConfiguration.getKey();
+            final ResultRetentionConfiguration retention = resultRetentionConfiguration.getValue();
+
+            validateIsTrue(Util.isValidApplicationName(applicationName),
+                "invalid result retention application name: " + applicationName, validationErrors);
+
+            validateIsTrue((retention.getTimeToLive() >= 0L) && (retention.getMaxCount() >= 0)
+                           && (retention.getMaxBytes() >= 0L),
+                "result retention limits can't be negative for application: " + applicationName,
+                validationErrors);
+
+            validateIsTrue((retention.getTimeToLive() > 0L) || (retention.getMaxCount() > 0)
+                           || (retention.getMaxBytes() > 0L),
+                "at least one result retention limit must be defined for application: " + applicationName,
+                validationErrors);
+        }
+
+        for (final Entry<String, JobWorkerPoolConfiguration> jobWorkerPool : pca.getJobWorkerPools()
+            .entrySet())
+        {
+            final String applicationName = jobWorkerPool.getKey();
+            final JobWorkerPoolConfiguration pool = jobWorkerPool.getValue();
+
+            validateIsTrue(Util.isValidApplicationName(applicationName),
+                "invalid job worker pool application name: " + applicationName, validationErrors);
+
+            validateIsTrue(pool.getMinConcurrency() >= 1,
+                "job worker pool minimum concurrency must be at least 1 for application: "
+                                + applicationName, validationErrors);
+
+            validateIsTrue((pool.getMaxConcurrency() == 0)
+                           || (pool.getMaxConcurrency() >= pool.getMinConcurrency()),
+                "job worker pool maximum concurrency can't be lower than its minimum for application: "
+                                + applicationName, validationErrors);
+
+            validateIsTrue(pool.getPrefetch() >= 0,
+                "job worker pool prefetch can't be negative for application: " + applicationName,
+                validationErrors);
+        }
+
+        if (pca.getJobWorkerAutoScaling() != null)
+        {
+            final JobWorkerAutoScalingConfiguration autoScaling = pca.getJobWorkerAutoScaling();
+
+            validateIsTrue(autoScaling.getMinConcurrency() >= 1,
+                "job worker auto scaling minimum concurrency must be at least 1", validationErrors);
+
+            validateIsTrue((autoScaling.getMaxConcurrency() == 0)
+                           || (autoScaling.getMaxConcurrency() >= autoScaling.getMinConcurrency()),
+                "job worker auto scaling maximum concurrency can't be lower than its minimum",
+                validationErrors);
+
+            validateIsTrue(autoScaling.getPeriod() >= 0L, "job worker auto scaling period can't be negative",
+                validationErrors);
+        }
+
+        for (final String compressedResultMimeType : pca.getCompressedResultMimeTypes())
+        {
+            validateIsTrue(isValidMimeType(compressedResultMimeType), "invalid compressed result MIME type: "
+                                                                      + compressedResultMimeType,
+                validationErrors);
+        }
+
         if (pca.getJmxConfiguration() != null)
         {
             final JmxConfiguration jmxConfiguration = pca.getJmxConfiguration();
@@ -246,6 +323,19 @@ public abstract class ConfigurationFactory
         return validationErrors;
     }
 
+    private static boolean isValidMimeType(final String mimeType)
+    {
+        try
+        {
+            new MimeType(mimeType);
+            return true;
+        }
+        catch (final MimeTypeParseException mtpe)
+        {
+            return false;
+        }
+    }
+
     private static void validateNotNull(final Object o, final String field, final Set<String> validationErrors)
     {
         if (o == null)
@@ -37,7 +37,10 @@ import eu.openanalytics.rsb.config.Configuration.DepositDirectoryConfiguration;
 import eu.openanalytics.rsb.config.Configuration.DepositEmailConfiguration;
 import eu.openanalytics.rsb.config.Configuration.JmxConfiguration;
 import eu.openanalytics.rsb.config.Configuration.JobStatisticsHandlerConfiguration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerAutoScalingConfiguration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerPoolConfiguration;
 import eu.openanalytics.rsb.config.Configuration.RServiClientPoolValidationStrategy;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
 import eu.openanalytics.rsb.config.Configuration.SmtpConfiguration;
 
 /**
@@ -258,6 +261,172 @@ public class PersistedConfiguration
         }
     }
 
+    public static class PersistedResultRetentionConfiguration implements ResultRetentionConfiguration
+    {
+        private static final long serialVersionUID = 1L;
+        private long timeToLive;
+        private int maxCount;
+        private long maxBytes;
+        private File archiveDirectory;
+
+        @Override
+        public String toString()
+        {
+            return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        }
+
+        @Override
+        public long getTimeToLive()
+        {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(final long timeToLive)
+        {
+            this.timeToLive = timeToLive;
+        }
+
+        @Override
+        public int getMaxCount()
+        {
+            return maxCount;
+        }
+
+        public void setMaxCount(final int maxCount)
+        {
+            this.maxCount = maxCount;
+        }
+
+        @Override
+        public long getMaxBytes()
+        {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(final long maxBytes)
+        {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public File getArchiveDirectory()
+        {
+            return archiveDirectory;
+        }
+
+        public void setArchiveDirectory(final File archiveDirectory)
+        {
+            this.archiveDirectory = archiveDirectory;
+        }
+    }
+
+    public static class PersistedJobWorkerPoolConfiguration implements JobWorkerPoolConfiguration
+    {
+        private static final long serialVersionUID = 1L;
+        private int minConcurrency;
+        private int maxConcurrency;
+        private int prefetch;
+        private String selector;
+
+        @Override
+        public String toString()
+        {
+            return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        }
+
+        @Override
+        public int getMinConcurrency()
+        {
+            return minConcurrency;
+        }
+
+        public void setMinConcurrency(final int minConcurrency)
+        {
+            this.minConcurrency = minConcurrency;
+        }
+
+        @Override
+        public int getMaxConcurrency()
+        {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(final int maxConcurrency)
+        {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        @Override
+        public int getPrefetch()
+        {
+            return prefetch;
+        }
+
+        public void setPrefetch(final int prefetch)
+        {
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public String getSelector()
+        {
+            return selector;
+        }
+
+        public void setSelector(final String selector)
+        {
+            this.selector = selector;
+        }
+    }
+
+    public static class PersistedJobWorkerAutoScalingConfiguration implements
+        JobWorkerAutoScalingConfiguration
+    {
+        private static final long serialVersionUID = 1L;
+        private int minConcurrency;
+        private int maxConcurrency;
+        private long period;
+
+        @Override
+        public String toString()
+        {
+            return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        }
+
+        @Override
+        public int getMinConcurrency()
+        {
+            return minConcurrency;
+        }
+
+        public void setMinConcurrency(final int minConcurrency)
+        {
+            this.minConcurrency = minConcurrency;
+        }
+
+        @Override
+        public int getMaxConcurrency()
+        {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(final int maxConcurrency)
+        {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        @Override
+        public long getPeriod()
+        {
+            return period;
+        }
+
+        public void setPeriod(final long period)
+        {
+            this.period = period;
+        }
+    }
+
     public static class PersistedDepositDirectoryConfiguration implements DepositDirectoryConfiguration
     {
         private static final long serialVersionUID = 1L;
@@ -473,11 +642,17 @@ public class PersistedConfiguration
 
     private String nodeName;
     private File activeMqWorkDirectory;
+    private File claimCheckDirectory;
     private URI defaultRserviPoolUri;
     private int jobTimeOut;
     private int numberOfConcurrentJobWorkersPerQueue;
+    private Map<String, PersistedJobWorkerPoolConfiguration> jobWorkerPools;
+    private PersistedJobWorkerAutoScalingConfiguration jobWorkerAutoScaling;
     private File catalogRootDirectory;
     private File resultsDirectory;
+    private int resultsShardingDepth;
+    private Map<String, PersistedResultRetentionConfiguration> resultRetentionConfiguration;
+    private Set<String> compressedResultMimeTypes;
     private Map<String, ?> applicationSpecificRserviPoolUris;
     private PersistedJobStatisticsHandlerConfiguration jobStatisticsHandlerConfiguration;
     private String administratorEmail;
@@ -509,6 +684,7 @@ public class PersistedConfiguration
         setApplicationSecurityConfiguration((Map) configuration.getApplicationSecurityConfiguration());
         setCatalogRootDirectory(configuration.getCatalogRootDirectory());
         setCheckHealthOnStart(configuration.isCheckHealthOnStart());
+        setClaimCheckDirectory(configuration.getClaimCheckDirectory());
         setDataDirectories(configuration.getDataDirectories());
         setDefaultRserviPoolUri(configuration.getDefaultRserviPoolUri());
         setDepositEmailAccounts((List) configuration.getDepositEmailAccounts());
@@ -516,10 +692,15 @@ public class PersistedConfiguration
         setJmxConfiguration((PersistedJmxConfiguration) configuration.getJmxConfiguration());
         setJobStatisticsHandlerConfiguration((PersistedJobStatisticsHandlerConfiguration) configuration.getJobStatisticsHandlerConfiguration());
         setJobTimeOut(configuration.getJobTimeOut());
+        setJobWorkerPools((Map) configuration.getJobWorkerPools());
+        setJobWorkerAutoScaling((PersistedJobWorkerAutoScalingConfiguration) configuration.getJobWorkerAutoScaling());
         setNodeName(configuration.getNodeName());
         setNumberOfConcurrentJobWorkersPerQueue(configuration.getNumberOfConcurrentJobWorkersPerQueue());
         setPropagateSecurityContext(configuration.isPropagateSecurityContext());
         setResultsDirectory(configuration.getResultsDirectory());
+        setResultsShardingDepth(configuration.getResultsShardingDepth());
+        setResultRetentionConfiguration((Map) configuration.getResultRetentionConfiguration());
+        setCompressedResultMimeTypes(configuration.getCompressedResultMimeTypes());
         setRsbSecurityConfiguration(getRsbSecurityConfiguration());
         setrServiClientPoolConfig(configuration.getRServiClientPoolConfig());
         setrServiClientPoolValidationStrategy(configuration.getRServiClientPoolValidationStrategy());
@@ -585,6 +766,16 @@ public class PersistedConfiguration
         this.activeMqWorkDirectory = activeMqWorkDirectory;
     }
 
+    public File getClaimCheckDirectory()
+    {
+        return claimCheckDirectory;
+    }
+
+    public void setClaimCheckDirectory(final File claimCheckDirectory)
+    {
+        this.claimCheckDirectory = claimCheckDirectory;
+    }
+
     /**
      * URI of the RServi RMI pool.
      */
@@ -612,9 +803,9 @@ public class PersistedConfiguration
     }
 
     /**
-     * Number of concurrent job workers per queue, which must be computed based on the number of
-     * nodes in the RServi pool and the number of job queues (one global plus one per "boosted"
-     * application).
+     * Maximum number of concurrent global job workers, which consume the jobs of all the
+     * applications without a dedicated job worker pool. It must be computed based on the number of
+     * nodes in the RServi pool and the concurrency of the job worker pools.
      */
     public int getNumberOfConcurrentJobWorkersPerQueue()
     {
@@ -626,6 +817,33 @@ public class PersistedConfiguration
         this.numberOfConcurrentJobWorkersPerQueue = numberOfConcurrentJobWorkersPerQueue;
     }
 
+    /**
+     * Mapping of application names and dedicated job worker pools, or null if all the jobs are
+     * consumed by the global job workers.
+     */
+    public Map<String, PersistedJobWorkerPoolConfiguration> getJobWorkerPools()
+    {
+        return jobWorkerPools;
+    }
+
+    public void setJobWorkerPools(final Map<String, PersistedJobWorkerPoolConfiguration> jobWorkerPools)
+    {
+        this.jobWorkerPools = jobWorkerPools;
+    }
+
+    /**
+     * Automatic scaling of the job workers, or null if job workers are not automatically scaled.
+     */
+    public PersistedJobWorkerAutoScalingConfiguration getJobWorkerAutoScaling()
+    {
+        return jobWorkerAutoScaling;
+    }
+
+    public void setJobWorkerAutoScaling(final PersistedJobWorkerAutoScalingConfiguration jobWorkerAutoScaling)
+    {
+        this.jobWorkerAutoScaling = jobWorkerAutoScaling;
+    }
+
     /**
      * Directory where result files are written.
      */
@@ -639,6 +857,48 @@ public class PersistedConfiguration
         this.resultsDirectory = resultsDirectory;
     }
 
+    /**
+     * Number of levels of shard directories under which result files are written, 0 for writing
+     * them directly in the results directory.
+     */
+    public int getResultsShardingDepth()
+    {
+        return resultsShardingDepth;
+    }
+
+    public void setResultsShardingDepth(final int resultsShardingDepth)
+    {
+        this.resultsShardingDepth = resultsShardingDepth;
+    }
+
+    /**
+     * Mapping of application names and result retention policies, or null if results must be kept
+     * forever.
+     */
+    public Map<String, PersistedResultRetentionConfiguration> getResultRetentionConfiguration()
+    {
+        return resultRetentionConfiguration;
+    }
+
+    public void setResultRetentionConfiguration(final Map<String, PersistedResultRetentionConfiguration> resultRetentionConfiguration)
+    {
+        this.resultRetentionConfiguration = resultRetentionConfiguration;
+    }
+
+    /**
+     * MIME types of the results that must be stored compressed, or null if results must be stored
+     * as is.
+     */
+    public Set<String> getCompressedResultMimeTypes()
+    {
+        return compressedResultMimeTypes;
+    }
+
+    public void setCompressedResultMimeTypes(final Set<String> compressedResultMimeTypes)
+    {
+        this.compressedResultMimeTypes = compressedResultMimeTypes;
+    }
+
     /**
      * Mapping of application names and RServi RMI pool URIs, or null if no specific mapping is
      * required.
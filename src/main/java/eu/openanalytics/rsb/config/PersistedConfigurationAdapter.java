@@ -117,6 +117,12 @@ public class PersistedConfigurationAdapter implements Configuration
         return persistedConfiguration.getActiveMqWorkDirectory();
     }
 
+    @Override
+    public File getClaimCheckDirectory()
+    {
+        return persistedConfiguration.getClaimCheckDirectory();
+    }
+
     @Override
     public int getJobTimeOut()
     {
@@ -129,12 +135,59 @@ public class PersistedConfigurationAdapter implements Configuration
         return persistedConfiguration.getNumberOfConcurrentJobWorkersPerQueue();
     }
 
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<String, JobWorkerPoolConfiguration> getJobWorkerPools()
+    {
+        final Map<String, ?> jobWorkerPools = persistedConfiguration.getJobWorkerPools();
+        if (jobWorkerPools == null)
+        {
+            return Collections.emptyMap();
+        }
+        return (Map) jobWorkerPools;
+    }
+
+    @Override
+    public JobWorkerAutoScalingConfiguration getJobWorkerAutoScaling()
+    {
+        return persistedConfiguration.getJobWorkerAutoScaling();
+    }
+
     @Override
     public File getResultsDirectory()
     {
         return persistedConfiguration.getResultsDirectory();
     }
 
+    @Override
+    public int getResultsShardingDepth()
+    {
+        return persistedConfiguration.getResultsShardingDepth();
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<String, ResultRetentionConfiguration> getResultRetentionConfiguration()
+    {
+        final Map<String, ?> resultRetentionConfiguration = persistedConfiguration.getResultRetentionConfiguration();
+        if (resultRetentionConfiguration == null)
+        {
+            return Collections.emptyMap();
+        }
+        return (Map) resultRetentionConfiguration;
+    }
+
+    @Override
+    public Set<String> getCompressedResultMimeTypes()
+    {
+        final Set<String> compressedResultMimeTypes = persistedConfiguration.getCompressedResultMimeTypes();
+        if (compressedResultMimeTypes == null)
+        {
+            return Collections.emptySet();
+        }
+        return compressedResultMimeTypes;
+    }
+
     @Override
     public Map<String, Set<URI>> getApplicationSpecificRserviPoolUris()
     {
@@ -0,0 +1,66 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+/**
+ * Defines a content-addressed store for the files of the jobs and results that travel on the
+ * message bus, so messages can carry references to these files instead of the files themselves.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public interface BlobStore
+{
+    /**
+     * Stores the provided data, which is closed afterwards.
+     * 
+     * @return the identifier of the stored data, which is derived from its content: storing the
+     *         same data twice yields the same identifier.
+     */
+    String put(InputStream data) throws IOException;
+
+    /**
+     * @return a stream on the data identified by blobId, which must be closed by the caller.
+     * @throws IOException if no data is stored under the provided identifier.
+     */
+    InputStream get(String blobId) throws IOException;
+
+    /**
+     * @return the size in bytes of the data identified by blobId.
+     * @throws IOException if no data is stored under the provided identifier.
+     */
+    long getSize(String blobId) throws IOException;
+
+    /**
+     * Prevents the provided blobs from being purged until the reference is released, typically
+     * while the message referring to them is queued.
+     */
+    void retain(String referenceId, Collection<String> blobIds) throws IOException;
+
+    /**
+     * Releases a reference created with {@link #retain(String, Collection)}, if it still exists.
+     */
+    void release(String referenceId) throws IOException;
+}
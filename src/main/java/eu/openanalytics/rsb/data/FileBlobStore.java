@@ -0,0 +1,281 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.AgeFileFilter;
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.apache.commons.io.filefilter.FileFileFilter;
+import org.apache.commons.lang3.Validate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.component.AbstractComponent;
+
+/**
+ * A {@link BlobStore} that keeps the blobs in the claim check directory, which must be shared by
+ * all the RSB nodes so a blob stored by one node can be read by any other. Blobs are named after
+ * the SHA-256 digest of their content and, because they can therefore be shared by several
+ * messages, they are never deleted explicitly: blobs that are not retained by any reference and
+ * have not been stored or released for {@link #BLOB_RETENTION_MILLIS} are purged in the
+ * background. References are files listing blob IDs, kept in a dedicated sub-directory.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("blobStore")
+public class FileBlobStore extends AbstractComponent implements BlobStore
+{
+    static final long BLOB_RETENTION_MILLIS = 7L * 24L * 60L * 60L * 1000L;
+
+    private static final long PURGE_PERIOD_MILLIS = 60L * 60L * 1000L;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String STAGING_FILE_PREFIX = ".tmp-";
+    private static final String REFERENCES_DIRECTORY = ".references";
+    private static final Pattern REFERENCE_ID_PATTERN = Pattern.compile("[\\w-]+");
+    private static final Pattern BLOB_ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    public String put(final InputStream data) throws IOException
+    {
+        final File root = getRootDirectory();
+        final File stagingFile = new File(root, STAGING_FILE_PREFIX + UUID.randomUUID());
+        final MessageDigest messageDigest = newMessageDigest();
+
+        final OutputStream os = new DigestOutputStream(new FileOutputStream(stagingFile), messageDigest);
+        try
+        {
+            IOUtils.copyLarge(data, os);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(os);
+            IOUtils.closeQuietly(data);
+        }
+
+        final String blobId = Hex.encodeHexString(messageDigest.digest());
+        final File blobFile = getBlobFile(root, blobId);
+        FileUtils.forceMkdir(blobFile.getParentFile());
+
+        if (blobFile.isFile())
+        {
+            // already stored by a previous message: refresh it so it isn't purged too early
+            FileUtils.deleteQuietly(stagingFile);
+            blobFile.setLastModified(System.currentTimeMillis());
+        }
+        else if (!stagingFile.renameTo(blobFile))
+        {
+            // another node may have stored the same blob concurrently
+            FileUtils.deleteQuietly(stagingFile);
+            if (!blobFile.isFile())
+            {
+                throw new IOException("Failed to store blob: " + blobFile);
+            }
+        }
+
+        return blobId;
+    }
+
+    public InputStream get(final String blobId) throws IOException
+    {
+        return new FileInputStream(getExistingBlobFile(blobId));
+    }
+
+    public long getSize(final String blobId) throws IOException
+    {
+        return getExistingBlobFile(blobId).length();
+    }
+
+    public void retain(final String referenceId, final Collection<String> blobIds) throws IOException
+    {
+        final File referencesDirectory = new File(getRootDirectory(), REFERENCES_DIRECTORY);
+        FileUtils.forceMkdir(referencesDirectory);
+        FileUtils.writeLines(getReferenceFile(referencesDirectory, referenceId), "UTF-8", blobIds);
+    }
+
+    public void release(final String referenceId) throws IOException
+    {
+        final File root = getRootDirectory();
+        final File referenceFile = getReferenceFile(new File(root, REFERENCES_DIRECTORY), referenceId);
+        if (!referenceFile.isFile())
+        {
+            return;
+        }
+
+        // released blobs get a full retention period, so a redelivered message can still use them
+        final long now = System.currentTimeMillis();
+        for (final String blobId : FileUtils.readLines(referenceFile, "UTF-8"))
+        {
+            getBlobFile(root, blobId).setLastModified(now);
+        }
+        FileUtils.deleteQuietly(referenceFile);
+    }
+
+    @Scheduled(fixedDelay = PURGE_PERIOD_MILLIS)
+    public void purgeExpiredBlobs()
+    {
+        final File root = getConfiguration().getClaimCheckDirectory();
+        if ((root == null) || (!root.isDirectory()))
+        {
+            return;
+        }
+
+        final long expiryTime = System.currentTimeMillis() - BLOB_RETENTION_MILLIS;
+        final List<File> expiredFiles = new ArrayList<File>();
+        for (final File directory : root.listFiles((FileFilter) DirectoryFileFilter.INSTANCE))
+        {
+            if (!REFERENCES_DIRECTORY.equals(directory.getName()))
+            {
+                expiredFiles.addAll(FileUtils.listFiles(directory, new AgeFileFilter(expiryTime), null));
+            }
+        }
+        for (final File file : root.listFiles((FileFilter) FileFileFilter.FILE))
+        {
+            // staging files left behind by failed puts
+            if (file.lastModified() < expiryTime)
+            {
+                expiredFiles.add(file);
+            }
+        }
+
+        if (expiredFiles.isEmpty())
+        {
+            return;
+        }
+
+        final Set<String> retainedBlobIds;
+        try
+        {
+            retainedBlobIds = getRetainedBlobIds(root);
+        }
+        catch (final IOException ioe)
+        {
+            // without knowing what is retained, nothing can be safely purged
+            getLogger().error("Failed to read blob references in: " + root, ioe);
+            return;
+        }
+
+        int purgedBlobs = 0;
+        for (final File file : expiredFiles)
+        {
+            // blobs stored again since they were listed are not expired anymore
+            if ((!retainedBlobIds.contains(file.getName())) && (file.lastModified() < expiryTime)
+                && (file.delete()))
+            {
+                purgedBlobs++;
+            }
+        }
+
+        if (purgedBlobs > 0)
+        {
+            getLogger().info("Purged " + purgedBlobs + " expired blob(s) from: " + root);
+        }
+    }
+
+    private static Set<String> getRetainedBlobIds(final File root) throws IOException
+    {
+        final Set<String> retainedBlobIds = new HashSet<String>();
+
+        final File referencesDirectory = new File(root, REFERENCES_DIRECTORY);
+        final File[] referenceFiles = referencesDirectory.listFiles();
+        if (referenceFiles == null)
+        {
+            return retainedBlobIds;
+        }
+
+        for (final File referenceFile : referenceFiles)
+        {
+            try
+            {
+                retainedBlobIds.addAll(FileUtils.readLines(referenceFile, "UTF-8"));
+            }
+            catch (final FileNotFoundException fnfe)
+            {
+                // released concurrently
+            }
+        }
+        return retainedBlobIds;
+    }
+
+    private File getExistingBlobFile(final String blobId) throws IOException
+    {
+        Validate.isTrue(BLOB_ID_PATTERN.matcher(blobId).matches(), "Invalid blob ID: " + blobId);
+
+        final File blobFile = getBlobFile(getRootDirectory(), blobId);
+        if (!blobFile.isFile())
+        {
+            throw new FileNotFoundException("No blob found with ID: " + blobId);
+        }
+        return blobFile;
+    }
+
+    private File getRootDirectory() throws IOException
+    {
+        final File root = getConfiguration().getClaimCheckDirectory();
+        Validate.notNull(root, "No claim check directory has been configured");
+        FileUtils.forceMkdir(root);
+        return root;
+    }
+
+    private static File getReferenceFile(final File referencesDirectory, final String referenceId)
+    {
+        Validate.isTrue(REFERENCE_ID_PATTERN.matcher(referenceId).matches(), "Invalid reference ID: "
+                                                                             + referenceId);
+        return new File(referencesDirectory, referenceId);
+    }
+
+    private static File getBlobFile(final File root, final String blobId)
+    {
+        return new File(new File(root, blobId.substring(0, 2)), blobId);
+    }
+
+    private static MessageDigest newMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (final NoSuchAlgorithmException nsae)
+        {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM", nsae);
+        }
+    }
+}
@@ -25,32 +25,42 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import javax.activation.MimeType;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.management.ObjectName;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.springframework.jmx.export.MBeanExportOperations;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Component;
 
+import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.component.AbstractComponent;
+import eu.openanalytics.rsb.data.ResultFileIndex.IndexedResultFile;
 
 /**
- * A file-based result store.
+ * A file-based result store, which writes result files either directly in their results directory
+ * or in shard directories derived from their job ID, depending on the configured sharding depth.
+ * Results of the configured MIME types are stored compressed with gzip.
  * 
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
  */
@@ -59,6 +69,261 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
 {
     private static final String ERROR_MESSAGE = "This method shouldn't have been called: please report the issue.";
     private static final String ERROR_FILE_INFIX_EXTENSION = ".err";
+    private static final String GZIP_FILE_EXTENSION = ".gz";
+    private static final String GZIP_CONTENT_ENCODING = "gzip";
+    private static final int TEXT_WRITE_CHUNK_SIZE = 8192;
+    private static final String STAGING_DIRECTORY_PREFIX = ".";
+
+    private final ResultFileIndex resultFileIndex = new ResultFileIndex();
+
+    @Resource
+    private MBeanExportOperations mbeanExportOperations;
+
+    @Resource
+    private TaskScheduler backgroundTaskScheduler;
+
+    @PostConstruct
+    public void buildResultFileIndex()
+    {
+        final long startTime = System.currentTimeMillis();
+        int indexedResultFiles = 0;
+
+        for (final File resultsDirectory : getAllResultsDirectories())
+        {
+            indexedResultFiles += resultFileIndex.load(resultsDirectory);
+        }
+
+        getLogger().info(
+            String.format("Indexed %d result files in %dms", indexedResultFiles, System.currentTimeMillis()
+                                                                                 - startTime));
+    }
+
+    @PostConstruct
+    public void registerResultsLayoutManagerMBean()
+    {
+        try
+        {
+            final ResultsLayoutManager resultsLayoutManager = new ResultsLayoutManager(this,
+                getConfiguration());
+            mbeanExportOperations.registerManagedResource(resultsLayoutManager, new ObjectName(
+                Constants.RESULTS_LAYOUT_MANAGER_OBJECT_NAME));
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to register results layout manager MBean", e);
+        }
+    }
+
+    @PostConstruct
+    public void startResultRetentionManager()
+    {
+        final ResultRetentionManager resultRetentionManager = new ResultRetentionManager(this,
+            getConfiguration());
+
+        // runs in the background so expiring results never blocks storing them
+        final Date firstRunTime = new Date(System.currentTimeMillis()
+                                           + ResultRetentionManager.RETENTION_PERIOD_MILLIS);
+        backgroundTaskScheduler.scheduleWithFixedDelay(resultRetentionManager, firstRunTime,
+            ResultRetentionManager.RETENTION_PERIOD_MILLIS);
+
+        try
+        {
+            mbeanExportOperations.registerManagedResource(resultRetentionManager, new ObjectName(
+                Constants.RESULT_RETENTION_MANAGER_OBJECT_NAME));
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to register result retention manager MBean", e);
+        }
+    }
+
+    /**
+     * Moves all the result files that are not located where the configured sharding depth expects
+     * them, which allows changing the layout of the results directories while RSB is running.
+     * 
+     * @return the number of moved result files.
+     */
+    int migrateResultFiles() throws IOException
+    {
+        final int shardingDepth = getConfiguration().getResultsShardingDepth();
+        final long startTime = System.currentTimeMillis();
+        int migratedResultFiles = 0;
+
+        for (final File resultsDirectory : getAllResultsDirectories())
+        {
+            migratedResultFiles += migrateResultFiles(resultsDirectory, shardingDepth);
+        }
+
+        getLogger().info(
+            String.format("Migrated %d result files to a sharding depth of %d in %dms", migratedResultFiles,
+                shardingDepth, System.currentTimeMillis() - startTime));
+
+        return migratedResultFiles;
+    }
+
+    private int migrateResultFiles(final File resultsDirectory, final int shardingDepth) throws IOException
+    {
+        final List<IndexedResultFile> indexedResultFiles = new ArrayList<IndexedResultFile>();
+        for (final IndexedResultFile indexedResultFile : resultFileIndex.list(resultsDirectory))
+        {
+            indexedResultFiles.add(indexedResultFile);
+        }
+
+        int migratedResultFiles = 0;
+
+        for (final IndexedResultFile indexedResultFile : indexedResultFiles)
+        {
+            final File resultFile = indexedResultFile.getFile();
+            final File shardDirectory = ResultFileIndex.getShardDirectory(resultsDirectory,
+                indexedResultFile.getJobId(), shardingDepth);
+
+            if (shardDirectory.equals(resultFile.getParentFile()))
+            {
+                continue;
+            }
+
+            FileUtils.forceMkdir(shardDirectory);
+            final File migratedResultFile = new File(shardDirectory, resultFile.getName());
+
+            // renaming is atomic so concurrent readers either see the old or the new location
+            if (!resultFile.renameTo(migratedResultFile))
+            {
+                getLogger().warn("Failed to move result file: " + resultFile + " to: " + shardDirectory);
+                continue;
+            }
+
+            resultFileIndex.put(resultsDirectory, indexedResultFile.getJobId(), migratedResultFile);
+            migratedResultFiles++;
+        }
+
+        // when going back to a flat layout, shard directories are not written to anymore so it is
+        // safe to clean them up
+        if (shardingDepth == 0)
+        {
+            deleteEmptyDirectories(new File(resultsDirectory, ResultFileIndex.SHARDS_DIRECTORY_NAME));
+        }
+
+        return migratedResultFiles;
+    }
+
+    private static void deleteEmptyDirectories(final File directory)
+    {
+        final File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        for (final File file : files)
+        {
+            if (file.isDirectory())
+            {
+                deleteEmptyDirectories(file);
+            }
+        }
+
+        final String[] remainingFiles = directory.list();
+        if ((remainingFiles != null) && (remainingFiles.length == 0))
+        {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    /**
+     * Deletes an expired result file or, if an archive directory is provided, moves it under it.
+     * 
+     * @return true if the result file has been expired.
+     */
+    boolean expireResultFile(final File resultsDirectory,
+                             final IndexedResultFile indexedResultFile,
+                             final File archiveDirectory)
+    {
+        final File resultFile = indexedResultFile.getFile();
+
+        try
+        {
+            if (archiveDirectory == null)
+            {
+                FileUtils.forceDelete(resultFile);
+            }
+            else
+            {
+                // archived results keep their application and user directories but not their shards
+                final String resultsPath = getConfiguration().getResultsDirectory()
+                    .toURI()
+                    .relativize(resultsDirectory.toURI())
+                    .getPath();
+                FileUtils.moveToDirectory(resultFile, new File(archiveDirectory, resultsPath), true);
+            }
+        }
+        catch (final IOException ioe)
+        {
+            getLogger().warn("Failed to expire result file: " + resultFile, ioe);
+            return false;
+        }
+
+        resultFileIndex.remove(resultsDirectory, indexedResultFile);
+        return true;
+    }
+
+    Iterable<IndexedResultFile> listResultFiles(final File resultsDirectory)
+    {
+        return resultFileIndex.list(resultsDirectory);
+    }
+
+    String getApplicationName(final File resultsDirectory)
+    {
+        // results directories are either application or application user directories
+        final File parentDirectory = resultsDirectory.getParentFile();
+        if (getConfiguration().getResultsDirectory().equals(parentDirectory))
+        {
+            return resultsDirectory.getName();
+        }
+        return parentDirectory.getName();
+    }
+
+    List<File> getAllResultsDirectories()
+    {
+        final List<File> resultsDirectories = new ArrayList<File>();
+
+        final File[] applicationResultsDirectories = getConfiguration().getResultsDirectory().listFiles();
+        if (applicationResultsDirectories == null)
+        {
+            return resultsDirectories;
+        }
+
+        for (final File applicationResultsDirectory : applicationResultsDirectories)
+        {
+            if ((!applicationResultsDirectory.isDirectory())
+                || (!Util.isValidApplicationName(applicationResultsDirectory.getName())))
+            {
+                continue;
+            }
+
+            resultsDirectories.add(applicationResultsDirectory);
+
+            // null if the directory has been deleted concurrently or can't be read
+            final File[] userResultsDirectories = applicationResultsDirectory.listFiles();
+            if (userResultsDirectories == null)
+            {
+                continue;
+            }
+
+            // user-specific results directories
+            for (final File userResultsDirectory : userResultsDirectories)
+            {
+                // hidden directories are shard or staging directories
+                if ((userResultsDirectory.isDirectory())
+                    && (!userResultsDirectory.getName().startsWith(STAGING_DIRECTORY_PREFIX))
+                    && (!isFileSetResultFile(userResultsDirectory)))
+                {
+                    resultsDirectories.add(userResultsDirectory);
+                }
+            }
+        }
+
+        return resultsDirectories;
+    }
 
     public boolean deleteByApplicationNameAndJobId(final String applicationName, final UUID jobId)
         throws IOException
@@ -77,20 +342,113 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
     }
 
     public void store(final PersistedResult result) throws IOException
+    {
+        final File resultFile = getNewResultFile(result, isCompressedMimeType(result.getMimeType()));
+        final InputStream resultData = result.getData();
+        final OutputStream resultOutput = openResultOutput(result, resultFile);
+        try
+        {
+            IOUtils.copy(resultData, resultOutput);
+            resultOutput.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(resultData);
+            IOUtils.closeQuietly(resultOutput);
+        }
+
+        resultFileIndex.put(getResultsDirectory(result.getApplicationName(), result.getUserName()),
+            result.getJobId(), resultFile);
+    }
+
+    public void storeText(final PersistedTextResult result) throws IOException
+    {
+        final File resultFile = getNewResultFile(result, isCompressedMimeType(result.getMimeType()));
+        // replaces unmappable characters instead of failing, so the result is never lost
+        final Writer resultWriter = new OutputStreamWriter(openResultOutput(result, resultFile),
+            result.getCharset());
+        try
+        {
+            // appended piecewise so only a bounded part of the text is ever copied
+            final CharSequence text = result.getText();
+            for (int i = 0; i < text.length(); i += TEXT_WRITE_CHUNK_SIZE)
+            {
+                resultWriter.append(text, i, Math.min(text.length(), i + TEXT_WRITE_CHUNK_SIZE));
+            }
+            resultWriter.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(resultWriter);
+        }
+
+        resultFileIndex.put(getResultsDirectory(result.getApplicationName(), result.getUserName()),
+            result.getJobId(), resultFile);
+    }
+
+    /**
+     * Moves the files of the result into a directory named like a ZIP result file, the ZIP archive
+     * being only produced when the result is read.
+     */
+    public void storeFileSet(final PersistedFileSetResult result) throws IOException
+    {
+        final File resultDirectory = getNewResultFile(result, false);
+
+        // files are gathered in a hidden directory so the file set only becomes visible once complete
+        final File stagingDirectory = new File(resultDirectory.getParentFile(), STAGING_DIRECTORY_PREFIX
+                                                                                + resultDirectory.getName());
+        FileUtils.deleteQuietly(stagingDirectory);
+        FileUtils.forceMkdir(stagingDirectory);
+
+        try
+        {
+            for (final File file : result.getFiles())
+            {
+                // a rename, unless the files are on another file system
+                FileUtils.moveFileToDirectory(file, stagingDirectory, false);
+            }
+        }
+        catch (final IOException ioe)
+        {
+            FileUtils.deleteQuietly(stagingDirectory);
+            throw ioe;
+        }
+
+        FileUtils.deleteQuietly(resultDirectory);
+        if (!stagingDirectory.renameTo(resultDirectory))
+        {
+            FileUtils.deleteQuietly(stagingDirectory);
+            throw new IOException("Failed to store file set result in: " + resultDirectory);
+        }
+
+        resultFileIndex.put(getResultsDirectory(result.getApplicationName(), result.getUserName()),
+            result.getJobId(), resultDirectory);
+    }
+
+    private File getNewResultFile(final PersistedResult result, final boolean compressed) throws IOException
     {
         final String resultFileName = result.getJobId().toString()
                                       + (result.isSuccess() ? "" : ERROR_FILE_INFIX_EXTENSION) + "."
-                                      + Util.getResourceType(result.getMimeType());
+                                      + Util.getResourceType(result.getMimeType())
+                                      + (compressed ? GZIP_FILE_EXTENSION : "");
 
         final File resultsDirectory = getResultsDirectory(result.getApplicationName(), result.getUserName());
-        FileUtils.forceMkdir(resultsDirectory);
-        final File resultFile = new File(resultsDirectory, resultFileName);
+        final File shardDirectory = ResultFileIndex.getShardDirectory(resultsDirectory, result.getJobId(),
+            getConfiguration().getResultsShardingDepth());
+        FileUtils.forceMkdir(shardDirectory);
+        return new File(shardDirectory, resultFileName);
+    }
 
-        final InputStream resultData = result.getData();
-        final FileOutputStream fos = new FileOutputStream(resultFile);
-        IOUtils.copy(resultData, fos);
-        IOUtils.closeQuietly(result.getData());
-        IOUtils.closeQuietly(fos);
+    private OutputStream openResultOutput(final PersistedResult result, final File resultFile)
+        throws IOException
+    {
+        if (!isCompressedMimeType(result.getMimeType()))
+        {
+            return new FileOutputStream(resultFile);
+        }
+
+        // closing the gzip stream finishes it
+        return new GzipFileOutputStream(resultFile);
     }
 
     @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
@@ -106,6 +464,7 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
         }
 
         FileUtils.forceDelete(resultFile);
+        resultFileIndex.remove(getResultsDirectory(applicationName, userName), jobId);
         return true;
     }
 
@@ -113,25 +472,40 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
     public Collection<PersistedResult> findByApplicationName(final String applicationName,
                                                              final String userName)
     {
-        final File[] resultFiles = getResultsDirectory(applicationName, userName).listFiles();
-
-        if ((resultFiles == null) || (resultFiles.length == 0))
-        {
-            return Collections.emptyList();
-        }
+        return findByApplicationName(applicationName, userName, ResultQuery.ALL);
+    }
 
+    @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
+    public Collection<PersistedResult> findByApplicationName(final String applicationName,
+                                                             final String userName,
+                                                             final ResultQuery resultQuery)
+    {
         final Collection<PersistedResult> persistedResults = new ArrayList<PersistedResult>();
+        int skipped = 0;
 
-        final List<File> sortedFiles = new ArrayList<File>(Arrays.asList(resultFiles));
-        Collections.sort(sortedFiles, LastModifiedFileComparator.LASTMODIFIED_REVERSE);
-
-        for (final File resultFile : sortedFiles)
+        for (final IndexedResultFile indexedResultFile : resultFileIndex.list(getResultsDirectory(
+            applicationName, userName)))
         {
-            final UUID jobId = Util.safeUuidFromString(StringUtils.substringBefore(resultFile.getName(), "."));
-            if (jobId != null)
+            if ((resultQuery.isLimitReached(persistedResults.size()))
+                || (resultQuery.isTooOld(indexedResultFile.getResultTime())))
+            {
+                break;
+            }
+
+            if (!resultQuery.matches(indexedResultFile.getResultTime(), indexedResultFile.isSuccess()))
+            {
+                continue;
+            }
+
+            if (skipped < resultQuery.getOffset())
             {
-                persistedResults.add(buildPersistedResult(applicationName, userName, jobId, resultFile));
+                skipped++;
+                continue;
             }
+
+            persistedResults.add(buildPersistedResult(applicationName, userName,
+                indexedResultFile.getJobId(), indexedResultFile.getFile(),
+                indexedResultFile.getResultTime()));
         }
 
         return persistedResults;
@@ -143,53 +517,82 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
                                                          final UUID jobId)
     {
         final File resultFile = getResultFile(applicationName, userName, jobId);
-        return resultFile == null ? null : buildPersistedResult(applicationName, userName, jobId, resultFile);
+        return resultFile == null ? null : buildPersistedResult(applicationName, userName, jobId, resultFile,
+            resultFile.lastModified());
     }
 
     private File getResultFile(final String applicationName, final String userName, final UUID jobId)
     {
-        final String jobIdAsString = jobId.toString();
-        final File[] resultFiles = getResultsDirectory(applicationName, userName).listFiles(
-            new FilenameFilter()
-            {
-                public boolean accept(final File dir, final String name)
-                {
-                    return jobIdAsString.equals(StringUtils.substringBefore(name, "."));
-                }
-            });
-
-        if ((resultFiles == null) || (resultFiles.length == 0))
-        {
-            return null;
-        }
-
-        if (resultFiles.length > 1)
-        {
-            throw new IllegalStateException("Found " + resultFiles.length + " results for job Id: " + jobId);
-        }
-
-        return resultFiles[0];
+        return resultFileIndex.get(getResultsDirectory(applicationName, userName), jobId);
     }
 
     private PersistedResult buildPersistedResult(final String applicationName,
                                                  final String userName,
                                                  final UUID jobId,
-                                                 final File resultFile)
+                                                 final File resultFile,
+                                                 final long resultTimeMillis)
     {
         final GregorianCalendar resultTime = (GregorianCalendar) GregorianCalendar.getInstance();
-        resultTime.setTimeInMillis(resultFile.lastModified());
+        resultTime.setTimeInMillis(resultTimeMillis);
+
+        final boolean success = isSuccessResultFile(resultFile);
+
+        if (isFileSetResultFile(resultFile))
+        {
+            return buildPersistedFileSetResult(applicationName, userName, jobId, resultFile, resultTime,
+                success);
+        }
 
-        final boolean success = !StringUtils.contains(resultFile.getName(), ERROR_FILE_INFIX_EXTENSION + ".");
-        final MimeType mimeType = Util.getMimeType(resultFile);
+        final boolean compressed = isCompressedResultFile(resultFile);
+
+        // the MIME type of a compressed result is the one of its content
+        final MimeType mimeType = Util.getMimeType(compressed ? new File(StringUtils.removeEnd(
+            resultFile.getPath(), GZIP_FILE_EXTENSION)) : resultFile);
 
         return new PersistedResult(applicationName, userName, jobId, resultTime, success, mimeType)
         {
             @Override
-            public InputStream getData()
+            public InputStream getData() throws IOException
+            {
+                final InputStream encodedData = getEncodedData();
+                if (!compressed)
+                {
+                    return encodedData;
+                }
+
+                try
+                {
+                    return new GZIPInputStream(encodedData);
+                }
+                catch (final IOException ioe)
+                {
+                    IOUtils.closeQuietly(encodedData);
+                    throw ioe;
+                }
+            }
+
+            @Override
+            public long getDataLength() throws IOException
+            {
+                if (compressed)
+                {
+                    return GzipFileOutputStream.getUncompressedLength(getCurrentResultFile());
+                }
+                return getCurrentResultFile().length();
+            }
+
+            @Override
+            public String getDataEncoding()
+            {
+                return compressed ? GZIP_CONTENT_ENCODING : null;
+            }
+
+            @Override
+            public InputStream getEncodedData()
             {
                 try
                 {
-                    return new FileInputStream(resultFile);
+                    return new FileInputStream(getCurrentResultFile());
                 }
                 catch (final FileNotFoundException fnfe)
                 {
@@ -197,14 +600,102 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
                 }
             }
 
+            @Override
+            public long getEncodedDataLength()
+            {
+                return getCurrentResultFile().length();
+            }
+
+            @Override
+            public File getDataFile()
+            {
+                return getCurrentResultFile();
+            }
+
+            // the result file may have been moved by a layout migration since it has been looked up
+            private File getCurrentResultFile()
+            {
+                if (resultFile.isFile())
+                {
+                    return resultFile;
+                }
+
+                final File movedResultFile = getResultFile(getApplicationName(), getUserName(), getJobId());
+                return movedResultFile != null ? movedResultFile : resultFile;
+            }
+        };
+    }
+
+    private PersistedResult buildPersistedFileSetResult(final String applicationName,
+                                                        final String userName,
+                                                        final UUID jobId,
+                                                        final File resultDirectory,
+                                                        final GregorianCalendar resultTime,
+                                                        final boolean success)
+    {
+        return new PersistedResult(applicationName, userName, jobId, resultTime, success,
+            Constants.ZIP_MIME_TYPE)
+        {
+            @Override
+            public InputStream getData()
+            {
+                final File[] files = getCurrentResultDirectory().listFiles();
+                return new ZipFileSetInputStream(files == null ? new File[0] : files);
+            }
+
             @Override
             public long getDataLength()
             {
-                return resultFile.length();
+                return PersistedFileSetResult.UNKNOWN_DATA_LENGTH;
+            }
+
+            // the result directory may have been moved by a layout migration since it has been
+            // looked up
+            private File getCurrentResultDirectory()
+            {
+                if (resultDirectory.isDirectory())
+                {
+                    return resultDirectory;
+                }
+
+                final File movedResultDirectory = getResultFile(getApplicationName(), getUserName(),
+                    getJobId());
+                return movedResultDirectory != null ? movedResultDirectory : resultDirectory;
             }
         };
     }
 
+    static boolean isSuccessResultFile(final File resultFile)
+    {
+        return !StringUtils.contains(resultFile.getName(), ERROR_FILE_INFIX_EXTENSION + ".");
+    }
+
+    /**
+     * File set results are stored as directories, whose files are zipped when read.
+     */
+    static boolean isFileSetResultFile(final File resultFile)
+    {
+        return resultFile.isDirectory() && !resultFile.getName().startsWith(STAGING_DIRECTORY_PREFIX)
+               && Util.safeUuidFromString(StringUtils.substringBefore(resultFile.getName(), ".")) != null;
+    }
+
+    private static boolean isCompressedResultFile(final File resultFile)
+    {
+        return resultFile.getName().endsWith(GZIP_FILE_EXTENSION);
+    }
+
+    private boolean isCompressedMimeType(final MimeType mimeType)
+    {
+        for (final String compressedResultMimeType : getConfiguration().getCompressedResultMimeTypes())
+        {
+            if (mimeType.getBaseType().equalsIgnoreCase(compressedResultMimeType))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private File getResultsDirectory(final String applicationName, final String userName)
     {
         // this is to prevent trying to use application names with / or \ in order to
@@ -212,6 +703,9 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
         Validate.isTrue(Util.isValidApplicationName(applicationName), "Invalid application name: "
                                                                       + applicationName);
 
+        // hidden directories are used for shards and file sets being stored
+        Validate.isTrue(!StringUtils.startsWith(userName, "."), "Invalid user name: " + userName);
+
         final File applicationResultsDirectory = new File(getConfiguration().getResultsDirectory(),
             applicationName);
 
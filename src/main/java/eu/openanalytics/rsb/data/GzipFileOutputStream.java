@@ -0,0 +1,237 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a gzip file whose header holds the exact length of the uncompressed data in an extra field,
+ * as the length in the gzip trailer is only this length modulo 2^32. gzip readers, including HTTP
+ * clients receiving the file as is, skip extra fields they don't know.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+final class GzipFileOutputStream extends DeflaterOutputStream
+{
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FEXTRA = 4;
+    private static final byte LENGTH_SUBFIELD_ID1 = 'R';
+    private static final byte LENGTH_SUBFIELD_ID2 = 'L';
+    private static final int LENGTH_SUBFIELD_SIZE = 8;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int EXTRA_FIELD_SIZE = 4 + LENGTH_SUBFIELD_SIZE;
+    // after the fixed header, the size of the extra field and the subfield header
+    private static final int LENGTH_OFFSET = GZIP_HEADER_SIZE + 2 + 4;
+    private static final int GZIP_TRAILER_SIZE_LENGTH = 4;
+
+    private final FileOutputStream fileOutput;
+    private final CRC32 crc = new CRC32();
+    private long length;
+    private boolean closed;
+
+    GzipFileOutputStream(final File file) throws IOException
+    {
+        this(new FileOutputStream(file));
+    }
+
+    private GzipFileOutputStream(final FileOutputStream fileOutput) throws IOException
+    {
+        super(fileOutput, new Deflater(Deflater.DEFAULT_COMPRESSION, true), BUFFER_SIZE);
+        this.fileOutput = fileOutput;
+
+        try
+        {
+            writeHeader();
+        }
+        catch (final IOException ioe)
+        {
+            def.end();
+            fileOutput.close();
+            throw ioe;
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        super.write(b, off, len);
+        crc.update(b, off, len);
+        length += len;
+    }
+
+    @Override
+    public void finish() throws IOException
+    {
+        if (def.finished())
+        {
+            return;
+        }
+
+        super.finish();
+
+        final ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue());
+        trailer.putInt((int) length);
+        out.write(trailer.array());
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            finish();
+
+            // the length is only known now so it is written in place of the placeholder
+            final ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_SUBFIELD_SIZE).order(
+                ByteOrder.LITTLE_ENDIAN);
+            lengthBuffer.putLong(length);
+            lengthBuffer.flip();
+            fileOutput.getChannel().write(lengthBuffer, LENGTH_OFFSET);
+        }
+        finally
+        {
+            def.end();
+            fileOutput.close();
+        }
+    }
+
+    private void writeHeader() throws IOException
+    {
+        final ByteBuffer header = ByteBuffer.allocate(GZIP_HEADER_SIZE + 2 + EXTRA_FIELD_SIZE).order(
+            ByteOrder.LITTLE_ENDIAN);
+        header.putShort((short) GZIP_MAGIC);
+        header.put((byte) Deflater.DEFLATED);
+        header.put((byte) FEXTRA);
+        // modification time, extra flags and unknown operating system
+        header.putInt(0);
+        header.put((byte) 0);
+        header.put((byte) 0xff);
+        header.putShort((short) EXTRA_FIELD_SIZE);
+        header.put(LENGTH_SUBFIELD_ID1);
+        header.put(LENGTH_SUBFIELD_ID2);
+        header.putShort((short) LENGTH_SUBFIELD_SIZE);
+        // placeholder for the length
+        header.putLong(0L);
+        out.write(header.array());
+    }
+
+    /**
+     * Reads the uncompressed length of a gzip file from the extra field written by this class,
+     * without decompressing the file. For gzip files written otherwise, the length is read from
+     * the trailer, which is only exact for data under 4GB.
+     */
+    static long getUncompressedLength(final File gzipFile) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(gzipFile, "r");
+        try
+        {
+            final long uncompressedLength = readLengthSubfield(raf);
+            if (uncompressedLength >= 0L)
+            {
+                return uncompressedLength;
+            }
+
+            if (raf.length() < GZIP_TRAILER_SIZE_LENGTH)
+            {
+                return 0L;
+            }
+
+            raf.seek(raf.length() - GZIP_TRAILER_SIZE_LENGTH);
+            final byte[] size = new byte[GZIP_TRAILER_SIZE_LENGTH];
+            raf.readFully(size);
+            return ByteBuffer.wrap(size).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return -1 if the gzip file has no length subfield.
+     */
+    private static long readLengthSubfield(final RandomAccessFile raf) throws IOException
+    {
+        if (raf.length() < GZIP_HEADER_SIZE + 2)
+        {
+            return -1L;
+        }
+
+        final byte[] headerBytes = new byte[GZIP_HEADER_SIZE + 2];
+        raf.readFully(headerBytes);
+        final ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (((header.getShort(0) & 0xffff) != GZIP_MAGIC) || ((header.get(3) & FEXTRA) == 0))
+        {
+            return -1L;
+        }
+
+        final int extraFieldSize = header.getShort(GZIP_HEADER_SIZE) & 0xffff;
+        if (raf.length() < GZIP_HEADER_SIZE + 2 + extraFieldSize)
+        {
+            return -1L;
+        }
+
+        final byte[] extraFieldBytes = new byte[extraFieldSize];
+        raf.readFully(extraFieldBytes);
+        final ByteBuffer extraField = ByteBuffer.wrap(extraFieldBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        // the extra field is a sequence of subfields: 2 ID bytes, a 2 bytes size and the data
+        while (extraField.remaining() >= 4)
+        {
+            final byte id1 = extraField.get();
+            final byte id2 = extraField.get();
+            final int subfieldSize = extraField.getShort() & 0xffff;
+
+            if (subfieldSize > extraField.remaining())
+            {
+                return -1L;
+            }
+
+            if ((id1 == LENGTH_SUBFIELD_ID1) && (id2 == LENGTH_SUBFIELD_ID2)
+                && (subfieldSize == LENGTH_SUBFIELD_SIZE))
+            {
+                return extraField.getLong();
+            }
+
+            extraField.position(extraField.position() + subfieldSize);
+        }
+
+        return -1L;
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.UUID;
+
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+import javax.sql.DataSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.openanalytics.rsb.Constants;
+
+/**
+ * A result store backed by a relational database, typically an embedded one like H2. Result
+ * metadata is stored in an indexed table so finding, listing and paging results are queries, while
+ * result data is split in chunks stored in a separate table and streamed back chunk by chunk.
+ * Storing and deleting a result are transactional, so a failure never leaves partial results. Only
+ * standard SQL is used, so any database with a JDBC driver is supported, provided the column types
+ * for binary data and booleans are configured when the defaults don't exist in it.
+ * <p>
+ * To use it instead of the default {@link FileResultStore}, declare it as the primary
+ * <code>SecureResultStore</code> in an additional <code>META-INF/spring/*-beans.xml</code> file:
+ * 
+ * <pre>
+ * &lt;bean id="jdbcResultStore" class="eu.openanalytics.rsb.data.JdbcResultStore" primary="true"
+ *       p:dataSource-ref="resultsDataSource" init-method="initialize" /&gt;
+ * </pre>
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JdbcResultStore implements SecureResultStore
+{
+    private static final Log LOGGER = LogFactory.getLog(JdbcResultStore.class);
+
+    private static final String ERROR_MESSAGE = "This method shouldn't have been called: please report the issue.";
+
+    // results without user are stored with an empty user name so they can be part of the keys
+    private static final String NO_USER_NAME = "";
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final String DEFAULT_BINARY_COLUMN_TYPE = "BLOB";
+    public static final String DEFAULT_BOOLEAN_COLUMN_TYPE = "BOOLEAN";
+
+    private static final String RESULT_COLUMNS = "job_id, application_name, user_name, result_time, success, mime_type, data_length, chunk_count";
+
+    private DataSource dataSource;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private String binaryColumnType = DEFAULT_BINARY_COLUMN_TYPE;
+    private String booleanColumnType = DEFAULT_BOOLEAN_COLUMN_TYPE;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    private final RowMapper<PersistedResult> persistedResultRowMapper = new RowMapper<PersistedResult>()
+    {
+        public PersistedResult mapRow(final ResultSet rs, final int rowNum) throws SQLException
+        {
+            final GregorianCalendar resultTime = (GregorianCalendar) GregorianCalendar.getInstance();
+            resultTime.setTimeInMillis(rs.getLong("result_time"));
+
+            final String userName = rs.getString("user_name");
+            final long dataLength = rs.getLong("data_length");
+            final UUID jobId = UUID.fromString(rs.getString("job_id"));
+            final int chunkCount = rs.getInt("chunk_count");
+
+            return new PersistedResult(rs.getString("application_name"), NO_USER_NAME.equals(userName)
+                                                                                                       ? null
+                                                                                                       : userName,
+                jobId, resultTime, rs.getBoolean("success"), toMimeType(rs.getString("mime_type")))
+            {
+                @Override
+                public InputStream getData()
+                {
+                    return new ChunkInputStream(jobId, chunkCount);
+                }
+
+                @Override
+                public long getDataLength()
+                {
+                    return dataLength;
+                }
+            };
+        }
+    };
+
+    /**
+     * Streams the data chunks of a result, loading a single chunk at a time.
+     */
+    private class ChunkInputStream extends InputStream
+    {
+        private final UUID jobId;
+        private final int chunkCount;
+        private int nextChunkIndex;
+        private InputStream currentChunk = new ByteArrayInputStream(new byte[0]);
+
+        ChunkInputStream(final UUID jobId, final int chunkCount)
+        {
+            this.jobId = jobId;
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+
+            int read = currentChunk.read(b, off, len);
+            while ((read == -1) && (nextChunkIndex < chunkCount))
+            {
+                currentChunk = new ByteArrayInputStream(loadChunk(jobId, nextChunkIndex++));
+                read = currentChunk.read(b, off, len);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Creates the result tables and indexes if they don't exist.
+     */
+    public void initialize()
+    {
+        Validate.notNull(dataSource, "A data source is required");
+        Validate.isTrue(chunkSize > 0, "The chunk size must be positive");
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        // existing tables are looked up in the database metadata as not all databases support
+        // CREATE ... IF NOT EXISTS
+        if (!tableExists("rsb_results"))
+        {
+            jdbcTemplate.execute("CREATE TABLE rsb_results (job_id CHAR(36) NOT NULL PRIMARY KEY, "
+                                 + "application_name VARCHAR(255) NOT NULL, user_name VARCHAR(255) NOT NULL, "
+                                 + "result_time BIGINT NOT NULL, success " + booleanColumnType + " NOT NULL, "
+                                 + "mime_type VARCHAR(255) NOT NULL, data_length BIGINT NOT NULL, "
+                                 + "chunk_count INT NOT NULL)");
+
+            jdbcTemplate.execute("CREATE INDEX rsb_results_by_owner_and_time ON rsb_results "
+                                 + "(application_name, user_name, result_time)");
+        }
+
+        if (!tableExists("rsb_result_chunks"))
+        {
+            jdbcTemplate.execute("CREATE TABLE rsb_result_chunks (job_id CHAR(36) NOT NULL, "
+                                 + "chunk_index INT NOT NULL, chunk_data " + binaryColumnType + " NOT NULL, "
+                                 + "PRIMARY KEY (job_id, chunk_index))");
+        }
+
+        LOGGER.info("JDBC result store initialized with chunks of " + chunkSize + " bytes");
+    }
+
+    private boolean tableExists(final String tableName)
+    {
+        return jdbcTemplate.execute(new ConnectionCallback<Boolean>()
+        {
+            public Boolean doInConnection(final Connection connection) throws SQLException
+            {
+                final DatabaseMetaData metaData = connection.getMetaData();
+
+                // unquoted identifiers are stored either upper or lower case, depending on the database
+                for (final String storedTableName : new String[]{tableName.toUpperCase(),
+                    tableName.toLowerCase()})
+                {
+                    final ResultSet tables = metaData.getTables(null, null, storedTableName,
+                        new String[]{"TABLE"});
+                    try
+                    {
+                        if (tables.next())
+                        {
+                            return true;
+                        }
+                    }
+                    finally
+                    {
+                        tables.close();
+                    }
+                }
+
+                return false;
+            }
+        });
+    }
+
+    public boolean deleteByApplicationNameAndJobId(final String applicationName, final UUID jobId)
+        throws IOException
+    {
+        throw new UnsupportedOperationException(ERROR_MESSAGE);
+    }
+
+    public Collection<PersistedResult> findByApplicationName(final String applicationName)
+    {
+        throw new UnsupportedOperationException(ERROR_MESSAGE);
+    }
+
+    public PersistedResult findByApplicationNameAndJobId(final String applicationName, final UUID jobId)
+    {
+        throw new UnsupportedOperationException(ERROR_MESSAGE);
+    }
+
+    public void store(final PersistedResult result) throws IOException
+    {
+        final InputStream data = result.getData();
+
+        try
+        {
+            // I/O errors reading the data are returned so the transaction is rolled back
+            final IOException ioe = transactionTemplate.execute(new TransactionCallback<IOException>()
+            {
+                public IOException doInTransaction(final TransactionStatus status)
+                {
+                    try
+                    {
+                        insertResult(result, data);
+                        return null;
+                    }
+                    catch (final IOException ioe)
+                    {
+                        status.setRollbackOnly();
+                        return ioe;
+                    }
+                }
+            });
+
+            if (ioe != null)
+            {
+                throw ioe;
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(data);
+        }
+    }
+
+    // must be called in a transaction
+    private void insertResult(final PersistedResult result, final InputStream data) throws IOException
+    {
+        final String jobId = result.getJobId().toString();
+
+        // a re-stored result replaces the previous one
+        deleteResultRows(jobId);
+
+        final byte[] buffer = new byte[chunkSize];
+        long dataLength = 0L;
+        int chunkCount = 0;
+
+        int read;
+        while ((read = IOUtils.read(data, buffer)) > 0)
+        {
+            jdbcTemplate.update(
+                "INSERT INTO rsb_result_chunks (job_id, chunk_index, chunk_data) VALUES (?, ?, ?)", jobId,
+                chunkCount, Arrays.copyOf(buffer, read));
+            dataLength += read;
+            chunkCount++;
+        }
+
+        jdbcTemplate.update("INSERT INTO rsb_results (" + RESULT_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+            jobId, result.getApplicationName(), toStoredUserName(result.getUserName()), result.getResultTime()
+                .getTimeInMillis(), result.isSuccess(), result.getMimeType().toString(), dataLength,
+            chunkCount);
+    }
+
+    /**
+     * The text is encoded incrementally while being split in chunks.
+     */
+    public void storeText(final PersistedTextResult result) throws IOException
+    {
+        store(result);
+    }
+
+    /**
+     * The files are zipped while being split in chunks.
+     */
+    public void storeFileSet(final PersistedFileSetResult result) throws IOException
+    {
+        store(result);
+    }
+
+    @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
+    public boolean deleteByApplicationNameAndJobId(final String applicationName,
+                                                   final String userName,
+                                                   final UUID jobId) throws IOException
+    {
+        return transactionTemplate.execute(new TransactionCallback<Boolean>()
+        {
+            public Boolean doInTransaction(final TransactionStatus status)
+            {
+                // the chunks are only deleted if the result belongs to this application and user
+                final String storedJobId = jobId.toString();
+                if (jdbcTemplate.update(
+                    "DELETE FROM rsb_results WHERE job_id = ? AND application_name = ? AND user_name = ?",
+                    storedJobId, applicationName, toStoredUserName(userName)) == 0)
+                {
+                    return false;
+                }
+
+                jdbcTemplate.update("DELETE FROM rsb_result_chunks WHERE job_id = ?", storedJobId);
+                return true;
+            }
+        });
+    }
+
+    @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
+    public Collection<PersistedResult> findByApplicationName(final String applicationName,
+                                                             final String userName)
+    {
+        return findByApplicationName(applicationName, userName, ResultQuery.ALL);
+    }
+
+    @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
+    public Collection<PersistedResult> findByApplicationName(final String applicationName,
+                                                             final String userName,
+                                                             final ResultQuery resultQuery)
+    {
+        final StringBuilder sql = new StringBuilder("SELECT ").append(RESULT_COLUMNS)
+            .append(" FROM rsb_results WHERE application_name = ? AND user_name = ?");
+
+        final List<Object> parameters = new ArrayList<Object>();
+        parameters.add(applicationName);
+        parameters.add(toStoredUserName(userName));
+
+        if (resultQuery.getSince() != null)
+        {
+            sql.append(" AND result_time > ?");
+            parameters.add(resultQuery.getSince());
+        }
+
+        if (resultQuery.getSuccess() != null)
+        {
+            sql.append(" AND success = ?");
+            parameters.add(resultQuery.getSuccess());
+        }
+
+        // served by the owner and time index
+        sql.append(" ORDER BY result_time DESC, job_id");
+
+        // paged without LIMIT and OFFSET, which not all databases support: the driver is asked for
+        // no more rows than needed and the offset rows are skipped
+        final int offset = resultQuery.getOffset();
+        final long pageEnd = (long) offset + resultQuery.getLimit();
+        final boolean unbounded = (resultQuery.getLimit() == ResultQuery.NO_LIMIT)
+                                  || (pageEnd > Integer.MAX_VALUE);
+        final int maxRows = unbounded ? 0 : (int) pageEnd;
+
+        return jdbcTemplate.query(new PreparedStatementCreator()
+        {
+            public PreparedStatement createPreparedStatement(final Connection connection) throws SQLException
+            {
+                final PreparedStatement statement = connection.prepareStatement(sql.toString());
+                statement.setMaxRows(maxRows);
+                for (int i = 0; i < parameters.size(); i++)
+                {
+                    StatementCreatorUtils.setParameterValue(statement, i + 1, SqlTypeValue.TYPE_UNKNOWN,
+                        parameters.get(i));
+                }
+                return statement;
+            }
+        }, new ResultSetExtractor<List<PersistedResult>>()
+        {
+            public List<PersistedResult> extractData(final ResultSet rs) throws SQLException
+            {
+                final List<PersistedResult> persistedResults = new ArrayList<PersistedResult>();
+                int rowNum = 0;
+                while (rs.next())
+                {
+                    if (rowNum >= offset)
+                    {
+                        persistedResults.add(persistedResultRowMapper.mapRow(rs, rowNum));
+                    }
+                    rowNum++;
+                }
+                return persistedResults;
+            }
+        });
+    }
+
+    @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
+    public PersistedResult findByApplicationNameAndJobId(final String applicationName,
+                                                         final String userName,
+                                                         final UUID jobId)
+    {
+        final List<PersistedResult> persistedResults = jdbcTemplate.query("SELECT " + RESULT_COLUMNS
+                                                                          + " FROM rsb_results WHERE job_id = ?"
+                                                                          + " AND application_name = ?"
+                                                                          + " AND user_name = ?",
+            persistedResultRowMapper, jobId.toString(), applicationName, toStoredUserName(userName));
+
+        return persistedResults.isEmpty() ? null : persistedResults.get(0);
+    }
+
+    // must be called in a transaction
+    private void deleteResultRows(final String jobId)
+    {
+        jdbcTemplate.update("DELETE FROM rsb_results WHERE job_id = ?", jobId);
+        jdbcTemplate.update("DELETE FROM rsb_result_chunks WHERE job_id = ?", jobId);
+    }
+
+    private byte[] loadChunk(final UUID jobId, final int chunkIndex) throws IOException
+    {
+        final List<byte[]> chunks = jdbcTemplate.queryForList(
+            "SELECT chunk_data FROM rsb_result_chunks WHERE job_id = ? AND chunk_index = ?", byte[].class,
+            jobId.toString(), chunkIndex);
+
+        if (chunks.isEmpty())
+        {
+            throw new IOException("Missing chunk " + chunkIndex + " of result: " + jobId);
+        }
+
+        return chunks.get(0);
+    }
+
+    private static String toStoredUserName(final String userName)
+    {
+        return StringUtils.isBlank(userName) ? NO_USER_NAME : userName;
+    }
+
+    private static MimeType toMimeType(final String mimeType)
+    {
+        try
+        {
+            return new MimeType(mimeType);
+        }
+        catch (final MimeTypeParseException mtpe)
+        {
+            return Constants.DEFAULT_MIME_TYPE;
+        }
+    }
+
+    public DataSource getDataSource()
+    {
+        return dataSource;
+    }
+
+    public void setDataSource(final DataSource dataSource)
+    {
+        this.dataSource = dataSource;
+    }
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Size in bytes of the chunks result data is split into, defaults to {@link #DEFAULT_CHUNK_SIZE}.
+     */
+    public void setChunkSize(final int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    public String getBinaryColumnType()
+    {
+        return binaryColumnType;
+    }
+
+    /**
+     * SQL type of the chunk data column, defaults to {@link #DEFAULT_BINARY_COLUMN_TYPE} (use
+     * BYTEA for PostgreSQL).
+     */
+    public void setBinaryColumnType(final String binaryColumnType)
+    {
+        this.binaryColumnType = binaryColumnType;
+    }
+
+    public String getBooleanColumnType()
+    {
+        return booleanColumnType;
+    }
+
+    /**
+     * SQL type of the success column, defaults to {@link #DEFAULT_BOOLEAN_COLUMN_TYPE} (use
+     * NUMBER(1) for Oracle).
+     */
+    public void setBooleanColumnType(final String booleanColumnType)
+    {
+        this.booleanColumnType = booleanColumnType;
+    }
+}
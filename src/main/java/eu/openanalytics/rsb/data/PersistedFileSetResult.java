@@ -0,0 +1,74 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.GregorianCalendar;
+import java.util.UUID;
+
+import eu.openanalytics.rsb.Constants;
+
+/**
+ * A result made of several files, which result stores can take over as is with
+ * {@link SecureResultStore#storeFileSet(PersistedFileSetResult)}: its data is the ZIP archive of
+ * these files, which is only produced while being read.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class PersistedFileSetResult extends PersistedResult
+{
+    /**
+     * Length returned by {@link #getDataLength()}, as it is only known once the files are zipped.
+     */
+    public static final long UNKNOWN_DATA_LENGTH = -1L;
+
+    private final File[] files;
+
+    public PersistedFileSetResult(final String applicationName,
+                                  final String userName,
+                                  final UUID jobId,
+                                  final GregorianCalendar resultTime,
+                                  final boolean success,
+                                  final File[] files)
+    {
+        super(applicationName, userName, jobId, resultTime, success, Constants.ZIP_MIME_TYPE);
+        this.files = files;
+    }
+
+    public File[] getFiles()
+    {
+        return files;
+    }
+
+    @Override
+    public InputStream getData()
+    {
+        return new ZipFileSetInputStream(files);
+    }
+
+    @Override
+    public long getDataLength()
+    {
+        return UNKNOWN_DATA_LENGTH;
+    }
+}
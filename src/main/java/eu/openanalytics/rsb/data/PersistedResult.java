@@ -21,6 +21,7 @@
 
 package eu.openanalytics.rsb.data;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.GregorianCalendar;
@@ -98,5 +99,43 @@ public abstract class PersistedResult
 
     public abstract InputStream getData() throws IOException;
 
+    /**
+     * @return the length of the data or a negative value if it is only known once the data has been
+     *         read.
+     */
     public abstract long getDataLength() throws IOException;
+
+    /**
+     * Optional content encoding (as defined by HTTP, for example "gzip") the result data is stored
+     * with. {@link #getData()} and {@link #getDataLength()} always deal with the decoded data while
+     * {@link #getEncodedData()}, {@link #getEncodedDataLength()} and {@link #getDataFile()} deal
+     * with the data as stored.
+     * 
+     * @return null if the result data is stored as is.
+     */
+    public String getDataEncoding()
+    {
+        return null;
+    }
+
+    public InputStream getEncodedData() throws IOException
+    {
+        return getData();
+    }
+
+    public long getEncodedDataLength() throws IOException
+    {
+        return getDataLength();
+    }
+
+    /**
+     * Optionally exposes the file holding the result data, as stored, which allows serving a range
+     * of it without reading the data before the range.
+     * 
+     * @return null if the result data is not backed by a file.
+     */
+    public File getDataFile()
+    {
+        return null;
+    }
 }
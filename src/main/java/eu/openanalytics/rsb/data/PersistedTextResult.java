@@ -0,0 +1,96 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.GregorianCalendar;
+import java.util.UUID;
+
+import javax.activation.MimeType;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * A result whose data is text, which result stores can encode straight into their storage with
+ * {@link SecureResultStore#storeText(PersistedTextResult)} instead of going through a byte array.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class PersistedTextResult extends PersistedResult
+{
+    private final CharSequence text;
+    private final Charset charset;
+
+    public PersistedTextResult(final String applicationName,
+                               final String userName,
+                               final UUID jobId,
+                               final GregorianCalendar resultTime,
+                               final boolean success,
+                               final MimeType mimeType,
+                               final CharSequence text,
+                               final Charset charset)
+    {
+        super(applicationName, userName, jobId, resultTime, success, mimeType);
+        this.text = text;
+        this.charset = charset;
+    }
+
+    public CharSequence getText()
+    {
+        return text;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * @return the text, encoded incrementally while it is read.
+     */
+    @Override
+    public InputStream getData()
+    {
+        return new CharSequenceInputStream(text, charset);
+    }
+
+    /**
+     * Computes the encoded length of the text without keeping the encoded bytes around.
+     */
+    @Override
+    public long getDataLength() throws IOException
+    {
+        final InputStream data = getData();
+        try
+        {
+            return IOUtils.copyLarge(data, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(data);
+        }
+    }
+}
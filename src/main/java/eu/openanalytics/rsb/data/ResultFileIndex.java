@@ -0,0 +1,476 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.Util;
+
+/**
+ * In-memory index of result files, keyed by results directory (ie. application and optional user)
+ * and job ID, which allows looking up a single result without listing its directory and listing
+ * results, most recent first, without stat-ing each file.
+ * <p>
+ * Result files are either located directly in their results directory (flat layout) or in shard
+ * directories derived from their job ID (see {@link #getShardDirectory(File, UUID, int)}): both
+ * layouts are indexed so results remain reachable while being migrated from one to the other.
+ * <p>
+ * Directories are indexed when first accessed (or eagerly with {@link #load(File)}) and then kept
+ * in sync by {@link #put(File, UUID, File)} and {@link #remove(File, UUID)}, which also record the
+ * new modification time of the directory they change. Because result directories can be shared with
+ * other RSB nodes, a lookup miss triggers a re-scan of the directories where the result file could
+ * be, but only if their modification time has changed since they were last scanned or changed
+ * through the index.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+class ResultFileIndex
+{
+    /**
+     * Name of the sub-directory of a results directory under which shard directories are created.
+     */
+    static final String SHARDS_DIRECTORY_NAME = ".shards";
+
+    private static final int SHARD_NAME_LENGTH = 2;
+    private static final long FULL_REFRESH_INTERVAL_MILLIS = 10000L;
+
+    private static final Log LOGGER = LogFactory.getLog(ResultFileIndex.class);
+
+    static class IndexedResultFile
+    {
+        private final UUID jobId;
+        private final File file;
+        private final long resultTime;
+        private final boolean success;
+
+        IndexedResultFile(final UUID jobId, final File file)
+        {
+            this.jobId = jobId;
+            this.file = file;
+            this.resultTime = file.lastModified();
+            this.success = FileResultStore.isSuccessResultFile(file);
+        }
+
+        UUID getJobId()
+        {
+            return jobId;
+        }
+
+        File getFile()
+        {
+            return file;
+        }
+
+        long getResultTime()
+        {
+            return resultTime;
+        }
+
+        boolean isSuccess()
+        {
+            return success;
+        }
+    }
+
+    private static final Comparator<IndexedResultFile> MOST_RECENT_FIRST = new Comparator<IndexedResultFile>()
+    {
+        public int compare(final IndexedResultFile irf1, final IndexedResultFile irf2)
+        {
+            if (irf1.resultTime != irf2.resultTime)
+            {
+                return irf1.resultTime > irf2.resultTime ? -1 : 1;
+            }
+            return irf1.jobId.compareTo(irf2.jobId);
+        }
+    };
+
+    private static class DirectoryIndex
+    {
+        private final ConcurrentMap<UUID, IndexedResultFile> resultFiles = new ConcurrentHashMap<UUID, IndexedResultFile>();
+        private final NavigableSet<IndexedResultFile> orderedResultFiles = new ConcurrentSkipListSet<IndexedResultFile>(
+            MOST_RECENT_FIRST);
+        private boolean loaded;
+
+        // physical directories (results and shard directories) with their modification time when
+        // last scanned: only accessed while holding the lock of the directory index
+        private final Map<File, Long> scannedDirectories = new HashMap<File, Long>();
+        private long lastFullRefresh;
+
+        // mutations are synchronized so both views stay consistent, reads are lock-free
+        synchronized void put(final IndexedResultFile indexedResultFile)
+        {
+            final IndexedResultFile previous = resultFiles.put(indexedResultFile.jobId, indexedResultFile);
+            if (previous != null)
+            {
+                orderedResultFiles.remove(previous);
+            }
+            orderedResultFiles.add(indexedResultFile);
+        }
+
+        /**
+         * @return the removed result file or null if none was indexed for this job ID.
+         */
+        synchronized IndexedResultFile remove(final UUID jobId)
+        {
+            final IndexedResultFile previous = resultFiles.remove(jobId);
+            if (previous != null)
+            {
+                orderedResultFiles.remove(previous);
+            }
+            return previous;
+        }
+
+        synchronized boolean removeIfSame(final IndexedResultFile indexedResultFile)
+        {
+            if (resultFiles.remove(indexedResultFile.jobId, indexedResultFile))
+            {
+                orderedResultFiles.remove(indexedResultFile);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Records the modification time of a directory that has just been changed through the index
+         * so this change doesn't trigger a re-scan. Directories not scanned yet are left alone as
+         * they may hold files unknown to the index.
+         */
+        synchronized void recordChange(final File directory)
+        {
+            if (scannedDirectories.containsKey(directory))
+            {
+                scannedDirectories.put(directory, directory.lastModified());
+            }
+        }
+    }
+
+    private final ConcurrentMap<File, DirectoryIndex> directoryIndexes = new ConcurrentHashMap<File, DirectoryIndex>();
+    private final AtomicLong scanCount = new AtomicLong();
+
+    /**
+     * Computes the directory where the result file of a job is located for a particular sharding
+     * depth: each level of sharding uses the next two hexadecimal characters of the job ID, so a
+     * depth of 2 yields <code>.shards/ab/cd</code> for a job ID starting with <code>abcd</code>.
+     * 
+     * @param shardingDepth 0 for a flat layout.
+     */
+    static File getShardDirectory(final File resultsDirectory, final UUID jobId, final int shardingDepth)
+    {
+        if (shardingDepth == 0)
+        {
+            return resultsDirectory;
+        }
+
+        final String jobIdString = jobId.toString();
+        File shardDirectory = new File(resultsDirectory, SHARDS_DIRECTORY_NAME);
+        for (int level = 0; level < shardingDepth; level++)
+        {
+            shardDirectory = new File(shardDirectory, jobIdString.substring(level * SHARD_NAME_LENGTH,
+                (level + 1) * SHARD_NAME_LENGTH));
+        }
+        return shardDirectory;
+    }
+
+    /**
+     * @return null if no result file is indexed for this job ID.
+     */
+    File get(final File resultsDirectory, final UUID jobId)
+    {
+        final DirectoryIndex directoryIndex = getDirectoryIndex(resultsDirectory);
+
+        final IndexedResultFile indexedResultFile = directoryIndex.resultFiles.get(jobId);
+        if (indexedResultFile != null)
+        {
+            if (indexedResultFile.file.exists())
+            {
+                return indexedResultFile.file;
+            }
+
+            // deleted or moved behind our back
+            directoryIndex.removeIfSame(indexedResultFile);
+        }
+
+        // only the directories where the result file could be located, whatever the layout, are
+        // re-scanned
+        final List<File> candidateDirectories = new ArrayList<File>();
+        for (int shardingDepth = 0; shardingDepth <= Constants.MAX_RESULTS_SHARDING_DEPTH; shardingDepth++)
+        {
+            candidateDirectories.add(getShardDirectory(resultsDirectory, jobId, shardingDepth));
+        }
+
+        if (!refreshIfModified(resultsDirectory, directoryIndex, candidateDirectories))
+        {
+            return null;
+        }
+
+        final IndexedResultFile rescannedResultFile = directoryIndex.resultFiles.get(jobId);
+        return rescannedResultFile != null ? rescannedResultFile.file : null;
+    }
+
+    /**
+     * @return a live view of the indexed result files of a directory, most recent first.
+     */
+    Iterable<IndexedResultFile> list(final File resultsDirectory)
+    {
+        final DirectoryIndex directoryIndex = getDirectoryIndex(resultsDirectory);
+
+        synchronized (directoryIndex)
+        {
+            // checking all the shard directories is costly so it is not done on each call
+            final long now = System.currentTimeMillis();
+            if (now - directoryIndex.lastFullRefresh >= FULL_REFRESH_INTERVAL_MILLIS)
+            {
+                refreshIfModified(resultsDirectory, directoryIndex, new ArrayList<File>(
+                    directoryIndex.scannedDirectories.keySet()));
+                directoryIndex.lastFullRefresh = now;
+            }
+            else
+            {
+                refreshIfModified(resultsDirectory, directoryIndex, Collections.singleton(resultsDirectory));
+            }
+        }
+
+        return directoryIndex.orderedResultFiles;
+    }
+
+    /**
+     * Indexes a result file that has just been written.
+     */
+    void put(final File resultsDirectory, final UUID jobId, final File resultFile)
+    {
+        final DirectoryIndex directoryIndex = getDirectoryIndex(resultsDirectory);
+
+        synchronized (directoryIndex)
+        {
+            directoryIndex.put(new IndexedResultFile(jobId, resultFile));
+            directoryIndex.recordChange(resultFile.getParentFile());
+        }
+    }
+
+    /**
+     * Removes the indexed result file of a job, which has just been deleted.
+     */
+    boolean remove(final File resultsDirectory, final UUID jobId)
+    {
+        final DirectoryIndex directoryIndex = getDirectoryIndex(resultsDirectory);
+
+        synchronized (directoryIndex)
+        {
+            final IndexedResultFile removedResultFile = directoryIndex.remove(jobId);
+            if (removedResultFile == null)
+            {
+                return false;
+            }
+            directoryIndex.recordChange(removedResultFile.file.getParentFile());
+            return true;
+        }
+    }
+
+    /**
+     * Removes an indexed result file, which has just been deleted or moved, unless it has been
+     * replaced in the meantime.
+     */
+    void remove(final File resultsDirectory, final IndexedResultFile indexedResultFile)
+    {
+        final DirectoryIndex directoryIndex = getDirectoryIndex(resultsDirectory);
+
+        synchronized (directoryIndex)
+        {
+            if (directoryIndex.removeIfSame(indexedResultFile))
+            {
+                directoryIndex.recordChange(indexedResultFile.file.getParentFile());
+            }
+        }
+    }
+
+    // exposed for unit testing
+    long getScanCount()
+    {
+        return scanCount.get();
+    }
+
+    /**
+     * Eagerly indexes a results directory.
+     * 
+     * @return the number of result files found in the directory.
+     */
+    int load(final File resultsDirectory)
+    {
+        return getDirectoryIndex(resultsDirectory).resultFiles.size();
+    }
+
+    private DirectoryIndex getDirectoryIndex(final File resultsDirectory)
+    {
+        DirectoryIndex directoryIndex = directoryIndexes.get(resultsDirectory);
+
+        if (directoryIndex == null)
+        {
+            final DirectoryIndex newDirectoryIndex = new DirectoryIndex();
+            directoryIndex = directoryIndexes.putIfAbsent(resultsDirectory, newDirectoryIndex);
+            if (directoryIndex == null)
+            {
+                directoryIndex = newDirectoryIndex;
+            }
+        }
+
+        synchronized (directoryIndex)
+        {
+            if (!directoryIndex.loaded)
+            {
+                directoryIndex.lastFullRefresh = System.currentTimeMillis();
+                refreshIfModified(resultsDirectory, directoryIndex, Collections.singleton(resultsDirectory));
+                directoryIndex.loaded = true;
+            }
+        }
+
+        return directoryIndex;
+    }
+
+    private boolean refreshIfModified(final File resultsDirectory,
+                                      final DirectoryIndex directoryIndex,
+                                      final Collection<File> directories)
+    {
+        synchronized (directoryIndex)
+        {
+            final Set<File> rescannedDirectories = new HashSet<File>();
+            final Map<UUID, File> scannedResultFiles = new HashMap<UUID, File>();
+
+            for (final File directory : directories)
+            {
+                final Long lastScanned = directoryIndex.scannedDirectories.get(directory);
+                final long lastModified = directory.lastModified();
+
+                if ((lastScanned == null ? lastModified == 0L : lastScanned == lastModified)
+                    || (rescannedDirectories.contains(directory)))
+                {
+                    continue;
+                }
+
+                scan(resultsDirectory, directory, directoryIndex, rescannedDirectories, scannedResultFiles);
+            }
+
+            if (rescannedDirectories.isEmpty())
+            {
+                return false;
+            }
+
+            for (final Entry<UUID, File> scannedResultFile : scannedResultFiles.entrySet())
+            {
+                final IndexedResultFile indexedResultFile = directoryIndex.resultFiles.get(scannedResultFile.getKey());
+                if ((indexedResultFile == null)
+                    || (!indexedResultFile.file.equals(scannedResultFile.getValue())))
+                {
+                    directoryIndex.put(new IndexedResultFile(scannedResultFile.getKey(),
+                        scannedResultFile.getValue()));
+                }
+            }
+
+            // only drop stale entries of the re-scanned directories whose file is really gone, as
+            // they may have been put concurrently
+            final Iterator<IndexedResultFile> i = directoryIndex.resultFiles.values().iterator();
+            while (i.hasNext())
+            {
+                final IndexedResultFile indexedResultFile = i.next();
+                if ((!scannedResultFiles.containsKey(indexedResultFile.jobId))
+                    && (rescannedDirectories.contains(indexedResultFile.file.getParentFile()))
+                    && (!indexedResultFile.file.exists()))
+                {
+                    i.remove();
+                    directoryIndex.orderedResultFiles.remove(indexedResultFile);
+                }
+            }
+
+            return true;
+        }
+    }
+
+    // must be called while holding the lock of the directory index
+    private void scan(final File resultsDirectory,
+                      final File directory,
+                      final DirectoryIndex directoryIndex,
+                      final Set<File> rescannedDirectories,
+                      final Map<UUID, File> scannedResultFiles)
+    {
+        rescannedDirectories.add(directory);
+        scanCount.incrementAndGet();
+
+        // read the modification time before listing so concurrent changes trigger a later re-scan
+        final long lastModified = directory.lastModified();
+        final File[] files = directory.listFiles();
+
+        if (files == null)
+        {
+            directoryIndex.scannedDirectories.remove(directory);
+            return;
+        }
+
+        directoryIndex.scannedDirectories.put(directory, lastModified);
+        final boolean shardDirectory = !directory.equals(resultsDirectory);
+
+        for (final File file : files)
+        {
+            if ((file.isDirectory()) && (!FileResultStore.isFileSetResultFile(file)))
+            {
+                // only descend into shard directories not scanned yet, known ones are re-scanned
+                // when their own modification time changes (other hidden directories hold file
+                // set results being stored)
+                final boolean shardSubDirectory = shardDirectory ? !file.getName().startsWith(".")
+                                                                : SHARDS_DIRECTORY_NAME.equals(file.getName());
+                if ((shardSubDirectory) && (!directoryIndex.scannedDirectories.containsKey(file)))
+                {
+                    scan(resultsDirectory, file, directoryIndex, rescannedDirectories, scannedResultFiles);
+                }
+                continue;
+            }
+
+            final UUID jobId = Util.safeUuidFromString(StringUtils.substringBefore(file.getName(), "."));
+
+            // file set results are directories
+            if ((jobId != null) && (scannedResultFiles.put(jobId, file) != null))
+            {
+                LOGGER.warn("Found several result files for job Id: " + jobId + " in: " + resultsDirectory);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Defines a page of results to retrieve from a result store, results being always ordered from the
+ * most recent to the oldest.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ResultQuery
+{
+    public static final int NO_LIMIT = -1;
+
+    public static final ResultQuery ALL = new ResultQuery(0, NO_LIMIT, null, null);
+
+    private static final Comparator<PersistedResult> MOST_RECENT_FIRST = new Comparator<PersistedResult>()
+    {
+        public int compare(final PersistedResult pr1, final PersistedResult pr2)
+        {
+            return pr2.getResultTime().compareTo(pr1.getResultTime());
+        }
+    };
+
+    private final int offset;
+    private final int limit;
+    private final Long since;
+    private final Boolean success;
+
+    /**
+     * @param offset number of matching results to skip.
+     * @param limit maximum number of results to return or {@link #NO_LIMIT}.
+     * @param since optional timestamp (in milliseconds) results must be more recent than.
+     * @param success optional success status results must have.
+     */
+    public ResultQuery(final int offset, final int limit, final Long since, final Boolean success)
+    {
+        Validate.isTrue(offset >= 0, "Offset can't be negative");
+        Validate.isTrue((limit >= 0) || (limit == NO_LIMIT), "Invalid limit: " + limit);
+
+        this.offset = offset;
+        this.limit = limit;
+        this.since = since;
+        this.success = success;
+    }
+
+    @Override
+    public String toString()
+    {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public Long getSince()
+    {
+        return since;
+    }
+
+    public Boolean getSuccess()
+    {
+        return success;
+    }
+
+    public boolean isLimitReached(final int resultCount)
+    {
+        return (limit != NO_LIMIT) && (resultCount >= limit);
+    }
+
+    /**
+     * Because results are ordered from the most recent, a result that is too old means that all the
+     * subsequent ones will be too.
+     */
+    public boolean isTooOld(final long resultTime)
+    {
+        return (since != null) && (resultTime <= since);
+    }
+
+    public boolean matches(final long resultTime, final boolean resultSuccess)
+    {
+        return (!isTooOld(resultTime)) && ((success == null) || (success == resultSuccess));
+    }
+
+    /**
+     * Applies this query to a collection of results, in whatever order they are.
+     */
+    public List<PersistedResult> apply(final Collection<PersistedResult> results)
+    {
+        final List<PersistedResult> orderedResults = new ArrayList<PersistedResult>(results);
+        Collections.sort(orderedResults, MOST_RECENT_FIRST);
+
+        final List<PersistedResult> page = new ArrayList<PersistedResult>();
+        int skipped = 0;
+
+        for (final PersistedResult result : orderedResults)
+        {
+            final long resultTime = result.getResultTime().getTimeInMillis();
+
+            if ((isLimitReached(page.size())) || (isTooOld(resultTime)))
+            {
+                break;
+            }
+
+            if (!matches(resultTime, result.isSuccess()))
+            {
+                continue;
+            }
+
+            if (skipped < offset)
+            {
+                skipped++;
+                continue;
+            }
+
+            page.add(result);
+        }
+
+        return page;
+    }
+}
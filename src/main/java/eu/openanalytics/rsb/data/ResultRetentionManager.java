@@ -0,0 +1,242 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
+import eu.openanalytics.rsb.data.ResultFileIndex.IndexedResultFile;
+
+/**
+ * Enforces the result retention policies of the applications: results exceeding their
+ * application's limits are deleted, or archived, oldest first. This runs in the background and
+ * processes expired results in small batches, pausing between them, so the results file system is
+ * not monopolized and storing new results is never blocked. Progress is exposed over JMX.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ResultRetentionManager implements Runnable
+{
+    static final long RETENTION_PERIOD_MILLIS = 5L * 60L * 1000L;
+
+    private static final int BATCH_SIZE = 100;
+    private static final long BATCH_PAUSE_MILLIS = 250L;
+
+    private static final Log LOGGER = LogFactory.getLog(ResultRetentionManager.class);
+
+    private final FileResultStore fileResultStore;
+    private final Configuration configuration;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger pendingResults = new AtomicInteger();
+    private final AtomicLong deletedResults = new AtomicLong();
+    private final AtomicLong archivedResults = new AtomicLong();
+    private final AtomicLong failedResults = new AtomicLong();
+    private volatile long lastRunStartTime;
+    private volatile long lastRunDuration;
+
+    ResultRetentionManager(final FileResultStore fileResultStore, final Configuration configuration)
+    {
+        this.fileResultStore = fileResultStore;
+        this.configuration = configuration;
+    }
+
+    public void run()
+    {
+        enforceRetentionPolicies();
+    }
+
+    /**
+     * Expires the results exceeding their retention policy, unless a run is already in progress.
+     */
+    public void enforceRetentionPolicies()
+    {
+        final Map<String, ResultRetentionConfiguration> resultRetentionConfiguration = configuration.getResultRetentionConfiguration();
+
+        if ((resultRetentionConfiguration.isEmpty()) || (!running.compareAndSet(false, true)))
+        {
+            return;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        lastRunStartTime = startTime;
+
+        try
+        {
+            for (final File resultsDirectory : fileResultStore.getAllResultsDirectories())
+            {
+                final String applicationName = fileResultStore.getApplicationName(resultsDirectory);
+                final ResultRetentionConfiguration retention = resultRetentionConfiguration.get(applicationName);
+
+                if (retention != null)
+                {
+                    enforceRetentionPolicy(resultsDirectory, retention, startTime);
+                }
+            }
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (final RuntimeException re)
+        {
+            LOGGER.error("Failed to enforce result retention policies", re);
+        }
+        finally
+        {
+            lastRunDuration = System.currentTimeMillis() - startTime;
+            pendingResults.set(0);
+            running.set(false);
+        }
+    }
+
+    private void enforceRetentionPolicy(final File resultsDirectory,
+                                        final ResultRetentionConfiguration retention,
+                                        final long now) throws InterruptedException
+    {
+        final List<IndexedResultFile> expiredResultFiles = new ArrayList<IndexedResultFile>();
+        int resultCount = 0;
+        long resultBytes = 0L;
+
+        // results are listed most recent first so the ones exceeding the limits are the oldest
+        for (final IndexedResultFile indexedResultFile : fileResultStore.listResultFiles(resultsDirectory))
+        {
+            resultCount++;
+            if (retention.getMaxBytes() > 0L)
+            {
+                resultBytes += getSize(indexedResultFile.getFile());
+            }
+
+            final long resultAge = now - indexedResultFile.getResultTime();
+
+            if (((retention.getTimeToLive() > 0L) && (resultAge > retention.getTimeToLive()))
+                || ((retention.getMaxCount() > 0) && (resultCount > retention.getMaxCount()))
+                || ((retention.getMaxBytes() > 0L) && (resultBytes > retention.getMaxBytes())))
+            {
+                expiredResultFiles.add(indexedResultFile);
+            }
+        }
+
+        if (expiredResultFiles.isEmpty())
+        {
+            return;
+        }
+
+        pendingResults.addAndGet(expiredResultFiles.size());
+        int batchCount = 0;
+
+        for (final IndexedResultFile expiredResultFile : expiredResultFiles)
+        {
+            if (batchCount == BATCH_SIZE)
+            {
+                Thread.sleep(BATCH_PAUSE_MILLIS);
+                batchCount = 0;
+            }
+
+            if (!fileResultStore.expireResultFile(resultsDirectory, expiredResultFile,
+                retention.getArchiveDirectory()))
+            {
+                failedResults.incrementAndGet();
+            }
+            else if (retention.getArchiveDirectory() != null)
+            {
+                archivedResults.incrementAndGet();
+            }
+            else
+            {
+                deletedResults.incrementAndGet();
+            }
+
+            pendingResults.decrementAndGet();
+            batchCount++;
+        }
+
+        LOGGER.info(String.format("Expired %d results from: %s", expiredResultFiles.size(), resultsDirectory));
+    }
+
+    private static long getSize(final File resultFile)
+    {
+        try
+        {
+            // file set results are directories
+            return FileUtils.sizeOf(resultFile);
+        }
+        catch (final IllegalArgumentException iae)
+        {
+            // deleted concurrently
+            return 0L;
+        }
+    }
+
+    public boolean isRunning()
+    {
+        return running.get();
+    }
+
+    /**
+     * Number of expired results still to be processed by the current run.
+     */
+    public int getPendingResults()
+    {
+        return pendingResults.get();
+    }
+
+    public long getDeletedResults()
+    {
+        return deletedResults.get();
+    }
+
+    public long getArchivedResults()
+    {
+        return archivedResults.get();
+    }
+
+    public long getFailedResults()
+    {
+        return failedResults.get();
+    }
+
+    public Date getLastRunStartTime()
+    {
+        return lastRunStartTime == 0L ? null : new Date(lastRunStartTime);
+    }
+
+    /**
+     * Duration of the last completed run, in milliseconds.
+     */
+    public long getLastRunDuration()
+    {
+        return lastRunDuration;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.IOException;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * Exposes the layout of the results directories over JMX, allowing to re-home existing result
+ * files after the sharding depth has been changed in the configuration.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ResultsLayoutManager
+{
+    private final FileResultStore fileResultStore;
+    private final Configuration configuration;
+
+    ResultsLayoutManager(final FileResultStore fileResultStore, final Configuration configuration)
+    {
+        this.fileResultStore = fileResultStore;
+        this.configuration = configuration;
+    }
+
+    public int getResultsShardingDepth()
+    {
+        return configuration.getResultsShardingDepth();
+    }
+
+    /**
+     * Moves the existing result files to the location expected by the configured sharding depth.
+     * 
+     * @return the number of moved result files.
+     */
+    public int migrateResultFiles() throws IOException
+    {
+        return fileResultStore.migrateResultFiles();
+    }
+}
@@ -32,6 +32,18 @@ import java.util.UUID;
  */
 public interface SecureResultStore extends ResultStore
 {
+    /**
+     * Stores a text result, encoding its text with its charset straight into the store so no
+     * intermediate byte array of the whole result is needed.
+     */
+    void storeText(PersistedTextResult result) throws IOException;
+
+    /**
+     * Stores a result made of several files, which the store may take over (ie. move) instead of
+     * copying: the files must not be used anymore by the caller once stored.
+     */
+    void storeFileSet(PersistedFileSetResult result) throws IOException;
+
     boolean deleteByApplicationNameAndJobId(String applicationName, String userName, UUID jobId)
         throws IOException;
 
@@ -40,6 +52,14 @@ public interface SecureResultStore extends ResultStore
      */
     Collection<PersistedResult> findByApplicationName(String applicationName, String userName);
 
+    /**
+     * @return the page of results matching the query, most recent first, or an empty collection if
+     *         no result was found.
+     */
+    Collection<PersistedResult> findByApplicationName(String applicationName,
+                                                      String userName,
+                                                      ResultQuery resultQuery);
+
     /**
      * @return null if no result was found.
      */
@@ -67,6 +67,22 @@ public class SecureResultStoreAdapter implements SecureResultStore
         resultStore.store(result);
     }
 
+    /**
+     * Adapted result stores only accept streamed data, into which the text is encoded on the fly.
+     */
+    public void storeText(final PersistedTextResult result) throws IOException
+    {
+        store(result);
+    }
+
+    /**
+     * Adapted result stores only accept streamed data, into which the files are zipped on the fly.
+     */
+    public void storeFileSet(final PersistedFileSetResult result) throws IOException
+    {
+        store(result);
+    }
+
     public boolean deleteByApplicationNameAndJobId(final String applicationName,
                                                    final String userName,
                                                    final UUID jobId) throws IOException
@@ -88,6 +104,16 @@ public class SecureResultStoreAdapter implements SecureResultStore
         return findByApplicationName(applicationName);
     }
 
+    /**
+     * Adapted result stores do not support queries, so the query is applied to all their results.
+     */
+    public Collection<PersistedResult> findByApplicationName(final String applicationName,
+                                                             final String userName,
+                                                             final ResultQuery resultQuery)
+    {
+        return resultQuery.apply(findByApplicationName(applicationName, userName));
+    }
+
     public PersistedResult findByApplicationNameAndJobId(final String applicationName,
                                                          final String userName,
                                                          final UUID jobId)
@@ -0,0 +1,168 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Zips a set of files while it is read, so the ZIP archive of a file set can be streamed without
+ * ever being fully written to disk or memory: only the compressed output of the last chunk of
+ * file data read is buffered.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+class ZipFileSetInputStream extends InputStream
+{
+    private static final int CHUNK_SIZE = 8192;
+
+    // exposes its internal buffer so it can be read from without copying it
+    private static class ZipBuffer extends ByteArrayOutputStream
+    {
+        private int position;
+
+        int read(final byte[] b, final int off, final int len)
+        {
+            final int read = Math.min(len, count - position);
+            System.arraycopy(buf, position, b, off, read);
+            position += read;
+            if (position == count)
+            {
+                clear();
+            }
+            return read;
+        }
+
+        void clear()
+        {
+            reset();
+            position = 0;
+        }
+
+        boolean isEmpty()
+        {
+            return count == position;
+        }
+    }
+
+    // gives access to its deflater so it can be released even if the archive is not finished
+    private static class ZipOutput extends ZipOutputStream
+    {
+        ZipOutput(final OutputStream out)
+        {
+            super(out);
+        }
+
+        void release()
+        {
+            def.end();
+        }
+    }
+
+    private final File[] files;
+    private final ZipBuffer zipBuffer = new ZipBuffer();
+    private final ZipOutput zipOutput = new ZipOutput(zipBuffer);
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    private int nextFileIndex;
+    private InputStream currentFile;
+    private boolean finished;
+
+    ZipFileSetInputStream(final File[] files)
+    {
+        this.files = files;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        while ((zipBuffer.isEmpty()) && (!finished))
+        {
+            zipNextChunk();
+        }
+
+        return zipBuffer.isEmpty() ? -1 : zipBuffer.read(b, off, len);
+    }
+
+    /**
+     * Closes the file being zipped and releases the native memory of the deflater right away, as
+     * downloads can be aborted before the archive is finished.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        IOUtils.closeQuietly(currentFile);
+        currentFile = null;
+        finished = true;
+        zipBuffer.clear();
+        zipOutput.release();
+    }
+
+    private void zipNextChunk() throws IOException
+    {
+        if (currentFile == null)
+        {
+            if (nextFileIndex == files.length)
+            {
+                zipOutput.finish();
+                finished = true;
+                return;
+            }
+
+            final File file = files[nextFileIndex++];
+            zipOutput.putNextEntry(new ZipEntry(file.getName()));
+            currentFile = new FileInputStream(file);
+        }
+
+        final int read = currentFile.read(chunk);
+        if (read == -1)
+        {
+            IOUtils.closeQuietly(currentFile);
+            currentFile = null;
+            zipOutput.closeEntry();
+        }
+        else
+        {
+            zipOutput.write(chunk, 0, read);
+        }
+    }
+}
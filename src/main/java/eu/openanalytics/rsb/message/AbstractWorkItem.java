@@ -65,6 +65,7 @@ public abstract class AbstractWorkItem implements WorkItem, Serializable
     private final UUID jobId;
     private final GregorianCalendar submissionTime;
     private final Map<String, Serializable> meta;
+    private String replyTo;
 
     public AbstractWorkItem(final Source source,
                             final String applicationName,
@@ -135,6 +136,20 @@ public abstract class AbstractWorkItem implements WorkItem, Serializable
         return meta;
     }
 
+    /**
+     * @return the name of the queue where the result of this work item is waited for, or null if
+     *         nobody waits for it synchronously.
+     */
+    public String getReplyTo()
+    {
+        return replyTo;
+    }
+
+    public void setReplyTo(final String replyTo)
+    {
+        this.replyTo = replyTo;
+    }
+
     public String getErrorMessageId()
     {
         return getSource().errorMessageId;
@@ -0,0 +1,117 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.io.IOException;
+
+import javax.annotation.Resource;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.data.BlobStore;
+
+/**
+ * Applies the claim check pattern to multi-files jobs and results: when a claim check directory is
+ * configured, their files are checked in the {@link BlobStore} before they are sent, so messages
+ * only carry references to them. Received results are checked out so their consumers get local
+ * files, while received jobs are left checked in, the job processor streaming their files straight
+ * from the store. Work items are then encoded with the {@link WorkItemMessageConverter}.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("messageConverter")
+public class ClaimCheckMessageConverter implements MessageConverter
+{
+    private final MessageConverter delegate = new WorkItemMessageConverter();
+
+    @Resource
+    private Configuration configuration;
+
+    @Resource
+    private BlobStore blobStore;
+
+    // exposed for unit testing
+    void setConfiguration(final Configuration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    // exposed for unit testing
+    void setBlobStore(final BlobStore blobStore)
+    {
+        this.blobStore = blobStore;
+    }
+
+    public Message toMessage(final Object object, final Session session)
+        throws JMSException, MessageConversionException
+    {
+        if (configuration.getClaimCheckDirectory() != null)
+        {
+            checkIn(object);
+        }
+        return delegate.toMessage(object, session);
+    }
+
+    public Object fromMessage(final Message message) throws JMSException, MessageConversionException
+    {
+        final Object object = delegate.fromMessage(message);
+
+        if ((object instanceof MultiFilesResult) && (((MultiFilesResult) object).isCheckedIn()))
+        {
+            try
+            {
+                ((MultiFilesResult) object).checkOut(blobStore);
+            }
+            catch (final IOException ioe)
+            {
+                throw new MessageConversionException("Failed to check out: " + object, ioe);
+            }
+        }
+
+        return object;
+    }
+
+    private void checkIn(final Object object)
+    {
+        try
+        {
+            if ((object instanceof MultiFilesJob) && (!((MultiFilesJob) object).isCheckedIn()))
+            {
+                ((MultiFilesJob) object).checkIn(blobStore);
+            }
+            else if ((object instanceof MultiFilesResult) && (!((MultiFilesResult) object).isCheckedIn()))
+            {
+                ((MultiFilesResult) object).checkIn(blobStore);
+            }
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to check in: " + object, ioe);
+        }
+    }
+}
@@ -21,6 +21,13 @@
 
 package eu.openanalytics.rsb.message;
 
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -32,9 +39,14 @@ import org.springframework.stereotype.Component;
 
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.component.AbstractComponent;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
 
 /**
  * A JMS-backed a Job and Result message dispatcher.
+ * <p>
+ * Results of synchronous jobs are sent to the reply queue of the node, which is consumed by
+ * {@link #handleReply(AbstractResult)}: each result is handed over to the thread waiting for it in
+ * {@link #process(AbstractJob)} via the job ID, used as correlation ID.
  * 
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
  */
@@ -57,13 +69,19 @@ public class JmsMessageDispatcher extends AbstractComponent implements MessageDi
                 workItem.getApplicationName());
             message.setStringProperty(Constants.JOB_ID_MESSAGE_HEADER, workItem.getJobId().toString());
             message.setJMSPriority(workItem.getPriority());
+            message.setJMSCorrelationID(workItem.getJobId().toString());
             return message;
         }
     }
 
+    // each node consumes its own reply queue, as nodes can share a broker
+    static final String REPLY_QUEUE_NAME_PREFIX = "r.replies.";
+
     @Resource
     private JmsTemplate jmsTemplate;
 
+    private final ConcurrentMap<UUID, BlockingQueue<AbstractResult<?>>> pendingReplies = new ConcurrentHashMap<UUID, BlockingQueue<AbstractResult<?>>>();
+
     // exposed for unit tests
     void setJmsTemplate(final JmsTemplate jmsTemplate)
     {
@@ -78,22 +96,72 @@ public class JmsMessageDispatcher extends AbstractComponent implements MessageDi
 
     public void dispatch(final AbstractResult<?> result)
     {
-        jmsTemplate.convertAndSend(getResultQueueName(result), result, new WorkItemMessagePostProcessor(
-            result));
+        // synchronous jobs are waited for on the node that dispatched them
+        String queueName = getResultQueueName(result);
+        if (result.getSource() == Source.SOAP)
+        {
+            // jobs dispatched before reply queues were carried along are waited for on this node
+            queueName = result.getReplyTo() != null ? result.getReplyTo() : getReplyQueueName();
+        }
+
+        jmsTemplate.convertAndSend(queueName, result, new WorkItemMessagePostProcessor(result));
     }
 
     @SuppressWarnings("unchecked")
     public <T extends AbstractResult<?>> T process(final AbstractJob job)
     {
-        dispatch(job);
-        final Object result = jmsTemplate.receiveSelectedAndConvert(getResultQueueName(job),
-            Constants.JOB_ID_MESSAGE_HEADER + "='" + job.getJobId().toString() + "'");
-        return (T) result;
+        final UUID jobId = job.getJobId();
+        final BlockingQueue<AbstractResult<?>> reply = new ArrayBlockingQueue<AbstractResult<?>>(1);
+        // registered before dispatching so a fast reply can't be missed
+        pendingReplies.put(jobId, reply);
+        job.setReplyTo(getReplyQueueName());
+
+        try
+        {
+            dispatch(job);
+            return (T) reply.poll(getConfiguration().getJobTimeOut(), TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally
+        {
+            pendingReplies.remove(jobId);
+        }
+    }
+
+    public void handleReply(final AbstractResult<?> result)
+    {
+        final BlockingQueue<AbstractResult<?>> reply = pendingReplies.get(result.getJobId());
+
+        if ((reply == null) || (!reply.offer(result)))
+        {
+            getLogger().warn(
+                String.format("Dropping result of job %s for %s: nobody is waiting for it anymore",
+                    result.getJobId(), result.getApplicationName()));
+            result.destroy();
+        }
+    }
+
+    /**
+     * @return the name of the queue where this node receives the results of synchronous jobs, which
+     *         must match the destination of the reply listener in the Spring configuration.
+     */
+    String getReplyQueueName()
+    {
+        return REPLY_QUEUE_NAME_PREFIX + getConfiguration().getNodeName();
     }
 
     private static String getJobQueueName(final AbstractWorkItem work)
     {
-        return "r.jobs." + work.getApplicationName();
+        return getJobQueueName(work.getApplicationName());
+    }
+
+    static String getJobQueueName(final String applicationName)
+    {
+        return "r.jobs." + applicationName;
     }
 
     private static String getResultQueueName(final AbstractWorkItem work)
@@ -0,0 +1,281 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.jms.ConnectionFactory;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.adapter.MessageListenerAdapter;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jmx.export.MBeanExportOperations;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.component.AbstractComponent;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerPoolConfiguration;
+
+/**
+ * Creates the listener containers that feed jobs to the job processor: one per configured job
+ * worker pool, consuming the queue of its application with its own concurrency range and prefetch,
+ * and a global one consuming the jobs of all the other applications, as well as the jobs that the
+ * pools don't select. Like the listener containers declared in the Spring configuration, they only
+ * start consuming once the application context has been refreshed.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("jobListenerContainers")
+public class JobListenerContainers extends AbstractComponent implements SmartLifecycle
+{
+    static final String GLOBAL_JOB_QUEUES = "r.jobs.>";
+
+    private static final String PROCESS_METHOD_NAME = "process";
+
+    @Resource(name = "amqConnectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Resource(name = "messageConverter")
+    private MessageConverter messageConverter;
+
+    // only invoked reflectively by the listener adapters
+    @Resource(name = "jobProcessor")
+    private Object jobProcessor;
+
+    @Resource
+    private MBeanExportOperations mbeanExportOperations;
+
+    private final Map<String, DefaultMessageListenerContainer> applicationContainers = new LinkedHashMap<String, DefaultMessageListenerContainer>();
+    private DefaultMessageListenerContainer globalContainer;
+
+    // exposed for unit testing
+    void setConnectionFactory(final ConnectionFactory connectionFactory)
+    {
+        this.connectionFactory = connectionFactory;
+    }
+
+    // exposed for unit testing
+    void setJobProcessor(final Object jobProcessor)
+    {
+        this.jobProcessor = jobProcessor;
+    }
+
+    @PostConstruct
+    public void initializeContainers() throws Exception
+    {
+        createContainers();
+
+        initializeContainer(globalContainer, Constants.GLOBAL_JOB_MESSAGE_LISTENER_OBJECT_NAME);
+
+        for (final Entry<String, DefaultMessageListenerContainer> container : applicationContainers.entrySet())
+        {
+            initializeContainer(container.getValue(),
+                Constants.APPLICATION_JOB_MESSAGE_LISTENER_OBJECT_NAME_PREFIX + container.getKey());
+        }
+    }
+
+    @PreDestroy
+    public void shutdownContainers()
+    {
+        for (final DefaultMessageListenerContainer container : getContainers())
+        {
+            container.shutdown();
+        }
+    }
+
+    public void start()
+    {
+        for (final DefaultMessageListenerContainer container : getContainers())
+        {
+            container.start();
+            getLogger().info("Started job listener container on: " + container.getDestinationName()
+                             + ", with selector: " + container.getMessageSelector());
+        }
+    }
+
+    public void stop()
+    {
+        for (final DefaultMessageListenerContainer container : getContainers())
+        {
+            container.stop();
+        }
+    }
+
+    public void stop(final Runnable callback)
+    {
+        stop();
+        callback.run();
+    }
+
+    public boolean isRunning()
+    {
+        return (globalContainer != null) && (globalContainer.isRunning());
+    }
+
+    public boolean isAutoStartup()
+    {
+        return true;
+    }
+
+    public int getPhase()
+    {
+        // same phase as the listener containers declared in the Spring configuration
+        return Integer.MAX_VALUE;
+    }
+
+    public DefaultMessageListenerContainer getGlobalContainer()
+    {
+        return globalContainer;
+    }
+
+    /**
+     * @return the containers of the job worker pools, keyed by application name.
+     */
+    public Map<String, DefaultMessageListenerContainer> getApplicationContainers()
+    {
+        return Collections.unmodifiableMap(applicationContainers);
+    }
+
+    // exposed for unit testing
+    void createContainers()
+    {
+        final Map<String, JobWorkerPoolConfiguration> jobWorkerPools = getConfiguration().getJobWorkerPools();
+
+        globalContainer = newContainer("rsb-global-job-worker-", GLOBAL_JOB_QUEUES,
+            getGlobalSelector(jobWorkerPools), 1,
+            getConfiguration().getNumberOfConcurrentJobWorkersPerQueue());
+
+        for (final Entry<String, JobWorkerPoolConfiguration> jobWorkerPool : jobWorkerPools.entrySet())
+        {
+            final String applicationName = jobWorkerPool.getKey();
+            final JobWorkerPoolConfiguration pool = jobWorkerPool.getValue();
+
+            String destinationName = JmsMessageDispatcher.getJobQueueName(applicationName);
+            if (pool.getPrefetch() > 0)
+            {
+                // overrides the prefetch of the connection factory for this pool's consumers only
+                destinationName += "?consumer.prefetchSize=" + pool.getPrefetch();
+            }
+
+            applicationContainers.put(applicationName, newContainer(
+                "rsb-" + applicationName + "-job-worker-", destinationName,
+                StringUtils.trimToNull(pool.getSelector()), pool.getMinConcurrency(),
+                Math.max(pool.getMinConcurrency(), pool.getMaxConcurrency())));
+        }
+    }
+
+    private DefaultMessageListenerContainer newContainer(final String name,
+                                                         final String destinationName,
+                                                         final String selector,
+                                                         final int minConcurrency,
+                                                         final int maxConcurrency)
+    {
+        final MessageListenerAdapter messageListener = new MessageListenerAdapter(jobProcessor);
+        messageListener.setDefaultListenerMethod(PROCESS_METHOD_NAME);
+        messageListener.setMessageConverter(messageConverter);
+
+        final DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+        container.setBeanName(name);
+        container.setConnectionFactory(connectionFactory);
+        container.setSessionTransacted(true);
+        container.setDestinationName(destinationName);
+        container.setMessageSelector(selector);
+        container.setConcurrentConsumers(minConcurrency);
+        container.setMaxConcurrentConsumers(maxConcurrency);
+        container.setMessageListener(messageListener);
+        return container;
+    }
+
+    private void initializeContainer(final DefaultMessageListenerContainer container, final String objectName)
+    {
+        container.afterPropertiesSet();
+
+        try
+        {
+            mbeanExportOperations.registerManagedResource(container, new ObjectName(objectName));
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to register job listener container MBean: " + objectName, e);
+        }
+    }
+
+    private List<DefaultMessageListenerContainer> getContainers()
+    {
+        final List<DefaultMessageListenerContainer> containers = new ArrayList<DefaultMessageListenerContainer>();
+        if (globalContainer != null)
+        {
+            containers.add(globalContainer);
+        }
+        containers.addAll(applicationContainers.values());
+        return containers;
+    }
+
+    /**
+     * @return a selector excluding the jobs of the applications that have their own worker pool,
+     *         except the jobs that the pool of their application doesn't select, or null if there are
+     *         no such applications.
+     */
+    static String getGlobalSelector(final Map<String, JobWorkerPoolConfiguration> jobWorkerPools)
+    {
+        final StringBuilder excludedApplicationNames = new StringBuilder();
+        final StringBuilder unselectedJobs = new StringBuilder();
+
+        for (final Entry<String, JobWorkerPoolConfiguration> jobWorkerPool : jobWorkerPools.entrySet())
+        {
+            final String quotedApplicationName = "'" + jobWorkerPool.getKey() + "'";
+            excludedApplicationNames.append(excludedApplicationNames.length() == 0 ? "" : ",").append(
+                quotedApplicationName);
+
+            final String poolSelector = StringUtils.trimToNull(jobWorkerPool.getValue().getSelector());
+            if (poolSelector != null)
+            {
+                unselectedJobs.append(" OR (")
+                    .append(Constants.APPLICATION_NAME_MESSAGE_HEADER)
+                    .append(" = ")
+                    .append(quotedApplicationName)
+                    .append(" AND NOT (")
+                    .append(poolSelector)
+                    .append("))");
+            }
+        }
+
+        if (excludedApplicationNames.length() == 0)
+        {
+            return null;
+        }
+
+        return Constants.APPLICATION_NAME_MESSAGE_HEADER + " NOT IN (" + excludedApplicationNames + ")"
+               + unselectedJobs;
+    }
+}
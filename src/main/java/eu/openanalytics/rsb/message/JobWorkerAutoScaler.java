@@ -0,0 +1,405 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.management.ObjectName;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jmx.export.MBeanExportOperations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.component.AbstractComponent;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerAutoScalingConfiguration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerPoolConfiguration;
+import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
+import eu.openanalytics.rsb.rservi.RServiLoadTracker;
+
+/**
+ * Periodically adjusts the number of job workers of each job listener container to the number of
+ * jobs pending in its queues, the time jobs have recently taken to process and the capacity left
+ * in the RServi client pool: workers are added at once when jobs are waiting and RServi clients are
+ * available, and removed one at a time when they are not needed anymore. The containers don't
+ * scale by themselves anymore once the auto scaler has taken a decision for them. Decisions are
+ * exposed over JMX.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("jobWorkerAutoScaler")
+public class JobWorkerAutoScaler extends AbstractComponent
+{
+    static final long DEFAULT_PERIOD_MILLIS = 10000L;
+
+    private static final String GLOBAL_CONTAINER_NAME = "global";
+
+    static class Decision
+    {
+        final int concurrency;
+        final String reason;
+
+        Decision(final int concurrency, final String reason)
+        {
+            this.concurrency = concurrency;
+            this.reason = reason;
+        }
+    }
+
+    @Resource
+    private JobListenerContainers jobListenerContainers;
+
+    @Resource(name = "amqBroker")
+    private BrokerService brokerService;
+
+    @Resource
+    private RServiInstanceProvider rServiInstanceProvider;
+
+    @Resource
+    private RServiLoadTracker rServiLoadTracker;
+
+    @Resource
+    private TaskScheduler taskScheduler;
+
+    @Resource
+    private MBeanExportOperations mbeanExportOperations;
+
+    private final JobWorkerScalingDecisions decisions = new JobWorkerScalingDecisions();
+    private ScheduledFuture<?> scheduledScaling;
+
+    // exposed for unit testing
+    void setJobListenerContainers(final JobListenerContainers jobListenerContainers)
+    {
+        this.jobListenerContainers = jobListenerContainers;
+    }
+
+    // exposed for unit testing
+    void setBrokerService(final BrokerService brokerService)
+    {
+        this.brokerService = brokerService;
+    }
+
+    // exposed for unit testing
+    void setRServiInstanceProvider(final RServiInstanceProvider rServiInstanceProvider)
+    {
+        this.rServiInstanceProvider = rServiInstanceProvider;
+    }
+
+    // exposed for unit testing
+    void setRServiLoadTracker(final RServiLoadTracker rServiLoadTracker)
+    {
+        this.rServiLoadTracker = rServiLoadTracker;
+    }
+
+    @PostConstruct
+    public void startScaling()
+    {
+        final JobWorkerAutoScalingConfiguration autoScaling = getConfiguration().getJobWorkerAutoScaling();
+        if (autoScaling == null)
+        {
+            return;
+        }
+
+        try
+        {
+            // only the decisions are exported, not the operations of the scaler
+            mbeanExportOperations.registerManagedResource(decisions, new ObjectName(
+                Constants.JOB_WORKER_AUTO_SCALER_OBJECT_NAME));
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to register job worker auto scaler MBean", e);
+        }
+
+        final long period = autoScaling.getPeriod() > 0L ? autoScaling.getPeriod() : DEFAULT_PERIOD_MILLIS;
+
+        scheduledScaling = taskScheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    scale(period);
+                }
+                catch (final Exception e)
+                {
+                    // keep going, scaling will be retried on the next run
+                    getLogger().error("Failed to scale job workers", e);
+                }
+            }
+        }, period);
+
+        getLogger().info("Scaling job workers every " + period + "ms");
+    }
+
+    @PreDestroy
+    public void stopScaling()
+    {
+        if (scheduledScaling != null)
+        {
+            scheduledScaling.cancel(false);
+        }
+    }
+
+    // exposed for unit testing
+    JobWorkerScalingDecisions getDecisions()
+    {
+        return decisions;
+    }
+
+    // exposed for unit testing
+    void scale(final long period)
+    {
+        final JobWorkerAutoScalingConfiguration autoScaling = getConfiguration().getJobWorkerAutoScaling();
+        final Map<String, JobWorkerPoolConfiguration> jobWorkerPools = getConfiguration().getJobWorkerPools();
+        final Map<String, Long> pendingJobCounts = getPendingJobCounts();
+
+        // RServi clients taken by workers added to a container aren't available to the next ones
+        int availableCapacity = rServiInstanceProvider.getAvailableCapacity();
+
+        final Map<String, DefaultMessageListenerContainer> applicationContainers = jobListenerContainers.getApplicationContainers();
+
+        for (final Entry<String, DefaultMessageListenerContainer> container : applicationContainers.entrySet())
+        {
+            final String applicationName = container.getKey();
+            final JobWorkerPoolConfiguration pool = jobWorkerPools.get(applicationName);
+            final Long pendingJobs = pendingJobCounts.remove(JmsMessageDispatcher.getJobQueueName(applicationName));
+
+            final int addedWorkers = scale(applicationName, container.getValue(),
+                pendingJobs == null ? 0L : pendingJobs, getApplicationRServiUris(applicationName), period,
+                availableCapacity, pool.getMinConcurrency(),
+                Math.max(pool.getMinConcurrency(), pool.getMaxConcurrency()));
+
+            if (availableCapacity >= 0)
+            {
+                availableCapacity = Math.max(0, availableCapacity - Math.max(0, addedWorkers));
+            }
+        }
+
+        // all the remaining job queues are consumed by the global container
+        long globalPendingJobs = 0L;
+        for (final long pendingJobs : pendingJobCounts.values())
+        {
+            globalPendingJobs += pendingJobs;
+        }
+
+        int globalMaxConcurrency = autoScaling.getMaxConcurrency();
+        if (globalMaxConcurrency == 0)
+        {
+            globalMaxConcurrency = getConfiguration().getNumberOfConcurrentJobWorkersPerQueue();
+        }
+
+        scale(GLOBAL_CONTAINER_NAME, jobListenerContainers.getGlobalContainer(), globalPendingJobs,
+            getGlobalRServiUris(pendingJobCounts.keySet()), period, availableCapacity,
+            autoScaling.getMinConcurrency(), Math.max(autoScaling.getMinConcurrency(), globalMaxConcurrency));
+    }
+
+    /**
+     * @return the number of workers added to the container, which is negative if workers have been
+     *         removed.
+     */
+    private int scale(final String containerName,
+                      final DefaultMessageListenerContainer container,
+                      final long pendingJobs,
+                      final Collection<URI> rServiUris,
+                      final long period,
+                      final int availableCapacity,
+                      final int minConcurrency,
+                      final int maxConcurrency)
+    {
+        final int currentConcurrency = container.getConcurrentConsumers();
+
+        final Decision decision = decide(currentConcurrency, container.getActiveConsumerCount(), pendingJobs,
+            getAverageLatency(rServiUris), period, availableCapacity, minConcurrency, maxConcurrency);
+
+        if (decision.concurrency == currentConcurrency)
+        {
+            return 0;
+        }
+
+        // set in this order so the maximum never gets lower than the minimum
+        container.setConcurrentConsumers(decision.concurrency);
+        container.setMaxConcurrentConsumers(decision.concurrency);
+
+        final String description = String.format("%1$tF %1$tT %2$s: %3$d -> %4$d workers (%5$s)", new Date(),
+            containerName, currentConcurrency, decision.concurrency, decision.reason);
+        getLogger().info("Scaled job workers of " + description);
+        decisions.record(description, decision.concurrency > currentConcurrency);
+
+        return decision.concurrency - currentConcurrency;
+    }
+
+    /**
+     * Decides the number of workers a listener container needs: enough to process the pending jobs
+     * within one period, based on the recent processing time of jobs, without exceeding the
+     * available RServi clients.
+     */
+    static Decision decide(final int currentConcurrency,
+                           final int activeWorkers,
+                           final long pendingJobs,
+                           final double averageLatency,
+                           final long period,
+                           final int availableCapacity,
+                           final int minConcurrency,
+                           final int maxConcurrency)
+    {
+        // number of jobs a worker can process in one period
+        final long jobsPerWorker = averageLatency > 0d ? Math.max(1L, (long) (period / averageLatency)) : 1L;
+        final long neededWorkers = activeWorkers + (pendingJobs + jobsPerWorker - 1L) / jobsPerWorker;
+
+        long concurrency = currentConcurrency;
+        String reason;
+
+        if (neededWorkers > currentConcurrency)
+        {
+            concurrency = neededWorkers;
+            reason = pendingJobs + " pending job(s)";
+
+            // busy workers already hold their RServi client
+            if ((availableCapacity >= 0) && (concurrency > activeWorkers + availableCapacity))
+            {
+                concurrency = Math.max(currentConcurrency, activeWorkers + availableCapacity);
+                reason += ", limited by " + availableCapacity + " available RServi client(s)";
+            }
+        }
+        else if (neededWorkers < currentConcurrency)
+        {
+            // remove workers one at a time so bursty loads don't make the container oscillate
+            concurrency = currentConcurrency - 1;
+            reason = activeWorkers + " busy worker(s) and " + pendingJobs + " pending job(s)";
+        }
+        else
+        {
+            reason = "enough workers";
+        }
+
+        if (concurrency > maxConcurrency)
+        {
+            concurrency = maxConcurrency;
+            reason += ", limited by maximum concurrency";
+        }
+        else if (concurrency < minConcurrency)
+        {
+            concurrency = minConcurrency;
+            reason += ", limited by minimum concurrency";
+        }
+
+        return new Decision((int) concurrency, reason);
+    }
+
+    /**
+     * @return the number of jobs waiting to be dispatched to a worker, per job queue name.
+     */
+    private Map<String, Long> getPendingJobCounts()
+    {
+        final Map<String, Long> pendingJobCounts = new HashMap<String, Long>();
+
+        final String jobQueueNamePrefix = JmsMessageDispatcher.getJobQueueName("");
+        final Map<ActiveMQDestination, Destination> destinations = brokerService.getRegionBroker()
+            .getDestinationMap();
+
+        for (final Entry<ActiveMQDestination, Destination> destination : destinations.entrySet())
+        {
+            final String queueName = destination.getKey().getPhysicalName();
+            if ((destination.getKey().isQueue()) && (queueName.startsWith(jobQueueNamePrefix)))
+            {
+                // jobs in flight have already been dispatched to a worker
+                final DestinationStatistics statistics = destination.getValue().getDestinationStatistics();
+                pendingJobCounts.put(queueName,
+                    Math.max(0L, statistics.getMessages().getCount() - statistics.getInflight().getCount()));
+            }
+        }
+
+        return pendingJobCounts;
+    }
+
+    private Collection<URI> getApplicationRServiUris(final String applicationName)
+    {
+        final Map<String, Set<URI>> applicationSpecificRserviPoolUris = getConfiguration().getApplicationSpecificRserviPoolUris();
+        if ((applicationSpecificRserviPoolUris != null)
+            && (applicationSpecificRserviPoolUris.containsKey(applicationName)))
+        {
+            return applicationSpecificRserviPoolUris.get(applicationName);
+        }
+        return Collections.singleton(getConfiguration().getDefaultRserviPoolUri());
+    }
+
+    /**
+     * @return the URIs used by the applications of the job queues consumed by the global container,
+     *         which can have specific URIs without having a job worker pool.
+     */
+    private Collection<URI> getGlobalRServiUris(final Collection<String> jobQueueNames)
+    {
+        final String jobQueueNamePrefix = JmsMessageDispatcher.getJobQueueName("");
+        final Set<URI> rServiUris = new HashSet<URI>();
+
+        for (final String jobQueueName : jobQueueNames)
+        {
+            rServiUris.addAll(getApplicationRServiUris(jobQueueName.substring(jobQueueNamePrefix.length())));
+        }
+
+        if (rServiUris.isEmpty())
+        {
+            return Collections.singleton(getConfiguration().getDefaultRserviPoolUri());
+        }
+        return rServiUris;
+    }
+
+    /**
+     * @return the average of the recent processing times of jobs on the URIs, ignoring the URIs
+     *         that haven't processed any job yet, or 0 if none has.
+     */
+    private double getAverageLatency(final Collection<URI> rServiUris)
+    {
+        double totalLatency = 0d;
+        int measuredUris = 0;
+
+        for (final URI rServiUri : rServiUris)
+        {
+            final double latency = rServiLoadTracker.getAverageLatency(rServiUri);
+            if (latency > 0d)
+            {
+                totalLatency += latency;
+                measuredUris++;
+            }
+        }
+
+        return measuredUris == 0 ? 0d : totalLatency / measuredUris;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The latest decisions of the {@link JobWorkerAutoScaler} and their counts, exposed read-only over
+ * JMX.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobWorkerScalingDecisions
+{
+    private static final int MAX_RECENT_DECISIONS = 50;
+
+    private final LinkedList<String> recentDecisions = new LinkedList<String>();
+    private final AtomicLong scaleUpCount = new AtomicLong();
+    private final AtomicLong scaleDownCount = new AtomicLong();
+
+    void record(final String description, final boolean scaleUp)
+    {
+        if (scaleUp)
+        {
+            scaleUpCount.incrementAndGet();
+        }
+        else
+        {
+            scaleDownCount.incrementAndGet();
+        }
+
+        synchronized (recentDecisions)
+        {
+            recentDecisions.addFirst(description);
+            if (recentDecisions.size() > MAX_RECENT_DECISIONS)
+            {
+                recentDecisions.removeLast();
+            }
+        }
+    }
+
+    /**
+     * @return the latest scaling decisions, most recent first.
+     */
+    public String[] getRecentDecisions()
+    {
+        synchronized (recentDecisions)
+        {
+            return recentDecisions.toArray(new String[recentDecisions.size()]);
+        }
+    }
+
+    public long getScaleUpCount()
+    {
+        return scaleUpCount.get();
+    }
+
+    public long getScaleDownCount()
+    {
+        return scaleDownCount.get();
+    }
+}
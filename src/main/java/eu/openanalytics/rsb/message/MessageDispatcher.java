@@ -48,4 +48,12 @@ public interface MessageDispatcher {
      * @return
      */
     <T extends AbstractResult<?>> T process(AbstractJob job);
+
+    /**
+     * Hands the result of a job dispatched with {@link #process(AbstractJob)} over to the thread
+     * waiting for it.
+     * 
+     * @param result
+     */
+    void handleReply(AbstractResult<?> result);
 }
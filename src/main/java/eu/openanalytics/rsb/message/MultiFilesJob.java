@@ -22,14 +22,20 @@
 package eu.openanalytics.rsb.message;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -41,15 +47,19 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
 import org.springframework.context.MessageSource;
 import org.springframework.util.FileCopyUtils;
 import org.stringtemplate.v4.ST;
 
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.BlobStore;
 
 /**
- * Represents a RSB job that consists of multiple files.
+ * Represents a RSB job that consists of multiple files. The files are initially held in a local
+ * temporary directory; once checked in a {@link BlobStore}, the job only carries references to them
+ * and can be processed on any node that has access to this store.
  * 
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
  */
@@ -57,8 +67,10 @@ public class MultiFilesJob extends AbstractJob
 {
     private static final long serialVersionUID = 1L;
 
-    private final File temporaryDirectory;
+    private File temporaryDirectory;
     private File rScriptFile;
+    private String rScriptFileName;
+    private Map<String, String> fileBlobIds;
 
     public MultiFilesJob(final Source source,
                          final String applicationName,
@@ -71,6 +83,39 @@ public class MultiFilesJob extends AbstractJob
         this.temporaryDirectory = Util.createTemporaryDirectory("job");
     }
 
+    // used by the work item codec to rebuild a received job
+    MultiFilesJob(final Source source,
+                  final String applicationName,
+                  final String userName,
+                  final UUID jobId,
+                  final GregorianCalendar submissionTime,
+                  final Map<String, Serializable> meta,
+                  final File temporaryDirectory,
+                  final String rScriptFileName,
+                  final Map<String, String> fileBlobIds)
+    {
+        super(source, applicationName, userName, jobId, submissionTime, meta);
+        this.temporaryDirectory = temporaryDirectory;
+        this.rScriptFileName = rScriptFileName;
+        this.fileBlobIds = fileBlobIds;
+
+        if ((temporaryDirectory != null) && (rScriptFileName != null))
+        {
+            rScriptFile = new File(temporaryDirectory, rScriptFileName);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+
+        // jobs serialized before the name of the R script was kept only have its file
+        if ((rScriptFileName == null) && (rScriptFile != null))
+        {
+            rScriptFileName = rScriptFile.getName();
+        }
+    }
+
     public void addFile(final String name, final InputStream is) throws IOException
     {
         if (Constants.MULTIPLE_FILES_JOB_CONFIGURATION.equals(name))
@@ -95,6 +140,7 @@ public class MultiFilesJob extends AbstractJob
                 throw new IllegalArgumentException("Only one R script is allowed per job");
             }
             rScriptFile = jobFile;
+            rScriptFileName = name;
         }
 
         final FileOutputStream fos = new FileOutputStream(jobFile);
@@ -120,9 +166,61 @@ public class MultiFilesJob extends AbstractJob
         getMeta().putAll(mergedMeta);
     }
 
+    /**
+     * Moves all the files of this job to the provided store, after which the job doesn't refer to
+     * any local file anymore.
+     */
+    public void checkIn(final BlobStore blobStore) throws IOException
+    {
+        Validate.validState(!isCheckedIn(), "Job already checked in: %s", this);
+
+        final Map<String, String> blobIds = new LinkedHashMap<String, String>();
+        for (final File file : getFiles())
+        {
+            blobIds.put(file.getName(), blobStore.put(new FileInputStream(file)));
+        }
+
+        blobStore.retain(getBlobReferenceId(), blobIds.values());
+
+        releaseResources();
+        temporaryDirectory = null;
+        rScriptFile = null;
+        fileBlobIds = blobIds;
+    }
+
+    /**
+     * Lets the files of this checked in job be purged from the provided store, once the job has
+     * been processed.
+     */
+    public void releaseBlobs(final BlobStore blobStore) throws IOException
+    {
+        Validate.validState(isCheckedIn(), "Job not checked in: %s", this);
+        blobStore.release(getBlobReferenceId());
+    }
+
+    private String getBlobReferenceId()
+    {
+        return "job-" + getJobId();
+    }
+
+    public boolean isCheckedIn()
+    {
+        return fileBlobIds != null;
+    }
+
+    File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
     @Override
     protected void releaseResources()
     {
+        if (temporaryDirectory == null)
+        {
+            return;
+        }
+
         try
         {
             FileUtils.forceDelete(temporaryDirectory);
@@ -156,14 +254,92 @@ public class MultiFilesJob extends AbstractJob
         return result;
     }
 
+    /**
+     * @return the local R script file of this job, or null if it has none or has been checked in.
+     */
     public File getRScriptFile()
     {
         return rScriptFile;
     }
 
+    /**
+     * @return the name of the R script of this job, or null if it has none.
+     */
+    public String getRScriptFileName()
+    {
+        return rScriptFileName;
+    }
+
+    /**
+     * @return the local files of this job, which is empty if it has been checked in.
+     */
     public File[] getFiles()
     {
-        return temporaryDirectory.listFiles();
+        if (temporaryDirectory == null)
+        {
+            return new File[0];
+        }
+
+        final File[] files = temporaryDirectory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    public List<String> getFileNames()
+    {
+        if (isCheckedIn())
+        {
+            return new ArrayList<String>(fileBlobIds.keySet());
+        }
+
+        final List<String> fileNames = new ArrayList<String>();
+        for (final File file : getFiles())
+        {
+            fileNames.add(file.getName());
+        }
+        return fileNames;
+    }
+
+    public Map<String, String> getFileBlobIds()
+    {
+        if (!isCheckedIn())
+        {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(fileBlobIds);
+    }
+
+    /**
+     * Opens one of the files of this job, wherever it is held. The returned stream must be closed
+     * by the caller.
+     */
+    public InputStream openFile(final String name, final BlobStore blobStore) throws IOException
+    {
+        return isCheckedIn() ? blobStore.get(getFileBlobId(name)) : new FileInputStream(getLocalFile(name));
+    }
+
+    public long getFileLength(final String name, final BlobStore blobStore) throws IOException
+    {
+        return isCheckedIn() ? blobStore.getSize(getFileBlobId(name)) : getLocalFile(name).length();
+    }
+
+    private String getFileBlobId(final String name) throws FileNotFoundException
+    {
+        final String blobId = fileBlobIds.get(name);
+        if (blobId == null)
+        {
+            throw new FileNotFoundException("No file named: " + name + " in job: " + this);
+        }
+        return blobId;
+    }
+
+    private File getLocalFile(final String name) throws FileNotFoundException
+    {
+        final File file = new File(temporaryDirectory, name);
+        if (!file.isFile())
+        {
+            throw new FileNotFoundException("No file named: " + name + " in job: " + this);
+        }
+        return file;
     }
 
     /**
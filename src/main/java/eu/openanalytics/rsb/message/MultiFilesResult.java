@@ -26,20 +26,27 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
 
 import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.BlobStore;
 
 /**
- * Represents a RSB result that consists of multiple files.
+ * Represents a RSB result that consists of multiple files. While in transit, the files can be
+ * checked in a {@link BlobStore} so the result doesn't refer to the temporary directory of the node
+ * that produced it; they must then be checked out before the result is used.
  * 
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
  */
@@ -47,7 +54,8 @@ public class MultiFilesResult extends AbstractResult<File[]>
 {
     private static final long serialVersionUID = 1L;
 
-    private final File temporaryDirectory;
+    private File temporaryDirectory;
+    private Map<String, String> fileBlobIds;
 
     public MultiFilesResult(final Source source,
                             final String applicationName,
@@ -61,14 +69,100 @@ public class MultiFilesResult extends AbstractResult<File[]>
         this.temporaryDirectory = Util.createTemporaryDirectory("job");
     }
 
+    // used by the work item codec to rebuild a received result
+    MultiFilesResult(final Source source,
+                     final String applicationName,
+                     final String userName,
+                     final UUID jobId,
+                     final GregorianCalendar submissionTime,
+                     final Map<String, Serializable> meta,
+                     final boolean success,
+                     final File temporaryDirectory,
+                     final Map<String, String> fileBlobIds)
+    {
+        super(source, applicationName, userName, jobId, submissionTime, meta, success);
+        this.temporaryDirectory = temporaryDirectory;
+        this.fileBlobIds = fileBlobIds;
+    }
+
     public File createNewResultFile(final String name) throws IOException
     {
+        Validate.validState(!isCheckedIn(), "Can't add files to checked in result: %s", this);
         return new File(temporaryDirectory, name);
     }
 
+    /**
+     * Moves all the files of this result to the provided store, after which the result doesn't
+     * refer to any local file anymore.
+     */
+    public void checkIn(final BlobStore blobStore) throws IOException
+    {
+        Validate.validState(!isCheckedIn(), "Result already checked in: %s", this);
+
+        final Map<String, String> blobIds = new LinkedHashMap<String, String>();
+        for (final File file : getPayload())
+        {
+            blobIds.put(file.getName(), blobStore.put(new FileInputStream(file)));
+        }
+
+        blobStore.retain(getBlobReferenceId(), blobIds.values());
+
+        releaseResources();
+        temporaryDirectory = null;
+        fileBlobIds = blobIds;
+    }
+
+    /**
+     * Copies all the files of this result from the provided store to a new local temporary
+     * directory and lets them be purged from the store.
+     */
+    public void checkOut(final BlobStore blobStore) throws IOException
+    {
+        Validate.validState(isCheckedIn(), "Result not checked in: %s", this);
+
+        final File checkOutDirectory = Util.createTemporaryDirectory("job");
+        for (final Entry<String, String> fileBlobId : fileBlobIds.entrySet())
+        {
+            final InputStream is = blobStore.get(fileBlobId.getValue());
+            try
+            {
+                FileUtils.copyInputStreamToFile(is, new File(checkOutDirectory, fileBlobId.getKey()));
+            }
+            finally
+            {
+                IOUtils.closeQuietly(is);
+            }
+        }
+
+        blobStore.release(getBlobReferenceId());
+
+        temporaryDirectory = checkOutDirectory;
+        fileBlobIds = null;
+    }
+
+    private String getBlobReferenceId()
+    {
+        return "result-" + getJobId();
+    }
+
+    public boolean isCheckedIn()
+    {
+        return fileBlobIds != null;
+    }
+
+    Map<String, String> getFileBlobIds()
+    {
+        return fileBlobIds;
+    }
+
     @Override
     protected void releaseResources()
     {
+        if (temporaryDirectory == null)
+        {
+            return;
+        }
+
         try
         {
             FileUtils.forceDelete(temporaryDirectory);
@@ -82,6 +176,11 @@ public class MultiFilesResult extends AbstractResult<File[]>
     @Override
     public File[] getPayload() throws IOException
     {
+        if (temporaryDirectory == null)
+        {
+            return new File[0];
+        }
+
         final File[] resultFiles = temporaryDirectory.listFiles();
         return resultFiles == null ? new File[0] : resultFiles;
     }
@@ -0,0 +1,424 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * Encodes work items to, and decodes them from, a compact binary format with an explicit schema.
+ * Each encoded work item starts with a magic number and a format version so that messages produced
+ * by other RSB versions are either decoded or rejected, but never misread. Only meta values that
+ * are not strings, booleans or numbers fall back to Java serialization.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+final class WorkItemCodec
+{
+    static final int MAGIC_NUMBER = 0x52534257;
+    static final int FORMAT_VERSION = 2;
+
+    // the first format didn't carry the reply queue of work items
+    private static final int NO_REPLY_TO_FORMAT_VERSION = 1;
+
+    private enum Type
+    {
+        JSON_FUNCTION_CALL_JOB(1), XML_FUNCTION_CALL_JOB(2), MULTI_FILES_JOB(3),
+        JSON_FUNCTION_CALL_RESULT(4), XML_FUNCTION_CALL_RESULT(5), MULTI_FILES_RESULT(6);
+
+        private final int code;
+
+        private Type(final int code)
+        {
+            this.code = code;
+        }
+
+        private static Type of(final AbstractWorkItem workItem)
+        {
+            if (workItem instanceof JsonFunctionCallJob)
+            {
+                return JSON_FUNCTION_CALL_JOB;
+            }
+            else if (workItem instanceof XmlFunctionCallJob)
+            {
+                return XML_FUNCTION_CALL_JOB;
+            }
+            else if (workItem instanceof MultiFilesJob)
+            {
+                return MULTI_FILES_JOB;
+            }
+            else if (workItem instanceof JsonFunctionCallResult)
+            {
+                return JSON_FUNCTION_CALL_RESULT;
+            }
+            else if (workItem instanceof XmlFunctionCallResult)
+            {
+                return XML_FUNCTION_CALL_RESULT;
+            }
+            else if (workItem instanceof MultiFilesResult)
+            {
+                return MULTI_FILES_RESULT;
+            }
+            throw new IllegalArgumentException("Unsupported work item type: " + workItem.getClass());
+        }
+
+        private static Type of(final int code) throws IOException
+        {
+            for (final Type type : values())
+            {
+                if (type.code == code)
+                {
+                    return type;
+                }
+            }
+            throw new IOException("Unsupported work item type code: " + code);
+        }
+    }
+
+    // meta value tags
+    private static final int STRING_VALUE = 1;
+    private static final int BOOLEAN_VALUE = 2;
+    private static final int INTEGER_VALUE = 3;
+    private static final int LONG_VALUE = 4;
+    private static final int DOUBLE_VALUE = 5;
+    private static final int SERIALIZED_VALUE = 6;
+
+    private static final String CHARSET = "UTF-8";
+
+    private WorkItemCodec()
+    {
+        throw new UnsupportedOperationException("do not instantiate");
+    }
+
+    static byte[] encode(final AbstractWorkItem workItem) throws IOException
+    {
+        final Type type = Type.of(workItem);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(MAGIC_NUMBER);
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(type.code);
+
+        writeString(out, workItem.getSource().name());
+        writeString(out, workItem.getApplicationName());
+        writeString(out, workItem.getUserName());
+        out.writeLong(workItem.getJobId().getMostSignificantBits());
+        out.writeLong(workItem.getJobId().getLeastSignificantBits());
+        out.writeLong(workItem.getSubmissionTime().getTimeInMillis());
+        writeString(out, workItem.getSubmissionTime().getTimeZone().getID());
+        writeString(out, workItem.getReplyTo());
+
+        switch (type)
+        {
+            case JSON_FUNCTION_CALL_JOB :
+            case XML_FUNCTION_CALL_JOB :
+                writeString(out, ((AbstractFunctionCallJob) workItem).getArgument());
+                break;
+
+            case JSON_FUNCTION_CALL_RESULT :
+            case XML_FUNCTION_CALL_RESULT :
+                final AbstractFunctionCallResult functionCallResult = (AbstractFunctionCallResult) workItem;
+                out.writeBoolean(functionCallResult.isSuccess());
+                writeString(out, functionCallResult.getPayload());
+                break;
+
+            case MULTI_FILES_JOB :
+                final MultiFilesJob multiFilesJob = (MultiFilesJob) workItem;
+                writeMeta(out, multiFilesJob.getMeta());
+                writeFile(out, multiFilesJob.getTemporaryDirectory());
+                writeString(out, multiFilesJob.getRScriptFileName());
+                writeStringMap(out, multiFilesJob.isCheckedIn() ? multiFilesJob.getFileBlobIds() : null);
+                break;
+
+            case MULTI_FILES_RESULT :
+                final MultiFilesResult multiFilesResult = (MultiFilesResult) workItem;
+                writeMeta(out, multiFilesResult.getMeta());
+                out.writeBoolean(multiFilesResult.isSuccess());
+                writeFile(out, multiFilesResult.getTemporaryDirectory());
+                writeStringMap(out, multiFilesResult.getFileBlobIds());
+                break;
+        }
+
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    static AbstractWorkItem decode(final byte[] data) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        final int magicNumber = in.readInt();
+        if (magicNumber != MAGIC_NUMBER)
+        {
+            throw new IOException("Not an encoded work item, magic number: "
+                                  + Integer.toHexString(magicNumber));
+        }
+
+        final int formatVersion = in.readUnsignedByte();
+        if ((formatVersion != FORMAT_VERSION) && (formatVersion != NO_REPLY_TO_FORMAT_VERSION))
+        {
+            throw new IOException("Unsupported work item format version: " + formatVersion);
+        }
+
+        final Type type = Type.of(in.readUnsignedByte());
+        final Source source = Source.valueOf(readString(in));
+        final String applicationName = readString(in);
+        final String userName = readString(in);
+        final UUID jobId = new UUID(in.readLong(), in.readLong());
+        final long submissionTimeMillis = in.readLong();
+        final GregorianCalendar submissionTime = new GregorianCalendar(TimeZone.getTimeZone(readString(in)));
+        submissionTime.setTimeInMillis(submissionTimeMillis);
+        final String replyTo = formatVersion == NO_REPLY_TO_FORMAT_VERSION ? null : readString(in);
+
+        final AbstractWorkItem workItem;
+        switch (type)
+        {
+            case JSON_FUNCTION_CALL_JOB :
+                workItem = new JsonFunctionCallJob(source, applicationName, userName, jobId, submissionTime,
+                    readString(in));
+                break;
+
+            case XML_FUNCTION_CALL_JOB :
+                workItem = new XmlFunctionCallJob(source, applicationName, userName, jobId, submissionTime,
+                    readString(in));
+                break;
+
+            case JSON_FUNCTION_CALL_RESULT :
+                workItem = new JsonFunctionCallResult(source, applicationName, userName, jobId,
+                    submissionTime, in.readBoolean(), readString(in));
+                break;
+
+            case XML_FUNCTION_CALL_RESULT :
+                workItem = new XmlFunctionCallResult(source, applicationName, userName, jobId,
+                    submissionTime, in.readBoolean(), readString(in));
+                break;
+
+            case MULTI_FILES_JOB :
+                workItem = new MultiFilesJob(source, applicationName, userName, jobId, submissionTime,
+                    readMeta(in), readFile(in), readString(in), readStringMap(in));
+                break;
+
+            case MULTI_FILES_RESULT :
+                workItem = new MultiFilesResult(source, applicationName, userName, jobId, submissionTime,
+                    readMeta(in), in.readBoolean(), readFile(in), readStringMap(in));
+                break;
+
+            default :
+                throw new IOException("Unsupported work item type: " + type);
+        }
+
+        workItem.setReplyTo(replyTo);
+        return workItem;
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException
+    {
+        if (s == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+
+        final byte[] bytes = s.getBytes(CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    private static void writeFile(final DataOutputStream out, final File file) throws IOException
+    {
+        writeString(out, file == null ? null : file.getPath());
+    }
+
+    private static File readFile(final DataInputStream in) throws IOException
+    {
+        final String path = readString(in);
+        return path == null ? null : new File(path);
+    }
+
+    private static void writeStringMap(final DataOutputStream out, final Map<String, String> map)
+        throws IOException
+    {
+        if (map == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(map.size());
+        for (final Entry<String, String> entry : map.entrySet())
+        {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readStringMap(final DataInputStream in) throws IOException
+    {
+        final int size = in.readInt();
+        if (size < 0)
+        {
+            return null;
+        }
+
+        final Map<String, String> map = new LinkedHashMap<String, String>();
+        for (int i = 0; i < size; i++)
+        {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static void writeMeta(final DataOutputStream out, final Map<String, Serializable> meta)
+        throws IOException
+    {
+        out.writeInt(meta.size());
+        for (final Entry<String, Serializable> entry : meta.entrySet())
+        {
+            writeString(out, entry.getKey());
+            writeMetaValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeMetaValue(final DataOutputStream out, final Serializable value)
+        throws IOException
+    {
+        if (value instanceof String)
+        {
+            out.writeByte(STRING_VALUE);
+            writeString(out, (String) value);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Integer)
+        {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Long)
+        {
+            out.writeByte(LONG_VALUE);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Double)
+        {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble((Double) value);
+        }
+        else
+        {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(value);
+            oos.close();
+
+            out.writeByte(SERIALIZED_VALUE);
+            out.writeInt(baos.size());
+            baos.writeTo(out);
+        }
+    }
+
+    private static Map<String, Serializable> readMeta(final DataInputStream in) throws IOException
+    {
+        final int size = in.readInt();
+        final Map<String, Serializable> meta = new HashMap<String, Serializable>();
+        for (int i = 0; i < size; i++)
+        {
+            meta.put(readString(in), readMetaValue(in));
+        }
+        return meta;
+    }
+
+    private static Serializable readMetaValue(final DataInputStream in) throws IOException
+    {
+        final int tag = in.readUnsignedByte();
+        switch (tag)
+        {
+            case STRING_VALUE :
+                return readString(in);
+
+            case BOOLEAN_VALUE :
+                return in.readBoolean();
+
+            case INTEGER_VALUE :
+                return in.readInt();
+
+            case LONG_VALUE :
+                return in.readLong();
+
+            case DOUBLE_VALUE :
+                return in.readDouble();
+
+            case SERIALIZED_VALUE :
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try
+                {
+                    return (Serializable) ois.readObject();
+                }
+                catch (final ClassNotFoundException cnfe)
+                {
+                    throw new IOException("Can't decode meta value", cnfe);
+                }
+                finally
+                {
+                    ois.close();
+                }
+
+            default :
+                throw new IOException("Unsupported meta value tag: " + tag);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.io.IOException;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+/**
+ * Sends work items as bytes messages encoded with {@link WorkItemCodec} instead of Java serialized
+ * object messages. Other objects, and object messages already persisted by the broker before this
+ * converter was used, are still handled with standard JMS conversion.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class WorkItemMessageConverter implements MessageConverter
+{
+    private final MessageConverter fallback = new SimpleMessageConverter();
+
+    public Message toMessage(final Object object, final Session session)
+        throws JMSException, MessageConversionException
+    {
+        if (!(object instanceof AbstractWorkItem))
+        {
+            return fallback.toMessage(object, session);
+        }
+
+        final byte[] data;
+        try
+        {
+            data = WorkItemCodec.encode((AbstractWorkItem) object);
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to encode: " + object, ioe);
+        }
+
+        final BytesMessage message = session.createBytesMessage();
+        message.writeBytes(data);
+        return message;
+    }
+
+    public Object fromMessage(final Message message) throws JMSException, MessageConversionException
+    {
+        if (!(message instanceof BytesMessage))
+        {
+            return fallback.fromMessage(message);
+        }
+
+        final BytesMessage bytesMessage = (BytesMessage) message;
+        final byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(data);
+
+        try
+        {
+            return WorkItemCodec.decode(data);
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to decode message: " + message, ioe);
+        }
+    }
+}
@@ -22,13 +22,12 @@
 package eu.openanalytics.rsb.rservi;
 
 import java.net.URI;
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -39,17 +38,61 @@ import eu.openanalytics.rsb.config.Configuration;
 
 /**
  * Provides RServi URIs, using a circular buffer when several URIs are configured for
- * one application.
+ * one application, skipping the URIs whose circuit is open.
  * 
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
  */
 @Component
 public class CircularRServiUriSelector implements RServiUriSelector
 {
+    /**
+     * Immutable URIs with a cursor, so selecting one doesn't require any lock.
+     */
+    private static class CircularUris
+    {
+        private final URI[] uris;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        CircularUris(final Set<URI> uris)
+        {
+            this.uris = uris.toArray(new URI[uris.size()]);
+        }
+
+        boolean isEmpty()
+        {
+            return uris.length == 0;
+        }
+
+        URI next(final RServiCircuitBreaker rServiCircuitBreaker)
+        {
+            if (uris.length == 1)
+            {
+                return uris[0];
+            }
+
+            // masking the sign bit keeps the index valid once the cursor overflows
+            final int start = cursor.getAndIncrement() & Integer.MAX_VALUE;
+
+            // URIs whose circuit is open are skipped, unless they all are
+            for (int i = 0; i < uris.length; i++)
+            {
+                final URI uri = uris[(start + i) % uris.length];
+                if (rServiCircuitBreaker.isAvailable(uri))
+                {
+                    return uri;
+                }
+            }
+            return uris[start % uris.length];
+        }
+    }
+
     @Resource
     private Configuration configuration;
 
-    private Map<String, Deque<URI>> circularApplicationUris;
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
+    private Map<String, CircularUris> circularApplicationUris;
 
     // exposed for unit testing
     void setConfiguration(final Configuration configuration)
@@ -57,18 +100,24 @@ public class CircularRServiUriSelector implements RServiUriSelector
         this.configuration = configuration;
     }
 
+    // exposed for unit testing
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
     @PostConstruct
     public void initialize()
     {
-        final Map<String, Deque<URI>> newCircularApplicationUris = new HashMap<String, Deque<URI>>();
+        final Map<String, CircularUris> newCircularApplicationUris = new HashMap<String, CircularUris>();
 
         final Map<String, Set<URI>> applicationSpecificRserviPoolUris = configuration.getApplicationSpecificRserviPoolUris();
         if ((applicationSpecificRserviPoolUris != null) && (!applicationSpecificRserviPoolUris.isEmpty()))
         {
             for (final Entry<String, Set<URI>> applicationSpecificRserviPoolUri : applicationSpecificRserviPoolUris.entrySet())
             {
-                newCircularApplicationUris.put(applicationSpecificRserviPoolUri.getKey(),
-                    new ArrayDeque<URI>(applicationSpecificRserviPoolUri.getValue()));
+                newCircularApplicationUris.put(applicationSpecificRserviPoolUri.getKey(), new CircularUris(
+                    applicationSpecificRserviPoolUri.getValue()));
             }
         }
 
@@ -82,28 +131,13 @@ public class CircularRServiUriSelector implements RServiUriSelector
             return configuration.getDefaultRserviPoolUri();
         }
 
-        final Deque<URI> applicationRserviPoolUris = circularApplicationUris.get(applicationName);
+        final CircularUris applicationRserviPoolUris = circularApplicationUris.get(applicationName);
 
         final boolean applicationHasNoSpecificUris = applicationRserviPoolUris == null
                                                      || applicationRserviPoolUris.isEmpty();
 
         return applicationHasNoSpecificUris
                                            ? configuration.getDefaultRserviPoolUri()
-                                           : getCircular(applicationRserviPoolUris);
-    }
-
-    private URI getCircular(final Deque<URI> applicationRserviPoolUris)
-    {
-        if (applicationRserviPoolUris.size() == 1)
-        {
-            return applicationRserviPoolUris.peek();
-        }
-
-        synchronized (applicationRserviPoolUris)
-        {
-            final URI uri = applicationRserviPoolUris.poll();
-            applicationRserviPoolUris.add(uri);
-            return uri;
-        }
+                                           : applicationRserviPoolUris.next(rServiCircuitBreaker);
     }
 }
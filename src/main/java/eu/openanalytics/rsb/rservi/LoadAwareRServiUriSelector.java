@@ -0,0 +1,172 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * Provides RServi URIs, selecting among the URIs configured for one application the healthy one
+ * with the fewest jobs in flight and, in case of a tie, the lowest recent processing time. URIs
+ * whose circuit is open are considered unhealthy. If all the URIs of an application are
+ * unhealthy, they are all considered.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component
+public class LoadAwareRServiUriSelector implements RServiUriSelector
+{
+    @Resource
+    private Configuration configuration;
+
+    @Resource
+    private RServiLoadTracker rServiLoadTracker;
+
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
+    private Map<String, List<URI>> applicationUris;
+
+    // rotates the first URI considered so ties are spread
+    private final AtomicInteger selectionCount = new AtomicInteger();
+
+    // exposed for unit testing
+    void setConfiguration(final Configuration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    // exposed for unit testing
+    void setRServiLoadTracker(final RServiLoadTracker rServiLoadTracker)
+    {
+        this.rServiLoadTracker = rServiLoadTracker;
+    }
+
+    // exposed for unit testing
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
+    @PostConstruct
+    public void initialize()
+    {
+        final Map<String, List<URI>> newApplicationUris = new HashMap<String, List<URI>>();
+
+        final Map<String, Set<URI>> applicationSpecificRserviPoolUris = configuration.getApplicationSpecificRserviPoolUris();
+        if ((applicationSpecificRserviPoolUris != null) && (!applicationSpecificRserviPoolUris.isEmpty()))
+        {
+            for (final Entry<String, Set<URI>> applicationSpecificRserviPoolUri : applicationSpecificRserviPoolUris.entrySet())
+            {
+                newApplicationUris.put(applicationSpecificRserviPoolUri.getKey(), new ArrayList<URI>(
+                    applicationSpecificRserviPoolUri.getValue()));
+            }
+        }
+
+        applicationUris = Collections.unmodifiableMap(newApplicationUris);
+    }
+
+    public URI getUriForApplication(final String applicationName)
+    {
+        final List<URI> applicationRserviPoolUris = applicationUris == null
+                                                                           ? null
+                                                                           : applicationUris.get(applicationName);
+
+        if ((applicationRserviPoolUris == null) || (applicationRserviPoolUris.isEmpty()))
+        {
+            return configuration.getDefaultRserviPoolUri();
+        }
+
+        if (applicationRserviPoolUris.size() == 1)
+        {
+            return applicationRserviPoolUris.get(0);
+        }
+
+        return getLeastLoaded(applicationRserviPoolUris);
+    }
+
+    private URI getLeastLoaded(final List<URI> rServiPoolUris)
+    {
+        final int size = rServiPoolUris.size();
+        final int start = (selectionCount.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+        URI selectedUri = null;
+        boolean selectedHealthy = false;
+        int selectedInFlightJobs = 0;
+        double selectedAverageLatency = 0d;
+
+        for (int i = 0; i < size; i++)
+        {
+            final URI uri = rServiPoolUris.get((start + i) % size);
+            final boolean healthy = (rServiLoadTracker.isHealthy(uri))
+                                    && (rServiCircuitBreaker.isAvailable(uri));
+            final int inFlightJobs = rServiLoadTracker.getInFlightJobs(uri);
+            final double averageLatency = rServiLoadTracker.getAverageLatency(uri);
+
+            if ((selectedUri == null)
+                || (isPreferable(healthy, inFlightJobs, averageLatency, selectedHealthy, selectedInFlightJobs,
+                    selectedAverageLatency)))
+            {
+                selectedUri = uri;
+                selectedHealthy = healthy;
+                selectedInFlightJobs = inFlightJobs;
+                selectedAverageLatency = averageLatency;
+            }
+        }
+
+        return selectedUri;
+    }
+
+    private static boolean isPreferable(final boolean healthy,
+                                        final int inFlightJobs,
+                                        final double averageLatency,
+                                        final boolean otherHealthy,
+                                        final int otherInFlightJobs,
+                                        final double otherAverageLatency)
+    {
+        if (healthy != otherHealthy)
+        {
+            return healthy;
+        }
+
+        if (inFlightJobs != otherInFlightJobs)
+        {
+            return inFlightJobs < otherInFlightJobs;
+        }
+
+        return averageLatency < otherAverageLatency;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Circuit breaker per RServi pool URI: after several consecutive failures to reach a pool, its
+ * circuit opens and requests for it are refused right away instead of waiting for RMI timeouts.
+ * Once the open period has elapsed, a single trial request is let through (half-open state): its
+ * success closes the circuit, its failure opens it again.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component
+public class RServiCircuitBreaker
+{
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_OPEN_PERIOD_MILLIS = 30000L;
+
+    private static final Log LOGGER = LogFactory.getLog(RServiCircuitBreaker.class);
+
+    public static enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    };
+
+    private static class Circuit
+    {
+        private volatile State state = State.CLOSED;
+        private volatile long openingTime;
+        private int consecutiveFailures;
+    }
+
+    private final ConcurrentMap<URI, Circuit> circuits = new ConcurrentHashMap<URI, Circuit>();
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long openPeriodMillis = DEFAULT_OPEN_PERIOD_MILLIS;
+
+    // exposed for unit testing
+    void setFailureThreshold(final int failureThreshold)
+    {
+        this.failureThreshold = failureThreshold;
+    }
+
+    // exposed for unit testing
+    void setOpenPeriodMillis(final long openPeriodMillis)
+    {
+        this.openPeriodMillis = openPeriodMillis;
+    }
+
+    /**
+     * Must be called before using an RServi pool, and followed by a call to either
+     * {@link #recordSuccess(URI)}, {@link #recordFailure(URI)} or {@link #releaseTrial(URI)} if
+     * allowed.
+     * 
+     * @return false if the circuit of this URI is open.
+     */
+    public boolean allowRequest(final URI rServiUri)
+    {
+        final Circuit circuit = getCircuit(rServiUri);
+
+        synchronized (circuit)
+        {
+            switch (circuit.state)
+            {
+                case CLOSED :
+                    return true;
+
+                case OPEN :
+                    if (isOpenPeriodElapsed(circuit))
+                    {
+                        circuit.state = State.HALF_OPEN;
+                        LOGGER.info("Trying RServi pool again: " + rServiUri);
+                        return true;
+                    }
+                    return false;
+
+                default :
+                    // a trial request is already in progress
+                    return false;
+            }
+        }
+    }
+
+    public void recordSuccess(final URI rServiUri)
+    {
+        final Circuit circuit = getCircuit(rServiUri);
+
+        synchronized (circuit)
+        {
+            if (circuit.state != State.CLOSED)
+            {
+                LOGGER.info("RServi pool is back, closing its circuit: " + rServiUri);
+            }
+
+            circuit.state = State.CLOSED;
+            circuit.consecutiveFailures = 0;
+        }
+    }
+
+    public void recordFailure(final URI rServiUri)
+    {
+        final Circuit circuit = getCircuit(rServiUri);
+
+        synchronized (circuit)
+        {
+            circuit.consecutiveFailures++;
+
+            if ((circuit.state == State.HALF_OPEN) || (circuit.consecutiveFailures >= failureThreshold))
+            {
+                if (circuit.state != State.OPEN)
+                {
+                    LOGGER.warn(String.format(
+                        "Opening circuit of RServi pool after %d consecutive failures: %s",
+                        circuit.consecutiveFailures, rServiUri));
+                }
+
+                circuit.state = State.OPEN;
+                circuit.openingTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Settles a half-open trial request that neither reached nor failed to reach its RServi pool, by
+     * opening the circuit again for another period. Does nothing in other states.
+     */
+    public void releaseTrial(final URI rServiUri)
+    {
+        final Circuit circuit = getCircuit(rServiUri);
+
+        synchronized (circuit)
+        {
+            if (circuit.state == State.HALF_OPEN)
+            {
+                circuit.state = State.OPEN;
+                circuit.openingTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Lock-free check meant for URI selectors.
+     * 
+     * @return true if a request for this URI would currently be allowed.
+     */
+    public boolean isAvailable(final URI rServiUri)
+    {
+        final Circuit circuit = getCircuit(rServiUri);
+        final State state = circuit.state;
+        return (state == State.CLOSED) || ((state == State.OPEN) && (isOpenPeriodElapsed(circuit)));
+    }
+
+    public State getState(final URI rServiUri)
+    {
+        return getCircuit(rServiUri).state;
+    }
+
+    private boolean isOpenPeriodElapsed(final Circuit circuit)
+    {
+        return System.currentTimeMillis() - circuit.openingTime >= openPeriodMillis;
+    }
+
+    private Circuit getCircuit(final URI rServiUri)
+    {
+        final Circuit circuit = circuits.get(rServiUri);
+        if (circuit != null)
+        {
+            return circuit;
+        }
+
+        final Circuit newCircuit = new Circuit();
+        final Circuit existingCircuit = circuits.putIfAbsent(rServiUri, newCircuit);
+        return existingCircuit != null ? existingCircuit : newCircuit;
+    }
+}
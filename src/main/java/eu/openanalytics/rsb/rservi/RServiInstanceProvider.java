@@ -29,8 +29,25 @@ import de.walware.rj.servi.RServi;
  */
 public interface RServiInstanceProvider {
     public enum PoolingStrategy {
-        NEVER, IF_POSSIBLE
+        NEVER, IF_POSSIBLE,
+        /**
+         * Pooled if possible, with the R workspace (files, global environment and working directory)
+         * reset when the instance is returned to the pool.
+         */
+        IF_POSSIBLE_WITH_WORKSPACE_RESET
     };
 
     RServi getRServiInstance(final String address, final String clientId, PoolingStrategy poolingStrategy) throws Exception;
+
+    /**
+     * @return the percentage of the pooled instances to create at start-up that are available, or
+     *         -1 if instances are not pooled or the pool is not warmed up.
+     */
+    int getWarmUpProgress();
+
+    /**
+     * @return the number of RServi instances that can still be obtained without waiting for
+     *         instances to be returned, or -1 if instances are not pooled or the pool is unbounded.
+     */
+    int getAvailableCapacity();
 }
@@ -0,0 +1,110 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of the load and health of RServi pool URIs: the number of jobs in flight, a moving
+ * average of their processing time and the result of the last health check.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component
+public class RServiLoadTracker
+{
+    // weight of the latest processing time in the moving average
+    private static final double LATENCY_SMOOTHING_FACTOR = 0.2d;
+
+    private static class UriLoad
+    {
+        private final AtomicInteger inFlightJobs = new AtomicInteger();
+        private volatile double averageLatency;
+        private volatile boolean healthy = true;
+
+        synchronized void addLatency(final long latency)
+        {
+            averageLatency = averageLatency == 0d ? latency : averageLatency
+                                                              + LATENCY_SMOOTHING_FACTOR
+                                                              * (latency - averageLatency);
+        }
+    }
+
+    private final ConcurrentMap<URI, UriLoad> uriLoads = new ConcurrentHashMap<URI, UriLoad>();
+
+    public void jobStarted(final URI rServiUri)
+    {
+        getUriLoad(rServiUri).inFlightJobs.incrementAndGet();
+    }
+
+    public void jobCompleted(final URI rServiUri, final long processTime)
+    {
+        final UriLoad uriLoad = getUriLoad(rServiUri);
+        uriLoad.inFlightJobs.decrementAndGet();
+        uriLoad.addLatency(processTime);
+    }
+
+    public void setHealthy(final URI rServiUri, final boolean healthy)
+    {
+        getUriLoad(rServiUri).healthy = healthy;
+    }
+
+    public int getInFlightJobs(final URI rServiUri)
+    {
+        return getUriLoad(rServiUri).inFlightJobs.get();
+    }
+
+    /**
+     * @return the moving average of the processing time of jobs, in milliseconds, or 0 if no job
+     *         has completed yet.
+     */
+    public double getAverageLatency(final URI rServiUri)
+    {
+        return getUriLoad(rServiUri).averageLatency;
+    }
+
+    /**
+     * @return false if the last health check of this URI has failed.
+     */
+    public boolean isHealthy(final URI rServiUri)
+    {
+        return getUriLoad(rServiUri).healthy;
+    }
+
+    private UriLoad getUriLoad(final URI rServiUri)
+    {
+        final UriLoad uriLoad = uriLoads.get(rServiUri);
+        if (uriLoad != null)
+        {
+            return uriLoad;
+        }
+
+        final UriLoad newUriLoad = new UriLoad();
+        final UriLoad existingUriLoad = uriLoads.putIfAbsent(rServiUri, newUriLoad);
+        return existingUriLoad != null ? existingUriLoad : newUriLoad;
+    }
+}
@@ -23,6 +23,15 @@ package eu.openanalytics.rsb.rservi;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -37,15 +46,18 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
 import org.apache.commons.pool.KeyedObjectPool;
 import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool.impl.GenericKeyedObjectPool.Config;
-import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.springframework.jmx.export.MBeanExportOperations;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
 
+import de.walware.rj.data.RDataUtil;
 import de.walware.rj.data.RObject;
 import de.walware.rj.data.RReference;
+import de.walware.rj.data.UnexpectedRDataException;
 import de.walware.rj.servi.RServi;
 import de.walware.rj.servi.RServiUtil;
 import de.walware.rj.services.FunctionCall;
@@ -67,11 +79,13 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
     private static class RServiPoolKey
     {
         private final String address, clientId;
+        private final boolean workspaceReset;
 
-        RServiPoolKey(final String address, final String clientId)
+        RServiPoolKey(final String address, final String clientId, final boolean workspaceReset)
         {
             this.address = address;
             this.clientId = clientId;
+            this.workspaceReset = workspaceReset;
         }
 
         String getAddress()
@@ -84,6 +98,11 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             return clientId;
         }
 
+        boolean isWorkspaceReset()
+        {
+            return workspaceReset;
+        }
+
         @Override
         public String toString()
         {
@@ -109,6 +128,7 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         private final RServiPoolKey key;
         private final RServi rServi;
         private volatile boolean hasError;
+        private String initialWorkingDirectory;
 
         PooledRServiWrapper(final KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool,
                             final RServiPoolKey key,
@@ -128,7 +148,16 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         {
             try
             {
-                rServiPool.returnObject(key, this);
+                // an errored instance may not be responding, so it isn't reset with remote calls that
+                // would wait for RMI timeouts: as its workspace can't be trusted, it isn't reused
+                if ((key.isWorkspaceReset()) && ((hasError) || (!resetWorkspace())))
+                {
+                    rServiPool.invalidateObject(key, this);
+                }
+                else
+                {
+                    rServiPool.returnObject(key, this);
+                }
             }
             catch (final Exception e)
             {
@@ -136,6 +165,40 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             }
         }
 
+        void captureInitialWorkingDirectory() throws CoreException, UnexpectedRDataException
+        {
+            initialWorkingDirectory = RDataUtil.checkRCharVector(rServi.evalData("getwd()", null))
+                .getData()
+                .getChar(0);
+        }
+
+        /**
+         * Brings the R workspace back to the state it had when this instance was created.
+         * 
+         * @return false if the workspace couldn't be reset, in which case the instance must not be
+         *         reused.
+         */
+        private boolean resetWorkspace()
+        {
+            try
+            {
+                final FunctionCall setwdCall = rServi.createFunctionCall("setwd");
+                setwdCall.addChar(initialWorkingDirectory);
+                setwdCall.evalVoid(null);
+
+                rServi.evalVoid(DELETE_WORKSPACE_FILES_EXPRESSION, null);
+                rServi.evalVoid(CLEAR_GLOBAL_ENVIRONMENT_EXPRESSION, null);
+                rServi.evalVoid(CLOSE_GRAPHICS_DEVICES_EXPRESSION, null);
+                return true;
+            }
+            catch (final CoreException ce)
+            {
+                LOGGER.warn("Failed to reset workspace of RServi @ " + key.getAddress()
+                            + ", it will not be reused", ce);
+                return false;
+            }
+        }
+
         public void destroy() throws CoreException
         {
             rServi.close();
@@ -237,13 +300,26 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
 
     private final static Log LOGGER = LogFactory.getLog(RmiRServiInstanceProvider.class);
 
+    private static final String DELETE_WORKSPACE_FILES_EXPRESSION = "unlink(dir(all.files = TRUE, no.. = TRUE), recursive = TRUE, force = TRUE)";
+    private static final String CLEAR_GLOBAL_ENVIRONMENT_EXPRESSION = "rm(list = ls(envir = .GlobalEnv, all.names = TRUE), envir = .GlobalEnv)";
+    private static final String CLOSE_GRAPHICS_DEVICES_EXPRESSION = "graphics.off()";
+    private static final long POOL_WARM_UP_PERIOD_MILLIS = 30000L;
+
     @Resource
     private Configuration configuration;
 
     @Resource
     private MBeanExportOperations mbeanExportOperations;
 
-    private KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool;
+    @Resource
+    private TaskScheduler backgroundTaskScheduler;
+
+    private GenericKeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool;
+
+    private final ConcurrentMap<RServiPoolKey, Boolean> borrowedPoolKeys =
+        new ConcurrentHashMap<RServiPoolKey, Boolean>();
+    private volatile List<String> warmedUpAddresses = Collections.emptyList();
+    private volatile Config warmedUpConfig;
 
     @PostConstruct
     public void initialize()
@@ -254,6 +330,7 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             configurePool(config);
             initializeRServiClientPool(config);
             registerRServiClientPoolMBean();
+            startRServiClientPoolWarmUp(config);
         }
     }
 
@@ -274,7 +351,22 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             public PooledRServiWrapper makeObject(final RServiPoolKey key) throws Exception
             {
                 final RServi rServi = RServiUtil.getRServi(key.getAddress(), key.getClientId());
-                return new PooledRServiWrapper(rServiPool, key, rServi);
+                final PooledRServiWrapper pooledRServi = new PooledRServiWrapper(rServiPool, key, rServi);
+
+                if (key.isWorkspaceReset())
+                {
+                    try
+                    {
+                        pooledRServi.captureInitialWorkingDirectory();
+                    }
+                    catch (final Exception e)
+                    {
+                        pooledRServi.destroy();
+                        throw e;
+                    }
+                }
+
+                return pooledRServi;
             }
 
             @Override
@@ -303,6 +395,7 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
                             key.getAddress(), responding ? "" : "in"));
                     }
 
+                    // the job that errored has already counted its failure on the circuit breaker
                     if (responding)
                     {
                         rServi.resetError();
@@ -317,7 +410,7 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             }
         };
 
-        rServiPool = new GenericKeyedObjectPoolFactory<RServiPoolKey, PooledRServiWrapper>(factory, config).createPool();
+        rServiPool = new GenericKeyedObjectPool<RServiPoolKey, PooledRServiWrapper>(factory, config);
         LOGGER.info("RServi pool instantiated and configured with: "
                     + ToStringBuilder.reflectionToString(config));
     }
@@ -335,6 +428,136 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         }
     }
 
+    /**
+     * Creates the minimum of idle clients configured for the pool, for the default RServi pool
+     * URI and all the application specific ones, in the background, so the first jobs don't pay
+     * for the connection setup. Clients closed since, for example by the evictor, are re-created
+     * periodically. Only the clients of the kind jobs have borrowed from a URI are warmed up for
+     * it: until a job has used it, a URI gets function call clients.
+     */
+    private void startRServiClientPoolWarmUp(final Config config)
+    {
+        if (config.minIdle <= 0)
+        {
+            return;
+        }
+
+        final Set<URI> rServiUris = new TreeSet<URI>();
+        rServiUris.add(configuration.getDefaultRserviPoolUri());
+        final Map<String, Set<URI>> applicationSpecificRserviPoolUris = configuration.getApplicationSpecificRserviPoolUris();
+        if (applicationSpecificRserviPoolUris != null)
+        {
+            for (final Set<URI> applicationRServiUris : applicationSpecificRserviPoolUris.values())
+            {
+                rServiUris.addAll(applicationRServiUris);
+            }
+        }
+
+        final List<String> addresses = new ArrayList<String>();
+        for (final URI rServiUri : rServiUris)
+        {
+            addresses.add(rServiUri.toString());
+        }
+
+        warmedUpAddresses = addresses;
+        warmedUpConfig = config;
+
+        backgroundTaskScheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                warmUpRServiClientPool();
+            }
+        }, POOL_WARM_UP_PERIOD_MILLIS);
+
+        LOGGER.info(String.format("Warming up RServi pool with %d idle clients for: %s", config.minIdle,
+            rServiUris));
+    }
+
+    private List<RServiPoolKey> getWarmedUpPoolKeys()
+    {
+        final List<RServiPoolKey> poolKeys = new ArrayList<RServiPoolKey>();
+        for (final String address : warmedUpAddresses)
+        {
+            final RServiPoolKey functionCallPoolKey = newPoolKey(address, Constants.RSERVI_CLIENT_ID, false);
+            final RServiPoolKey scriptPoolKey = newPoolKey(address, Constants.RSERVI_CLIENT_ID, true);
+            final boolean scriptPoolKeyBorrowed = borrowedPoolKeys.containsKey(scriptPoolKey);
+
+            if ((!scriptPoolKeyBorrowed) || (borrowedPoolKeys.containsKey(functionCallPoolKey)))
+            {
+                poolKeys.add(functionCallPoolKey);
+            }
+            if (scriptPoolKeyBorrowed)
+            {
+                poolKeys.add(scriptPoolKey);
+            }
+        }
+        return poolKeys;
+    }
+
+    private void warmUpRServiClientPool()
+    {
+        for (final RServiPoolKey poolKey : getWarmedUpPoolKeys())
+        {
+            // not using preparePool because it silently swallows client creation failures
+            final int missingClients = getMissingIdleClients(poolKey);
+            for (int i = 0; i < missingClients; i++)
+            {
+                try
+                {
+                    rServiPool.addObject(poolKey);
+                }
+                catch (final Exception e)
+                {
+                    // keep going with the other URIs, this one will be retried on the next run
+                    LOGGER.warn("Failed to warm up RServi pool for: " + poolKey.getAddress(), e);
+                    break;
+                }
+            }
+        }
+    }
+
+    private int getMissingIdleClients(final RServiPoolKey poolKey)
+    {
+        final int numIdle = rServiPool.getNumIdle(poolKey);
+        int missingClients = warmedUpConfig.minIdle - numIdle;
+        if (warmedUpConfig.maxActive > 0)
+        {
+            missingClients = Math.min(missingClients,
+                warmedUpConfig.maxActive - numIdle - rServiPool.getNumActive(poolKey));
+        }
+        return missingClients;
+    }
+
+    public int getWarmUpProgress()
+    {
+        if (warmedUpAddresses.isEmpty())
+        {
+            return -1;
+        }
+
+        final List<RServiPoolKey> poolKeys = getWarmedUpPoolKeys();
+        final int minIdle = warmedUpConfig.minIdle;
+        long readyClients = 0L;
+        for (final RServiPoolKey poolKey : poolKeys)
+        {
+            readyClients += Math.min(minIdle,
+                rServiPool.getNumIdle(poolKey) + rServiPool.getNumActive(poolKey));
+        }
+
+        return (int) (100L * readyClients / ((long) minIdle * poolKeys.size()));
+    }
+
+    public int getAvailableCapacity()
+    {
+        if ((rServiPool == null) || (rServiPool.getMaxTotal() <= 0))
+        {
+            return -1;
+        }
+
+        return Math.max(0, rServiPool.getMaxTotal() - rServiPool.getNumActive());
+    }
+
     @PreDestroy
     public void terminate() throws Exception
     {
@@ -355,10 +578,21 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         }
         else
         {
-            final PooledRServiWrapper rServi = rServiPool.borrowObject(new RServiPoolKey(address, "pooled-"
-                                                                                                  + clientId));
+            final RServiPoolKey poolKey = newPoolKey(address, clientId,
+                poolingStrategy == PoolingStrategy.IF_POSSIBLE_WITH_WORKSPACE_RESET);
+            borrowedPoolKeys.putIfAbsent(poolKey, Boolean.TRUE);
+            final PooledRServiWrapper rServi = rServiPool.borrowObject(poolKey);
             rServi.resetError();
             return rServi;
         }
     }
+
+    private static RServiPoolKey newPoolKey(final String address,
+                                            final String clientId,
+                                            final boolean workspaceReset)
+    {
+        // instances with workspace reset are kept apart so their workspace is always clean
+        return new RServiPoolKey(address, (workspaceReset ? "pooled-reset-" : "pooled-") + clientId,
+            workspaceReset);
+    }
 }
@@ -212,7 +212,7 @@ public class ApplicationPermissionEvaluator implements PermissionEvaluator
         else
         {
             final MultiFilesJob multiFilesJob = (MultiFilesJob) job;
-            if (multiFilesJob.getRScriptFile() != null)
+            if (multiFilesJob.getRScriptFileName() != null)
             {
                 return applicationSecurityConfiguration.isScriptSubmissionAllowed();
             }
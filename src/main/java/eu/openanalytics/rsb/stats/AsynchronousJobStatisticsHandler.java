@@ -0,0 +1,261 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.openanalytics.rsb.message.Job;
+
+/**
+ * Decorates a {@link JobStatisticsHandler} so job statistics are queued and stored in batches by a
+ * background flusher thread, keeping the storage latency away from job processing.
+ * <p>
+ * The queue is bounded: when it is full, the <code>queueFullPolicy</code> parameter decides if new
+ * statistics are dropped (<code>DROP</code>, the default, so job processing is never slowed down)
+ * or if the job processing thread waits for room in the queue (<code>BLOCK</code>, so no statistics
+ * are lost). The <code>queueCapacity</code> and <code>batchSize</code> parameters tune the queue
+ * and the maximum number of statistics stored at once.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class AsynchronousJobStatisticsHandler implements JobPhaseStatisticsHandler
+{
+    public static enum QueueFullPolicy
+    {
+        DROP, BLOCK
+    };
+
+    public static final String QUEUE_CAPACITY_PARAMETER = "queueCapacity";
+    public static final String BATCH_SIZE_PARAMETER = "batchSize";
+    public static final String QUEUE_FULL_POLICY_PARAMETER = "queueFullPolicy";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final QueueFullPolicy DEFAULT_QUEUE_FULL_POLICY = QueueFullPolicy.DROP;
+
+    private static final Log LOGGER = LogFactory.getLog(AsynchronousJobStatisticsHandler.class);
+    private static final long POLL_TIMEOUT_MILLIS = 1000L;
+    private static final long DROPPED_ENTRIES_LOG_INTERVAL = 1000L;
+
+    private final JobStatisticsHandler delegate;
+    private final AtomicLong droppedEntriesCount = new AtomicLong();
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private QueueFullPolicy queueFullPolicy = DEFAULT_QUEUE_FULL_POLICY;
+
+    private BlockingQueue<JobStatisticsEntry> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    public AsynchronousJobStatisticsHandler(final JobStatisticsHandler delegate)
+    {
+        Validate.notNull(delegate, "delegate can't be null");
+        this.delegate = delegate;
+    }
+
+    public void setConfiguration(final Map<String, Object> configuration)
+    {
+        if (configuration != null)
+        {
+            if (configuration.get(QUEUE_CAPACITY_PARAMETER) != null)
+            {
+                queueCapacity = ((Number) configuration.get(QUEUE_CAPACITY_PARAMETER)).intValue();
+            }
+            if (configuration.get(BATCH_SIZE_PARAMETER) != null)
+            {
+                batchSize = ((Number) configuration.get(BATCH_SIZE_PARAMETER)).intValue();
+            }
+            if (configuration.get(QUEUE_FULL_POLICY_PARAMETER) != null)
+            {
+                queueFullPolicy = QueueFullPolicy.valueOf(configuration.get(QUEUE_FULL_POLICY_PARAMETER)
+                    .toString()
+                    .toUpperCase());
+            }
+        }
+
+        Validate.isTrue(queueCapacity > 0, QUEUE_CAPACITY_PARAMETER + " must be strictly positive");
+        Validate.isTrue(batchSize > 0, BATCH_SIZE_PARAMETER + " must be strictly positive");
+
+        delegate.setConfiguration(configuration);
+    }
+
+    public void initialize()
+    {
+        delegate.initialize();
+
+        queue = new ArrayBlockingQueue<JobStatisticsEntry>(queueCapacity);
+        running = true;
+
+        flusher = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                flushUntilStopped();
+            }
+        }, "rsb-job-statistics-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        LOGGER.info(String.format(
+            "Storing job statistics asynchronously (queue capacity: %d, batch size: %d, policy: %s)",
+            queueCapacity, batchSize, queueFullPolicy));
+    }
+
+    public void destroy()
+    {
+        // the flusher stores the queued statistics before stopping
+        running = false;
+
+        try
+        {
+            flusher.join();
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        delegate.destroy();
+    }
+
+    public void storeJobStatistics(final Job job,
+                                   final Calendar jobCompletionTime,
+                                   final long millisecondsSpentProcessing,
+                                   final String rServiAddress)
+    {
+        storeJobStatistics(job, jobCompletionTime, millisecondsSpentProcessing, rServiAddress, null);
+    }
+
+    public void storeJobStatistics(final Job job,
+                                   final Calendar jobCompletionTime,
+                                   final long millisecondsSpentProcessing,
+                                   final String rServiAddress,
+                                   final JobPhaseTimings jobPhaseTimings)
+    {
+        final JobStatisticsEntry entry = new JobStatisticsEntry(job, jobCompletionTime,
+            millisecondsSpentProcessing, rServiAddress, jobPhaseTimings);
+
+        if (queueFullPolicy == QueueFullPolicy.BLOCK)
+        {
+            try
+            {
+                queue.put(entry);
+                return;
+            }
+            catch (final InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        else if (queue.offer(entry))
+        {
+            return;
+        }
+
+        final long dropped = droppedEntriesCount.incrementAndGet();
+        if (dropped % DROPPED_ENTRIES_LOG_INTERVAL == 1L)
+        {
+            LOGGER.warn("Job statistics queue is full, total dropped statistics: " + dropped);
+        }
+    }
+
+    public JobStatisticsHandler getDelegate()
+    {
+        return delegate;
+    }
+
+    public long getDroppedEntriesCount()
+    {
+        return droppedEntriesCount.get();
+    }
+
+    private void flushUntilStopped()
+    {
+        final List<JobStatisticsEntry> batch = new ArrayList<JobStatisticsEntry>(batchSize);
+
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                final JobStatisticsEntry firstEntry = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (firstEntry != null)
+                {
+                    batch.add(firstEntry);
+                    queue.drainTo(batch, batchSize - 1);
+                    flush(batch);
+                }
+            }
+            catch (final InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(final List<JobStatisticsEntry> batch)
+    {
+        try
+        {
+            if (delegate instanceof BatchJobStatisticsHandler)
+            {
+                ((BatchJobStatisticsHandler) delegate).storeJobStatistics(batch);
+                return;
+            }
+
+            for (final JobStatisticsEntry entry : batch)
+            {
+                if ((delegate instanceof JobPhaseStatisticsHandler) && (entry.getJobPhaseTimings() != null))
+                {
+                    ((JobPhaseStatisticsHandler) delegate).storeJobStatistics(entry.getJob(),
+                        entry.getJobCompletionTime(), entry.getMillisecondsSpentProcessing(),
+                        entry.getRServiAddress(), entry.getJobPhaseTimings());
+                }
+                else
+                {
+                    delegate.storeJobStatistics(entry.getJob(), entry.getJobCompletionTime(),
+                        entry.getMillisecondsSpentProcessing(), entry.getRServiAddress());
+                }
+            }
+        }
+        catch (final Throwable t)
+        {
+            LOGGER.warn("Failed to store a batch of " + batch.size() + " job statistics", t);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.message.Job;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+
+/**
+ * Keeps job statistics rollups in memory, per application and per RServi address, so throughput and
+ * processing time data are available without any external dependency.
+ * <p>
+ * The memory footprint is fixed: rollups are kept in rings of the latest 60 minutes, 48 hours and
+ * 31 days, and at most <code>maxScopeValues</code> applications and RServi addresses are tracked
+ * each (default: 64), further ones being accounted under <code>_other</code>. If the
+ * <code>snapshotFile</code> parameter is set, rollups are periodically saved to this file (every
+ * <code>snapshotPeriod</code> milliseconds, default: 60000) and restored from it at start-up.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class InMemoryJobStatisticsHandler implements JobStatisticsHandler, JobStatisticsRollupProvider
+{
+    public static final String SNAPSHOT_FILE_PARAMETER = "snapshotFile";
+    public static final String SNAPSHOT_PERIOD_PARAMETER = "snapshotPeriod";
+    public static final String MAX_SCOPE_VALUES_PARAMETER = "maxScopeValues";
+
+    public static final long DEFAULT_SNAPSHOT_PERIOD = 60000L;
+    public static final int DEFAULT_MAX_SCOPE_VALUES = 64;
+
+    public static final String OTHER_SCOPE_VALUE = "_other";
+
+    private static final Log LOGGER = LogFactory.getLog(InMemoryJobStatisticsHandler.class);
+    private static final int MAX_STRIPE_COUNT = 4;
+
+    private final Map<Scope, ConcurrentMap<String, Map<Granularity, RollupRing>>> rings;
+    private final int stripeCount;
+
+    private File snapshotFile;
+    private long snapshotPeriod = DEFAULT_SNAPSHOT_PERIOD;
+    private int maxScopeValues = DEFAULT_MAX_SCOPE_VALUES;
+    private ScheduledExecutorService snapshotExecutor;
+
+    public InMemoryJobStatisticsHandler()
+    {
+        rings = new EnumMap<Scope, ConcurrentMap<String, Map<Granularity, RollupRing>>>(Scope.class);
+        for (final Scope scope : Scope.values())
+        {
+            rings.put(scope, new ConcurrentHashMap<String, Map<Granularity, RollupRing>>());
+        }
+
+        stripeCount = Math.min(MAX_STRIPE_COUNT, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void setConfiguration(final Map<String, Object> configuration)
+    {
+        if (configuration == null)
+        {
+            return;
+        }
+
+        if (configuration.get(SNAPSHOT_FILE_PARAMETER) != null)
+        {
+            snapshotFile = new File(configuration.get(SNAPSHOT_FILE_PARAMETER).toString());
+        }
+        if (configuration.get(SNAPSHOT_PERIOD_PARAMETER) != null)
+        {
+            snapshotPeriod = ((Number) configuration.get(SNAPSHOT_PERIOD_PARAMETER)).longValue();
+        }
+        if (configuration.get(MAX_SCOPE_VALUES_PARAMETER) != null)
+        {
+            maxScopeValues = ((Number) configuration.get(MAX_SCOPE_VALUES_PARAMETER)).intValue();
+        }
+
+        Validate.isTrue(snapshotPeriod > 0L, SNAPSHOT_PERIOD_PARAMETER + " must be strictly positive");
+        Validate.isTrue(maxScopeValues > 0, MAX_SCOPE_VALUES_PARAMETER + " must be strictly positive");
+    }
+
+    public void initialize()
+    {
+        if (snapshotFile == null)
+        {
+            LOGGER.info("Keeping job statistics in memory only");
+            return;
+        }
+
+        restoreSnapshot();
+
+        snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "rsb-job-statistics-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        snapshotExecutor.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                takeSnapshot();
+            }
+        }, snapshotPeriod, snapshotPeriod, TimeUnit.MILLISECONDS);
+
+        LOGGER.info("Keeping job statistics in memory with snapshots in: " + snapshotFile);
+    }
+
+    public void destroy()
+    {
+        if (snapshotExecutor != null)
+        {
+            snapshotExecutor.shutdownNow();
+            takeSnapshot();
+        }
+    }
+
+    public void storeJobStatistics(final Job job,
+                                   final Calendar jobCompletionTime,
+                                   final long millisecondsSpentProcessing,
+                                   final String rServiAddress)
+    {
+        final long utcTimestamp = jobCompletionTime.getTimeInMillis();
+
+        record(Scope.APPLICATION, job.getApplicationName(), utcTimestamp, millisecondsSpentProcessing);
+
+        if (StringUtils.isNotBlank(rServiAddress))
+        {
+            record(Scope.RSERVI_ADDRESS, rServiAddress, utcTimestamp, millisecondsSpentProcessing);
+        }
+    }
+
+    public List<JobStatisticsRollup> getRollups(final Granularity granularity,
+                                                final Scope scope,
+                                                final String scopeValue,
+                                                final int bucketCount)
+    {
+        return getRollups(granularity, scope, scopeValue, bucketCount, System.currentTimeMillis());
+    }
+
+    // exposed for unit testing
+    List<JobStatisticsRollup> getRollups(final Granularity granularity,
+                                         final Scope scope,
+                                         final String scopeValue,
+                                         final int bucketCount,
+                                         final long utcTimestamp)
+    {
+        final Map<Granularity, RollupRing> scopeValueRings = rings.get(scope).get(scopeValue);
+        final long currentBucketStart = granularity.getBucketStart(utcTimestamp);
+        final int rollupCount = Math.min(bucketCount, getRingSize(granularity));
+
+        final List<JobStatisticsRollup> rollups = new ArrayList<JobStatisticsRollup>(rollupCount);
+        for (int i = 0; i < rollupCount; i++)
+        {
+            final long bucketStart = currentBucketStart - i * granularity.getBucketMillis();
+            final JobStatisticsRollup rollup = scopeValueRings == null ? null : scopeValueRings.get(
+                granularity).getRollup(bucketStart);
+
+            rollups.add(rollup != null ? rollup : new JobStatisticsRollup(granularity, scope, scopeValue,
+                bucketStart, 0L, 0L, new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT]));
+        }
+        return rollups;
+    }
+
+    private void record(final Scope scope,
+                        final String scopeValue,
+                        final long utcTimestamp,
+                        final long millisecondsSpentProcessing)
+    {
+        for (final RollupRing ring : getRings(scope, scopeValue).values())
+        {
+            ring.record(utcTimestamp, millisecondsSpentProcessing);
+        }
+    }
+
+    private Map<Granularity, RollupRing> getRings(final Scope scope, final String scopeValue)
+    {
+        final ConcurrentMap<String, Map<Granularity, RollupRing>> scopeRings = rings.get(scope);
+
+        final Map<Granularity, RollupRing> scopeValueRings = scopeRings.get(scopeValue);
+        if (scopeValueRings != null)
+        {
+            return scopeValueRings;
+        }
+
+        // bound the memory footprint by accounting extra scope values together
+        if ((scopeRings.size() >= maxScopeValues) && (!OTHER_SCOPE_VALUE.equals(scopeValue)))
+        {
+            return getRings(scope, OTHER_SCOPE_VALUE);
+        }
+
+        final Map<Granularity, RollupRing> newScopeValueRings = new EnumMap<Granularity, RollupRing>(
+            Granularity.class);
+        for (final Granularity granularity : Granularity.values())
+        {
+            newScopeValueRings.put(granularity, new RollupRing(granularity, scope, scopeValue,
+                getRingSize(granularity), stripeCount));
+        }
+
+        final Map<Granularity, RollupRing> existingScopeValueRings = scopeRings.putIfAbsent(
+            scopeValue, newScopeValueRings);
+        return existingScopeValueRings != null ? existingScopeValueRings : newScopeValueRings;
+    }
+
+    private static int getRingSize(final Granularity granularity)
+    {
+        switch (granularity)
+        {
+            case MINUTE :
+                return 60;
+            case HOUR :
+                return 48;
+            default :
+                return 31;
+        }
+    }
+
+    private void takeSnapshot()
+    {
+        final List<Map<String, Object>> snapshot = new ArrayList<Map<String, Object>>();
+
+        for (final Map<String, Map<Granularity, RollupRing>> scopeRings : rings.values())
+        {
+            for (final Map<Granularity, RollupRing> scopeValueRings : scopeRings.values())
+            {
+                for (final RollupRing ring : scopeValueRings.values())
+                {
+                    for (final JobStatisticsRollup rollup : ring.getRollups())
+                    {
+                        snapshot.add(toSnapshotEntry(rollup));
+                    }
+                }
+            }
+        }
+
+        try
+        {
+            // write aside first so a crash never leaves a truncated snapshot
+            final File temporaryFile = new File(snapshotFile.getPath() + ".tmp");
+            FileUtils.writeStringToFile(temporaryFile, Util.toJson(snapshot), "UTF-8");
+            if (!temporaryFile.renameTo(snapshotFile))
+            {
+                FileUtils.deleteQuietly(snapshotFile);
+                FileUtils.moveFile(temporaryFile, snapshotFile);
+            }
+        }
+        catch (final IOException ioe)
+        {
+            LOGGER.warn("Failed to write job statistics snapshot: " + snapshotFile, ioe);
+        }
+    }
+
+    private void restoreSnapshot()
+    {
+        if (!snapshotFile.isFile())
+        {
+            return;
+        }
+
+        try
+        {
+            final List<?> snapshot = Util.fromJson(FileUtils.readFileToString(snapshotFile, "UTF-8"),
+                List.class);
+
+            for (final Object snapshotEntry : snapshot)
+            {
+                final JobStatisticsRollup rollup = fromSnapshotEntry((Map<?, ?>) snapshotEntry);
+                getRings(rollup.getScope(), rollup.getScopeValue()).get(rollup.getGranularity()).restore(
+                    rollup);
+            }
+
+            LOGGER.info("Restored " + snapshot.size() + " job statistics rollups from: " + snapshotFile);
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Failed to restore job statistics snapshot: " + snapshotFile, e);
+        }
+    }
+
+    private static Map<String, Object> toSnapshotEntry(final JobStatisticsRollup rollup)
+    {
+        final Map<String, Object> snapshotEntry = new HashMap<String, Object>(7);
+        snapshotEntry.put("granularity", rollup.getGranularity().toString());
+        snapshotEntry.put("scope", rollup.getScope().toString());
+        snapshotEntry.put("scope_value", rollup.getScopeValue());
+        snapshotEntry.put("bucket_start", rollup.getBucketStart());
+        snapshotEntry.put("count", rollup.getCount());
+        snapshotEntry.put("time_spent", rollup.getTotalTimeSpent());
+        snapshotEntry.put("time_spent_bins", rollup.getTimeSpentBins());
+        return snapshotEntry;
+    }
+
+    private static JobStatisticsRollup fromSnapshotEntry(final Map<?, ?> snapshotEntry)
+    {
+        final List<?> bins = (List<?>) snapshotEntry.get("time_spent_bins");
+        final long[] timeSpentHistogram = new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT];
+        for (int i = 0; i < Math.min(bins.size(), timeSpentHistogram.length); i++)
+        {
+            timeSpentHistogram[i] = ((Number) bins.get(i)).longValue();
+        }
+
+        return new JobStatisticsRollup(Granularity.valueOf(snapshotEntry.get("granularity").toString()),
+            Scope.valueOf(snapshotEntry.get("scope").toString()), snapshotEntry.get("scope_value")
+                .toString(), ((Number) snapshotEntry.get("bucket_start")).longValue(),
+            ((Number) snapshotEntry.get("count")).longValue(),
+            ((Number) snapshotEntry.get("time_spent")).longValue(), timeSpentHistogram);
+    }
+}
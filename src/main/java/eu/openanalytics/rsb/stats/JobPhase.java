@@ -0,0 +1,33 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+/**
+ * The phases of the processing of a job that are timed separately.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public enum JobPhase
+{
+    RSERVI_BORROW, FUNCTION_CALL, SCRIPT_UPLOAD, SWEAVE_FILE_UPLOAD, JOB_FILES_UPLOAD, PROPERTIES_UPLOAD,
+    SCRIPT_EXECUTION, RESULT_FILES_LISTING, RESULT_FILES_DOWNLOAD;
+}
@@ -0,0 +1,132 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates job phase timings since start-up or the last reset and exposes them over JMX, which
+ * shows whether slow jobs are bound by I/O with RServi or by R computations.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobPhaseStatistics
+{
+    private static final JobPhase[] PHASES = JobPhase.values();
+
+    private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray phaseTotalNanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray phaseMaxNanos = new AtomicLongArray(PHASES.length);
+
+    public void record(final JobPhaseTimings jobPhaseTimings)
+    {
+        for (final JobPhase phase : PHASES)
+        {
+            if (!jobPhaseTimings.isTimed(phase))
+            {
+                continue;
+            }
+
+            final int index = phase.ordinal();
+            final long nanos = jobPhaseTimings.getPhaseNanos(phase);
+            phaseCounts.incrementAndGet(index);
+            phaseTotalNanos.addAndGet(index, nanos);
+
+            long maxNanos = phaseMaxNanos.get(index);
+            while ((nanos > maxNanos) && (!phaseMaxNanos.compareAndSet(index, maxNanos, nanos)))
+            {
+                maxNanos = phaseMaxNanos.get(index);
+            }
+        }
+    }
+
+    /**
+     * @return the average milliseconds spent in each phase.
+     */
+    public Map<String, Long> getAveragePhaseTimes()
+    {
+        final Map<String, Long> averagePhaseTimes = new LinkedHashMap<String, Long>(PHASES.length);
+        for (final JobPhase phase : PHASES)
+        {
+            final long count = phaseCounts.get(phase.ordinal());
+            if (count > 0L)
+            {
+                averagePhaseTimes.put(phase.toString(),
+                    TimeUnit.NANOSECONDS.toMillis(phaseTotalNanos.get(phase.ordinal()) / count));
+            }
+        }
+        return averagePhaseTimes;
+    }
+
+    /**
+     * @return the maximum milliseconds spent in each phase.
+     */
+    public Map<String, Long> getMaxPhaseTimes()
+    {
+        final Map<String, Long> maxPhaseTimes = new LinkedHashMap<String, Long>(PHASES.length);
+        for (final JobPhase phase : PHASES)
+        {
+            if (phaseCounts.get(phase.ordinal()) > 0L)
+            {
+                maxPhaseTimes.put(phase.toString(),
+                    TimeUnit.NANOSECONDS.toMillis(phaseMaxNanos.get(phase.ordinal())));
+            }
+        }
+        return maxPhaseTimes;
+    }
+
+    /**
+     * @return the share, in percents, of the total time spent in each phase.
+     */
+    public Map<String, Long> getPhaseTimeShares()
+    {
+        long allPhasesTotalNanos = 0L;
+        for (final JobPhase phase : PHASES)
+        {
+            allPhasesTotalNanos += phaseTotalNanos.get(phase.ordinal());
+        }
+
+        final Map<String, Long> phaseTimeShares = new LinkedHashMap<String, Long>(PHASES.length);
+        for (final JobPhase phase : PHASES)
+        {
+            if ((allPhasesTotalNanos > 0L) && (phaseCounts.get(phase.ordinal()) > 0L))
+            {
+                phaseTimeShares.put(phase.toString(), 100L * phaseTotalNanos.get(phase.ordinal())
+                                                      / allPhasesTotalNanos);
+            }
+        }
+        return phaseTimeShares;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < PHASES.length; i++)
+        {
+            phaseCounts.set(i, 0L);
+            phaseTotalNanos.set(i, 0L);
+            phaseMaxNanos.set(i, 0L);
+        }
+    }
+}
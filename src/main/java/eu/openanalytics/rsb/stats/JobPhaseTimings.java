@@ -0,0 +1,105 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the successive phases of the processing of a single job. Not thread-safe, as a job is
+ * processed by a single thread.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobPhaseTimings
+{
+    private final Map<JobPhase, Long> phaseNanos = new EnumMap<JobPhase, Long>(JobPhase.class);
+
+    private JobPhase currentPhase;
+    private long currentPhaseStartNanos;
+
+    /**
+     * Starts timing a phase, ending the current one if any.
+     */
+    public void start(final JobPhase phase)
+    {
+        stop();
+        currentPhase = phase;
+        currentPhaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the current phase if any.
+     */
+    public void stop()
+    {
+        if (currentPhase == null)
+        {
+            return;
+        }
+
+        final Long previousNanos = phaseNanos.get(currentPhase);
+        final long elapsedNanos = System.nanoTime() - currentPhaseStartNanos;
+        phaseNanos.put(currentPhase, previousNanos == null ? elapsedNanos : previousNanos + elapsedNanos);
+        currentPhase = null;
+    }
+
+    /**
+     * @return the milliseconds spent in each of the phases that have been timed, in phase order.
+     */
+    public Map<JobPhase, Long> getPhaseMilliseconds()
+    {
+        final Map<JobPhase, Long> phaseMilliseconds = new EnumMap<JobPhase, Long>(JobPhase.class);
+        for (final Map.Entry<JobPhase, Long> phase : phaseNanos.entrySet())
+        {
+            phaseMilliseconds.put(phase.getKey(), TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+        }
+        return phaseMilliseconds;
+    }
+
+    long getPhaseNanos(final JobPhase phase)
+    {
+        final Long nanos = phaseNanos.get(phase);
+        return nanos == null ? 0L : nanos;
+    }
+
+    boolean isTimed(final JobPhase phase)
+    {
+        return phaseNanos.containsKey(phase);
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<JobPhase, Long> phase : getPhaseMilliseconds().entrySet())
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(phase.getKey().toString().toLowerCase()).append('=').append(phase.getValue()).append("ms");
+        }
+        return sb.toString();
+    }
+}
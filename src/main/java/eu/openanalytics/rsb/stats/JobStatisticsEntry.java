@@ -0,0 +1,168 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.UUID;
+
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+import eu.openanalytics.rsb.message.Job;
+
+/**
+ * The statistics of a single job, as queued or batched before being stored. Only the identity of
+ * the job is kept, not its payload, so queued entries don't retain arguments or files meta.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobStatisticsEntry
+{
+    /**
+     * Stands for a completed job in statistics, with only its identity.
+     */
+    private static class JobIdentity implements Job
+    {
+        private final String type;
+        private final String applicationName;
+        private final UUID jobId;
+        private final String userName;
+
+        JobIdentity(final Job job)
+        {
+            this.type = job.getType();
+            this.applicationName = job.getApplicationName();
+            this.jobId = job.getJobId();
+            this.userName = job.getUserName();
+        }
+
+        public String getType()
+        {
+            return type;
+        }
+
+        public Source getSource()
+        {
+            return null;
+        }
+
+        public String getApplicationName()
+        {
+            return applicationName;
+        }
+
+        public String getUserName()
+        {
+            return userName;
+        }
+
+        public UUID getJobId()
+        {
+            return jobId;
+        }
+
+        public GregorianCalendar getSubmissionTime()
+        {
+            return null;
+        }
+
+        public Map<String, Serializable> getMeta()
+        {
+            return Collections.emptyMap();
+        }
+
+        public String getErrorMessageId()
+        {
+            return null;
+        }
+
+        public String getAbortMessageId()
+        {
+            return null;
+        }
+
+        public int getPriority()
+        {
+            return 0;
+        }
+    }
+
+    private final Job job;
+    private final Calendar jobCompletionTime;
+    private final long millisecondsSpentProcessing;
+    private final String rServiAddress;
+    private final JobPhaseTimings jobPhaseTimings;
+
+    public JobStatisticsEntry(final Job job,
+                              final Calendar jobCompletionTime,
+                              final long millisecondsSpentProcessing,
+                              final String rServiAddress)
+    {
+        this(job, jobCompletionTime, millisecondsSpentProcessing, rServiAddress, null);
+    }
+
+    public JobStatisticsEntry(final Job job,
+                              final Calendar jobCompletionTime,
+                              final long millisecondsSpentProcessing,
+                              final String rServiAddress,
+                              final JobPhaseTimings jobPhaseTimings)
+    {
+        this.job = new JobIdentity(job);
+        this.jobCompletionTime = jobCompletionTime;
+        this.millisecondsSpentProcessing = millisecondsSpentProcessing;
+        this.rServiAddress = rServiAddress;
+        this.jobPhaseTimings = jobPhaseTimings;
+    }
+
+    /**
+     * @return the job, of which only the type, application name, job ID and user name are known.
+     */
+    public Job getJob()
+    {
+        return job;
+    }
+
+    public Calendar getJobCompletionTime()
+    {
+        return jobCompletionTime;
+    }
+
+    public long getMillisecondsSpentProcessing()
+    {
+        return millisecondsSpentProcessing;
+    }
+
+    public String getRServiAddress()
+    {
+        return rServiAddress;
+    }
+
+    /**
+     * @return the timings of the phases of the job, or null if they're not known.
+     */
+    public JobPhaseTimings getJobPhaseTimings()
+    {
+        return jobPhaseTimings;
+    }
+}
@@ -30,6 +30,11 @@ import org.springframework.beans.BeanUtils;
  */
 public abstract class JobStatisticsHandlerFactory {
 
+    /**
+     * Set this handler parameter to false to store job statistics on the job processing thread.
+     */
+    public static final String ASYNCHRONOUS_PARAMETER = "asynchronous";
+
     private JobStatisticsHandlerFactory() {
         throw new UnsupportedOperationException("do not instantiate");
     }
@@ -39,8 +44,15 @@ public abstract class JobStatisticsHandlerFactory {
             return NoopJobStatisticsHandler.INSTANCE;
         }
 
-        final JobStatisticsHandler jobStatisticsHandler = BeanUtils.instantiate(clazz);
+        final JobStatisticsHandler jobStatisticsHandler = isAsynchronous(configuration)
+                ? new AsynchronousJobStatisticsHandler(BeanUtils.instantiate(clazz))
+                : BeanUtils.instantiate(clazz);
         jobStatisticsHandler.setConfiguration(configuration);
         return jobStatisticsHandler;
     }
+
+    private static boolean isAsynchronous(final Map<String, Object> configuration) {
+        return configuration == null
+                || !Boolean.FALSE.toString().equalsIgnoreCase(String.valueOf(configuration.get(ASYNCHRONOUS_PARAMETER)));
+    }
 }
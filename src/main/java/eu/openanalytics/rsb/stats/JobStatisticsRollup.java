@@ -0,0 +1,217 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Job statistics pre-aggregated over a time bucket for an application or an RServi address: job
+ * count, total processing time and processing time histogram.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobStatisticsRollup
+{
+    public static enum Granularity
+    {
+        MINUTE(60000L, 24L), HOUR(3600000L, 31L * 24L), DAY(24L * 3600000L, 400L * 24L);
+
+        private final long bucketMillis;
+        private final int retentionSeconds;
+
+        private Granularity(final long bucketMillis, final long retentionHours)
+        {
+            this.bucketMillis = bucketMillis;
+            this.retentionSeconds = (int) (retentionHours * 3600L);
+        }
+
+        public long getBucketMillis()
+        {
+            return bucketMillis;
+        }
+
+        /**
+         * How long rollups of this granularity are kept.
+         */
+        public int getRetentionSeconds()
+        {
+            return retentionSeconds;
+        }
+
+        /**
+         * Buckets are aligned on UTC minutes, hours and days.
+         */
+        public long getBucketStart(final long utcTimestamp)
+        {
+            return utcTimestamp - (utcTimestamp % bucketMillis);
+        }
+    };
+
+    public static enum Scope
+    {
+        APPLICATION, RSERVI_ADDRESS
+    };
+
+    /**
+     * Upper bounds, in milliseconds, of the processing time histogram bins. An extra last bin
+     * counts the jobs that took longer.
+     */
+    private static final long[] TIME_SPENT_BIN_UPPER_BOUNDS = {10L, 20L, 50L, 100L, 200L, 500L, 1000L,
+        2000L, 5000L, 10000L, 20000L, 50000L, 100000L, 200000L, 500000L, 1000000L, 2000000L, 5000000L};
+
+    public static final int TIME_SPENT_BIN_COUNT = TIME_SPENT_BIN_UPPER_BOUNDS.length + 1;
+
+    private static final int[] PERCENTILES = {50, 90, 95, 99};
+
+    private final Granularity granularity;
+    private final Scope scope;
+    private final String scopeValue;
+    private final long bucketStart;
+    private final long count;
+    private final long totalTimeSpent;
+    private final long[] timeSpentHistogram;
+
+    public JobStatisticsRollup(final Granularity granularity,
+                               final Scope scope,
+                               final String scopeValue,
+                               final long bucketStart,
+                               final long count,
+                               final long totalTimeSpent,
+                               final long[] timeSpentHistogram)
+    {
+        this.granularity = granularity;
+        this.scope = scope;
+        this.scopeValue = scopeValue;
+        this.bucketStart = bucketStart;
+        this.count = count;
+        this.totalTimeSpent = totalTimeSpent;
+        this.timeSpentHistogram = Arrays.copyOf(timeSpentHistogram, TIME_SPENT_BIN_COUNT);
+    }
+
+    /**
+     * @return the index of the histogram bin the provided processing time falls in.
+     */
+    public static int getTimeSpentBin(final long millisecondsSpentProcessing)
+    {
+        for (int i = 0; i < TIME_SPENT_BIN_UPPER_BOUNDS.length; i++)
+        {
+            if (millisecondsSpentProcessing <= TIME_SPENT_BIN_UPPER_BOUNDS[i])
+            {
+                return i;
+            }
+        }
+        return TIME_SPENT_BIN_UPPER_BOUNDS.length;
+    }
+
+    public Granularity getGranularity()
+    {
+        return granularity;
+    }
+
+    public Scope getScope()
+    {
+        return scope;
+    }
+
+    public String getScopeValue()
+    {
+        return scopeValue;
+    }
+
+    public long getBucketStart()
+    {
+        return bucketStart;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getTotalTimeSpent()
+    {
+        return totalTimeSpent;
+    }
+
+    public long getAverageTimeSpent()
+    {
+        return count == 0L ? 0L : totalTimeSpent / count;
+    }
+
+    /**
+     * @return the count of jobs per processing time bin, keyed by the upper bound of each bin in
+     *         milliseconds.
+     */
+    public Map<String, Long> getTimeSpentHistogram()
+    {
+        final Map<String, Long> histogram = new LinkedHashMap<String, Long>(TIME_SPENT_BIN_COUNT);
+        for (int i = 0; i < TIME_SPENT_BIN_UPPER_BOUNDS.length; i++)
+        {
+            histogram.put("le_" + TIME_SPENT_BIN_UPPER_BOUNDS[i], timeSpentHistogram[i]);
+        }
+        histogram.put("gt_" + TIME_SPENT_BIN_UPPER_BOUNDS[TIME_SPENT_BIN_UPPER_BOUNDS.length - 1],
+            timeSpentHistogram[TIME_SPENT_BIN_UPPER_BOUNDS.length]);
+        return histogram;
+    }
+
+    long[] getTimeSpentBins()
+    {
+        return Arrays.copyOf(timeSpentHistogram, TIME_SPENT_BIN_COUNT);
+    }
+
+    /**
+     * @return estimations of the processing time percentiles, as the upper bound of the histogram
+     *         bin each percentile falls in.
+     */
+    public Map<String, Long> getTimeSpentPercentiles()
+    {
+        final Map<String, Long> percentiles = new LinkedHashMap<String, Long>(PERCENTILES.length);
+        for (final int percentile : PERCENTILES)
+        {
+            percentiles.put("p" + percentile, estimateTimeSpentPercentile(percentile));
+        }
+        return percentiles;
+    }
+
+    long estimateTimeSpentPercentile(final int percentile)
+    {
+        if (count == 0L)
+        {
+            return 0L;
+        }
+
+        final long rank = (long) Math.ceil(count * percentile / 100.0d);
+        long cumulatedCount = 0L;
+        for (int i = 0; i < TIME_SPENT_BIN_UPPER_BOUNDS.length; i++)
+        {
+            cumulatedCount += timeSpentHistogram[i];
+            if (cumulatedCount >= rank)
+            {
+                return TIME_SPENT_BIN_UPPER_BOUNDS[i];
+            }
+        }
+        // beyond the last bound: the best known estimate is that bound
+        return TIME_SPENT_BIN_UPPER_BOUNDS[TIME_SPENT_BIN_UPPER_BOUNDS.length - 1];
+    }
+}
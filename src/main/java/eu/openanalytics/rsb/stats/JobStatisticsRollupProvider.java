@@ -0,0 +1,45 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.List;
+
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+
+/**
+ * Defines a {@link JobStatisticsHandler} that maintains {@link JobStatisticsRollup}s while storing
+ * job statistics, so they can be served without going through individual job statistics.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public interface JobStatisticsRollupProvider
+{
+    /**
+     * @return the rollups of the latest buckets of the provided granularity, most recent first,
+     *         including the current bucket and empty buckets.
+     */
+    List<JobStatisticsRollup> getRollups(Granularity granularity,
+                                         Scope scope,
+                                         String scopeValue,
+                                         int bucketCount);
+}
@@ -0,0 +1,90 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe provider of UTC month stamps (<code>yyyy-MM</code>) for timestamps. The boundaries
+ * and stamp of the latest month are kept so that, as job statistics mostly belong to the current
+ * month, stamping is a lock-free range check that allocates nothing.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+class MonthStampCache
+{
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static class Month
+    {
+        private final long startTimestamp;
+        private final long endTimestamp;
+        private final String stamp;
+
+        private Month(final long startTimestamp, final long endTimestamp, final String stamp)
+        {
+            this.startTimestamp = startTimestamp;
+            this.endTimestamp = endTimestamp;
+            this.stamp = stamp;
+        }
+
+        private boolean contains(final long timestamp)
+        {
+            return (timestamp >= startTimestamp) && (timestamp < endTimestamp);
+        }
+
+        private static Month of(final long timestamp)
+        {
+            final Calendar calendar = Calendar.getInstance(UTC);
+            calendar.setTimeInMillis(timestamp);
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+
+            final long startTimestamp = calendar.getTimeInMillis();
+            final String stamp = String.format("%04d-%02d", calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH) + 1);
+
+            calendar.add(Calendar.MONTH, 1);
+            return new Month(startTimestamp, calendar.getTimeInMillis(), stamp);
+        }
+    }
+
+    // immutable, hence safely replaced by racing threads
+    private volatile Month latestMonth;
+
+    String getMonthStamp(final long utcTimestamp)
+    {
+        final Month month = latestMonth;
+        if ((month != null) && (month.contains(utcTimestamp)))
+        {
+            return month.stamp;
+        }
+
+        final Month newMonth = Month.of(utcTimestamp);
+        latestMonth = newMonth;
+        return newMonth.stamp;
+    }
+}
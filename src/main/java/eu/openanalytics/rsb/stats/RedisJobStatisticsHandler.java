@@ -21,11 +21,13 @@
 
 package eu.openanalytics.rsb.stats;
 
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.Map.Entry;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -35,21 +37,34 @@ import org.apache.commons.pool.impl.GenericObjectPool;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.message.Job;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
 
 /**
+ * Stores job statistics in Redis, where each job statistics JSON document is pushed to a list per
+ * application and month. Per application and per RServi address rollups are maintained in Redis
+ * hashes, one per time bucket, that expire after the retention period of their granularity.
+ * 
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
  */
-public class RedisJobStatisticsHandler implements JobStatisticsHandler
+public class RedisJobStatisticsHandler
+    implements BatchJobStatisticsHandler, JobPhaseStatisticsHandler, JobStatisticsRollupProvider
 {
     private static final Log LOGGER = LogFactory.getLog(RedisJobStatisticsHandler.class);
 
-    private static final SimpleDateFormat MONTH_STAMP_FORMAT = new SimpleDateFormat("yyyy-MM");
-    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
-
     private static final String RSB_STATS_KEY_PREFIX = "rsb:stats:";
     private static final String RSB_STATS_APPLICATIONS_SET_KEY = RSB_STATS_KEY_PREFIX + "applications";
+    private static final String RSB_STATS_ROLLUPS_KEY_PREFIX = RSB_STATS_KEY_PREFIX + "rollups:";
+
+    private static final String ROLLUP_COUNT_FIELD = "count";
+    private static final String ROLLUP_TOTAL_TIME_SPENT_FIELD = "time_spent";
+    private static final String ROLLUP_TIME_SPENT_BIN_FIELD_PREFIX = "bin_";
+
+    private final MonthStampCache monthStampCache = new MonthStampCache();
 
     private JedisPool pool;
     private String redisHost;
@@ -102,36 +117,181 @@ public class RedisJobStatisticsHandler implements JobStatisticsHandler
                                    final long millisecondsSpentProcessing,
                                    final String rServiAddress)
     {
+        storeJobStatistics(job, jobCompletionTime, millisecondsSpentProcessing, rServiAddress, null);
+    }
+
+    public void storeJobStatistics(final Job job,
+                                   final Calendar jobCompletionTime,
+                                   final long millisecondsSpentProcessing,
+                                   final String rServiAddress,
+                                   final JobPhaseTimings jobPhaseTimings)
+    {
+        storeJobStatistics(Collections.singletonList(new JobStatisticsEntry(job, jobCompletionTime,
+            millisecondsSpentProcessing, rServiAddress, jobPhaseTimings)));
+    }
 
+    public void storeJobStatistics(final List<JobStatisticsEntry> jobStatisticsEntries)
+    {
         runWithJedis(new RedisAction()
         {
             public void run(final Jedis jedis)
             {
-                // ensure application is registered as a statistics producer
-                jedis.sadd(RSB_STATS_APPLICATIONS_SET_KEY, job.getApplicationName());
-
-                // add monthstamp to application's set of monthstamps
-                jobCompletionTime.setTimeZone(UTC);
-                final String monthStamp = MONTH_STAMP_FORMAT.format(jobCompletionTime.getTime());
-                jedis.sadd(RSB_STATS_KEY_PREFIX + job.getApplicationName() + ":monthstamps", monthStamp);
-
-                // create persisted statistics JSON structure and store it in monthstamp list
-                final Map<String, Object> statsMap = new HashMap<String, Object>(5);
-                statsMap.put("application_name", job.getApplicationName());
-                statsMap.put("job_id", job.getJobId());
-                statsMap.put("utc_timestamp", jobCompletionTime.getTimeInMillis());
-                statsMap.put("time_spent", millisecondsSpentProcessing);
-                statsMap.put("r_servi_address", rServiAddress);
-
-                if (StringUtils.isNotBlank(job.getUserName()))
+                // send all the commands in a single round-trip
+                final Pipeline pipeline = jedis.pipelined();
+
+                for (final JobStatisticsEntry entry : jobStatisticsEntries)
+                {
+                    storeJobStatistics(pipeline, entry);
+                }
+
+                pipeline.sync();
+            }
+        });
+    }
+
+    private void storeJobStatistics(final Pipeline pipeline, final JobStatisticsEntry entry)
+    {
+        final Job job = entry.getJob();
+        final long utcTimestamp = entry.getJobCompletionTime().getTimeInMillis();
+
+        // ensure application is registered as a statistics producer
+        pipeline.sadd(RSB_STATS_APPLICATIONS_SET_KEY, job.getApplicationName());
+
+        // add monthstamp to application's set of monthstamps
+        final String monthStamp = monthStampCache.getMonthStamp(utcTimestamp);
+        pipeline.sadd(RSB_STATS_KEY_PREFIX + job.getApplicationName() + ":monthstamps", monthStamp);
+
+        // create persisted statistics JSON structure and store it in monthstamp list
+        final Map<String, Object> statsMap = new HashMap<String, Object>(5);
+        statsMap.put("application_name", job.getApplicationName());
+        statsMap.put("job_id", job.getJobId());
+        statsMap.put("utc_timestamp", utcTimestamp);
+        statsMap.put("time_spent", entry.getMillisecondsSpentProcessing());
+        statsMap.put("r_servi_address", entry.getRServiAddress());
+
+        if (StringUtils.isNotBlank(job.getUserName()))
+        {
+            statsMap.put("user_name", job.getUserName());
+        }
+
+        if (entry.getJobPhaseTimings() != null)
+        {
+            final Map<String, Long> phaseTimes = new HashMap<String, Long>();
+            for (final Entry<JobPhase, Long> phaseTime : entry.getJobPhaseTimings()
+                .getPhaseMilliseconds()
+                .entrySet())
+            {
+                phaseTimes.put(phaseTime.getKey().toString().toLowerCase(), phaseTime.getValue());
+            }
+            statsMap.put("phase_times", phaseTimes);
+        }
+
+        final String statsJson = Util.toJson(statsMap);
+        pipeline.lpush(RSB_STATS_KEY_PREFIX + job.getApplicationName() + ":" + monthStamp, statsJson);
+
+        // update rollups
+        updateRollups(pipeline, Scope.APPLICATION, job.getApplicationName(), utcTimestamp,
+            entry.getMillisecondsSpentProcessing());
+
+        if (StringUtils.isNotBlank(entry.getRServiAddress()))
+        {
+            updateRollups(pipeline, Scope.RSERVI_ADDRESS, entry.getRServiAddress(), utcTimestamp,
+                entry.getMillisecondsSpentProcessing());
+        }
+    }
+
+    private void updateRollups(final Pipeline pipeline,
+                               final Scope scope,
+                               final String scopeValue,
+                               final long utcTimestamp,
+                               final long millisecondsSpentProcessing)
+    {
+        final String timeSpentBinField = ROLLUP_TIME_SPENT_BIN_FIELD_PREFIX
+                                         + JobStatisticsRollup.getTimeSpentBin(millisecondsSpentProcessing);
+
+        for (final Granularity granularity : Granularity.values())
+        {
+            final String rollupKey = getRollupKey(granularity, scope, scopeValue,
+                granularity.getBucketStart(utcTimestamp));
+
+            pipeline.hincrBy(rollupKey, ROLLUP_COUNT_FIELD, 1L);
+            pipeline.hincrBy(rollupKey, ROLLUP_TOTAL_TIME_SPENT_FIELD, millisecondsSpentProcessing);
+            pipeline.hincrBy(rollupKey, timeSpentBinField, 1L);
+            pipeline.expire(rollupKey, granularity.getRetentionSeconds());
+        }
+    }
+
+    public List<JobStatisticsRollup> getRollups(final Granularity granularity,
+                                                final Scope scope,
+                                                final String scopeValue,
+                                                final int bucketCount)
+    {
+        final long currentBucketStart = granularity.getBucketStart(System.currentTimeMillis());
+        final List<JobStatisticsRollup> rollups = new ArrayList<JobStatisticsRollup>(bucketCount);
+
+        final boolean rollupsRead = runWithJedis(new RedisAction()
+        {
+            public void run(final Jedis jedis)
+            {
+                // fetch all the buckets in a single round-trip
+                final Pipeline pipeline = jedis.pipelined();
+                final List<Response<Map<String, String>>> responses = new ArrayList<Response<Map<String, String>>>(
+                    bucketCount);
+
+                for (int i = 0; i < bucketCount; i++)
                 {
-                    statsMap.put("user_name", job.getUserName());
+                    final long bucketStart = currentBucketStart - i * granularity.getBucketMillis();
+                    responses.add(pipeline.hgetAll(getRollupKey(granularity, scope, scopeValue, bucketStart)));
                 }
 
-                final String statsJson = Util.toJson(statsMap);
-                jedis.lpush(RSB_STATS_KEY_PREFIX + job.getApplicationName() + ":" + monthStamp, statsJson);
+                pipeline.sync();
+
+                for (int i = 0; i < bucketCount; i++)
+                {
+                    final long bucketStart = currentBucketStart - i * granularity.getBucketMillis();
+                    rollups.add(toRollup(granularity, scope, scopeValue, bucketStart, responses.get(i)
+                        .get()));
+                }
             }
         });
+
+        if (!rollupsRead)
+        {
+            throw new IllegalStateException("Failed to read job statistics rollups from Redis");
+        }
+
+        return rollups;
+    }
+
+    private static JobStatisticsRollup toRollup(final Granularity granularity,
+                                                final Scope scope,
+                                                final String scopeValue,
+                                                final long bucketStart,
+                                                final Map<String, String> fields)
+    {
+        final long[] timeSpentHistogram = new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT];
+        for (int i = 0; i < timeSpentHistogram.length; i++)
+        {
+            timeSpentHistogram[i] = toLong(fields.get(ROLLUP_TIME_SPENT_BIN_FIELD_PREFIX + i));
+        }
+
+        return new JobStatisticsRollup(granularity, scope, scopeValue, bucketStart,
+            toLong(fields.get(ROLLUP_COUNT_FIELD)), toLong(fields.get(ROLLUP_TOTAL_TIME_SPENT_FIELD)),
+            timeSpentHistogram);
+    }
+
+    private static long toLong(final String value)
+    {
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    private static String getRollupKey(final Granularity granularity,
+                                       final Scope scope,
+                                       final String scopeValue,
+                                       final long bucketStart)
+    {
+        return RSB_STATS_ROLLUPS_KEY_PREFIX + scope.toString().toLowerCase() + ":" + scopeValue + ":"
+               + granularity.toString().toLowerCase() + ":" + bucketStart;
     }
 
     private boolean runWithJedis(final RedisAction action)
@@ -0,0 +1,235 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+
+/**
+ * Fixed size ring of the latest rollup buckets of a granularity. The ring is striped across
+ * threads, so that job worker threads don't all contend on the same counters: each stripe has its
+ * own bucket per slot and its own lock, under which a slot is moved to a new bucket and counted in
+ * atomically.
+ * 
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+class RollupRing
+{
+    private static final int COUNT_FIELD = 0;
+    private static final int TOTAL_TIME_SPENT_FIELD = 1;
+    private static final int FIRST_BIN_FIELD = 2;
+    private static final int FIELD_COUNT = FIRST_BIN_FIELD + JobStatisticsRollup.TIME_SPENT_BIN_COUNT;
+
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    /**
+     * The buckets and counters of one stripe, guarded by the stripe itself.
+     */
+    private static class Stripe
+    {
+        private final long[] bucketStarts;
+        private final long[] counters;
+
+        Stripe(final int size)
+        {
+            bucketStarts = new long[size];
+            Arrays.fill(bucketStarts, NO_BUCKET);
+            counters = new long[size * FIELD_COUNT];
+        }
+
+        /**
+         * @return false if the slot holds a more recent bucket.
+         */
+        boolean moveSlotTo(final int slot, final long bucketStart)
+        {
+            if (bucketStarts[slot] > bucketStart)
+            {
+                return false;
+            }
+            if (bucketStarts[slot] < bucketStart)
+            {
+                Arrays.fill(counters, slot * FIELD_COUNT, (slot + 1) * FIELD_COUNT, 0L);
+                bucketStarts[slot] = bucketStart;
+            }
+            return true;
+        }
+    }
+
+    private final Granularity granularity;
+    private final Scope scope;
+    private final String scopeValue;
+    private final int size;
+    private final Stripe[] stripes;
+
+    RollupRing(final Granularity granularity,
+               final Scope scope,
+               final String scopeValue,
+               final int size,
+               final int stripeCount)
+    {
+        this.granularity = granularity;
+        this.scope = scope;
+        this.scopeValue = scopeValue;
+        this.size = size;
+
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+            stripes[i] = new Stripe(size);
+        }
+    }
+
+    int getSize()
+    {
+        return size;
+    }
+
+    void record(final long utcTimestamp, final long millisecondsSpentProcessing)
+    {
+        final long bucketStart = granularity.getBucketStart(utcTimestamp);
+        final int slot = getSlot(bucketStart);
+        final Stripe stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+
+        synchronized (stripe)
+        {
+            if (!stripe.moveSlotTo(slot, bucketStart))
+            {
+                // too old to be kept in the ring
+                return;
+            }
+
+            final int offset = slot * FIELD_COUNT;
+            stripe.counters[offset + COUNT_FIELD]++;
+            stripe.counters[offset + TOTAL_TIME_SPENT_FIELD] += millisecondsSpentProcessing;
+            stripe.counters[offset + FIRST_BIN_FIELD
+                            + JobStatisticsRollup.getTimeSpentBin(millisecondsSpentProcessing)]++;
+        }
+    }
+
+    /**
+     * @return the rollup of the bucket starting at the provided time, or null if it's not in the
+     *         ring anymore or hasn't been recorded.
+     */
+    JobStatisticsRollup getRollup(final long bucketStart)
+    {
+        final int slot = getSlot(bucketStart);
+        final long[] fields = new long[FIELD_COUNT];
+        boolean recorded = false;
+
+        for (final Stripe stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                final long stripeBucketStart = stripe.bucketStarts[slot];
+                if (stripeBucketStart > bucketStart)
+                {
+                    // the bucket has started being replaced
+                    return null;
+                }
+                if (stripeBucketStart == bucketStart)
+                {
+                    recorded = true;
+                    for (int field = 0; field < FIELD_COUNT; field++)
+                    {
+                        fields[field] += stripe.counters[slot * FIELD_COUNT + field];
+                    }
+                }
+            }
+        }
+
+        if (!recorded)
+        {
+            return null;
+        }
+
+        final long[] timeSpentHistogram = new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT];
+        System.arraycopy(fields, FIRST_BIN_FIELD, timeSpentHistogram, 0, timeSpentHistogram.length);
+
+        return new JobStatisticsRollup(granularity, scope, scopeValue, bucketStart, fields[COUNT_FIELD],
+            fields[TOTAL_TIME_SPENT_FIELD], timeSpentHistogram);
+    }
+
+    /**
+     * @return the rollups of all the recorded buckets still in the ring.
+     */
+    List<JobStatisticsRollup> getRollups()
+    {
+        final List<JobStatisticsRollup> rollups = new ArrayList<JobStatisticsRollup>(size);
+        for (int slot = 0; slot < size; slot++)
+        {
+            long bucketStart = NO_BUCKET;
+            for (final Stripe stripe : stripes)
+            {
+                synchronized (stripe)
+                {
+                    bucketStart = Math.max(bucketStart, stripe.bucketStarts[slot]);
+                }
+            }
+
+            if (bucketStart != NO_BUCKET)
+            {
+                final JobStatisticsRollup rollup = getRollup(bucketStart);
+                if (rollup != null)
+                {
+                    rollups.add(rollup);
+                }
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * Adds a previously taken rollup, typically from a snapshot, to the ring.
+     */
+    void restore(final JobStatisticsRollup rollup)
+    {
+        final int slot = getSlot(rollup.getBucketStart());
+        final Stripe stripe = stripes[0];
+
+        synchronized (stripe)
+        {
+            if (!stripe.moveSlotTo(slot, rollup.getBucketStart()))
+            {
+                return;
+            }
+
+            final int offset = slot * FIELD_COUNT;
+            stripe.counters[offset + COUNT_FIELD] += rollup.getCount();
+            stripe.counters[offset + TOTAL_TIME_SPENT_FIELD] += rollup.getTotalTimeSpent();
+
+            final long[] timeSpentHistogram = rollup.getTimeSpentBins();
+            for (int i = 0; i < timeSpentHistogram.length; i++)
+            {
+                stripe.counters[offset + FIRST_BIN_FIELD + i] += timeSpentHistogram[i];
+            }
+        }
+    }
+
+    private int getSlot(final long bucketStart)
+    {
+        return (int) ((bucketStart / granularity.getBucketMillis()) % size);
+    }
+}
@@ -67,6 +67,12 @@ import eu.openanalytics.rsb.data.CatalogManager.PutCatalogFileResult;
 import eu.openanalytics.rsb.rest.types.Catalog;
 import eu.openanalytics.rsb.rest.types.RServiPools;
 import eu.openanalytics.rsb.rservi.RServiPackageManager;
+import eu.openanalytics.rsb.stats.AsynchronousJobStatisticsHandler;
+import eu.openanalytics.rsb.stats.JobStatisticsHandler;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+import eu.openanalytics.rsb.stats.RedisJobStatisticsHandler;
 
 /**
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
@@ -262,4 +268,40 @@ public class AdminResourceTestCase
             IOUtils.toInputStream("fake script"), httpHeaders, uriInfo);
         assertThat(secondResponse.getStatus(), is(204));
     }
+
+    @Test
+    public void getJobStatisticsRollups() throws Exception
+    {
+        final RedisJobStatisticsHandler redisJobStatisticsHandler = mock(RedisJobStatisticsHandler.class);
+        final JobStatisticsRollup rollup = new JobStatisticsRollup(Granularity.HOUR, Scope.APPLICATION,
+            "TEST_APP", 0L, 2L, 300L, new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT]);
+        when(redisJobStatisticsHandler.getRollups(Granularity.HOUR, Scope.APPLICATION, "TEST_APP", 24)).thenReturn(
+            Collections.singletonList(rollup));
+        adminResource.setJobStatisticsHandler(new AsynchronousJobStatisticsHandler(redisJobStatisticsHandler));
+
+        final Response response = adminResource.getJobStatisticsRollups("hour", "TEST_APP", null, 24);
+
+        assertThat(response.getStatus(), is(200));
+        final List<?> rollups = Util.fromJson(response.getEntity().toString(), List.class);
+        assertThat(rollups.size(), is(1));
+        assertThat(((Map<?, ?>) rollups.get(0)).get("averageTimeSpent"), is((Object) 150));
+    }
+
+    @Test
+    public void getJobStatisticsRollupsNotMaintained() throws Exception
+    {
+        adminResource.setJobStatisticsHandler(mock(JobStatisticsHandler.class));
+
+        final Response response = adminResource.getJobStatisticsRollups("hour", "TEST_APP", null, 24);
+
+        assertThat(response.getStatus(), is(404));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getJobStatisticsRollupsWithoutScope() throws Exception
+    {
+        adminResource.setJobStatisticsHandler(mock(RedisJobStatisticsHandler.class));
+
+        adminResource.getJobStatisticsRollups("hour", null, null, 24);
+    }
 }
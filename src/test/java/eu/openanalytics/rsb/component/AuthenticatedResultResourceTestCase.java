@@ -33,6 +33,7 @@ import java.util.UUID;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
@@ -67,6 +68,9 @@ public class AuthenticatedResultResourceTestCase
     @Mock
     private SecureResultStore resultStore;
 
+    @Mock
+    private Request request;
+
     @Mock
     private SecurityContext securityContext;
 
@@ -89,7 +93,8 @@ public class AuthenticatedResultResourceTestCase
     @Test(expected = WebApplicationException.class)
     public void getResultNotFound() throws IOException
     {
-        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
     }
 
     @Test
@@ -97,7 +102,8 @@ public class AuthenticatedResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
         assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
 
         final StreamingOutput result = (StreamingOutput) response.getEntity();
@@ -111,7 +117,7 @@ public class AuthenticatedResultResourceTestCase
     @Test(expected = WebApplicationException.class)
     public void getResultMetaNotFound() throws IOException
     {
-        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, null);
     }
 
     @Test
@@ -119,7 +125,7 @@ public class AuthenticatedResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, null);
         assertThat(response.getStatus(), is(Status.NO_CONTENT.getStatusCode()));
 
         assertThat(response.getMetadata().get(HttpHeaders.CONTENT_LENGTH), notNullValue());
@@ -143,7 +149,7 @@ public class AuthenticatedResultResourceTestCase
             @Override
             public long getDataLength() throws IOException
             {
-                return 1;
+                return resultPayload.getBytes().length;
             }
 
             @Override
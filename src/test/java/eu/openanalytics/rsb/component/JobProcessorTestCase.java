@@ -23,27 +23,36 @@ package eu.openanalytics.rsb.component;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.rmi.ConnectException;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.EnumSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -56,6 +65,7 @@ import de.walware.rj.data.defaultImpl.RVectorImpl;
 import de.walware.rj.servi.RServi;
 import de.walware.rj.services.FunctionCall;
 import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.data.BlobStore;
 import eu.openanalytics.rsb.message.AbstractFunctionCallJob;
 import eu.openanalytics.rsb.message.AbstractFunctionCallResult;
 import eu.openanalytics.rsb.message.AbstractResult;
@@ -64,7 +74,12 @@ import eu.openanalytics.rsb.message.MultiFilesJob;
 import eu.openanalytics.rsb.message.MultiFilesResult;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker;
+import eu.openanalytics.rsb.rservi.RServiLoadTracker;
 import eu.openanalytics.rsb.rservi.RServiUriSelector;
+import eu.openanalytics.rsb.stats.JobPhase;
+import eu.openanalytics.rsb.stats.JobPhaseStatisticsHandler;
+import eu.openanalytics.rsb.stats.JobPhaseTimings;
 import eu.openanalytics.rsb.stats.JobStatisticsHandler;
 
 /**
@@ -75,6 +90,8 @@ public class JobProcessorTestCase
 {
     private JobProcessor jobProcessor;
 
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
     @Mock
     private Configuration configuration;
     @Mock
@@ -85,6 +102,8 @@ public class JobProcessorTestCase
     private JobStatisticsHandler jobStatisticsHandler;
     @Mock
     private RServiUriSelector rServiUriSelector;
+    @Mock
+    private BlobStore blobStore;
 
     @Before
     public void prepareTest() throws URISyntaxException
@@ -93,8 +112,12 @@ public class JobProcessorTestCase
         jobProcessor.setConfiguration(configuration);
         jobProcessor.setMessageDispatcher(messageDispatcher);
         jobProcessor.setRServiUriSelector(rServiUriSelector);
+        jobProcessor.setRServiLoadTracker(new RServiLoadTracker());
+        rServiCircuitBreaker = new RServiCircuitBreaker();
+        jobProcessor.setRServiCircuitBreaker(rServiCircuitBreaker);
         jobProcessor.setRServiInstanceProvider(rServiInstanceProvider);
         jobProcessor.setJobStatisticsHandler(jobStatisticsHandler);
+        jobProcessor.setBlobStore(blobStore);
 
         when(rServiUriSelector.getUriForApplication(anyString())).thenReturn(new URI("fake://default"));
     }
@@ -110,6 +133,99 @@ public class JobProcessorTestCase
         jobProcessor.process(mock(AbstractFunctionCallJob.class));
     }
 
+    @Test
+    public void processWithExhaustedRserviPool() throws Exception
+    {
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE))).thenThrow(
+            new NoSuchElementException("simulated pool exhaustion"));
+
+        for (int i = 0; i < RServiCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++)
+        {
+            try
+            {
+                jobProcessor.process(mock(AbstractFunctionCallJob.class));
+                fail("an exception should have been raised");
+            }
+            catch (final NoSuchElementException nsee)
+            {
+                // expected
+            }
+        }
+
+        assertThat(rServiCircuitBreaker.getState(new URI("fake://default")),
+            is(RServiCircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void processWithUnreachableRserviPool() throws Exception
+    {
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE))).thenThrow(
+            new ConnectException("simulated connection refusal"));
+
+        for (int i = 0; i < RServiCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++)
+        {
+            try
+            {
+                jobProcessor.process(mock(AbstractFunctionCallJob.class));
+                fail("an exception should have been raised");
+            }
+            catch (final ConnectException ce)
+            {
+                // expected
+            }
+        }
+
+        assertThat(rServiCircuitBreaker.getState(new URI("fake://default")),
+            is(RServiCircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void processWithFailedHalfOpenTrial() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        final RServiCircuitBreaker halfOpenCircuitBreaker = mock(RServiCircuitBreaker.class);
+        when(halfOpenCircuitBreaker.allowRequest(defaultPoolUri)).thenReturn(true);
+        jobProcessor.setRServiCircuitBreaker(halfOpenCircuitBreaker);
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE))).thenThrow(
+            new NoSuchElementException("simulated borrow time out"));
+
+        try
+        {
+            jobProcessor.process(mock(AbstractFunctionCallJob.class));
+            fail("an exception should have been raised");
+        }
+        catch (final NoSuchElementException nsee)
+        {
+            // expected
+        }
+
+        verify(halfOpenCircuitBreaker).releaseTrial(defaultPoolUri);
+        verify(halfOpenCircuitBreaker, never()).recordSuccess(any(URI.class));
+        verify(halfOpenCircuitBreaker, never()).recordFailure(any(URI.class));
+    }
+
+    @Test
+    public void processRecordsSuccessOnceRIsReached() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        final RServiCircuitBreaker circuitBreaker = mock(RServiCircuitBreaker.class);
+        when(circuitBreaker.allowRequest(defaultPoolUri)).thenReturn(true);
+        jobProcessor.setRServiCircuitBreaker(circuitBreaker);
+        final MultiFilesJob job = setupMocksForProcessingMultiFilesJob(defaultPoolUri);
+        when(job.buildSuccessResult()).thenReturn(mock(MultiFilesResult.class));
+
+        jobProcessor.process(job);
+
+        verify(circuitBreaker).recordSuccess(defaultPoolUri);
+        verify(circuitBreaker, never()).recordFailure(any(URI.class));
+    }
+
     @Test
     public void processRserviError() throws Exception
     {
@@ -174,8 +290,9 @@ public class JobProcessorTestCase
         final URI defaultPoolUri = new URI("fake://default");
         when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
         final RServi rServi = mock(RServi.class);
-        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenReturn(
-            rServi);
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE_WITH_WORKSPACE_RESET))).thenReturn(rServi);
 
         final MultiFilesJob job = mock(MultiFilesJob.class);
         final MultiFilesResult result = mock(MultiFilesResult.class);
@@ -191,29 +308,65 @@ public class JobProcessorTestCase
     public void processMultiFilesJob() throws Exception
     {
         final URI defaultPoolUri = new URI("fake://default");
-        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
-        final RServi rServi = mock(RServi.class);
-        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenReturn(
-            rServi);
-        final FunctionCall functionCall = mock(FunctionCall.class);
-        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
-        final RObject rObject = new RVectorImpl<RCharacterDataImpl>(new RCharacterDataImpl(new String[0]));
-        when(rServi.evalData(anyString(), (IProgressMonitor) isNull())).thenReturn(rObject);
-        final MultiFilesJob job = mock(MultiFilesJob.class);
-        final File scriptFile = File.createTempFile("rsb", "test");
-        scriptFile.deleteOnExit();
-        when(job.getRScriptFile()).thenReturn(scriptFile);
-        when(job.getFiles()).thenReturn(new File[]{scriptFile});
+        final MultiFilesJob job = setupMocksForProcessingMultiFilesJob(defaultPoolUri);
         final MultiFilesResult result = mock(MultiFilesResult.class);
         when(job.buildSuccessResult()).thenReturn(result);
 
         jobProcessor.process(job);
 
+        verify(job).openFile(eq("test.R"), eq(blobStore));
+        verify(job).openFile(eq("data.csv"), eq(blobStore));
         verify(jobStatisticsHandler).storeJobStatistics(eq(job), any(Calendar.class), anyLong(),
             eq(defaultPoolUri.toString()));
         verify(messageDispatcher).dispatch(eq(result));
     }
 
+    @Test
+    public void processMultiFilesJobWithPhaseTimings() throws Exception
+    {
+        final JobPhaseStatisticsHandler jobPhaseStatisticsHandler = mock(JobPhaseStatisticsHandler.class);
+        jobProcessor.setJobStatisticsHandler(jobPhaseStatisticsHandler);
+
+        final URI defaultPoolUri = new URI("fake://default");
+        final MultiFilesJob job = setupMocksForProcessingMultiFilesJob(defaultPoolUri);
+        when(job.buildSuccessResult()).thenReturn(mock(MultiFilesResult.class));
+
+        jobProcessor.process(job);
+
+        final ArgumentCaptor<JobPhaseTimings> jobPhaseTimings = ArgumentCaptor.forClass(JobPhaseTimings.class);
+        verify(jobPhaseStatisticsHandler).storeJobStatistics(eq(job), any(Calendar.class), anyLong(),
+            eq(defaultPoolUri.toString()), jobPhaseTimings.capture());
+        assertThat(jobPhaseTimings.getValue().getPhaseMilliseconds().keySet(), is((Set<JobPhase>) EnumSet.of(
+            JobPhase.RSERVI_BORROW, JobPhase.SCRIPT_UPLOAD, JobPhase.JOB_FILES_UPLOAD,
+            JobPhase.PROPERTIES_UPLOAD, JobPhase.SCRIPT_EXECUTION, JobPhase.RESULT_FILES_LISTING,
+            JobPhase.RESULT_FILES_DOWNLOAD)));
+    }
+
+    private MultiFilesJob setupMocksForProcessingMultiFilesJob(final URI defaultPoolUri) throws Exception
+    {
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+        final RServi rServi = mock(RServi.class);
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE_WITH_WORKSPACE_RESET))).thenReturn(rServi);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        final RObject rObject = new RVectorImpl<RCharacterDataImpl>(new RCharacterDataImpl(new String[0]));
+        when(rServi.evalData(anyString(), (IProgressMonitor) isNull())).thenReturn(rObject);
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        when(job.getRScriptFileName()).thenReturn("test.R");
+        when(job.getFileNames()).thenReturn(Arrays.asList("test.R", "data.csv"));
+        when(job.openFile(anyString(), eq(blobStore))).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(final InvocationOnMock invocation) throws Throwable
+            {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        });
+        return job;
+    }
+
     private AbstractFunctionCallResult setupResultMockForFunctionCallJob(final AbstractFunctionCallJob job)
         throws IOException
     {
@@ -37,7 +37,9 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.data.PersistedFileSetResult;
 import eu.openanalytics.rsb.data.PersistedResult;
+import eu.openanalytics.rsb.data.PersistedTextResult;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.message.AbstractFunctionCallResult;
 import eu.openanalytics.rsb.message.MultiFilesResult;
@@ -69,7 +71,7 @@ public class RestResultProcessorTestCase
 
         restResultProcessor.process(functionCallResult);
 
-        verify(resultStore).store(any(PersistedResult.class));
+        verify(resultStore).storeText(any(PersistedTextResult.class));
         verify(functionCallResult).destroy();
     }
 
@@ -81,7 +83,7 @@ public class RestResultProcessorTestCase
 
         restResultProcessor.process(functionCallResult);
 
-        verify(resultStore).store(any(PersistedResult.class));
+        verify(resultStore).storeText(any(PersistedTextResult.class));
         verify(functionCallResult).destroy();
     }
 
@@ -93,7 +95,7 @@ public class RestResultProcessorTestCase
 
         restResultProcessor.process(multiFilesResult);
 
-        verify(resultStore).store(any(PersistedResult.class));
+        verify(resultStore).storeFileSet(any(PersistedFileSetResult.class));
         verify(multiFilesResult).destroy();
     }
 
@@ -105,6 +107,22 @@ public class RestResultProcessorTestCase
 
         restResultProcessor.process(multiFilesResult);
 
+        verify(resultStore).storeFileSet(any(PersistedFileSetResult.class));
+        verify(multiFilesResult).destroy();
+    }
+
+    @Test
+    public void processMultiFilesResultErrorMessage() throws IOException
+    {
+        final File errorFile = File.createTempFile("rsb-test-", ".txt");
+        errorFile.deleteOnExit();
+
+        final MultiFilesResult multiFilesResult = buildMockMultiFilesCallResult();
+        when(multiFilesResult.isSuccess()).thenReturn(false);
+        when(multiFilesResult.getPayload()).thenReturn(new File[]{errorFile});
+
+        restResultProcessor.process(multiFilesResult);
+
         verify(resultStore).store(any(PersistedResult.class));
         verify(multiFilesResult).destroy();
     }
@@ -23,22 +23,32 @@ package eu.openanalytics.rsb.component;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipInputStream;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.junit.Before;
@@ -48,6 +58,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.data.PersistedFileSetResult;
 import eu.openanalytics.rsb.data.PersistedResult;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.security.ApplicationPermissionEvaluator;
@@ -65,6 +76,9 @@ public class ResultResourceTestCase
     @Mock
     private SecureResultStore resultStore;
 
+    @Mock
+    private Request request;
+
     private ResultResource resultResource;
     private String testResultPayload;
 
@@ -80,7 +94,8 @@ public class ResultResourceTestCase
     @Test(expected = WebApplicationException.class)
     public void getResultNotFound() throws IOException
     {
-        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
     }
 
     @Test
@@ -88,7 +103,8 @@ public class ResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
         assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
 
         final StreamingOutput result = (StreamingOutput) response.getEntity();
@@ -99,10 +115,202 @@ public class ResultResourceTestCase
         assertThat(response.getMetadata().get(HttpHeaders.ETAG), notNullValue());
     }
 
+    @Test
+    public void getFileBackedResult() throws IOException
+    {
+        final File resultFile = File.createTempFile("rsb-result-", ".tst");
+        resultFile.deleteOnExit();
+        FileUtils.writeStringToFile(resultFile, testResultPayload);
+
+        final PersistedResult persistedResult = buildPersistedResult("", resultFile);
+        when(
+            resultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+                ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID)).thenReturn(
+            persistedResult);
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
+        assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
+
+        final StreamingOutput result = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        result.write(baos);
+
+        assertThat(baos.toByteArray(), is(testResultPayload.getBytes()));
+    }
+
+    @Test
+    public void getResultNotModified() throws IOException
+    {
+        setupMockResultStore();
+        when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class))).thenReturn(
+            Response.notModified());
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
+        assertThat(response.getStatus(), is(Status.NOT_MODIFIED.getStatusCode()));
+        assertThat(response.getEntity(), is(nullValue()));
+    }
+
+    @Test
+    public void getResultRange() throws IOException
+    {
+        setupMockResultStore();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, "bytes=2-5",
+            null, null, request);
+        assertThat(response.getStatus(), is(ResultResource.PARTIAL_CONTENT_STATUS));
+        assertThat(response.getMetadata().getFirst(ResultResource.CONTENT_RANGE_HEADER).toString(),
+            is("bytes 2-5/" + testResultPayload.length()));
+
+        final StreamingOutput result = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        result.write(baos);
+
+        assertThat(baos.toByteArray(), is(testResultPayload.substring(2, 6).getBytes()));
+    }
+
+    @Test
+    public void getFileBackedResultRange() throws IOException
+    {
+        final File resultFile = File.createTempFile("rsb-result-", ".tst");
+        resultFile.deleteOnExit();
+        FileUtils.writeStringToFile(resultFile, testResultPayload);
+
+        final PersistedResult persistedResult = buildPersistedResult("", resultFile);
+        when(
+            resultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+                ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID)).thenReturn(
+            persistedResult);
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, "bytes=-10",
+            null, null, request);
+        assertThat(response.getStatus(), is(ResultResource.PARTIAL_CONTENT_STATUS));
+
+        final StreamingOutput result = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        result.write(baos);
+
+        assertThat(baos.toByteArray(),
+            is(testResultPayload.substring(testResultPayload.length() - 10).getBytes()));
+    }
+
+    @Test
+    public void getFileSetResult() throws IOException
+    {
+        final File resultFile = File.createTempFile("rsb-result-", ".tst");
+        resultFile.deleteOnExit();
+        FileUtils.writeStringToFile(resultFile, testResultPayload);
+
+        final PersistedResult persistedResult = new PersistedFileSetResult(TEST_APP_NAME, null, TEST_JOB_ID,
+            (GregorianCalendar) GregorianCalendar.getInstance(), true, new File[]{resultFile});
+        when(
+            resultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+                ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID)).thenReturn(
+            persistedResult);
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, "bytes=2-5",
+            null, null, request);
+        assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
+        assertThat(response.getMetadata().get(HttpHeaders.CONTENT_LENGTH), is(nullValue()));
+        assertThat(response.getMetadata().getFirst(ResultResource.ACCEPT_RANGES_HEADER).toString(), is("none"));
+
+        final StreamingOutput result = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        result.write(baos);
+
+        final ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertThat(zis.getNextEntry().getName(), is(resultFile.getName()));
+        assertThat(IOUtils.toString(zis), is(testResultPayload));
+        assertThat(zis.getNextEntry(), is(nullValue()));
+    }
+
+    @Test
+    public void getResultRangeIgnoredForOtherEntityTag() throws IOException
+    {
+        setupMockResultStore();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, "bytes=2-5",
+            "\"other\"", null, request);
+        assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
+    }
+
+    @Test
+    public void getResultUnsatisfiableRange() throws IOException
+    {
+        setupMockResultStore();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=1000-", null, null, request);
+        assertThat(response.getStatus(), is(ResultResource.RANGE_NOT_SATISFIABLE_STATUS));
+    }
+
+    @Test
+    public void getCompressedResultForGzipClient() throws IOException
+    {
+        final byte[] compressedPayload = setupMockResultStoreWithCompressedResult();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            "gzip, deflate", request);
+        assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
+        assertThat(response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING).toString(), is("gzip"));
+
+        final StreamingOutput result = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        result.write(baos);
+
+        assertThat(baos.toByteArray(), is(compressedPayload));
+    }
+
+    @Test
+    public void getCompressedResultForIdentityClient() throws IOException
+    {
+        setupMockResultStoreWithCompressedResult();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            "gzip;q=0, identity", request);
+        assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
+        assertThat(response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+
+        final StreamingOutput result = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        result.write(baos);
+
+        assertThat(baos.toByteArray(), is(testResultPayload.getBytes()));
+    }
+
+    @Test
+    public void isEncodingAccepted()
+    {
+        assertThat(ResultResource.isEncodingAccepted(null, "gzip"), is(false));
+        assertThat(ResultResource.isEncodingAccepted("gzip", "gzip"), is(true));
+        assertThat(ResultResource.isEncodingAccepted("deflate, GZIP;q=0.5", "gzip"), is(true));
+        assertThat(ResultResource.isEncodingAccepted("gzip;q=0", "gzip"), is(false));
+        assertThat(ResultResource.isEncodingAccepted("*", "gzip"), is(true));
+        assertThat(ResultResource.isEncodingAccepted("identity", "gzip"), is(false));
+    }
+
+    @Test
+    public void parseRange()
+    {
+        assertThat(ResultResource.parseRange(null, 100L), is(nullValue()));
+        assertThat(ResultResource.parseRange("bytes=0-9,20-29", 100L), is(nullValue()));
+        assertThat(ResultResource.parseRange("bytes=9-0", 100L), is(nullValue()));
+        assertThat(ResultResource.parseRange("bytes=100-", 100L), is(ResultResource.ByteRange.UNSATISFIABLE));
+
+        final ResultResource.ByteRange openRange = ResultResource.parseRange("bytes=90-", 100L);
+        assertThat(openRange.getFirst(), is(90L));
+        assertThat(openRange.getLast(), is(99L));
+
+        final ResultResource.ByteRange suffixRange = ResultResource.parseRange("bytes=-150", 100L);
+        assertThat(suffixRange.getFirst(), is(0L));
+        assertThat(suffixRange.getLength(), is(100L));
+    }
+
     @Test(expected = WebApplicationException.class)
     public void getResultMetaNotFound() throws IOException
     {
-        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, null);
     }
 
     @Test
@@ -110,13 +318,101 @@ public class ResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, null);
         assertThat(response.getStatus(), is(Status.NO_CONTENT.getStatusCode()));
 
         assertThat(response.getMetadata().get(HttpHeaders.CONTENT_LENGTH), notNullValue());
         assertThat(response.getMetadata().get(HttpHeaders.ETAG), notNullValue());
     }
 
+    @Test
+    public void getCompressedResultMetaForGzipClient() throws IOException
+    {
+        final byte[] compressedPayload = setupMockResultStoreWithCompressedResult();
+
+        final Response headResponse = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "gzip");
+        final Response getResponse = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            "gzip", request);
+
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING).toString(), is("gzip"));
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH).toString(),
+            is(Integer.toString(compressedPayload.length)));
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.VARY).toString(),
+            is(HttpHeaders.ACCEPT_ENCODING));
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.ETAG),
+            is(getResponse.getMetadata().getFirst(HttpHeaders.ETAG)));
+    }
+
+    @Test
+    public void getCompressedResultMetaForIdentityClient() throws IOException
+    {
+        setupMockResultStoreWithCompressedResult();
+
+        final Response headResponse = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, null);
+        final Response getResponse = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            null, request);
+
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH).toString(),
+            is(Integer.toString(testResultPayload.getBytes().length)));
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.VARY).toString(),
+            is(HttpHeaders.ACCEPT_ENCODING));
+        assertThat(headResponse.getMetadata().getFirst(HttpHeaders.ETAG),
+            is(getResponse.getMetadata().getFirst(HttpHeaders.ETAG)));
+    }
+
+    private byte[] setupMockResultStoreWithCompressedResult() throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final GZIPOutputStream gzos = new GZIPOutputStream(baos);
+        gzos.write(testResultPayload.getBytes());
+        gzos.close();
+        final byte[] compressedPayload = baos.toByteArray();
+
+        final PersistedResult persistedResult = new PersistedResult(TEST_APP_NAME,
+            ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID,
+            (GregorianCalendar) GregorianCalendar.getInstance(), true, Constants.DEFAULT_MIME_TYPE)
+        {
+            @Override
+            public long getDataLength() throws IOException
+            {
+                return testResultPayload.getBytes().length;
+            }
+
+            @Override
+            public InputStream getData() throws IOException
+            {
+                return new ByteArrayInputStream(testResultPayload.getBytes());
+            }
+
+            @Override
+            public String getDataEncoding()
+            {
+                return "gzip";
+            }
+
+            @Override
+            public long getEncodedDataLength() throws IOException
+            {
+                return compressedPayload.length;
+            }
+
+            @Override
+            public InputStream getEncodedData() throws IOException
+            {
+                return new ByteArrayInputStream(compressedPayload);
+            }
+        };
+
+        when(
+            resultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+                ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID)).thenReturn(
+            persistedResult);
+
+        return compressedPayload;
+    }
+
     private void setupMockResultStore()
     {
         final PersistedResult persistedResult = buildPersistedResult(testResultPayload);
@@ -127,6 +423,11 @@ public class ResultResourceTestCase
     }
 
     public static PersistedResult buildPersistedResult(final String resultPayload)
+    {
+        return buildPersistedResult(resultPayload, null);
+    }
+
+    public static PersistedResult buildPersistedResult(final String resultPayload, final File resultFile)
     {
         final PersistedResult persistedResult = new PersistedResult(TEST_APP_NAME,
             ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID,
@@ -136,7 +437,7 @@ public class ResultResourceTestCase
             @Override
             public long getDataLength() throws IOException
             {
-                return 1;
+                return resultFile != null ? resultFile.length() : resultPayload.getBytes().length;
             }
 
             @Override
@@ -144,6 +445,12 @@ public class ResultResourceTestCase
             {
                 return new ByteArrayInputStream(resultPayload.getBytes());
             }
+
+            @Override
+            public File getDataFile()
+            {
+                return resultFile;
+            }
         };
         return persistedResult;
     }
@@ -24,10 +24,14 @@ package eu.openanalytics.rsb.component;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Collections;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.HttpHeaders;
@@ -39,13 +43,16 @@ import org.apache.cxf.jaxrs.impl.UriBuilderImpl;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.data.ResultQuery;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.rest.types.Result;
 import eu.openanalytics.rsb.rest.types.Results;
+import eu.openanalytics.rsb.security.ApplicationPermissionEvaluator;
 
 /**
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
@@ -74,17 +81,46 @@ public class ResultsResourceTestCase
     @Test(expected = IllegalArgumentException.class)
     public void getAllResultsInvalidApplicationName() throws URISyntaxException
     {
-        resultsResource.getAllResults("I'm bad :)", httpHeaders, uriInfo);
+        resultsResource.getAllResults("I'm bad :)", 0, ResultQuery.NO_LIMIT, null, null, httpHeaders, uriInfo);
     }
 
     @Test
     public void getAllResults() throws URISyntaxException
     {
-        final Results allResults = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME,
-            httpHeaders, uriInfo);
+        final Results allResults = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME, 0,
+            ResultQuery.NO_LIMIT, null, null, httpHeaders, uriInfo);
         assertThat(allResults, is(notNullValue()));
     }
 
+    @Test
+    public void getPagedResults() throws URISyntaxException
+    {
+        when(uriInfo.getBaseUriBuilder()).thenReturn(new UriBuilderImpl());
+        when(
+            resultStore.findByApplicationName(eq(ResultResourceTestCase.TEST_APP_NAME),
+                eq(ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME), any(ResultQuery.class))).thenReturn(
+            Collections.singletonList(ResultResourceTestCase.buildPersistedResult("fake data")));
+
+        final Results pagedResults = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME, 20,
+            10, "2015-01-01T00:00:00Z", true, httpHeaders, uriInfo);
+        assertThat(pagedResults.getContents().size(), is(1));
+
+        final ArgumentCaptor<ResultQuery> resultQueryCaptor = ArgumentCaptor.forClass(ResultQuery.class);
+        verify(resultStore).findByApplicationName(eq(ResultResourceTestCase.TEST_APP_NAME),
+            eq(ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME), resultQueryCaptor.capture());
+        assertThat(resultQueryCaptor.getValue().getOffset(), is(20));
+        assertThat(resultQueryCaptor.getValue().getLimit(), is(10));
+        assertThat(resultQueryCaptor.getValue().getSince(), is(1420070400000L));
+        assertThat(resultQueryCaptor.getValue().getSuccess(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPagedResultsInvalidOffset() throws URISyntaxException
+    {
+        resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME, -1, ResultQuery.NO_LIMIT, null,
+            null, httpHeaders, uriInfo);
+    }
+
     @Test(expected = NotFoundException.class)
     public void getSingleResultNotFound() throws URISyntaxException, IOException
     {
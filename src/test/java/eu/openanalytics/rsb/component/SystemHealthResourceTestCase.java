@@ -50,6 +50,7 @@ import eu.openanalytics.rsb.config.Configuration;
 import eu.openanalytics.rsb.rest.types.NodeInformation;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
+import eu.openanalytics.rsb.rservi.RServiLoadTracker;
 
 /**
  * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
@@ -71,6 +72,7 @@ public class SystemHealthResourceTestCase
         systemHealthResource = new SystemHealthResource();
         systemHealthResource.setConfiguration(configuration);
         systemHealthResource.setRServiInstanceProvider(rServiInstanceProvider);
+        systemHealthResource.setRServiLoadTracker(new RServiLoadTracker());
 
         final URI defaultPoolUri = new URI("fake://default");
         when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
@@ -84,6 +86,16 @@ public class SystemHealthResourceTestCase
         assertThat(info, is(notNullValue()));
     }
 
+    @Test
+    public void getInfoWithRServiPoolWarmUp() throws Exception
+    {
+        when(rServiInstanceProvider.getWarmUpProgress()).thenReturn(40);
+
+        final NodeInformation info = systemHealthResource.getInfo(mock(ServletContext.class));
+
+        assertThat(info.getRserviPoolWarmUpPercentage(), is(40));
+    }
+
     @Test
     public void defaultCheck() throws Exception
     {
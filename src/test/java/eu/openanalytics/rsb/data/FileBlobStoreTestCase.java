@@ -0,0 +1,178 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class FileBlobStoreTestCase
+{
+    private File claimCheckDirectory;
+    private FileBlobStore fileBlobStore;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        claimCheckDirectory = Util.createTemporaryDirectory("blobs");
+
+        final Configuration configuration = mock(Configuration.class);
+        when(configuration.getClaimCheckDirectory()).thenReturn(claimCheckDirectory);
+
+        fileBlobStore = new FileBlobStore();
+        fileBlobStore.setConfiguration(configuration);
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(claimCheckDirectory);
+    }
+
+    @Test
+    public void putAndGet() throws Exception
+    {
+        final String blobId = put("foo");
+
+        assertThat(blobId.length(), is(64));
+        assertThat(fileBlobStore.getSize(blobId), is(3L));
+        assertThat(get(blobId), is("foo"));
+    }
+
+    @Test
+    public void putIsContentAddressed() throws Exception
+    {
+        final String blobId = put("foo");
+
+        assertThat(put("foo"), is(blobId));
+        assertThat(put("bar"), is(not(blobId)));
+        assertThat(FileUtils.listFiles(claimCheckDirectory, null, true).size(), is(2));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void getUnknownBlob() throws Exception
+    {
+        fileBlobStore.get("0000000000000000000000000000000000000000000000000000000000000000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getInvalidBlobId() throws Exception
+    {
+        fileBlobStore.get("../../etc/passwd");
+    }
+
+    @Test
+    public void purgeExpiredBlobs() throws Exception
+    {
+        final String expiredBlobId = put("foo");
+        final String liveBlobId = put("bar");
+
+        final File expiredBlob = new File(new File(claimCheckDirectory, expiredBlobId.substring(0, 2)),
+            expiredBlobId);
+        expiredBlob.setLastModified(System.currentTimeMillis() - FileBlobStore.BLOB_RETENTION_MILLIS
+                                    - 1000L);
+
+        fileBlobStore.purgeExpiredBlobs();
+
+        assertThat(expiredBlob.exists(), is(false));
+        assertThat(get(liveBlobId), is("bar"));
+    }
+
+    @Test
+    public void purgeKeepsRetainedBlobs() throws Exception
+    {
+        final String retainedBlobId = put("foo");
+        fileBlobStore.retain("job-1", Collections.singleton(retainedBlobId));
+        final File retainedBlob = expire(retainedBlobId);
+
+        fileBlobStore.purgeExpiredBlobs();
+
+        assertThat(retainedBlob.exists(), is(true));
+    }
+
+    @Test
+    public void releasedBlobsGetAFullRetentionPeriod() throws Exception
+    {
+        final String blobId = put("foo");
+        fileBlobStore.retain("job-1", Collections.singleton(blobId));
+        final File blob = expire(blobId);
+
+        fileBlobStore.release("job-1");
+        fileBlobStore.purgeExpiredBlobs();
+        assertThat(get(blobId), is("foo"));
+
+        expire(blobId);
+        fileBlobStore.purgeExpiredBlobs();
+        assertThat(blob.exists(), is(false));
+    }
+
+    @Test
+    public void releaseUnknownReference() throws Exception
+    {
+        fileBlobStore.release("job-1");
+    }
+
+    private File expire(final String blobId)
+    {
+        final File blob = new File(new File(claimCheckDirectory, blobId.substring(0, 2)), blobId);
+        blob.setLastModified(System.currentTimeMillis() - FileBlobStore.BLOB_RETENTION_MILLIS - 1000L);
+        return blob;
+    }
+
+    private String put(final String data) throws Exception
+    {
+        return fileBlobStore.put(new ByteArrayInputStream(data.getBytes("UTF-8")));
+    }
+
+    private String get(final String blobId) throws Exception
+    {
+        final InputStream is = fileBlobStore.get(blobId);
+        try
+        {
+            return IOUtils.toString(is, "UTF-8");
+        }
+        finally
+        {
+            IOUtils.closeQuietly(is);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class FileResultStoreTestCase
+{
+    private static final String TEST_APPLICATION_NAME = "test";
+
+    private File resultsDirectory;
+    private Configuration configuration;
+    private FileResultStore fileResultStore;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        resultsDirectory = Util.createTemporaryDirectory("results");
+
+        configuration = mock(Configuration.class);
+        when(configuration.getResultsDirectory()).thenReturn(resultsDirectory);
+
+        fileResultStore = new FileResultStore();
+        fileResultStore.setConfiguration(configuration);
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(resultsDirectory);
+    }
+
+    @Test
+    public void storeFlat() throws Exception
+    {
+        final UUID jobId = store("flat");
+
+        assertThat(new File(getApplicationResultsDirectory(), jobId + ".txt").isFile(), is(true));
+        assertThat(find(jobId), is("flat"));
+    }
+
+    @Test
+    public void storeSharded() throws Exception
+    {
+        when(configuration.getResultsShardingDepth()).thenReturn(2);
+
+        final UUID jobId = store("sharded");
+
+        assertThat(new File(ResultFileIndex.getShardDirectory(getApplicationResultsDirectory(), jobId, 2),
+            jobId + ".txt").isFile(), is(true));
+        assertThat(find(jobId), is("sharded"));
+    }
+
+    @Test
+    public void findAcrossLayouts() throws Exception
+    {
+        final UUID flatJobId = store("flat");
+        when(configuration.getResultsShardingDepth()).thenReturn(1);
+        final UUID shardedJobId = store("sharded");
+
+        assertThat(find(flatJobId), is("flat"));
+        assertThat(find(shardedJobId), is("sharded"));
+        assertThat(fileResultStore.findByApplicationName(TEST_APPLICATION_NAME, null).size(), is(2));
+
+        // a fresh store finds both layouts on disk
+        final FileResultStore otherFileResultStore = new FileResultStore();
+        otherFileResultStore.setConfiguration(configuration);
+        assertThat(otherFileResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null,
+            flatJobId), is(notNullValue()));
+        assertThat(otherFileResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null,
+            shardedJobId), is(notNullValue()));
+    }
+
+    @Test
+    public void migrateToShardedAndBack() throws Exception
+    {
+        final UUID jobId1 = store("result1");
+        final UUID jobId2 = store("result2");
+
+        when(configuration.getResultsShardingDepth()).thenReturn(2);
+        assertThat(fileResultStore.migrateResultFiles(), is(2));
+        assertThat(fileResultStore.migrateResultFiles(), is(0));
+
+        assertThat(new File(getApplicationResultsDirectory(), jobId1 + ".txt").exists(), is(false));
+        assertThat(new File(ResultFileIndex.getShardDirectory(getApplicationResultsDirectory(), jobId1, 2),
+            jobId1 + ".txt").isFile(), is(true));
+        assertThat(find(jobId1), is("result1"));
+        assertThat(find(jobId2), is("result2"));
+
+        when(configuration.getResultsShardingDepth()).thenReturn(0);
+        assertThat(fileResultStore.migrateResultFiles(), is(2));
+
+        assertThat(new File(getApplicationResultsDirectory(), jobId1 + ".txt").isFile(), is(true));
+        assertThat(new File(getApplicationResultsDirectory(), ResultFileIndex.SHARDS_DIRECTORY_NAME).exists(),
+            is(false));
+        assertThat(find(jobId1), is("result1"));
+        assertThat(find(jobId2), is("result2"));
+    }
+
+    @Test
+    public void migrateBetweenShardingDepths() throws Exception
+    {
+        when(configuration.getResultsShardingDepth()).thenReturn(1);
+        final UUID jobId = store("result");
+
+        when(configuration.getResultsShardingDepth()).thenReturn(2);
+        assertThat(fileResultStore.migrateResultFiles(), is(1));
+
+        assertThat(new File(ResultFileIndex.getShardDirectory(getApplicationResultsDirectory(), jobId, 2),
+            jobId + ".txt").isFile(), is(true));
+        assertThat(find(jobId), is("result"));
+    }
+
+    @Test
+    public void deleteSharded() throws Exception
+    {
+        when(configuration.getResultsShardingDepth()).thenReturn(2);
+        final UUID jobId = store("result");
+
+        assertThat(fileResultStore.deleteByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId),
+            is(true));
+        assertThat(fileResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId),
+            is(nullValue()));
+        assertThat(fileResultStore.deleteByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId),
+            is(false));
+    }
+
+    @Test
+    public void storeCompressed() throws Exception
+    {
+        when(configuration.getCompressedResultMimeTypes()).thenReturn(
+            Collections.singleton(Constants.TEXT_CONTENT_TYPE));
+
+        final UUID jobId = store("compressed");
+
+        final File resultFile = new File(getApplicationResultsDirectory(), jobId + ".txt.gz");
+        assertThat(resultFile.isFile(), is(true));
+
+        final PersistedResult persistedResult = fileResultStore.findByApplicationNameAndJobId(
+            TEST_APPLICATION_NAME, null, jobId);
+        assertThat(persistedResult.getMimeType().getBaseType(), is(Constants.TEXT_CONTENT_TYPE));
+        assertThat(persistedResult.getDataEncoding(), is("gzip"));
+        assertThat(persistedResult.getDataLength(), is((long) "compressed".length()));
+        assertThat(persistedResult.getEncodedDataLength(), is(resultFile.length()));
+        assertThat(find(jobId), is("compressed"));
+    }
+
+    @Test
+    public void storeTextWithUnmappableCharacters() throws Exception
+    {
+        final UUID jobId = UUID.randomUUID();
+
+        fileResultStore.storeText(new PersistedTextResult(TEST_APPLICATION_NAME, null, jobId,
+            (GregorianCalendar) GregorianCalendar.getInstance(), true, Constants.TEXT_MIME_TYPE,
+            "caf\u00e9 \ud800", Charset.forName("US-ASCII")));
+
+        assertThat(find(jobId), is("caf? ?"));
+    }
+
+    private File getApplicationResultsDirectory()
+    {
+        return new File(resultsDirectory, TEST_APPLICATION_NAME);
+    }
+
+    private UUID store(final String data) throws IOException
+    {
+        final UUID jobId = UUID.randomUUID();
+
+        fileResultStore.store(new PersistedResult(TEST_APPLICATION_NAME, null, jobId,
+            (GregorianCalendar) GregorianCalendar.getInstance(), true, Constants.TEXT_MIME_TYPE)
+        {
+            @Override
+            public InputStream getData()
+            {
+                return new ByteArrayInputStream(data.getBytes());
+            }
+
+            @Override
+            public long getDataLength()
+            {
+                return data.length();
+            }
+        });
+
+        return jobId;
+    }
+
+    private String find(final UUID jobId) throws IOException
+    {
+        final PersistedResult persistedResult = fileResultStore.findByApplicationNameAndJobId(
+            TEST_APPLICATION_NAME, null, jobId);
+        assertThat(persistedResult, is(notNullValue()));
+
+        final InputStream data = persistedResult.getData();
+        try
+        {
+            return IOUtils.toString(data);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(data);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class GzipFileOutputStreamTestCase
+{
+    private File gzipFile;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        gzipFile = File.createTempFile("rsb-result-", ".gz");
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(gzipFile);
+    }
+
+    @Test
+    public void writeAndRead() throws Exception
+    {
+        final byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) (i % 7);
+        }
+
+        final OutputStream output = new GzipFileOutputStream(gzipFile);
+        output.write(data, 0, 50000);
+        output.write(data, 50000, 50000);
+        output.close();
+
+        assertThat(GzipFileOutputStream.getUncompressedLength(gzipFile), is((long) data.length));
+        assertThat(gzipFile.length() < data.length, is(true));
+
+        final InputStream input = new GZIPInputStream(new FileInputStream(gzipFile));
+        try
+        {
+            assertThat(IOUtils.toByteArray(input), is(data));
+        }
+        finally
+        {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void writeEmpty() throws Exception
+    {
+        new GzipFileOutputStream(gzipFile).close();
+
+        assertThat(GzipFileOutputStream.getUncompressedLength(gzipFile), is(0L));
+
+        final InputStream input = new GZIPInputStream(new FileInputStream(gzipFile));
+        try
+        {
+            assertThat(input.read(), is(-1));
+        }
+        finally
+        {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void getUncompressedLengthWithoutLengthSubfield() throws Exception
+    {
+        final OutputStream output = new GZIPOutputStream(new FileOutputStream(gzipFile));
+        output.write(new byte[12345]);
+        output.close();
+
+        assertThat(GzipFileOutputStream.getUncompressedLength(gzipFile), is(12345L));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import eu.openanalytics.rsb.Constants;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JdbcResultStoreTestCase
+{
+    private static final String TEST_APPLICATION_NAME = "test";
+    private static final String TEST_USER_NAME = "user";
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcResultStore jdbcResultStore;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        dataSource = new JdbcDataSource();
+        // kept open until shut down so all the connections see the same database
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcResultStore = new JdbcResultStore();
+        jdbcResultStore.setDataSource(dataSource);
+        jdbcResultStore.setChunkSize(4);
+        jdbcResultStore.initialize();
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    public void initializeExistingTables()
+    {
+        jdbcResultStore.initialize();
+    }
+
+    @Test
+    public void storeAndFind() throws Exception
+    {
+        final UUID jobId = store(null, "a result spanning several chunks", 1000L);
+
+        final PersistedResult persistedResult = jdbcResultStore.findByApplicationNameAndJobId(
+            TEST_APPLICATION_NAME, null, jobId);
+
+        assertThat(persistedResult, is(notNullValue()));
+        assertThat(persistedResult.getResultTime().getTimeInMillis(), is(1000L));
+        assertThat(persistedResult.isSuccess(), is(true));
+        assertThat(persistedResult.getMimeType().getBaseType(), is(Constants.TEXT_CONTENT_TYPE));
+        assertThat(persistedResult.getDataLength(), is((long) "a result spanning several chunks".length()));
+        assertThat(read(persistedResult), is("a result spanning several chunks"));
+    }
+
+    @Test
+    public void findIsUserSpecific() throws Exception
+    {
+        final UUID jobId = store(TEST_USER_NAME, "result", 1000L);
+
+        assertThat(jdbcResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, TEST_USER_NAME, jobId),
+            is(notNullValue()));
+        assertThat(jdbcResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId),
+            is(nullValue()));
+    }
+
+    @Test
+    public void storeReplacesResult() throws Exception
+    {
+        final UUID jobId = store(null, "first result", 1000L);
+        store(jobId, null, "second", 2000L);
+
+        assertThat(read(jdbcResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId)),
+            is("second"));
+        assertThat(countChunks(jobId), is(2));
+    }
+
+    @Test
+    public void failedStoreLeavesNoPartialResult() throws Exception
+    {
+        final UUID jobId = store(null, "first result", 1000L);
+
+        try
+        {
+            jdbcResultStore.store(new PersistedResult(TEST_APPLICATION_NAME, null, jobId,
+                newResultTime(2000L), true, Constants.TEXT_MIME_TYPE)
+            {
+                @Override
+                public InputStream getData()
+                {
+                    // fails after a few chunks have been inserted
+                    return new SequenceInputStream(new ByteArrayInputStream("partial result".getBytes()),
+                        new InputStream()
+                        {
+                            @Override
+                            public int read() throws IOException
+                            {
+                                throw new IOException("broken result");
+                            }
+                        });
+                }
+
+                @Override
+                public long getDataLength()
+                {
+                    return -1L;
+                }
+            });
+            fail("an IOException should have been thrown");
+        }
+        catch (final IOException ioe)
+        {
+            assertThat(ioe.getMessage(), is("broken result"));
+        }
+
+        assertThat(read(jdbcResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId)),
+            is("first result"));
+        assertThat(countChunks(jobId), is(3));
+    }
+
+    @Test
+    public void delete() throws Exception
+    {
+        final UUID jobId = store(null, "result", 1000L);
+
+        assertThat(jdbcResultStore.deleteByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId), is(true));
+        assertThat(jdbcResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId),
+            is(nullValue()));
+        assertThat(countChunks(jobId), is(0));
+        assertThat(jdbcResultStore.deleteByApplicationNameAndJobId(TEST_APPLICATION_NAME, null, jobId), is(false));
+    }
+
+    @Test
+    public void deleteIsUserSpecific() throws Exception
+    {
+        final UUID jobId = store("owner", "result", 1000L);
+
+        assertThat(jdbcResultStore.deleteByApplicationNameAndJobId(TEST_APPLICATION_NAME, "other", jobId),
+            is(false));
+        assertThat(read(jdbcResultStore.findByApplicationNameAndJobId(TEST_APPLICATION_NAME, "owner", jobId)),
+            is("result"));
+        assertThat(countChunks(jobId), is(2));
+    }
+
+    @Test
+    public void findByApplicationNamePaged() throws Exception
+    {
+        final UUID oldJobId = store(null, "old", 1000L);
+        final UUID middleJobId = store(null, "middle", 2000L);
+        final UUID recentJobId = store(null, "recent", 3000L);
+
+        assertThat(getJobIds(jdbcResultStore.findByApplicationName(TEST_APPLICATION_NAME, null)),
+            is(Arrays.asList(recentJobId, middleJobId, oldJobId)));
+        assertThat(getJobIds(jdbcResultStore.findByApplicationName(TEST_APPLICATION_NAME, null,
+            new ResultQuery(1, 1, null, null))), is(Arrays.asList(middleJobId)));
+        assertThat(getJobIds(jdbcResultStore.findByApplicationName(TEST_APPLICATION_NAME, null,
+            new ResultQuery(2, 5, null, null))), is(Arrays.asList(oldJobId)));
+        assertThat(getJobIds(jdbcResultStore.findByApplicationName(TEST_APPLICATION_NAME, null,
+            new ResultQuery(0, ResultQuery.NO_LIMIT, 1500L, null))), is(Arrays.asList(recentJobId, middleJobId)));
+    }
+
+    private UUID store(final String userName, final String data, final long resultTime) throws IOException
+    {
+        final UUID jobId = UUID.randomUUID();
+        store(jobId, userName, data, resultTime);
+        return jobId;
+    }
+
+    private void store(final UUID jobId, final String userName, final String data, final long resultTime)
+        throws IOException
+    {
+        jdbcResultStore.store(new PersistedResult(TEST_APPLICATION_NAME, userName, jobId,
+            newResultTime(resultTime), true, Constants.TEXT_MIME_TYPE)
+        {
+            @Override
+            public InputStream getData()
+            {
+                return new ByteArrayInputStream(data.getBytes());
+            }
+
+            @Override
+            public long getDataLength()
+            {
+                return data.length();
+            }
+        });
+    }
+
+    private int countChunks(final UUID jobId)
+    {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM rsb_result_chunks WHERE job_id = ?",
+            Integer.class, jobId.toString());
+    }
+
+    private static GregorianCalendar newResultTime(final long resultTime)
+    {
+        final GregorianCalendar calendar = (GregorianCalendar) GregorianCalendar.getInstance();
+        calendar.setTimeInMillis(resultTime);
+        return calendar;
+    }
+
+    private static String read(final PersistedResult persistedResult) throws IOException
+    {
+        final InputStream data = persistedResult.getData();
+        try
+        {
+            return IOUtils.toString(data);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(data);
+        }
+    }
+
+    private static List<UUID> getJobIds(final Iterable<PersistedResult> persistedResults)
+    {
+        final List<UUID> jobIds = new ArrayList<UUID>();
+        for (final PersistedResult persistedResult : persistedResults)
+        {
+            jobIds.add(persistedResult.getJobId());
+        }
+        return jobIds;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.GregorianCalendar;
+import java.util.UUID;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.Util;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class PersistedFileSetResultTestCase
+{
+    private File filesDirectory;
+    private PersistedFileSetResult persistedFileSetResult;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        filesDirectory = Util.createTemporaryDirectory("fileset");
+        final File file = new File(filesDirectory, "result.txt");
+        FileUtils.writeStringToFile(file, "result");
+
+        persistedFileSetResult = new PersistedFileSetResult("test", null, UUID.randomUUID(),
+            (GregorianCalendar) GregorianCalendar.getInstance(), true, new File[]{file});
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(filesDirectory);
+    }
+
+    @Test
+    public void metadata()
+    {
+        assertThat(persistedFileSetResult.getMimeType().toString(), is(Constants.ZIP_MIME_TYPE.toString()));
+        assertThat(persistedFileSetResult.getDataLength(), is(PersistedFileSetResult.UNKNOWN_DATA_LENGTH));
+        assertThat(persistedFileSetResult.getFiles().length, is(1));
+    }
+
+    @Test
+    public void getData() throws Exception
+    {
+        final ZipInputStream zis = new ZipInputStream(persistedFileSetResult.getData());
+        try
+        {
+            assertThat(zis.getNextEntry().getName(), is("result.txt"));
+            assertThat(IOUtils.toString(zis), is("result"));
+        }
+        finally
+        {
+            zis.close();
+        }
+    }
+
+    @Test
+    public void getDataCanBeReadSeveralTimes() throws Exception
+    {
+        final InputStream data1 = persistedFileSetResult.getData();
+        final InputStream data2 = persistedFileSetResult.getData();
+        try
+        {
+            assertThat(IOUtils.toByteArray(data1), is(IOUtils.toByteArray(data2)));
+        }
+        finally
+        {
+            IOUtils.closeQuietly(data1);
+            IOUtils.closeQuietly(data2);
+        }
+    }
+}
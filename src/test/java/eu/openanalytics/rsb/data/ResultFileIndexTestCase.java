@@ -0,0 +1,180 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.ResultFileIndex.IndexedResultFile;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ResultFileIndexTestCase
+{
+    private File resultsDirectory;
+    private ResultFileIndex resultFileIndex;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        resultsDirectory = Util.createTemporaryDirectory("results");
+        resultFileIndex = new ResultFileIndex();
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(resultsDirectory);
+    }
+
+    @Test
+    public void getExistingResultFile() throws Exception
+    {
+        final UUID jobId = UUID.randomUUID();
+        final File resultFile = createResultFile(resultsDirectory, jobId);
+
+        assertThat(resultFileIndex.get(resultsDirectory, jobId), is(resultFile));
+        assertThat(resultFileIndex.get(resultsDirectory, UUID.randomUUID()), is(nullValue()));
+    }
+
+    @Test
+    public void getShardedResultFiles() throws Exception
+    {
+        final UUID flatJobId = UUID.randomUUID();
+        final File flatResultFile = createResultFile(resultsDirectory, flatJobId);
+        final UUID shardedJobId = UUID.randomUUID();
+        final File shardedResultFile = createResultFile(
+            ResultFileIndex.getShardDirectory(resultsDirectory, shardedJobId, 2), shardedJobId);
+
+        assertThat(resultFileIndex.get(resultsDirectory, flatJobId), is(flatResultFile));
+        assertThat(resultFileIndex.get(resultsDirectory, shardedJobId), is(shardedResultFile));
+    }
+
+    @Test
+    public void getShardDirectory()
+    {
+        final UUID jobId = UUID.fromString("abcdef01-2345-6789-abcd-ef0123456789");
+
+        assertThat(ResultFileIndex.getShardDirectory(resultsDirectory, jobId, 0), is(resultsDirectory));
+        assertThat(ResultFileIndex.getShardDirectory(resultsDirectory, jobId, 2), is(new File(
+            resultsDirectory, ResultFileIndex.SHARDS_DIRECTORY_NAME + File.separator + "ab" + File.separator
+                              + "cd")));
+    }
+
+    @Test
+    public void missAfterPutDoesNotRescan() throws Exception
+    {
+        resultFileIndex.load(resultsDirectory);
+
+        final UUID jobId = UUID.randomUUID();
+        final File resultFile = createResultFile(resultsDirectory, jobId);
+        resultFileIndex.put(resultsDirectory, jobId, resultFile);
+
+        final long scanCount = resultFileIndex.getScanCount();
+        assertThat(resultFileIndex.get(resultsDirectory, jobId), is(resultFile));
+        assertThat(resultFileIndex.get(resultsDirectory, UUID.randomUUID()), is(nullValue()));
+        assertThat(resultFileIndex.getScanCount(), is(scanCount));
+    }
+
+    @Test
+    public void missAfterRemoveDoesNotRescan() throws Exception
+    {
+        final UUID jobId = UUID.randomUUID();
+        final File resultFile = createResultFile(resultsDirectory, jobId);
+        resultFileIndex.load(resultsDirectory);
+
+        FileUtils.forceDelete(resultFile);
+        assertThat(resultFileIndex.remove(resultsDirectory, jobId), is(true));
+
+        final long scanCount = resultFileIndex.getScanCount();
+        assertThat(resultFileIndex.get(resultsDirectory, jobId), is(nullValue()));
+        assertThat(resultFileIndex.getScanCount(), is(scanCount));
+    }
+
+    @Test
+    public void missRescansDirectoryChangedByAnotherNode() throws Exception
+    {
+        resultFileIndex.load(resultsDirectory);
+
+        final UUID jobId = UUID.randomUUID();
+        final File resultFile = createResultFile(resultsDirectory, jobId);
+        // makes the change visible whatever the resolution of modification times
+        resultsDirectory.setLastModified(resultsDirectory.lastModified() + 10000L);
+
+        assertThat(resultFileIndex.get(resultsDirectory, jobId), is(resultFile));
+    }
+
+    @Test
+    public void getDeletedResultFile() throws Exception
+    {
+        final UUID jobId = UUID.randomUUID();
+        final File resultFile = createResultFile(resultsDirectory, jobId);
+        assertThat(resultFileIndex.get(resultsDirectory, jobId), is(resultFile));
+
+        FileUtils.forceDelete(resultFile);
+
+        assertThat(resultFileIndex.get(resultsDirectory, jobId), is(nullValue()));
+    }
+
+    @Test
+    public void listMostRecentFirst() throws Exception
+    {
+        final UUID oldJobId = UUID.randomUUID();
+        createResultFile(resultsDirectory, oldJobId).setLastModified(1000000L);
+        final UUID recentJobId = UUID.randomUUID();
+        final File recentResultFile = createResultFile(
+            ResultFileIndex.getShardDirectory(resultsDirectory, recentJobId, 1), recentJobId);
+        recentResultFile.setLastModified(2000000L);
+
+        final List<UUID> jobIds = new ArrayList<UUID>();
+        for (final IndexedResultFile indexedResultFile : resultFileIndex.list(resultsDirectory))
+        {
+            jobIds.add(indexedResultFile.getJobId());
+        }
+
+        final List<UUID> expectedJobIds = new ArrayList<UUID>();
+        expectedJobIds.add(recentJobId);
+        expectedJobIds.add(oldJobId);
+        assertThat(jobIds, is(expectedJobIds));
+    }
+
+    private static File createResultFile(final File directory, final UUID jobId) throws IOException
+    {
+        final File resultFile = new File(directory, jobId + ".txt");
+        FileUtils.writeStringToFile(resultFile, "result");
+        return resultFile;
+    }
+}
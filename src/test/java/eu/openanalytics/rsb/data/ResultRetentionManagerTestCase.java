@@ -0,0 +1,192 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
+import eu.openanalytics.rsb.config.PersistedConfiguration.PersistedResultRetentionConfiguration;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ResultRetentionManagerTestCase
+{
+    private static final String TEST_APPLICATION_NAME = "test";
+    private static final long ONE_HOUR_MILLIS = 3600000L;
+
+    private File resultsDirectory;
+    private File applicationResultsDirectory;
+    private Configuration configuration;
+    private PersistedResultRetentionConfiguration retention;
+    private ResultRetentionManager resultRetentionManager;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        resultsDirectory = Util.createTemporaryDirectory("results");
+        applicationResultsDirectory = new File(resultsDirectory, TEST_APPLICATION_NAME);
+        FileUtils.forceMkdir(applicationResultsDirectory);
+
+        retention = new PersistedResultRetentionConfiguration();
+
+        configuration = mock(Configuration.class);
+        when(configuration.getResultsDirectory()).thenReturn(resultsDirectory);
+        when(configuration.getResultRetentionConfiguration()).thenReturn(
+            Collections.<String, ResultRetentionConfiguration> singletonMap(TEST_APPLICATION_NAME, retention));
+
+        final FileResultStore fileResultStore = new FileResultStore();
+        fileResultStore.setConfiguration(configuration);
+
+        resultRetentionManager = new ResultRetentionManager(fileResultStore, configuration);
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(resultsDirectory);
+    }
+
+    @Test
+    public void noRetentionPolicy() throws Exception
+    {
+        when(configuration.getResultRetentionConfiguration()).thenReturn(
+            Collections.<String, ResultRetentionConfiguration> emptyMap());
+        final File resultFile = createResultFile(1, 10);
+
+        resultRetentionManager.enforceRetentionPolicies();
+
+        assertThat(resultFile.exists(), is(true));
+        assertThat(resultRetentionManager.getLastRunStartTime(), is(nullValue()));
+    }
+
+    @Test
+    public void expireByTimeToLive() throws Exception
+    {
+        retention.setTimeToLive(ONE_HOUR_MILLIS);
+        final File oldResultFile = createResultFile(2, 10);
+        final File recentResultFile = createResultFile(0, 10);
+
+        resultRetentionManager.enforceRetentionPolicies();
+
+        assertThat(oldResultFile.exists(), is(false));
+        assertThat(recentResultFile.exists(), is(true));
+        assertThat(resultRetentionManager.getDeletedResults(), is(1L));
+        assertThat(resultRetentionManager.isRunning(), is(false));
+        assertThat(resultRetentionManager.getPendingResults(), is(0));
+    }
+
+    @Test
+    public void expireByMaxCount() throws Exception
+    {
+        retention.setMaxCount(2);
+        final File oldestResultFile = createResultFile(3, 10);
+        final File olderResultFile = createResultFile(2, 10);
+        final File recentResultFile = createResultFile(1, 10);
+
+        resultRetentionManager.enforceRetentionPolicies();
+
+        assertThat(oldestResultFile.exists(), is(false));
+        assertThat(olderResultFile.exists(), is(true));
+        assertThat(recentResultFile.exists(), is(true));
+        assertThat(resultRetentionManager.getDeletedResults(), is(1L));
+    }
+
+    @Test
+    public void expireByMaxBytesCountsFileSetResults() throws Exception
+    {
+        retention.setMaxBytes(1500L);
+        final File oldResultDirectory = createFileSetResultDirectory(2, 1000);
+        final File recentResultDirectory = createFileSetResultDirectory(1, 1000);
+
+        resultRetentionManager.enforceRetentionPolicies();
+
+        assertThat(oldResultDirectory.exists(), is(false));
+        assertThat(recentResultDirectory.exists(), is(true));
+        assertThat(resultRetentionManager.getDeletedResults(), is(1L));
+    }
+
+    @Test
+    public void archiveExpiredResults() throws Exception
+    {
+        final File archiveDirectory = new File(resultsDirectory.getParentFile(), resultsDirectory.getName()
+                                                                                 + "-archive");
+        try
+        {
+            retention.setMaxCount(1);
+            retention.setArchiveDirectory(archiveDirectory);
+            final File oldResultFile = createResultFile(2, 10);
+            createResultFile(1, 10);
+
+            resultRetentionManager.enforceRetentionPolicies();
+
+            assertThat(oldResultFile.exists(), is(false));
+            final File archivedResultFile = new File(new File(archiveDirectory, TEST_APPLICATION_NAME),
+                oldResultFile.getName());
+            assertThat(archivedResultFile.isFile(), is(true));
+            assertThat(resultRetentionManager.getArchivedResults(), is(1L));
+            assertThat(resultRetentionManager.getDeletedResults(), is(0L));
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(archiveDirectory);
+        }
+    }
+
+    private File createResultFile(final int ageInHours, final int size) throws IOException
+    {
+        final File resultFile = new File(applicationResultsDirectory, UUID.randomUUID() + ".txt");
+        FileUtils.writeByteArrayToFile(resultFile, new byte[size]);
+        resultFile.setLastModified(getTimeAgo(ageInHours));
+        return resultFile;
+    }
+
+    private File createFileSetResultDirectory(final int ageInHours, final int size) throws IOException
+    {
+        final File resultDirectory = new File(applicationResultsDirectory, UUID.randomUUID() + ".zip");
+        FileUtils.writeByteArrayToFile(new File(resultDirectory, "result.bin"), new byte[size]);
+        resultDirectory.setLastModified(getTimeAgo(ageInHours));
+        return resultDirectory;
+    }
+
+    private static long getTimeAgo(final int ageInHours)
+    {
+        // on a whole second so file systems with a coarse resolution keep the order of the results
+        return (System.currentTimeMillis() / 1000L) * 1000L - ageInHours * ONE_HOUR_MILLIS;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Util;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ZipFileSetInputStreamTestCase
+{
+    private File filesDirectory;
+    private File[] files;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        filesDirectory = Util.createTemporaryDirectory("fileset");
+
+        final File smallFile = new File(filesDirectory, "small.txt");
+        FileUtils.writeStringToFile(smallFile, "small");
+
+        // spans several chunks
+        final StringBuilder largeContent = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            largeContent.append(i).append('\n');
+        }
+        final File largeFile = new File(filesDirectory, "large.txt");
+        FileUtils.writeStringToFile(largeFile, largeContent.toString());
+
+        files = new File[]{smallFile, largeFile};
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(filesDirectory);
+    }
+
+    @Test
+    public void zipFiles() throws Exception
+    {
+        final ZipInputStream zis = new ZipInputStream(new ZipFileSetInputStream(files));
+        try
+        {
+            for (final File file : files)
+            {
+                final ZipEntry zipEntry = zis.getNextEntry();
+                assertThat(zipEntry.getName(), is(file.getName()));
+                assertThat(IOUtils.toString(zis), is(FileUtils.readFileToString(file)));
+            }
+            assertThat(zis.getNextEntry(), is(nullValue()));
+        }
+        finally
+        {
+            zis.close();
+        }
+    }
+
+    @Test
+    public void readByteByByte() throws Exception
+    {
+        final InputStream zipFileSet = new ZipFileSetInputStream(files);
+        final byte[] zipBytes = IOUtils.toByteArray(new ZipFileSetInputStream(files));
+
+        try
+        {
+            for (final byte zipByte : zipBytes)
+            {
+                assertThat(zipFileSet.read(), is(zipByte & 0xFF));
+            }
+            assertThat(zipFileSet.read(), is(-1));
+        }
+        finally
+        {
+            zipFileSet.close();
+        }
+    }
+
+    @Test
+    public void closeBeforeFinished() throws Exception
+    {
+        final InputStream zipFileSet = new ZipFileSetInputStream(files);
+        assertThat(zipFileSet.read(new byte[10]) > 0, is(true));
+
+        zipFileSet.close();
+        assertThat(zipFileSet.read(new byte[10]), is(-1));
+        zipFileSet.close();
+    }
+
+    @Test
+    public void closeWithoutReading() throws Exception
+    {
+        new ZipFileSetInputStream(files).close();
+    }
+}
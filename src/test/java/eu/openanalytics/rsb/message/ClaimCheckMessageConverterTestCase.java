@@ -0,0 +1,173 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.UUID;
+
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.data.FileBlobStore;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class ClaimCheckMessageConverterTestCase
+{
+    private File claimCheckDirectory;
+    private Configuration configuration;
+    private FileBlobStore blobStore;
+    private Session session;
+    private ClaimCheckMessageConverter messageConverter;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        claimCheckDirectory = Util.createTemporaryDirectory("blobs");
+
+        configuration = mock(Configuration.class);
+        when(configuration.getClaimCheckDirectory()).thenReturn(claimCheckDirectory);
+
+        blobStore = new FileBlobStore();
+        blobStore.setConfiguration(configuration);
+
+        session = mock(Session.class);
+        when(session.createBytesMessage()).thenReturn(new ActiveMQBytesMessage());
+
+        messageConverter = new ClaimCheckMessageConverter();
+        messageConverter.setConfiguration(configuration);
+        messageConverter.setBlobStore(blobStore);
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        FileUtils.deleteQuietly(claimCheckDirectory);
+    }
+
+    @Test
+    public void jobIsSentWithItsFilesWithoutClaimCheckDirectory() throws Exception
+    {
+        when(configuration.getClaimCheckDirectory()).thenReturn(null);
+        final MultiFilesJob job = newJob();
+
+        final MultiFilesJob receivedJob = roundTrip(job);
+
+        assertThat(job.isCheckedIn(), is(false));
+        assertThat(receivedJob.isCheckedIn(), is(false));
+        assertThat(receivedJob.getRScriptFile(), is(job.getRScriptFile()));
+
+        job.destroy();
+    }
+
+    @Test
+    public void jobIsCheckedInOnSend() throws Exception
+    {
+        final MultiFilesJob job = newJob();
+        final File temporaryDirectory = job.getTemporaryDirectory();
+
+        final MultiFilesJob receivedJob = roundTrip(job);
+
+        assertThat(job.isCheckedIn(), is(true));
+        assertThat(temporaryDirectory.exists(), is(false));
+        assertThat(receivedJob.isCheckedIn(), is(true));
+        assertThat(receivedJob.getRScriptFileName(), is("script.R"));
+        assertThat(receivedJob.getRScriptFile(), is(nullValue()));
+        assertThat(receivedJob.getFileBlobIds(), is(job.getFileBlobIds()));
+        assertThat(read(receivedJob.openFile("script.R", blobStore)), is("1+1"));
+        assertThat(receivedJob.getFileLength("data.txt", blobStore), is(4L));
+    }
+
+    @Test
+    public void resultIsCheckedOutOnReceipt() throws Exception
+    {
+        final MultiFilesResult result = new MultiFilesResult(Source.REST, "test", "user",
+            UUID.randomUUID(), new GregorianCalendar(), new HashMap<String, Serializable>(), true);
+        FileUtils.writeStringToFile(result.createNewResultFile("result.txt"), "done", "UTF-8");
+
+        final MultiFilesResult receivedResult = roundTrip(result);
+
+        try
+        {
+            assertThat(result.isCheckedIn(), is(true));
+            assertThat(receivedResult.isCheckedIn(), is(false));
+            assertThat(receivedResult.getPayload().length, is(1));
+            assertThat(receivedResult.getPayload()[0].getName(), is("result.txt"));
+            assertThat(FileUtils.readFileToString(receivedResult.getPayload()[0], "UTF-8"), is("done"));
+        }
+        finally
+        {
+            receivedResult.destroy();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(final T workItem) throws Exception
+    {
+        final ActiveMQBytesMessage message = (ActiveMQBytesMessage) messageConverter.toMessage(workItem,
+            session);
+        message.reset();
+        return (T) messageConverter.fromMessage(message);
+    }
+
+    private static MultiFilesJob newJob() throws Exception
+    {
+        final MultiFilesJob job = new MultiFilesJob(Source.REST, "test", "user", UUID.randomUUID(),
+            new GregorianCalendar(), new HashMap<String, Serializable>());
+        job.addFile("script.R", new ByteArrayInputStream("1+1".getBytes("UTF-8")));
+        job.addFile("data.txt", new ByteArrayInputStream("data".getBytes("UTF-8")));
+        return job;
+    }
+
+    private static String read(final InputStream is) throws Exception
+    {
+        try
+        {
+            return IOUtils.toString(is, "UTF-8");
+        }
+        finally
+        {
+            IOUtils.closeQuietly(is);
+        }
+    }
+}
@@ -21,9 +21,11 @@
 package eu.openanalytics.rsb.message;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.matches;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,12 +37,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.springframework.jms.core.JmsTemplate;
 
 import eu.openanalytics.rsb.config.Configuration;
 import eu.openanalytics.rsb.message.AbstractJob;
 import eu.openanalytics.rsb.message.AbstractResult;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
 import eu.openanalytics.rsb.message.JmsMessageDispatcher;
 import eu.openanalytics.rsb.message.JmsMessageDispatcher.WorkItemMessagePostProcessor;
 
@@ -77,14 +82,59 @@ public class JmsMessageDispatcherTestCase {
         verify(jmsTemplate).convertAndSend(matches("r\\.results\\..*"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
     }
 
+    @Test
+    public void dispatchSynchronousResult() {
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.getSource()).thenReturn(Source.SOAP);
+        when(result.getReplyTo()).thenReturn("r.replies.node2");
+        jmsDispatcher.dispatch(result);
+        verify(jmsTemplate).convertAndSend(eq("r.replies.node2"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
+    }
+
+    @Test
+    public void dispatchSynchronousResultWithoutReplyTo() {
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.getSource()).thenReturn(Source.SOAP);
+        when(configuration.getNodeName()).thenReturn("node1");
+        jmsDispatcher.dispatch(result);
+        verify(jmsTemplate).convertAndSend(eq("r.replies.node1"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
+    }
+
     @Test
     public void process() {
+        final UUID jobId = UUID.randomUUID();
+        final AbstractJob job = mock(AbstractJob.class);
+        when(job.getJobId()).thenReturn(jobId);
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.getJobId()).thenReturn(jobId);
+        when(configuration.getJobTimeOut()).thenReturn(10000);
+        when(configuration.getNodeName()).thenReturn("node1");
+        doAnswer(new Answer<Void>() {
+            public Void answer(final InvocationOnMock invocation) {
+                jmsDispatcher.handleReply(result);
+                return null;
+            }
+        }).when(jmsTemplate).convertAndSend(matches("r\\.jobs\\..*"), any(AbstractJob.class), any(WorkItemMessagePostProcessor.class));
+
+        assertEquals(result, jmsDispatcher.process(job));
+        verify(job).setReplyTo("r.replies.node1");
+    }
+
+    @Test
+    public void processTimeOut() {
         final AbstractJob job = mock(AbstractJob.class);
         when(job.getJobId()).thenReturn(UUID.randomUUID());
+        when(configuration.getJobTimeOut()).thenReturn(10);
+
+        assertNull(jmsDispatcher.process(job));
+    }
+
+    @Test
+    public void handleUnexpectedReply() {
         final AbstractResult<?> result = mock(AbstractResult.class);
-        when(jmsTemplate.receiveSelectedAndConvert(matches("r\\.results\\..*"), anyString())).thenReturn(result);
+        when(result.getJobId()).thenReturn(UUID.randomUUID());
 
-        assertEquals(jmsDispatcher.process(job), result);
-        verify(jmsTemplate).convertAndSend(matches("r\\.jobs\\..*"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
+        jmsDispatcher.handleReply(result);
+        verify(result).destroy();
     }
 }
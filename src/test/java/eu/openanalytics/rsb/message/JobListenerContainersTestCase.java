@@ -0,0 +1,140 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.ConnectionFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerPoolConfiguration;
+import eu.openanalytics.rsb.config.PersistedConfiguration.PersistedJobWorkerPoolConfiguration;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobListenerContainersTestCase
+{
+    private Configuration configuration;
+    private JobListenerContainers jobListenerContainers;
+
+    @Before
+    public void prepareTest()
+    {
+        configuration = mock(Configuration.class);
+        when(configuration.getNumberOfConcurrentJobWorkersPerQueue()).thenReturn(5);
+
+        jobListenerContainers = new JobListenerContainers();
+        jobListenerContainers.setConfiguration(configuration);
+        jobListenerContainers.setConnectionFactory(mock(ConnectionFactory.class));
+        jobListenerContainers.setJobProcessor(new Object());
+    }
+
+    @Test
+    public void createContainersWithoutJobWorkerPools()
+    {
+        when(configuration.getJobWorkerPools()).thenReturn(
+            Collections.<String, JobWorkerPoolConfiguration> emptyMap());
+
+        jobListenerContainers.createContainers();
+
+        final DefaultMessageListenerContainer globalContainer = jobListenerContainers.getGlobalContainer();
+        assertThat(globalContainer.getDestinationName(), is(JobListenerContainers.GLOBAL_JOB_QUEUES));
+        assertThat(globalContainer.getMessageSelector(), is(nullValue()));
+        assertThat(globalContainer.getConcurrentConsumers(), is(1));
+        assertThat(globalContainer.getMaxConcurrentConsumers(), is(5));
+        assertThat(jobListenerContainers.getApplicationContainers().isEmpty(), is(true));
+    }
+
+    @Test
+    public void createContainersWithJobWorkerPools()
+    {
+        final Map<String, JobWorkerPoolConfiguration> jobWorkerPools = new LinkedHashMap<String, JobWorkerPoolConfiguration>();
+        jobWorkerPools.put("heavy", newJobWorkerPool(2, 0, 0, null));
+        jobWorkerPools.put("light", newJobWorkerPool(1, 4, 10, "source = 'REST'"));
+        when(configuration.getJobWorkerPools()).thenReturn(jobWorkerPools);
+
+        jobListenerContainers.createContainers();
+
+        assertThat(jobListenerContainers.getGlobalContainer().getMessageSelector(),
+            is("applicationName NOT IN ('heavy','light')"
+               + " OR (applicationName = 'light' AND NOT (source = 'REST'))"));
+
+        final DefaultMessageListenerContainer heavyContainer = jobListenerContainers.getApplicationContainers()
+            .get("heavy");
+        assertThat(heavyContainer.getDestinationName(), is("r.jobs.heavy"));
+        assertThat(heavyContainer.getMessageSelector(), is(nullValue()));
+        assertThat(heavyContainer.getConcurrentConsumers(), is(2));
+        assertThat(heavyContainer.getMaxConcurrentConsumers(), is(2));
+
+        final DefaultMessageListenerContainer lightContainer = jobListenerContainers.getApplicationContainers()
+            .get("light");
+        assertThat(lightContainer.getDestinationName(), is("r.jobs.light?consumer.prefetchSize=10"));
+        assertThat(lightContainer.getMessageSelector(), is("source = 'REST'"));
+        assertThat(lightContainer.getConcurrentConsumers(), is(1));
+        assertThat(lightContainer.getMaxConcurrentConsumers(), is(4));
+    }
+
+    @Test
+    public void getGlobalSelector()
+    {
+        final Map<String, JobWorkerPoolConfiguration> jobWorkerPools = new LinkedHashMap<String, JobWorkerPoolConfiguration>();
+        assertThat(JobListenerContainers.getGlobalSelector(jobWorkerPools), is(nullValue()));
+
+        jobWorkerPools.put("app1", newJobWorkerPool(1, 1, 0, null));
+        assertThat(JobListenerContainers.getGlobalSelector(jobWorkerPools),
+            is("applicationName NOT IN ('app1')"));
+
+        jobWorkerPools.put("app2", newJobWorkerPool(1, 1, 0, " priority > 4 "));
+        jobWorkerPools.put("app3", newJobWorkerPool(1, 1, 0, "source = 'SOAP'"));
+        assertThat(
+            JobListenerContainers.getGlobalSelector(jobWorkerPools),
+            is("applicationName NOT IN ('app1','app2','app3')"
+               + " OR (applicationName = 'app2' AND NOT (priority > 4))"
+               + " OR (applicationName = 'app3' AND NOT (source = 'SOAP'))"));
+    }
+
+    private static JobWorkerPoolConfiguration newJobWorkerPool(final int minConcurrency,
+                                                               final int maxConcurrency,
+                                                               final int prefetch,
+                                                               final String selector)
+    {
+        final PersistedJobWorkerPoolConfiguration jobWorkerPool = new PersistedJobWorkerPoolConfiguration();
+        jobWorkerPool.setMinConcurrency(minConcurrency);
+        jobWorkerPool.setMaxConcurrency(maxConcurrency);
+        jobWorkerPool.setPrefetch(prefetch);
+        jobWorkerPool.setSelector(selector);
+        return jobWorkerPool;
+    }
+}
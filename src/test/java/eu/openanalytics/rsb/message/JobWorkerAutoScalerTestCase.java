@@ -0,0 +1,187 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Test;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.JobWorkerPoolConfiguration;
+import eu.openanalytics.rsb.config.PersistedConfiguration.PersistedJobWorkerAutoScalingConfiguration;
+import eu.openanalytics.rsb.message.JobWorkerAutoScaler.Decision;
+import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
+import eu.openanalytics.rsb.rservi.RServiLoadTracker;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobWorkerAutoScalerTestCase
+{
+    private static final long PERIOD = 10000L;
+
+    @Test
+    public void decideScaleUpForPendingJobs()
+    {
+        // 5s jobs: each worker can process 2 jobs per period
+        final Decision decision = JobWorkerAutoScaler.decide(2, 2, 6, 5000d, PERIOD, -1, 1, 10);
+        assertThat(decision.concurrency, is(5));
+    }
+
+    @Test
+    public void decideScaleUpLimitedByRServiCapacity()
+    {
+        final Decision decision = JobWorkerAutoScaler.decide(2, 2, 6, 5000d, PERIOD, 1, 1, 10);
+        assertThat(decision.concurrency, is(3));
+    }
+
+    @Test
+    public void decideScaleUpLimitedByMaxConcurrency()
+    {
+        final Decision decision = JobWorkerAutoScaler.decide(2, 2, 100, 0d, PERIOD, -1, 1, 8);
+        assertThat(decision.concurrency, is(8));
+    }
+
+    @Test
+    public void decideScaleDownOneWorkerAtATime()
+    {
+        final Decision decision = JobWorkerAutoScaler.decide(6, 1, 0, 5000d, PERIOD, -1, 1, 10);
+        assertThat(decision.concurrency, is(5));
+    }
+
+    @Test
+    public void decideNeverScaleBelowMinConcurrency()
+    {
+        final Decision decision = JobWorkerAutoScaler.decide(2, 0, 0, 0d, PERIOD, -1, 2, 10);
+        assertThat(decision.concurrency, is(2));
+    }
+
+    @Test
+    public void decideUnchanged()
+    {
+        final Decision decision = JobWorkerAutoScaler.decide(3, 3, 0, 5000d, PERIOD, 0, 1, 10);
+        assertThat(decision.concurrency, is(3));
+    }
+
+    @Test
+    public void scale() throws Exception
+    {
+        final DefaultMessageListenerContainer globalContainer = new DefaultMessageListenerContainer();
+        final JobWorkerAutoScaler jobWorkerAutoScaler = newJobWorkerAutoScaler(globalContainer,
+            Collections.<String, Set<URI>> emptyMap(), 0d);
+
+        jobWorkerAutoScaler.scale(PERIOD);
+
+        assertThat(globalContainer.getConcurrentConsumers(), is(3));
+        assertThat(globalContainer.getMaxConcurrentConsumers(), is(3));
+        assertThat(jobWorkerAutoScaler.getDecisions().getScaleUpCount(), is(1L));
+        assertThat(jobWorkerAutoScaler.getDecisions().getScaleDownCount(), is(0L));
+        assertThat(jobWorkerAutoScaler.getDecisions().getRecentDecisions().length, is(1));
+    }
+
+    @Test
+    public void scaleGlobalContainerWithApplicationSpecificUris() throws Exception
+    {
+        // app2 has a specific URI but no job worker pool, so it is served by the global container
+        final URI app2RServiUri = new URI("fake://app2");
+        final DefaultMessageListenerContainer globalContainer = new DefaultMessageListenerContainer();
+        final JobWorkerAutoScaler jobWorkerAutoScaler = newJobWorkerAutoScaler(globalContainer,
+            Collections.singletonMap("app2", Collections.singleton(app2RServiUri)), PERIOD / 2d);
+
+        jobWorkerAutoScaler.scale(PERIOD);
+
+        // a worker processes two jobs per period on the URI of app2
+        assertThat(globalContainer.getConcurrentConsumers(), is(2));
+    }
+
+    private static JobWorkerAutoScaler newJobWorkerAutoScaler(final DefaultMessageListenerContainer globalContainer,
+                                                              final Map<String, Set<URI>> applicationSpecificRserviPoolUris,
+                                                              final double applicationSpecificLatency)
+        throws Exception
+    {
+        final URI defaultRServiUri = new URI("fake://default");
+        final Configuration configuration = mock(Configuration.class);
+        final PersistedJobWorkerAutoScalingConfiguration autoScaling = new PersistedJobWorkerAutoScalingConfiguration();
+        autoScaling.setMinConcurrency(1);
+        autoScaling.setMaxConcurrency(4);
+        when(configuration.getJobWorkerAutoScaling()).thenReturn(autoScaling);
+        when(configuration.getJobWorkerPools()).thenReturn(
+            Collections.<String, JobWorkerPoolConfiguration> emptyMap());
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultRServiUri);
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(applicationSpecificRserviPoolUris);
+
+        final JobListenerContainers jobListenerContainers = mock(JobListenerContainers.class);
+        when(jobListenerContainers.getGlobalContainer()).thenReturn(globalContainer);
+        when(jobListenerContainers.getApplicationContainers()).thenReturn(
+            Collections.<String, DefaultMessageListenerContainer> emptyMap());
+
+        final Map<ActiveMQDestination, Destination> destinations = new HashMap<ActiveMQDestination, Destination>();
+        destinations.put(new ActiveMQQueue("r.jobs.app1"), newDestination(2L));
+        destinations.put(new ActiveMQQueue("r.jobs.app2"), newDestination(1L));
+        destinations.put(new ActiveMQQueue("DLQ.r.jobs.app1"), newDestination(10L));
+        final Broker broker = mock(Broker.class);
+        when(broker.getDestinationMap()).thenReturn(destinations);
+        final BrokerService brokerService = mock(BrokerService.class);
+        when(brokerService.getRegionBroker()).thenReturn(broker);
+
+        final RServiInstanceProvider rServiInstanceProvider = mock(RServiInstanceProvider.class);
+        when(rServiInstanceProvider.getAvailableCapacity()).thenReturn(-1);
+        final RServiLoadTracker rServiLoadTracker = mock(RServiLoadTracker.class);
+        when(rServiLoadTracker.getAverageLatency(any(URI.class))).thenReturn(applicationSpecificLatency);
+        // the default URI hasn't processed any job yet
+        when(rServiLoadTracker.getAverageLatency(defaultRServiUri)).thenReturn(0d);
+
+        final JobWorkerAutoScaler jobWorkerAutoScaler = new JobWorkerAutoScaler();
+        jobWorkerAutoScaler.setConfiguration(configuration);
+        jobWorkerAutoScaler.setJobListenerContainers(jobListenerContainers);
+        jobWorkerAutoScaler.setBrokerService(brokerService);
+        jobWorkerAutoScaler.setRServiInstanceProvider(rServiInstanceProvider);
+        jobWorkerAutoScaler.setRServiLoadTracker(rServiLoadTracker);
+        return jobWorkerAutoScaler;
+    }
+
+    private static Destination newDestination(final long pendingMessages)
+    {
+        final DestinationStatistics destinationStatistics = new DestinationStatistics();
+        destinationStatistics.getMessages().setCount(pendingMessages);
+        final Destination destination = mock(Destination.class);
+        when(destination.getDestinationStatistics()).thenReturn(destinationStatistics);
+        return destination;
+    }
+}
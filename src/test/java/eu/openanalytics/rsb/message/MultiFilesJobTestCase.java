@@ -0,0 +1,99 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import eu.openanalytics.rsb.data.BlobStore;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class MultiFilesJobTestCase
+{
+    private static final UUID JOB_ID = UUID.randomUUID();
+
+    private MultiFilesJob job;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        job = new MultiFilesJob(Source.REST, "test", "user", JOB_ID, new GregorianCalendar(),
+            new HashMap<String, Serializable>());
+        job.addFile("script.R", new ByteArrayInputStream("1+1".getBytes("UTF-8")));
+    }
+
+    @After
+    public void cleanupTest()
+    {
+        job.destroy();
+    }
+
+    @Test
+    public void deserializeJobWithoutRScriptFileName() throws Exception
+    {
+        // as serialized before the name of the R script was kept
+        ReflectionTestUtils.setField(job, "rScriptFileName", null);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(job);
+        oos.close();
+        final MultiFilesJob deserializedJob = (MultiFilesJob) new ObjectInputStream(new ByteArrayInputStream(
+            baos.toByteArray())).readObject();
+
+        assertThat(deserializedJob.getRScriptFileName(), is("script.R"));
+        assertThat(deserializedJob.getRScriptFile(), is(job.getRScriptFile()));
+    }
+
+    @Test
+    public void checkInRetainsBlobsUntilReleased() throws Exception
+    {
+        final BlobStore blobStore = mock(BlobStore.class);
+
+        job.checkIn(blobStore);
+        verify(blobStore).retain(eq("job-" + JOB_ID), anyCollectionOf(String.class));
+
+        job.releaseBlobs(blobStore);
+        verify(blobStore).release("job-" + JOB_ID);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class WorkItemCodecTestCase
+{
+    private static final UUID JOB_ID = UUID.randomUUID();
+
+    @Test
+    public void functionCallJob() throws Exception
+    {
+        final JsonFunctionCallJob job = new JsonFunctionCallJob(Source.REST, "appName", "user",
+            JOB_ID, newSubmissionTime(), "{\"fake\":\"job\u00e9\"}");
+
+        final JsonFunctionCallJob decodedJob = roundTrip(job);
+
+        assertWorkItemHeader(decodedJob, job);
+        assertThat(decodedJob.getArgument(), is(job.getArgument()));
+    }
+
+    @Test
+    public void functionCallResult() throws Exception
+    {
+        final XmlFunctionCallResult result = new XmlFunctionCallResult(Source.SOAP, "appName", null,
+            JOB_ID, newSubmissionTime(), false, "<fake/>");
+        result.setReplyTo("r.replies.node1");
+
+        final XmlFunctionCallResult decodedResult = roundTrip(result);
+
+        assertWorkItemHeader(decodedResult, result);
+        assertThat(decodedResult.isSuccess(), is(false));
+        assertThat(decodedResult.getPayload(), is("<fake/>"));
+        assertThat(decodedResult.getReplyTo(), is("r.replies.node1"));
+    }
+
+    @Test
+    public void multiFilesJob() throws Exception
+    {
+        final MultiFilesJob job = new MultiFilesJob(Source.DIRECTORY, "appName", "user", JOB_ID,
+            newSubmissionTime(), newMeta(), new File("/tmp/rsb_job"), "script.R", null);
+
+        final MultiFilesJob decodedJob = roundTrip(job);
+
+        assertWorkItemHeader(decodedJob, job);
+        assertThat(decodedJob.getMeta(), is(job.getMeta()));
+        assertThat(decodedJob.isCheckedIn(), is(false));
+        assertThat(decodedJob.getRScriptFileName(), is("script.R"));
+        assertThat(decodedJob.getRScriptFile(), is(new File("/tmp/rsb_job", "script.R")));
+    }
+
+    @Test
+    public void checkedInMultiFilesResult() throws Exception
+    {
+        final MultiFilesResult result = new MultiFilesResult(Source.EMAIL, "appName", null, JOB_ID,
+            newSubmissionTime(), newMeta(), true, null, Collections.singletonMap("result.pdf", "abcdef"));
+
+        final MultiFilesResult decodedResult = roundTrip(result);
+
+        assertWorkItemHeader(decodedResult, result);
+        assertThat(decodedResult.getMeta(), is(result.getMeta()));
+        assertThat(decodedResult.isSuccess(), is(true));
+        assertThat(decodedResult.getTemporaryDirectory(), is(nullValue()));
+        assertThat(decodedResult.getFileBlobIds(), is(result.getFileBlobIds()));
+    }
+
+    @Test
+    public void encodedFormIsSmallerThanSerializedForm() throws Exception
+    {
+        final MultiFilesJob multiFilesJob = new MultiFilesJob(Source.REST, "appName", "user", JOB_ID,
+            newSubmissionTime(), newMeta(), new File("/tmp/rsb_job"), "script.R", null);
+        assertTrue(WorkItemCodec.encode(multiFilesJob).length < getSerializedSize(multiFilesJob));
+
+        final JsonFunctionCallJob functionCallJob = new JsonFunctionCallJob(Source.REST, "appName", "user",
+            JOB_ID, newSubmissionTime(), "{\"x\":[1,2,3]}");
+        assertTrue(WorkItemCodec.encode(functionCallJob).length < getSerializedSize(functionCallJob));
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFormatVersion() throws Exception
+    {
+        final byte[] data = WorkItemCodec.encode(new JsonFunctionCallJob(Source.REST, "appName", null,
+            JOB_ID, newSubmissionTime(), "{}"));
+        data[4] = (byte) (WorkItemCodec.FORMAT_VERSION + 1);
+
+        WorkItemCodec.decode(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnEncodedWorkItem() throws Exception
+    {
+        WorkItemCodec.decode(new byte[]{1, 2, 3, 4, 5, 6});
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends AbstractWorkItem> T roundTrip(final T workItem) throws IOException
+    {
+        return (T) WorkItemCodec.decode(WorkItemCodec.encode(workItem));
+    }
+
+    private static int getSerializedSize(final AbstractWorkItem workItem) throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(workItem);
+        oos.close();
+        return baos.size();
+    }
+
+    private static void assertWorkItemHeader(final AbstractWorkItem actual, final AbstractWorkItem expected)
+    {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertThat(actual.getSource(), is(expected.getSource()));
+        assertThat(actual.getApplicationName(), is(expected.getApplicationName()));
+        assertThat(actual.getUserName(), is(expected.getUserName()));
+        assertThat(actual.getJobId(), is(expected.getJobId()));
+        assertThat(actual.getSubmissionTime().getTimeInMillis(),
+            is(expected.getSubmissionTime().getTimeInMillis()));
+        assertThat(actual.getSubmissionTime().getTimeZone(), is(expected.getSubmissionTime().getTimeZone()));
+    }
+
+    private static GregorianCalendar newSubmissionTime()
+    {
+        return new GregorianCalendar(TimeZone.getTimeZone("Europe/Brussels"));
+    }
+
+    private static Map<String, Serializable> newMeta()
+    {
+        final Map<String, Serializable> meta = new HashMap<String, Serializable>();
+        meta.put("rScript", "script.R");
+        meta.put("rsbSecure", true);
+        meta.put("count", 3);
+        meta.put("total", 12L);
+        meta.put("ratio", 0.5d);
+        meta.put("amount", new BigDecimal("12.34"));
+        return meta;
+    }
+}
@@ -52,6 +52,7 @@ public class CircularRServiUriSelectorTestCase
     private Configuration configuration;
 
     private CircularRServiUriSelector selector;
+    private RServiCircuitBreaker circuitBreaker;
     private URI defaultPoolUri;
 
     @Before
@@ -59,6 +60,8 @@ public class CircularRServiUriSelectorTestCase
     {
         selector = new CircularRServiUriSelector();
         selector.setConfiguration(configuration);
+        circuitBreaker = new RServiCircuitBreaker();
+        selector.setRServiCircuitBreaker(circuitBreaker);
 
         defaultPoolUri = new URI("fake://default");
         when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
@@ -106,4 +109,21 @@ public class CircularRServiUriSelectorTestCase
         assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
         assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
     }
+
+    @Test
+    public void getUriForApplicationSkipsOpenCircuits() throws URISyntaxException
+    {
+        final URI appSpecificPoolUri1 = new URI("fake://pool1");
+        final URI appSpecificPoolUri2 = new URI("fake://pool2");
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(
+            Collections.singletonMap(TEST_APPLICATION_NAME,
+                (Set<URI>) new TreeSet<URI>(Arrays.asList(appSpecificPoolUri1, appSpecificPoolUri2))));
+
+        selector.initialize();
+        circuitBreaker.setFailureThreshold(1);
+        circuitBreaker.recordFailure(appSpecificPoolUri1);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+    }
 }
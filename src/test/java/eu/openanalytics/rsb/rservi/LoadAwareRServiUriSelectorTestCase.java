@@ -0,0 +1,163 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LoadAwareRServiUriSelectorTestCase
+{
+    private static final String TEST_APPLICATION_NAME = "appname";
+
+    @Mock
+    private Configuration configuration;
+
+    private LoadAwareRServiUriSelector selector;
+    private RServiLoadTracker loadTracker;
+    private RServiCircuitBreaker circuitBreaker;
+    private URI defaultPoolUri;
+    private URI appSpecificPoolUri1;
+    private URI appSpecificPoolUri2;
+
+    @Before
+    public void setUp() throws URISyntaxException
+    {
+        loadTracker = new RServiLoadTracker();
+        selector = new LoadAwareRServiUriSelector();
+        selector.setConfiguration(configuration);
+        selector.setRServiLoadTracker(loadTracker);
+        circuitBreaker = new RServiCircuitBreaker();
+        selector.setRServiCircuitBreaker(circuitBreaker);
+
+        defaultPoolUri = new URI("fake://default");
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+
+        appSpecificPoolUri1 = new URI("fake://pool1");
+        appSpecificPoolUri2 = new URI("fake://pool2");
+    }
+
+    @Test
+    public void getUriForApplicationDefaultOnly() throws URISyntaxException
+    {
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(null);
+        selector.initialize();
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(defaultPoolUri));
+    }
+
+    @Test
+    public void getUriForApplicationFewestInFlightJobs() throws URISyntaxException
+    {
+        initializeWithSeveralSpecificUris();
+
+        loadTracker.jobStarted(appSpecificPoolUri1);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+
+        loadTracker.jobCompleted(appSpecificPoolUri1, 10L);
+        loadTracker.jobStarted(appSpecificPoolUri2);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
+    }
+
+    @Test
+    public void getUriForApplicationLowestLatency() throws URISyntaxException
+    {
+        initializeWithSeveralSpecificUris();
+
+        loadTracker.jobStarted(appSpecificPoolUri1);
+        loadTracker.jobCompleted(appSpecificPoolUri1, 5000L);
+        loadTracker.jobStarted(appSpecificPoolUri2);
+        loadTracker.jobCompleted(appSpecificPoolUri2, 100L);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+    }
+
+    @Test
+    public void getUriForApplicationSkipsUnhealthy() throws URISyntaxException
+    {
+        initializeWithSeveralSpecificUris();
+
+        loadTracker.setHealthy(appSpecificPoolUri2, false);
+        loadTracker.jobStarted(appSpecificPoolUri1);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
+
+        // with no healthy URI left, the least loaded is used
+        loadTracker.setHealthy(appSpecificPoolUri1, false);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+    }
+
+    @Test
+    public void getUriForApplicationSkipsOpenCircuits() throws URISyntaxException
+    {
+        initializeWithSeveralSpecificUris();
+
+        circuitBreaker.setFailureThreshold(1);
+        circuitBreaker.recordFailure(appSpecificPoolUri2);
+        loadTracker.jobStarted(appSpecificPoolUri1);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
+    }
+
+    @Test
+    public void getUriForApplicationSpreadsTies() throws URISyntaxException
+    {
+        initializeWithSeveralSpecificUris();
+
+        final URI firstUri = selector.getUriForApplication(TEST_APPLICATION_NAME);
+        final URI secondUri = selector.getUriForApplication(TEST_APPLICATION_NAME);
+
+        assertThat(firstUri.equals(secondUri), is(false));
+    }
+
+    private void initializeWithSeveralSpecificUris()
+    {
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(
+            Collections.singletonMap(TEST_APPLICATION_NAME,
+                (Set<URI>) new TreeSet<URI>(Arrays.asList(appSpecificPoolUri1, appSpecificPoolUri2))));
+
+        selector.initialize();
+    }
+}
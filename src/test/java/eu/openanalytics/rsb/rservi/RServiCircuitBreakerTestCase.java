@@ -0,0 +1,122 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker.State;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class RServiCircuitBreakerTestCase
+{
+    private RServiCircuitBreaker circuitBreaker;
+    private URI rServiUri;
+
+    @Before
+    public void prepareTest()
+    {
+        circuitBreaker = new RServiCircuitBreaker();
+        circuitBreaker.setFailureThreshold(2);
+        rServiUri = URI.create("fake://pool");
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures()
+    {
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(true));
+        circuitBreaker.recordFailure(rServiUri);
+        assertThat(circuitBreaker.getState(rServiUri), is(State.CLOSED));
+
+        circuitBreaker.recordFailure(rServiUri);
+        assertThat(circuitBreaker.getState(rServiUri), is(State.OPEN));
+        assertThat(circuitBreaker.isAvailable(rServiUri), is(false));
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(false));
+    }
+
+    @Test
+    public void successResetsFailureCount()
+    {
+        circuitBreaker.recordFailure(rServiUri);
+        circuitBreaker.recordSuccess(rServiUri);
+        circuitBreaker.recordFailure(rServiUri);
+
+        assertThat(circuitBreaker.getState(rServiUri), is(State.CLOSED));
+    }
+
+    @Test
+    public void halfOpenTrialSuccessClosesCircuit()
+    {
+        circuitBreaker.setOpenPeriodMillis(0L);
+        circuitBreaker.recordFailure(rServiUri);
+        circuitBreaker.recordFailure(rServiUri);
+
+        assertThat(circuitBreaker.isAvailable(rServiUri), is(true));
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(true));
+        assertThat(circuitBreaker.getState(rServiUri), is(State.HALF_OPEN));
+        // only one trial request at a time
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(false));
+
+        circuitBreaker.recordSuccess(rServiUri);
+        assertThat(circuitBreaker.getState(rServiUri), is(State.CLOSED));
+    }
+
+    @Test
+    public void halfOpenTrialFailureReopensCircuit()
+    {
+        circuitBreaker.setOpenPeriodMillis(0L);
+        circuitBreaker.recordFailure(rServiUri);
+        circuitBreaker.recordFailure(rServiUri);
+
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(true));
+        circuitBreaker.recordFailure(rServiUri);
+        assertThat(circuitBreaker.getState(rServiUri), is(State.OPEN));
+    }
+
+    @Test
+    public void releasedHalfOpenTrialReopensCircuit()
+    {
+        circuitBreaker.setOpenPeriodMillis(0L);
+        circuitBreaker.recordFailure(rServiUri);
+        circuitBreaker.recordFailure(rServiUri);
+
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(true));
+        circuitBreaker.releaseTrial(rServiUri);
+        assertThat(circuitBreaker.getState(rServiUri), is(State.OPEN));
+        // the next trial is let through once the open period has elapsed
+        assertThat(circuitBreaker.allowRequest(rServiUri), is(true));
+    }
+
+    @Test
+    public void releaseTrialLeavesClosedCircuit()
+    {
+        circuitBreaker.releaseTrial(rServiUri);
+        assertThat(circuitBreaker.getState(rServiUri), is(State.CLOSED));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import eu.openanalytics.rsb.message.Job;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class AsynchronousJobStatisticsHandlerTestCase
+{
+    @Test
+    public void storeJobStatisticsInBatches()
+    {
+        final List<JobStatisticsEntry> storedEntries = Collections.synchronizedList(
+            new ArrayList<JobStatisticsEntry>());
+        final BatchJobStatisticsHandler delegate = mock(BatchJobStatisticsHandler.class);
+        doAnswer(new Answer<Void>()
+        {
+            @SuppressWarnings("unchecked")
+            public Void answer(final InvocationOnMock invocation) throws Throwable
+            {
+                storedEntries.addAll((List<JobStatisticsEntry>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(delegate).storeJobStatistics(anyListOf(JobStatisticsEntry.class));
+
+        final AsynchronousJobStatisticsHandler handler = newHandler(delegate, 100, "block");
+        for (int i = 0; i < 10; i++)
+        {
+            handler.storeJobStatistics(mock(Job.class), new GregorianCalendar(), i, "fake://default");
+        }
+        handler.destroy();
+
+        assertThat(storedEntries.size(), is(10));
+        assertThat(handler.getDroppedEntriesCount(), is(0L));
+        verify(delegate).destroy();
+    }
+
+    @Test
+    public void storeJobStatisticsWithNonBatchDelegate()
+    {
+        final JobStatisticsHandler delegate = mock(JobStatisticsHandler.class);
+        final AsynchronousJobStatisticsHandler handler = newHandler(delegate, 100, null);
+        final Job job = mock(Job.class);
+        final UUID jobId = UUID.randomUUID();
+        when(job.getApplicationName()).thenReturn("test_app");
+        when(job.getJobId()).thenReturn(jobId);
+        when(job.getUserName()).thenReturn("test_user");
+        final GregorianCalendar jobCompletionTime = new GregorianCalendar();
+
+        handler.storeJobStatistics(job, jobCompletionTime, 123L, "fake://default");
+        handler.destroy();
+
+        final ArgumentCaptor<Job> storedJobCaptor = ArgumentCaptor.forClass(Job.class);
+        verify(delegate).storeJobStatistics(storedJobCaptor.capture(), eq(jobCompletionTime), eq(123L),
+            eq("fake://default"));
+        final Job storedJob = storedJobCaptor.getValue();
+        assertThat(storedJob.getApplicationName(), is("test_app"));
+        assertThat(storedJob.getJobId(), is(jobId));
+        assertThat(storedJob.getUserName(), is("test_user"));
+    }
+
+    @Test
+    public void dropJobStatisticsWhenQueueIsFull() throws Exception
+    {
+        final CountDownLatch flushStarted = new CountDownLatch(1);
+        final CountDownLatch flushAllowed = new CountDownLatch(1);
+        final BatchJobStatisticsHandler delegate = mock(BatchJobStatisticsHandler.class);
+        doAnswer(new Answer<Void>()
+        {
+            public Void answer(final InvocationOnMock invocation) throws Throwable
+            {
+                flushStarted.countDown();
+                flushAllowed.await();
+                return null;
+            }
+        }).when(delegate).storeJobStatistics(anyListOf(JobStatisticsEntry.class));
+
+        final AsynchronousJobStatisticsHandler handler = newHandler(delegate, 1, "drop");
+
+        // first entry gets stuck in the flusher, second fills the queue, third is dropped
+        handler.storeJobStatistics(mock(Job.class), new GregorianCalendar(), 1L, "fake://default");
+        assertThat(flushStarted.await(10, TimeUnit.SECONDS), is(true));
+        handler.storeJobStatistics(mock(Job.class), new GregorianCalendar(), 2L, "fake://default");
+        handler.storeJobStatistics(mock(Job.class), new GregorianCalendar(), 3L, "fake://default");
+
+        assertThat(handler.getDroppedEntriesCount(), is(1L));
+
+        flushAllowed.countDown();
+        handler.destroy();
+    }
+
+    private AsynchronousJobStatisticsHandler newHandler(final JobStatisticsHandler delegate,
+                                                        final int queueCapacity,
+                                                        final String queueFullPolicy)
+    {
+        final Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(AsynchronousJobStatisticsHandler.QUEUE_CAPACITY_PARAMETER, queueCapacity);
+        configuration.put(AsynchronousJobStatisticsHandler.BATCH_SIZE_PARAMETER, 3);
+        configuration.put(AsynchronousJobStatisticsHandler.QUEUE_FULL_POLICY_PARAMETER, queueFullPolicy);
+
+        final AsynchronousJobStatisticsHandler handler = new AsynchronousJobStatisticsHandler(delegate);
+        handler.setConfiguration(configuration);
+        handler.initialize();
+        return handler;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.message.Job;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class InMemoryJobStatisticsHandlerTestCase
+{
+    // fixed, so that all the statistics of a test fall in the same bucket of any granularity
+    private static final long JOB_COMPLETION_TIME = 1434371430000L;
+
+    private InMemoryJobStatisticsHandler handler;
+
+    @Before
+    public void prepareTest()
+    {
+        handler = new InMemoryJobStatisticsHandler();
+    }
+
+    @Test
+    public void storeJobStatistics()
+    {
+        handler.setConfiguration(null);
+        handler.initialize();
+
+        storeJobStatistics("app1", 100L, "fake://pool1");
+        storeJobStatistics("app1", 300L, "fake://pool2");
+        storeJobStatistics("app2", 50L, "fake://pool1");
+
+        for (final Granularity granularity : Granularity.values())
+        {
+            final JobStatisticsRollup app1Rollup = handler.getRollups(granularity, Scope.APPLICATION,
+                "app1", 1, JOB_COMPLETION_TIME).get(0);
+            assertThat(app1Rollup.getCount(), is(2L));
+            assertThat(app1Rollup.getAverageTimeSpent(), is(200L));
+
+            final JobStatisticsRollup pool1Rollup = handler.getRollups(granularity, Scope.RSERVI_ADDRESS,
+                "fake://pool1", 1, JOB_COMPLETION_TIME).get(0);
+            assertThat(pool1Rollup.getCount(), is(2L));
+            assertThat(pool1Rollup.getTotalTimeSpent(), is(150L));
+        }
+
+        handler.destroy();
+    }
+
+    @Test
+    public void getRollupsOfUnknownScopeValue()
+    {
+        handler.initialize();
+
+        final List<JobStatisticsRollup> rollups = handler.getRollups(Granularity.MINUTE, Scope.APPLICATION,
+            "unknown", 10);
+
+        assertThat(rollups.size(), is(10));
+        assertThat(rollups.get(0).getCount(), is(0L));
+        assertThat(rollups.get(0).getBucketStart() - rollups.get(1).getBucketStart(), is(60000L));
+    }
+
+    @Test
+    public void storeJobStatisticsOfTooManyApplications()
+    {
+        handler.setConfiguration(Collections.<String, Object> singletonMap(
+            InMemoryJobStatisticsHandler.MAX_SCOPE_VALUES_PARAMETER, 1));
+        handler.initialize();
+
+        storeJobStatistics("app1", 100L, null);
+        storeJobStatistics("app2", 100L, null);
+        storeJobStatistics("app3", 100L, null);
+
+        assertThat(
+            handler.getRollups(Granularity.HOUR, Scope.APPLICATION, "app1", 1, JOB_COMPLETION_TIME)
+                .get(0)
+                .getCount(), is(1L));
+        assertThat(
+            handler.getRollups(Granularity.HOUR, Scope.APPLICATION, "app2", 1, JOB_COMPLETION_TIME)
+                .get(0)
+                .getCount(), is(0L));
+        assertThat(
+            handler.getRollups(Granularity.HOUR, Scope.APPLICATION,
+                InMemoryJobStatisticsHandler.OTHER_SCOPE_VALUE, 1, JOB_COMPLETION_TIME)
+                .get(0)
+                .getCount(), is(2L));
+    }
+
+    @Test
+    public void snapshotAndRestore() throws Exception
+    {
+        final File snapshotFile = new File(FileUtils.getTempDirectory(), UUID.randomUUID().toString()
+                                                                         + ".json");
+        final Map<String, Object> configuration = Collections.<String, Object> singletonMap(
+            InMemoryJobStatisticsHandler.SNAPSHOT_FILE_PARAMETER, snapshotFile.getPath());
+
+        try
+        {
+            handler.setConfiguration(configuration);
+            handler.initialize();
+            storeJobStatistics("app1", 100L, "fake://pool1");
+            storeJobStatistics("app1", 7000L, "fake://pool1");
+            handler.destroy();
+
+            assertThat(snapshotFile.isFile(), is(true));
+
+            final InMemoryJobStatisticsHandler restoredHandler = new InMemoryJobStatisticsHandler();
+            restoredHandler.setConfiguration(configuration);
+            restoredHandler.initialize();
+
+            final JobStatisticsRollup rollup = restoredHandler.getRollups(Granularity.DAY,
+                Scope.RSERVI_ADDRESS, "fake://pool1", 1, JOB_COMPLETION_TIME).get(0);
+            assertThat(rollup.getCount(), is(2L));
+            assertThat(rollup.getTotalTimeSpent(), is(7100L));
+            assertThat(rollup.getTimeSpentPercentiles().get("p99"), is(10000L));
+
+            restoredHandler.destroy();
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(snapshotFile);
+        }
+    }
+
+    private void storeJobStatistics(final String applicationName,
+                                    final long millisecondsSpentProcessing,
+                                    final String rServiAddress)
+    {
+        final Job job = mock(Job.class);
+        when(job.getApplicationName()).thenReturn(applicationName);
+        final GregorianCalendar jobCompletionTime = new GregorianCalendar();
+        jobCompletionTime.setTimeInMillis(JOB_COMPLETION_TIME);
+        handler.storeJobStatistics(job, jobCompletionTime, millisecondsSpentProcessing, rServiAddress);
+    }
+}
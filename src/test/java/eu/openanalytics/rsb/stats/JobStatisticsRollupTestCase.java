@@ -0,0 +1,84 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Granularity;
+import eu.openanalytics.rsb.stats.JobStatisticsRollup.Scope;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class JobStatisticsRollupTestCase
+{
+    @Test
+    public void getTimeSpentBin()
+    {
+        assertThat(JobStatisticsRollup.getTimeSpentBin(0L), is(0));
+        assertThat(JobStatisticsRollup.getTimeSpentBin(10L), is(0));
+        assertThat(JobStatisticsRollup.getTimeSpentBin(11L), is(1));
+        assertThat(JobStatisticsRollup.getTimeSpentBin(Long.MAX_VALUE),
+            is(JobStatisticsRollup.TIME_SPENT_BIN_COUNT - 1));
+    }
+
+    @Test
+    public void getBucketStart()
+    {
+        assertThat(Granularity.MINUTE.getBucketStart(125000L), is(120000L));
+        assertThat(Granularity.HOUR.getBucketStart(3600001L), is(3600000L));
+        assertThat(Granularity.DAY.getBucketStart(86399999L), is(0L));
+    }
+
+    @Test
+    public void estimateTimeSpentPercentile()
+    {
+        final long[] histogram = new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT];
+        // 90 jobs under 10ms, 9 under 1s and 1 over the last bound
+        histogram[JobStatisticsRollup.getTimeSpentBin(5L)] = 90L;
+        histogram[JobStatisticsRollup.getTimeSpentBin(800L)] = 9L;
+        histogram[JobStatisticsRollup.TIME_SPENT_BIN_COUNT - 1] = 1L;
+
+        final JobStatisticsRollup rollup = new JobStatisticsRollup(Granularity.HOUR, Scope.APPLICATION,
+            "test", 0L, 100L, 20000L, histogram);
+
+        assertThat(rollup.estimateTimeSpentPercentile(50), is(10L));
+        assertThat(rollup.estimateTimeSpentPercentile(90), is(10L));
+        assertThat(rollup.estimateTimeSpentPercentile(95), is(1000L));
+        assertThat(rollup.estimateTimeSpentPercentile(100), is(5000000L));
+        assertThat(rollup.getAverageTimeSpent(), is(200L));
+    }
+
+    @Test
+    public void estimateTimeSpentPercentileOfEmptyRollup()
+    {
+        final JobStatisticsRollup rollup = new JobStatisticsRollup(Granularity.MINUTE,
+            Scope.RSERVI_ADDRESS, "fake://default", 0L, 0L, 0L,
+            new long[JobStatisticsRollup.TIME_SPENT_BIN_COUNT]);
+
+        assertThat(rollup.estimateTimeSpentPercentile(99), is(0L));
+        assertThat(rollup.getAverageTimeSpent(), is(0L));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2015
+ *
+ *   ===========================================================================
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.openanalytics.rsb.stats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * @author "OpenAnalytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class MonthStampCacheTestCase
+{
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final int THREAD_COUNT = 16;
+    private static final int STAMPS_PER_THREAD = 20000;
+
+    private final MonthStampCache monthStampCache = new MonthStampCache();
+
+    @Test
+    public void getMonthStampAtMonthBoundaries()
+    {
+        final GregorianCalendar calendar = new GregorianCalendar(UTC);
+        calendar.clear();
+        calendar.set(2015, 0, 31, 23, 59, 59);
+        calendar.set(GregorianCalendar.MILLISECOND, 999);
+        final long lastMillisecondOfJanuary = calendar.getTimeInMillis();
+
+        assertThat(monthStampCache.getMonthStamp(lastMillisecondOfJanuary), is("2015-01"));
+        assertThat(monthStampCache.getMonthStamp(lastMillisecondOfJanuary + 1L), is("2015-02"));
+        assertThat(monthStampCache.getMonthStamp(lastMillisecondOfJanuary), is("2015-01"));
+    }
+
+    @Test
+    public void getMonthStampConcurrently() throws Exception
+    {
+        final long now = System.currentTimeMillis();
+        final long twoYears = 2L * 366L * 24L * 3600L * 1000L;
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        try
+        {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>(THREAD_COUNT);
+            for (int i = 0; i < THREAD_COUNT; i++)
+            {
+                final Random random = new Random(i);
+                results.add(executorService.submit(new Callable<Integer>()
+                {
+                    public Integer call()
+                    {
+                        // reference format confined to this thread
+                        final SimpleDateFormat referenceFormat = new SimpleDateFormat("yyyy-MM");
+                        referenceFormat.setTimeZone(UTC);
+
+                        int mismatches = 0;
+                        for (int j = 0; j < STAMPS_PER_THREAD; j++)
+                        {
+                            // mostly current timestamps, with some spread over the years around
+                            long timestamp = now + random.nextInt(1000);
+                            if (random.nextInt(10) == 0)
+                            {
+                                timestamp = now - twoYears + (long) (random.nextDouble() * 2 * twoYears);
+                            }
+
+                            if (!referenceFormat.format(new Date(timestamp)).equals(
+                                monthStampCache.getMonthStamp(timestamp)))
+                            {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+
+            for (final Future<Integer> result : results)
+            {
+                assertThat(result.get(), is(0));
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+}